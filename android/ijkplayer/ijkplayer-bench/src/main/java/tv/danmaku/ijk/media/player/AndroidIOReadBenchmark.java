@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2017 Bilibili
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.danmaku.ijk.media.player;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import tv.danmaku.ijk.media.player.misc.IAndroidIO2;
+
+/**
+ * Reads a local file through {@link IAndroidIO2#read(byte[], int)} and
+ * {@link IAndroidIO2#read(ByteBuffer, int)}, the way ijkioandroidio drives
+ * them, at the fetch sizes "androidio-min-read-size" leads to. The byte[]
+ * path also pays for the copy into native memory done by
+ * GetByteArrayRegion, done here with a put() into a direct buffer.
+ * One operation is one MB read, so the scores are in MB/s.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AndroidIOReadBenchmark {
+    private static final int FILE_MB = 16;
+    private static final int FILE_SIZE = FILE_MB * 1024 * 1024;
+
+    @Param({"32768", "262144", "1048576"})
+    public int mFetchSize;
+
+    private File mFile;
+    private FileAndroidIO mIO;
+    private byte[] mArray;
+    private ByteBuffer mNativeBuffer;
+
+    @Setup
+    public void setup() throws IOException {
+        mFile = File.createTempFile("androidio-bench", ".bin");
+
+        byte[] chunk = new byte[1024 * 1024];
+        new Random(0).nextBytes(chunk);
+        FileOutputStream os = new FileOutputStream(mFile);
+        try {
+            for (int i = 0; i < FILE_MB; i++)
+                os.write(chunk);
+        } finally {
+            os.close();
+        }
+
+        mIO = new FileAndroidIO();
+        mIO.open(mFile.getPath());
+        mArray = new byte[mFetchSize];
+        mNativeBuffer = ByteBuffer.allocateDirect(mFetchSize);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mIO.close();
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILE_MB)
+    public long readByteArray() throws IOException {
+        mIO.seek(0, 0);
+        long total = 0;
+        int ret;
+        while ((ret = mIO.read(mArray, mFetchSize)) > 0) {
+            mNativeBuffer.clear();
+            mNativeBuffer.put(mArray, 0, ret);
+            total += ret;
+        }
+        return checkTotal(total);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FILE_MB)
+    public long readByteBuffer() throws IOException {
+        mIO.seek(0, 0);
+        long total = 0;
+        int ret;
+        while ((ret = mIO.read(mNativeBuffer, mFetchSize)) > 0)
+            total += ret;
+        return checkTotal(total);
+    }
+
+    private static long checkTotal(long total) {
+        if (total != FILE_SIZE)
+            throw new IllegalStateException("read " + total + " bytes of " + FILE_SIZE);
+        return total;
+    }
+
+    private static class FileAndroidIO implements IAndroidIO2 {
+        private RandomAccessFile mFile;
+        private FileChannel mChannel;
+
+        @Override
+        public int open(String url) throws IOException {
+            mFile = new RandomAccessFile(url, "r");
+            mChannel = mFile.getChannel();
+            return 0;
+        }
+
+        @Override
+        public int read(byte[] buffer, int size) throws IOException {
+            return mFile.read(buffer, 0, size);
+        }
+
+        @Override
+        public int read(ByteBuffer buffer, int size) throws IOException {
+            buffer.clear();
+            buffer.limit(size);
+            return mChannel.read(buffer);
+        }
+
+        @Override
+        public long seek(long offset, int whence) throws IOException {
+            mFile.seek(offset);
+            return offset;
+        }
+
+        @Override
+        public int close() throws IOException {
+            mFile.close();
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2017 Bilibili
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.danmaku.ijk.media.player;
+
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecInfo.CodecCapabilities;
+import android.media.MediaCodecInfo.CodecProfileLevel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ranking of a device-like decoder list, as done for every mime type by
+ * {@link IjkMediaCodecIndex}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IjkMediaCodecInfoBenchmark {
+    private static final String MIME_AVC = "video/avc";
+
+    private MediaCodecInfo[] mCodecInfos;
+
+    @Setup
+    public void setup() {
+        CodecCapabilities caps = new CodecCapabilities();
+        CodecProfileLevel high = new CodecProfileLevel();
+        high.profile = CodecProfileLevel.AVCProfileHigh;
+        high.level = CodecProfileLevel.AVCLevel51;
+        CodecProfileLevel main = new CodecProfileLevel();
+        main.profile = CodecProfileLevel.AVCProfileMain;
+        main.level = CodecProfileLevel.AVCLevel41;
+        caps.profileLevels = new CodecProfileLevel[] {main, high};
+
+        String[] avc = new String[] {MIME_AVC};
+        mCodecInfos = new MediaCodecInfo[] {
+                new MediaCodecInfo("OMX.qcom.video.decoder.avc", false, avc, caps),
+                new MediaCodecInfo("OMX.qcom.video.decoder.avc.secure", false, avc, caps),
+                new MediaCodecInfo("OMX.MTK.VIDEO.DECODER.AVC", false, avc, caps),
+                new MediaCodecInfo("OMX.Exynos.avc.dec", false, avc, caps),
+                new MediaCodecInfo("OMX.amlogic.avc.decoder.awesome", false, avc, caps),
+                new MediaCodecInfo("OMX.rk.video_decoder.avc", false, avc, caps),
+                new MediaCodecInfo("OMX.vendor.unknown.avc.decoder", false, avc, caps),
+                new MediaCodecInfo("OMX.google.h264.decoder", false, avc, caps),
+                new MediaCodecInfo("c2.android.avc.decoder", false, avc, caps),
+        };
+    }
+
+    @Benchmark
+    public IjkMediaCodecInfo rank() {
+        IjkMediaCodecInfo bestCodec = null;
+        for (MediaCodecInfo codecInfo : mCodecInfos) {
+            IjkMediaCodecInfo candidate = IjkMediaCodecInfo.setupCandidate(codecInfo, MIME_AVC);
+            if (candidate != null && (bestCodec == null || candidate.mRank > bestCodec.mRank))
+                bestCodec = candidate;
+        }
+        return bestCodec;
+    }
+
+    @Benchmark
+    public int dumpProfileLevels() {
+        IjkMediaCodecInfo candidate = IjkMediaCodecInfo.setupCandidate(mCodecInfos[0], MIME_AVC);
+        candidate.dumpProfileLevels(MIME_AVC);
+        return candidate.mRank;
+    }
+}
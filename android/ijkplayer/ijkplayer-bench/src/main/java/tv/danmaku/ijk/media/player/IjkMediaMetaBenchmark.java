@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2017 Bilibili
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.danmaku.ijk.media.player;
+
+import android.os.Bundle;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meta of a typical stream with one video, two audio and one subtitle track,
+ * as built by the native getMediaMeta().
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IjkMediaMetaBenchmark {
+    private Bundle mBundle;
+
+    @Setup
+    public void setup() {
+        mBundle = new Bundle();
+        mBundle.putString(IjkMediaMeta.IJKM_KEY_FORMAT, "mov,mp4,m4a,3gp,3g2,mj2");
+        mBundle.putString(IjkMediaMeta.IJKM_KEY_DURATION_US, "596458000");
+        mBundle.putString(IjkMediaMeta.IJKM_KEY_START_US, "0");
+        mBundle.putString(IjkMediaMeta.IJKM_KEY_BITRATE, "2500000");
+        mBundle.putString(IjkMediaMeta.IJKM_KEY_VIDEO_STREAM, "0");
+        mBundle.putString(IjkMediaMeta.IJKM_KEY_AUDIO_STREAM, "1");
+        mBundle.putString(IjkMediaMeta.IJKM_KEY_TIMEDTEXT_STREAM, "3");
+
+        ArrayList<Bundle> streams = new ArrayList<Bundle>();
+
+        Bundle video = new Bundle();
+        video.putString(IjkMediaMeta.IJKM_KEY_TYPE, IjkMediaMeta.IJKM_VAL_TYPE__VIDEO);
+        video.putString(IjkMediaMeta.IJKM_KEY_LANGUAGE, "und");
+        video.putString(IjkMediaMeta.IJKM_KEY_CODEC_NAME, "h264");
+        video.putString(IjkMediaMeta.IJKM_KEY_CODEC_PROFILE, "High");
+        video.putString(IjkMediaMeta.IJKM_KEY_CODEC_LONG_NAME, "H.264 / AVC / MPEG-4 AVC / MPEG-4 part 10");
+        video.putString(IjkMediaMeta.IJKM_KEY_BITRATE, "2300000");
+        video.putString(IjkMediaMeta.IJKM_KEY_WIDTH, "1920");
+        video.putString(IjkMediaMeta.IJKM_KEY_HEIGHT, "1080");
+        video.putString(IjkMediaMeta.IJKM_KEY_FPS_NUM, "24000");
+        video.putString(IjkMediaMeta.IJKM_KEY_FPS_DEN, "1001");
+        video.putString(IjkMediaMeta.IJKM_KEY_TBR_NUM, "24000");
+        video.putString(IjkMediaMeta.IJKM_KEY_TBR_DEN, "1001");
+        video.putString(IjkMediaMeta.IJKM_KEY_SAR_NUM, "1");
+        video.putString(IjkMediaMeta.IJKM_KEY_SAR_DEN, "1");
+        streams.add(video);
+
+        for (String language : new String[] {"eng", "jpn"}) {
+            Bundle audio = new Bundle();
+            audio.putString(IjkMediaMeta.IJKM_KEY_TYPE, IjkMediaMeta.IJKM_VAL_TYPE__AUDIO);
+            audio.putString(IjkMediaMeta.IJKM_KEY_LANGUAGE, language);
+            audio.putString(IjkMediaMeta.IJKM_KEY_CODEC_NAME, "aac");
+            audio.putString(IjkMediaMeta.IJKM_KEY_CODEC_PROFILE, "LC");
+            audio.putString(IjkMediaMeta.IJKM_KEY_CODEC_LONG_NAME, "AAC (Advanced Audio Coding)");
+            audio.putString(IjkMediaMeta.IJKM_KEY_BITRATE, "128000");
+            audio.putString(IjkMediaMeta.IJKM_KEY_SAMPLE_RATE, "48000");
+            audio.putString(IjkMediaMeta.IJKM_KEY_CHANNEL_LAYOUT, "3");
+            streams.add(audio);
+        }
+
+        Bundle subtitle = new Bundle();
+        subtitle.putString(IjkMediaMeta.IJKM_KEY_TYPE, IjkMediaMeta.IJKM_VAL_TYPE__TIMEDTEXT);
+        subtitle.putString(IjkMediaMeta.IJKM_KEY_LANGUAGE, "eng");
+        subtitle.putString(IjkMediaMeta.IJKM_KEY_CODEC_NAME, "mov_text");
+        streams.add(subtitle);
+
+        mBundle.putParcelableArrayList(IjkMediaMeta.IJKM_KEY_STREAMS, streams);
+    }
+
+    @Benchmark
+    public IjkMediaMeta parse() {
+        return IjkMediaMeta.parse(mBundle);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2017 Bilibili
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.danmaku.ijk.media.player;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link IjkParameterSetParser} against the {@link SPSParser} it replaces,
+ * on the same 1920x1080 High profile avcC as {@link SPSParserBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IjkParameterSetParserBenchmark {
+    private static final String AVC_EXTRADATA = "AWQAKP/hAA5nZAAorNlAeAIn5cBAQAEABGjOPIA=";
+    // 2343x1261 Main 10 hvcC with VPS, SPS and PPS
+    private static final String HEVC_EXTRADATA =
+            "AQAAAAAAAAAAAAAAAAAAAAAAAAAADwOgAAEAF0ABDAH//wFgAAADALAAAAMAAAMAXXAkoQABADdCAQECYAAAAwCwAAADAAADAJaQACSkAJ41TsYLRCMhHASRiKHGCMX4JxE/ZMTNcRMxGTKc1YEEogABAAdEAcFytGJA";
+
+    private final IjkParameterSetParser mParser = new IjkParameterSetParser();
+    private byte[] mAvc;
+    private ByteBuffer mAvcBuffer;
+    private byte[] mHevc;
+
+    @Setup
+    public void setup() {
+        mAvc = Base64.getDecoder().decode(AVC_EXTRADATA);
+        mAvcBuffer = ByteBuffer.allocateDirect(mAvc.length);
+        mAvcBuffer.put(mAvc);
+        mAvcBuffer.flip();
+        mHevc = Base64.getDecoder().decode(HEVC_EXTRADATA);
+    }
+
+    @SuppressWarnings("deprecation")
+    @Benchmark
+    public int legacySpsParser() {
+        return SPSParser.parseExtradata(AVC_EXTRADATA).getWidth();
+    }
+
+    @Benchmark
+    public int avcFromBase64() {
+        byte[] avc = android.util.Base64.decode(AVC_EXTRADATA, android.util.Base64.DEFAULT);
+        mParser.parseAvcExtradata(avc, 0, avc.length);
+        return mParser.getWidth();
+    }
+
+    @Benchmark
+    public int avc() {
+        mParser.parseAvcExtradata(mAvc, 0, mAvc.length);
+        return mParser.getWidth();
+    }
+
+    @Benchmark
+    public int avcDirectBuffer() {
+        mParser.parseAvcExtradata(mAvcBuffer);
+        return mParser.getWidth();
+    }
+
+    @Benchmark
+    public int hevc() {
+        mParser.parseHevcExtradata(mHevc, 0, mHevc.length);
+        return mParser.getWidth();
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2017 Bilibili
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.danmaku.ijk.media.player;
+
+import android.content.Context;
+import android.net.Uri;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.FileDescriptor;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import tv.danmaku.ijk.media.player.misc.ITrackInfo;
+
+/**
+ * Listener dispatch from a backend player through {@link MediaPlayerProxy}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MediaPlayerProxyBenchmark {
+    private BackEndMediaPlayer mBackEnd;
+    private Blackhole mBlackhole;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        mBlackhole = blackhole;
+        mBackEnd = new BackEndMediaPlayer();
+
+        MediaPlayerProxy proxy = new MediaPlayerProxy(mBackEnd);
+        proxy.setOnInfoListener(new IMediaPlayer.OnInfoListener() {
+            @Override
+            public boolean onInfo(IMediaPlayer mp, int what, int extra) {
+                mBlackhole.consume(mp);
+                mBlackhole.consume(what);
+                return true;
+            }
+        });
+        proxy.setOnBufferingUpdateListener(new IMediaPlayer.OnBufferingUpdateListener() {
+            @Override
+            public void onBufferingUpdate(IMediaPlayer mp, int percent) {
+                mBlackhole.consume(mp);
+                mBlackhole.consume(percent);
+            }
+        });
+        proxy.setOnVideoSizeChangedListener(new IMediaPlayer.OnVideoSizeChangedListener() {
+            @Override
+            public void onVideoSizeChanged(IMediaPlayer mp, int width, int height, int sar_num, int sar_den) {
+                mBlackhole.consume(mp);
+                mBlackhole.consume(width);
+            }
+        });
+    }
+
+    @Benchmark
+    public boolean dispatchInfo() {
+        return mBackEnd.dispatchInfo(IMediaPlayer.MEDIA_INFO_BUFFERING_START, 0);
+    }
+
+    @Benchmark
+    public void dispatchBufferingUpdate() {
+        mBackEnd.dispatchBufferingUpdate(42);
+    }
+
+    @Benchmark
+    public void dispatchVideoSizeChanged() {
+        mBackEnd.dispatchVideoSizeChanged(1920, 1080, 1, 1);
+    }
+
+    static final class BackEndMediaPlayer extends AbstractMediaPlayer {
+        boolean dispatchInfo(int what, int extra) {
+            return notifyOnInfo(what, extra);
+        }
+
+        void dispatchBufferingUpdate(int percent) {
+            notifyOnBufferingUpdate(percent);
+        }
+
+        void dispatchVideoSizeChanged(int width, int height, int sarNum, int sarDen) {
+            notifyOnVideoSizeChanged(width, height, sarNum, sarDen);
+        }
+
+        @Override public void setDisplay(SurfaceHolder sh) {}
+        @Override public void setDataSource(Context context, Uri uri) {}
+        @Override public void setDataSource(Context context, Uri uri, Map<String, String> headers) {}
+        @Override public void setDataSource(FileDescriptor fd) {}
+        @Override public void setDataSource(String path) {}
+        @Override public String getDataSource() { return null; }
+        @Override public void prepareAsync() {}
+        @Override public void start() {}
+        @Override public void stop() {}
+        @Override public void pause() {}
+        @Override public void setScreenOnWhilePlaying(boolean screenOn) {}
+        @Override public int getVideoWidth() { return 0; }
+        @Override public int getVideoHeight() { return 0; }
+        @Override public boolean isPlaying() { return false; }
+        @Override public void seekTo(long msec) {}
+        @Override public long getCurrentPosition() { return 0; }
+        @Override public long getDuration() { return 0; }
+        @Override public void release() {}
+        @Override public void reset() {}
+        @Override public void setVolume(float leftVolume, float rightVolume) {}
+        @Override public int getAudioSessionId() { return 0; }
+        @Override public MediaInfo getMediaInfo() { return null; }
+        @Override public void setLogEnabled(boolean enable) {}
+        @Override public boolean isPlayable() { return true; }
+        @Override public void setAudioStreamType(int streamtype) {}
+        @Override public void setKeepInBackground(boolean keepInBackground) {}
+        @Override public int getVideoSarNum() { return 1; }
+        @Override public int getVideoSarDen() { return 1; }
+        @Override public void setWakeMode(Context context, int mode) {}
+        @Override public void setLooping(boolean looping) {}
+        @Override public boolean isLooping() { return false; }
+        @Override public ITrackInfo[] getTrackInfo() { return null; }
+        @Override public void setSurface(Surface surface) {}
+    }
+}
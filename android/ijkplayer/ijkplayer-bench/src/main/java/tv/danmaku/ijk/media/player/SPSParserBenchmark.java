@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2017 Bilibili
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.danmaku.ijk.media.player;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SPSParserBenchmark {
+    // avcC of a 1920x1080 High profile stream, and of a 640x368 Baseline stream with SAR 4:3
+    @Param({
+            "AWQAKP/hAA5nZAAorNlAeAIn5cBAQAEABGjOPIA=",
+            "AUIAHv/hAA9nQgAe7KBQF9/4ACAAGAgBAARozjyA",
+    })
+    public String mExtradata;
+
+    // baseline for IjkParameterSetParserBenchmark, SPSParser itself is deprecated
+    @SuppressWarnings("deprecation")
+    @Benchmark
+    public SPSParser.SPS parseExtradata() {
+        return SPSParser.parseExtradata(mExtradata);
+    }
+}
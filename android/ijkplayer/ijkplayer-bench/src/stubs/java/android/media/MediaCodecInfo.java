@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2017 Bilibili
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.media;
+
+// benchmark stub, constructed by the benchmarks instead of MediaCodecList
+public final class MediaCodecInfo {
+    private final String mName;
+    private final boolean mIsEncoder;
+    private final String[] mTypes;
+    private final CodecCapabilities mCapabilities;
+
+    public MediaCodecInfo(String name, boolean isEncoder, String[] types, CodecCapabilities capabilities) {
+        mName = name;
+        mIsEncoder = isEncoder;
+        mTypes = types;
+        mCapabilities = capabilities;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public boolean isEncoder() {
+        return mIsEncoder;
+    }
+
+    public String[] getSupportedTypes() {
+        return mTypes;
+    }
+
+    public CodecCapabilities getCapabilitiesForType(String type) {
+        for (String supportedType : mTypes) {
+            if (supportedType.equalsIgnoreCase(type))
+                return mCapabilities;
+        }
+        throw new IllegalArgumentException("codec does not support type");
+    }
+
+    public static final class CodecCapabilities {
+        public CodecProfileLevel[] profileLevels;
+    }
+
+    public static final class CodecProfileLevel {
+        public static final int AVCProfileBaseline = 0x01;
+        public static final int AVCProfileMain     = 0x02;
+        public static final int AVCProfileExtended = 0x04;
+        public static final int AVCProfileHigh     = 0x08;
+        public static final int AVCProfileHigh10   = 0x10;
+        public static final int AVCProfileHigh422  = 0x20;
+        public static final int AVCProfileHigh444  = 0x40;
+
+        public static final int AVCLevel1  = 0x01;
+        public static final int AVCLevel1b = 0x02;
+        public static final int AVCLevel11 = 0x04;
+        public static final int AVCLevel12 = 0x08;
+        public static final int AVCLevel13 = 0x10;
+        public static final int AVCLevel2  = 0x20;
+        public static final int AVCLevel21 = 0x40;
+        public static final int AVCLevel22 = 0x80;
+        public static final int AVCLevel3  = 0x100;
+        public static final int AVCLevel31 = 0x200;
+        public static final int AVCLevel32 = 0x400;
+        public static final int AVCLevel4  = 0x800;
+        public static final int AVCLevel41 = 0x1000;
+        public static final int AVCLevel42 = 0x2000;
+        public static final int AVCLevel5  = 0x4000;
+        public static final int AVCLevel51 = 0x8000;
+
+        public int profile;
+        public int level;
+    }
+}
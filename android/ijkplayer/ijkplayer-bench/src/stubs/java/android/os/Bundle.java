@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2017 Bilibili
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+// benchmark stub, backed by a HashMap like the real one
+public final class Bundle implements Parcelable {
+    private final HashMap<String, Object> mMap = new HashMap<String, Object>();
+
+    public void putString(String key, String value) {
+        mMap.put(key, value);
+    }
+
+    public String getString(String key) {
+        Object value = mMap.get(key);
+        return value instanceof String ? (String) value : null;
+    }
+
+    public void putParcelableArrayList(String key, ArrayList<? extends Parcelable> value) {
+        mMap.put(key, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T extends Parcelable> ArrayList<T> getParcelableArrayList(String key) {
+        Object value = mMap.get(key);
+        return value instanceof ArrayList ? (ArrayList<T>) value : null;
+    }
+}
@@ -0,0 +1,579 @@
+/*
+ * Copyright (C) 2017 Bilibili
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.danmaku.ijk.media.player;
+
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Persistent media cache shared by all players of the process, one entry per URL.
+ * <p>
+ * Each entry is an ijkio cache file plus its interval map. The map is written
+ * when the player is reset or released and parsed again on the next open, so a
+ * replay starts from disk. Entries are evicted least recently used first
+ * once the directory grows over the size budget. Pinned entries and entries
+ * attached to a player are never evicted.
+ * <pre>
+ *     String source = cacheManager.attach(player, url);
+ *     player.setDataSource(source);
+ *     ...
+ *     cacheManager.detach(player);
+ *     player.release();
+ * </pre>
+ */
+public final class IjkCacheManager {
+    private static final String TAG = "IjkCacheManager";
+
+    public static final long DEFAULT_MAX_SIZE = 512L * 1024 * 1024;
+
+    private static final String INDEX_FILE_NAME = "ijkcache.idx";
+    private static final String DATA_SUFFIX = ".data";
+    private static final String MAP_SUFFIX = ".map";
+    /* package */ static final String CACHE_URL_PREFIX = "ijkio:cache:ffio:";
+    /* package */ static final String[] CACHE_OPTION_KEYS = {
+            "cache_file_path",
+            "cache_map_path",
+            "parse_cache_map",
+            "auto_save_map",
+            "cache_max_capacity"
+    };
+
+    private final File mDirectory;
+    private long mMaxSize;
+
+    private final Map<String, Entry> mEntries = new HashMap<String, Entry>();
+    private final Map<IjkMediaPlayer, Entry> mAttached = new IdentityHashMap<IjkMediaPlayer, Entry>();
+
+    public IjkCacheManager(File directory) {
+        this(directory, DEFAULT_MAX_SIZE);
+    }
+
+    public IjkCacheManager(File directory, long maxSize) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("invalid max size " + maxSize);
+
+        mDirectory = directory;
+        mMaxSize = maxSize;
+
+        //noinspection ResultOfMethodCallIgnored
+        mDirectory.mkdirs();
+        loadIndex();
+    }
+
+    /**
+     * Points {@code player} at the cache entry of {@code url}. A preload of the
+     * same entry is cancelled, and waited for until it has closed the cache files.
+     * Must be called before {@link IjkMediaPlayer#prepareAsync()}.
+     *
+     * @return the data source to pass to {@link IjkMediaPlayer#setDataSource(String)}
+     */
+    public synchronized String attach(IjkMediaPlayer player, String url) {
+        if (player == null || TextUtils.isEmpty(url))
+            throw new IllegalArgumentException("player and url are required");
+
+        detachLocked(player);
+
+        String key = keyOf(url);
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            entry = new Entry(key);
+            mEntries.put(key, entry);
+        }
+        preemptLocked(entry);
+        entry.mUrl = url;
+        entry.mLastAccessTime = System.currentTimeMillis();
+        entry.mAttachCount++;
+        mAttached.put(player, entry);
+
+        String[] values = cacheOptionValuesLocked(key);
+        for (int i = 0; i < CACHE_OPTION_KEYS.length; i++)
+            player.setOption(IjkMediaPlayer.OPT_CATEGORY_FORMAT, CACHE_OPTION_KEYS[i], values[i]);
+
+        trimLocked();
+        saveIndexLocked();
+        return CACHE_URL_PREFIX + url;
+    }
+
+    /**
+     * Records the cache statistics of {@code player} and releases its entry
+     * for eviction. Call it before {@link IjkMediaPlayer#release()}, while
+     * the statistics can still be read.
+     */
+    public synchronized void detach(IjkMediaPlayer player) {
+        if (detachLocked(player)) {
+            trimLocked();
+            saveIndexLocked();
+        }
+    }
+
+    private boolean detachLocked(IjkMediaPlayer player) {
+        Entry entry = mAttached.remove(player);
+        if (entry == null)
+            return false;
+
+        entry.mReadBytes += player.getCacheStatisticReadBytes();
+        entry.mNetworkBytes += player.getCacheStatisticCountBytes();
+        entry.mLastAccessTime = System.currentTimeMillis();
+        entry.mAttachCount--;
+        return true;
+    }
+
+    /**
+     * Reserves the entry of {@code url} for a preload. {@code onPreempt} is run,
+     * under the manager lock, when a player attaches to the entry before
+     * {@link #release(String, Runnable, long)}. It returns only once the
+     * preload has closed the cache files, which it does without the manager lock.
+     *
+     * @return the cache option values matching {@link #CACHE_OPTION_KEYS},
+     *         or null if the entry is already in use
+     */
+    /* package */ synchronized String[] acquire(String url, Runnable onPreempt) {
+        String key = keyOf(url);
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            entry = new Entry(key);
+            mEntries.put(key, entry);
+        } else if (entry.mAttachCount > 0) {
+            return null;
+        }
+        entry.mUrl = url;
+        entry.mLastAccessTime = System.currentTimeMillis();
+        entry.mAttachCount++;
+        entry.mPreempt = onPreempt;
+
+        trimLocked();
+        saveIndexLocked();
+        return cacheOptionValuesLocked(key);
+    }
+
+    /**
+     * Ends a preload started by {@link #acquire(String, Runnable)}. Only the
+     * downloaded bytes are recorded, nothing has been played yet.
+     */
+    /* package */ synchronized void release(String url, Runnable onPreempt, long networkBytes) {
+        Entry entry = mEntries.get(keyOf(url));
+        if (entry == null)
+            return;
+
+        // a preempted preload has already given its reference to the player
+        if (entry.mPreempt == onPreempt) {
+            entry.mPreempt = null;
+            entry.mAttachCount--;
+        }
+        entry.mNetworkBytes += networkBytes;
+        trimLocked();
+        saveIndexLocked();
+    }
+
+    private void preemptLocked(Entry entry) {
+        Runnable preempt = entry.mPreempt;
+        if (preempt == null)
+            return;
+
+        entry.mPreempt = null;
+        entry.mAttachCount--;
+        preempt.run();
+    }
+
+    private String[] cacheOptionValuesLocked(String key) {
+        return new String[] {
+                dataFile(key).getPath(),
+                mapFile(key).getPath(),
+                "1",
+                "1",
+                String.valueOf(mMaxSize)
+        };
+    }
+
+    public synchronized long getMaxSize() {
+        return mMaxSize;
+    }
+
+    public synchronized void setMaxSize(long maxSize) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("invalid max size " + maxSize);
+
+        mMaxSize = maxSize;
+        trimLocked();
+        saveIndexLocked();
+    }
+
+    /**
+     * @return bytes used on disk by all entries
+     */
+    public synchronized long getSize() {
+        long size = 0;
+        for (Entry entry : mEntries.values())
+            size += refreshSizeLocked(entry);
+        return size;
+    }
+
+    /**
+     * @return share of the bytes played which did not have to be downloaded, over all entries
+     */
+    public synchronized float getHitRatio() {
+        long readBytes = 0;
+        long networkBytes = 0;
+        for (Entry entry : mEntries.values()) {
+            readBytes += entry.mReadBytes;
+            networkBytes += entry.mNetworkBytes;
+        }
+        return hitRatio(readBytes, networkBytes);
+    }
+
+    /**
+     * @return snapshots of all entries, most recently used first
+     */
+    public synchronized List<Entry> getEntries() {
+        List<Entry> entries = new ArrayList<Entry>(mEntries.size());
+        for (Entry entry : mEntries.values()) {
+            refreshSizeLocked(entry);
+            entries.add(entry.copy());
+        }
+        Collections.sort(entries, Collections.reverseOrder(LRU_ORDER));
+        return entries;
+    }
+
+    /**
+     * @return a snapshot of the entry of {@code url}, or null if it is not cached
+     */
+    public synchronized Entry getEntry(String url) {
+        Entry entry = mEntries.get(keyOf(url));
+        if (entry == null)
+            return null;
+
+        refreshSizeLocked(entry);
+        return entry.copy();
+    }
+
+    /**
+     * Keeps the entry of {@code url} out of eviction until {@link #unpin(String)}.
+     * The entry is created if it does not exist yet.
+     */
+    public synchronized void pin(String url) {
+        String key = keyOf(url);
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            entry = new Entry(key);
+            entry.mUrl = url;
+            entry.mLastAccessTime = System.currentTimeMillis();
+            mEntries.put(key, entry);
+        }
+        entry.mPinned = true;
+        saveIndexLocked();
+    }
+
+    public synchronized void unpin(String url) {
+        Entry entry = mEntries.get(keyOf(url));
+        if (entry == null || !entry.mPinned)
+            return;
+
+        entry.mPinned = false;
+        trimLocked();
+        saveIndexLocked();
+    }
+
+    /**
+     * Deletes the entry of {@code url}, even if pinned.
+     *
+     * @return false if the entry is attached to a player, or does not exist
+     */
+    public synchronized boolean purge(String url) {
+        Entry entry = mEntries.get(keyOf(url));
+        if (entry == null || entry.mAttachCount > 0)
+            return false;
+
+        removeLocked(entry);
+        saveIndexLocked();
+        return true;
+    }
+
+    /**
+     * Deletes every entry which is not attached to a player, pinned ones included.
+     */
+    public synchronized void purgeAll() {
+        for (Entry entry : new ArrayList<Entry>(mEntries.values())) {
+            if (entry.mAttachCount == 0)
+                removeLocked(entry);
+        }
+        saveIndexLocked();
+    }
+
+    /**
+     * Evicts least recently used entries until the cache fits its budget.
+     */
+    public synchronized void trim() {
+        trimLocked();
+        saveIndexLocked();
+    }
+
+    private void trimLocked() {
+        List<Entry> candidates = new ArrayList<Entry>(mEntries.size());
+        long size = 0;
+        for (Entry entry : mEntries.values()) {
+            size += refreshSizeLocked(entry);
+            if (!entry.mPinned && entry.mAttachCount == 0)
+                candidates.add(entry);
+        }
+        if (size <= mMaxSize)
+            return;
+
+        Collections.sort(candidates, LRU_ORDER);
+        for (Entry entry : candidates) {
+            if (size <= mMaxSize)
+                break;
+            size -= entry.mSize;
+            removeLocked(entry);
+        }
+    }
+
+    private void removeLocked(Entry entry) {
+        //noinspection ResultOfMethodCallIgnored
+        dataFile(entry.mKey).delete();
+        //noinspection ResultOfMethodCallIgnored
+        mapFile(entry.mKey).delete();
+        mEntries.remove(entry.mKey);
+    }
+
+    private long refreshSizeLocked(Entry entry) {
+        entry.mSize = dataFile(entry.mKey).length() + mapFile(entry.mKey).length();
+        return entry.mSize;
+    }
+
+    private File dataFile(String key) {
+        return new File(mDirectory, key + DATA_SUFFIX);
+    }
+
+    private File mapFile(String key) {
+        return new File(mDirectory, key + MAP_SUFFIX);
+    }
+
+    private void loadIndex() {
+        File indexFile = new File(mDirectory, INDEX_FILE_NAME);
+        if (indexFile.exists()) {
+            BufferedReader reader = null;
+            try {
+                reader = new BufferedReader(new FileReader(indexFile));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    Entry entry = Entry.parse(line);
+                    if (entry != null && (entry.mPinned || dataFile(entry.mKey).exists()))
+                        mEntries.put(entry.mKey, entry);
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "failed to read cache index", e);
+            } finally {
+                closeQuietly(reader);
+            }
+        }
+
+        // adopt cache files written while the index could not be saved
+        File[] files = mDirectory.listFiles();
+        if (files == null)
+            return;
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.endsWith(DATA_SUFFIX))
+                continue;
+
+            String key = name.substring(0, name.length() - DATA_SUFFIX.length());
+            if (!mEntries.containsKey(key)) {
+                Entry entry = new Entry(key);
+                entry.mLastAccessTime = file.lastModified();
+                mEntries.put(key, entry);
+            }
+        }
+    }
+
+    private void saveIndexLocked() {
+        File indexFile = new File(mDirectory, INDEX_FILE_NAME);
+        File tempFile = new File(mDirectory, INDEX_FILE_NAME + ".tmp");
+        FileWriter writer = null;
+        try {
+            writer = new FileWriter(tempFile);
+            for (Entry entry : mEntries.values()) {
+                writer.write(entry.format());
+                writer.write('\n');
+            }
+            writer.close();
+            writer = null;
+
+            if (!tempFile.renameTo(indexFile))
+                Log.w(TAG, "failed to replace cache index");
+        } catch (IOException e) {
+            Log.w(TAG, "failed to write cache index", e);
+        } finally {
+            closeQuietly(writer);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null)
+            return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static float hitRatio(long readBytes, long networkBytes) {
+        if (readBytes <= 0)
+            return 0f;
+        return Math.max(0f, 1f - (float) networkBytes / readBytes);
+    }
+
+    private static String keyOf(String url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] hash = digest.digest(url.getBytes("UTF-8"));
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash)
+                sb.append(String.format(Locale.US, "%02x", b & 0xff));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final Comparator<Entry> LRU_ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry lhs, Entry rhs) {
+            if (lhs.mLastAccessTime == rhs.mLastAccessTime)
+                return 0;
+            return lhs.mLastAccessTime < rhs.mLastAccessTime ? -1 : 1;
+        }
+    };
+
+    public static final class Entry {
+        private final String mKey;
+        private String mUrl;
+        private long mSize;
+        private long mLastAccessTime;
+        private boolean mPinned;
+        private long mReadBytes;
+        private long mNetworkBytes;
+        private int mAttachCount;
+        private Runnable mPreempt;
+
+        private Entry(String key) {
+            mKey = key;
+        }
+
+        public String getKey() {
+            return mKey;
+        }
+
+        /**
+         * @return the URL of the entry, or null for cache files found on disk without an index record
+         */
+        public String getUrl() {
+            return mUrl;
+        }
+
+        /**
+         * @return bytes used on disk
+         */
+        public long getSize() {
+            return mSize;
+        }
+
+        public long getLastAccessTime() {
+            return mLastAccessTime;
+        }
+
+        public boolean isPinned() {
+            return mPinned;
+        }
+
+        public boolean isAttached() {
+            return mAttachCount > 0;
+        }
+
+        /**
+         * @return bytes handed to the demuxer through this entry
+         */
+        public long getReadBytes() {
+            return mReadBytes;
+        }
+
+        /**
+         * @return bytes downloaded into this entry, read-ahead included
+         */
+        public long getNetworkBytes() {
+            return mNetworkBytes;
+        }
+
+        public float getHitRatio() {
+            return hitRatio(mReadBytes, mNetworkBytes);
+        }
+
+        private Entry copy() {
+            Entry entry = new Entry(mKey);
+            entry.mUrl = mUrl;
+            entry.mSize = mSize;
+            entry.mLastAccessTime = mLastAccessTime;
+            entry.mPinned = mPinned;
+            entry.mReadBytes = mReadBytes;
+            entry.mNetworkBytes = mNetworkBytes;
+            entry.mAttachCount = mAttachCount;
+            return entry;
+        }
+
+        private String format() {
+            return mKey + '\t' + mLastAccessTime + '\t' + (mPinned ? 1 : 0) + '\t'
+                    + mReadBytes + '\t' + mNetworkBytes + '\t' + (mUrl != null ? mUrl : "");
+        }
+
+        private static Entry parse(String line) {
+            String[] fields = line.split("\t", 6);
+            if (fields.length != 6)
+                return null;
+
+            try {
+                Entry entry = new Entry(fields[0]);
+                entry.mLastAccessTime = Long.parseLong(fields[1]);
+                entry.mPinned = "1".equals(fields[2]);
+                entry.mReadBytes = Long.parseLong(fields[3]);
+                entry.mNetworkBytes = Long.parseLong(fields[4]);
+                entry.mUrl = fields[5].length() > 0 ? fields[5] : null;
+                return entry;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
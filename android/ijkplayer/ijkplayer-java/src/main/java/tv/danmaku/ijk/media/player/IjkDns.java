@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2017 Bilibili
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.danmaku.ijk.media.player;
+
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide DNS cache of the players which opted in with
+ * <pre>
+ *     player.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "dns-cache", 1);
+ * </pre>
+ * Such a player connects to the cached address of a host, or, on a miss,
+ * first asks its {@link IjkMediaPlayer.OnNativeInvokeListener} with
+ * {@link IjkMediaPlayer.OnNativeInvokeListener#CTRL_WILL_DNS_RESOLVE}, so that
+ * an HTTPDNS client can answer. Otherwise the host is resolved by the system
+ * as before, and the address it connected to is cached.
+ * <p>
+ * The system resolver does not report record TTLs, its answers are kept
+ * for {@link #setDefaultTtl(long)}. Addresses given by the application
+ * expire after their own TTL.
+ */
+public final class IjkDns {
+    private static final String TAG = "IjkDns";
+
+    public static final long DEFAULT_TTL_MS = 60000;
+    private static final int MAX_CONCURRENT = 2;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static ThreadPoolExecutor sExecutor;
+    private static final Set<String> sPending = new HashSet<String>();
+
+    private IjkDns() {
+    }
+
+    /**
+     * @param ttlMs lifetime of the addresses resolved by the system, 0 to not cache them
+     */
+    public static void setDefaultTtl(long ttlMs) {
+        if (ttlMs < 0)
+            throw new IllegalArgumentException("invalid ttl " + ttlMs);
+
+        IjkMediaPlayer.loadLibrariesOnce(null);
+        _setDefaultTtl(ttlMs);
+    }
+
+    /**
+     * Resolves {@code hosts} on background threads, e.g. for the upcoming
+     * items of a feed. Hosts which are cached or already being resolved are skipped.
+     */
+    public static void prefetch(String... hosts) {
+        IjkMediaPlayer.loadLibrariesOnce(null);
+
+        synchronized (IjkDns.class) {
+            if (sExecutor == null) {
+                sExecutor = new ThreadPoolExecutor(MAX_CONCURRENT, MAX_CONCURRENT,
+                        KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<Runnable>(),
+                        new DnsThreadFactory());
+                sExecutor.allowCoreThreadTimeOut(true);
+            }
+
+            for (final String host : hosts) {
+                if (TextUtils.isEmpty(host) || _lookup(host) != null || !sPending.add(host))
+                    continue;
+
+                sExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            if (_resolve(host) == null)
+                                Log.w(TAG, "failed to resolve " + host);
+                        } finally {
+                            synchronized (IjkDns.class) {
+                                sPending.remove(host);
+                            }
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Resolves {@code host} unless it is cached, blocking.
+     *
+     * @return numeric address, or null on failure
+     */
+    public static String resolve(String host) {
+        if (TextUtils.isEmpty(host))
+            throw new IllegalArgumentException("host is required");
+
+        IjkMediaPlayer.loadLibrariesOnce(null);
+        return _resolve(host);
+    }
+
+    /**
+     * @return cached numeric address of {@code host}, or null
+     */
+    public static String lookup(String host) {
+        if (TextUtils.isEmpty(host))
+            return null;
+
+        IjkMediaPlayer.loadLibrariesOnce(null);
+        return _lookup(host);
+    }
+
+    /**
+     * Caches an address resolved by the application.
+     *
+     * @param ip    numeric IPv4 or IPv6 address
+     * @param ttlMs lifetime of the address, 0 for the default TTL
+     * @return false if {@code ip} is not a numeric address
+     */
+    public static boolean put(String host, String ip, long ttlMs) {
+        if (TextUtils.isEmpty(host) || TextUtils.isEmpty(ip))
+            return false;
+
+        IjkMediaPlayer.loadLibrariesOnce(null);
+        return _put(host, ip, ttlMs);
+    }
+
+    public static void remove(String host) {
+        if (TextUtils.isEmpty(host))
+            return;
+
+        IjkMediaPlayer.loadLibrariesOnce(null);
+        _remove(host);
+    }
+
+    /**
+     * Drops every cached address, e.g. after a network change.
+     */
+    public static void clear() {
+        IjkMediaPlayer.loadLibrariesOnce(null);
+        _clear();
+    }
+
+    private static class DnsThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, TAG + "#" + mCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    private static native void _setDefaultTtl(long ttlMs);
+    private static native String _resolve(String host);
+    private static native String _lookup(String host);
+    private static native boolean _put(String host, String ip, long ttlMs);
+    private static native void _remove(String host);
+    private static native void _clear();
+}
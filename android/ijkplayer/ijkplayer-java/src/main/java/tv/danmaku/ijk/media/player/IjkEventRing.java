@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2017 Bilibili
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.danmaku.ijk.media.player;
+
+/**
+ * Fixed-size ring of native events, filled by the native message thread and
+ * drained on the player's Looper. All slots are preallocated, so queueing an
+ * event does not allocate. Events are delivered in the order they were
+ * offered: when the ring is full, the native thread waits for room.
+ */
+final class IjkEventRing {
+    public static final int OFFER_QUEUED = 0;
+    public static final int OFFER_COALESCED = 1;
+    public static final int OFFER_FULL = 2;
+
+    private final int[] mWhat;
+    private final int[] mArg1;
+    private final int[] mArg2;
+    private final Object[] mObj;
+    private final int mCapacity;
+
+    private int mHead;
+    private int mCount;
+    private int mCoalesceIndex = -1;
+    private int mCoalesceWhat;
+    private boolean mAborted;
+
+    private long mDroppedCount;
+    private long mCoalescedCount;
+
+    public IjkEventRing(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity must be positive");
+
+        mCapacity = capacity;
+        mWhat = new int[capacity];
+        mArg1 = new int[capacity];
+        mArg2 = new int[capacity];
+        mObj = new Object[capacity];
+    }
+
+    /**
+     * Queues an event. When {@code coalesce} is true and the newest pending
+     * event has the same {@code what}, its arguments are overwritten in place.
+     *
+     * @return one of {@link #OFFER_QUEUED}, {@link #OFFER_COALESCED}, {@link #OFFER_FULL}
+     */
+    public synchronized int offer(int what, int arg1, int arg2, Object obj, boolean coalesce) {
+        if (coalesce && mCoalesceIndex >= 0 && mCoalesceWhat == what) {
+            mArg1[mCoalesceIndex] = arg1;
+            mArg2[mCoalesceIndex] = arg2;
+            mObj[mCoalesceIndex] = obj;
+            mCoalescedCount++;
+            return OFFER_COALESCED;
+        }
+
+        if (mCount >= mCapacity)
+            return OFFER_FULL;
+
+        int index = (mHead + mCount) % mCapacity;
+        mWhat[index] = what;
+        mArg1[index] = arg1;
+        mArg2[index] = arg2;
+        mObj[index] = obj;
+        mCount++;
+
+        // only the tail may be overwritten, or the update would jump ahead of later events
+        if (coalesce) {
+            mCoalesceIndex = index;
+            mCoalesceWhat = what;
+        } else {
+            mCoalesceIndex = -1;
+        }
+        return OFFER_QUEUED;
+    }
+
+    /**
+     * Waits until an event can be queued.
+     *
+     * @return false if the ring was aborted, or the thread interrupted
+     */
+    public synchronized boolean awaitSpace() {
+        while (!mAborted && mCount >= mCapacity) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return !mAborted;
+    }
+
+    /**
+     * Releases the threads waiting in {@link #awaitSpace()} until the next
+     * {@link #clear()}, before the native player is torn down.
+     */
+    public synchronized void abort() {
+        mAborted = true;
+        notifyAll();
+    }
+
+    /**
+     * Removes the oldest event and hands it to {@code handler}.
+     *
+     * @return false if the ring was empty
+     */
+    public boolean poll(Consumer handler) {
+        int what;
+        int arg1;
+        int arg2;
+        Object obj;
+
+        synchronized (this) {
+            if (mCount == 0)
+                return false;
+
+            what = mWhat[mHead];
+            arg1 = mArg1[mHead];
+            arg2 = mArg2[mHead];
+            obj = mObj[mHead];
+            mObj[mHead] = null;
+
+            if (mCoalesceIndex == mHead)
+                mCoalesceIndex = -1;
+
+            mHead = (mHead + 1) % mCapacity;
+            mCount--;
+            notifyAll();
+        }
+
+        handler.onEvent(what, arg1, arg2, obj);
+        return true;
+    }
+
+    public synchronized int size() {
+        return mCount;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < mCapacity; i++)
+            mObj[i] = null;
+        mHead = 0;
+        mCount = 0;
+        mCoalesceIndex = -1;
+        mAborted = false;
+        notifyAll();
+    }
+
+    public synchronized void countDropped() {
+        mDroppedCount++;
+    }
+
+    public synchronized long getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    public synchronized long getCoalescedCount() {
+        return mCoalescedCount;
+    }
+
+    public interface Consumer {
+        void onEvent(int what, int arg1, int arg2, Object obj);
+    }
+}
@@ -0,0 +1,443 @@
+/*
+ * Copyright (C) 2017 Bilibili
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.danmaku.ijk.media.player;
+
+import android.graphics.Bitmap;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Extracts preview frames of a video without a player, for seek bar
+ * thumbnails and sprite sheets.
+ * <p>
+ * Only key frames are decoded: each timestamp gets the key frame at or
+ * before it, and timestamps falling on the same key frame share one decode.
+ * A request is split into runs of consecutive timestamps, each decoded by
+ * its own demuxer and decoder on a bounded worker pool.
+ * <p>
+ * Pixels are RGBA, in the layout of {@link Bitmap.Config#ARGB_8888}.
+ */
+public final class IjkFrameExtractor {
+    private static final String TAG = "IjkFrameExtractor";
+
+    public static final int DEFAULT_MAX_WORKERS = 2;
+    private static final long KEEP_ALIVE_SECONDS = 10;
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private final ThreadPoolExecutor mExecutor;
+    private final int mMaxWorkers;
+    private final Map<String, String> mFormatOptions = new LinkedHashMap<String, String>();
+
+    public IjkFrameExtractor() {
+        this(DEFAULT_MAX_WORKERS);
+    }
+
+    public IjkFrameExtractor(int maxWorkers) {
+        if (maxWorkers <= 0)
+            throw new IllegalArgumentException("invalid max workers " + maxWorkers);
+
+        IjkMediaPlayer.loadLibrariesOnce(null);
+
+        mMaxWorkers = maxWorkers;
+        mExecutor = new ThreadPoolExecutor(maxWorkers, maxWorkers,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new WorkerThreadFactory());
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Sets a format option, such as "headers" or "user_agent", used by later requests.
+     */
+    public synchronized void setFormatOption(String name, String value) {
+        if (value == null)
+            mFormatOptions.remove(name);
+        else
+            mFormatOptions.put(name, value);
+    }
+
+    /**
+     * Extracts one frame per timestamp. Each frame is passed to
+     * {@link Listener#onFrameExtracted(Request, Frame)} as soon as it is decoded.
+     */
+    public Request extractFrames(String url, long[] timesMs, int width, int height, Listener listener) {
+        return submit(url, timesMs, width, height, 0, listener);
+    }
+
+    /**
+     * Extracts one frame per timestamp into a sprite sheet of {@code columns}
+     * tiles per row, in the order of {@code timesMs}. The sheet is passed to
+     * {@link Listener#onSpriteExtracted(Request, Bitmap)} once every tile is
+     * done; tiles which could not be decoded are left transparent.
+     */
+    public Request extractSprite(String url, long[] timesMs, int tileWidth, int tileHeight, int columns,
+                                 Listener listener) {
+        if (columns <= 0)
+            throw new IllegalArgumentException("invalid columns " + columns);
+        return submit(url, timesMs, tileWidth, tileHeight, columns, listener);
+    }
+
+    /**
+     * Stops the worker threads. Requests not started yet are dropped without
+     * callbacks, cancel them first to be notified.
+     */
+    public void shutdown() {
+        mExecutor.shutdownNow();
+    }
+
+    private Request submit(String url, long[] timesMs, int width, int height, int columns, Listener listener) {
+        if (TextUtils.isEmpty(url))
+            throw new IllegalArgumentException("url is required");
+        if (timesMs == null || timesMs.length == 0)
+            throw new IllegalArgumentException("timestamps are required");
+        if (width <= 0 || height <= 0)
+            throw new IllegalArgumentException("invalid size " + width + "x" + height);
+        if (listener == null)
+            throw new IllegalArgumentException("listener is required");
+
+        String[] keys;
+        String[] values;
+        synchronized (this) {
+            keys = mFormatOptions.keySet().toArray(new String[mFormatOptions.size()]);
+            values = mFormatOptions.values().toArray(new String[mFormatOptions.size()]);
+        }
+
+        Request request = new Request(url, timesMs.clone(), width, height, columns, keys, values, listener);
+        request.start(Math.min(mMaxWorkers, timesMs.length));
+        return request;
+    }
+
+    public final class Request {
+        private final String mUrl;
+        private final long[] mTimesMs;
+        private final int mWidth;
+        private final int mHeight;
+        private final int mColumns;
+        private final String[] mOptionKeys;
+        private final String[] mOptionValues;
+        private final Listener mListener;
+
+        private final ByteBuffer mSprite;
+        private final List<Worker> mWorkers = new ArrayList<Worker>();
+        private final AtomicInteger mPendingWorkers = new AtomicInteger();
+        private final AtomicInteger mExtractedCount = new AtomicInteger();
+        private volatile int mError;
+        private volatile boolean mCancelled;
+
+        private Request(String url, long[] timesMs, int width, int height, int columns,
+                        String[] optionKeys, String[] optionValues, Listener listener) {
+            mUrl = url;
+            mTimesMs = timesMs;
+            mWidth = width;
+            mHeight = height;
+            mColumns = columns;
+            mOptionKeys = optionKeys;
+            mOptionValues = optionValues;
+            mListener = listener;
+
+            if (columns > 0) {
+                int rows = (timesMs.length + columns - 1) / columns;
+                mSprite = ByteBuffer.allocateDirect(columns * width * rows * height * BYTES_PER_PIXEL)
+                        .order(ByteOrder.nativeOrder());
+            } else {
+                mSprite = null;
+            }
+        }
+
+        private void start(int workerCount) {
+            // sorted so that each worker only seeks forward
+            Integer[] order = new Integer[mTimesMs.length];
+            for (int i = 0; i < order.length; i++)
+                order[i] = i;
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer lhs, Integer rhs) {
+                    long l = mTimesMs[lhs];
+                    long r = mTimesMs[rhs];
+                    return l < r ? -1 : (l == r ? 0 : 1);
+                }
+            });
+
+            int begin = 0;
+            synchronized (this) {
+                for (int i = 0; i < workerCount; i++) {
+                    int end = (int) ((long) order.length * (i + 1) / workerCount);
+                    int[] indices = new int[end - begin];
+                    for (int j = begin; j < end; j++)
+                        indices[j - begin] = order[j];
+                    begin = end;
+                    mWorkers.add(new Worker(this, indices));
+                }
+                mPendingWorkers.set(mWorkers.size());
+                for (Worker worker : mWorkers)
+                    mExecutor.execute(worker);
+            }
+        }
+
+        public String getUrl() {
+            return mUrl;
+        }
+
+        /**
+         * @return frames decoded so far
+         */
+        public int getExtractedCount() {
+            return mExtractedCount.get();
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        public void cancel() {
+            synchronized (this) {
+                mCancelled = true;
+                for (Worker worker : mWorkers)
+                    worker.abort();
+            }
+        }
+
+        private void onWorkerDone(int error) {
+            if (error < 0 && mError == 0)
+                mError = error;
+            if (mPendingWorkers.decrementAndGet() != 0)
+                return;
+
+            if (mSprite != null && !mCancelled) {
+                int rows = (mTimesMs.length + mColumns - 1) / mColumns;
+                Bitmap sprite = Bitmap.createBitmap(mColumns * mWidth, rows * mHeight, Bitmap.Config.ARGB_8888);
+                mSprite.rewind();
+                sprite.copyPixelsFromBuffer(mSprite);
+                mListener.onSpriteExtracted(this, sprite);
+            }
+            mListener.onExtractFinished(this, mCancelled ? 0 : mError);
+        }
+    }
+
+    private final class Worker implements Runnable {
+        private final Request mRequest;
+        private final int[] mIndices;
+        private long mNativeHandle;
+        private boolean mAborted;
+
+        Worker(Request request, int[] indices) {
+            mRequest = request;
+            mIndices = indices;
+        }
+
+        synchronized void abort() {
+            mAborted = true;
+            if (mNativeHandle != 0)
+                _abort(mNativeHandle);
+        }
+
+        @Override
+        public void run() {
+            long handle = _create();
+            synchronized (this) {
+                if (mAborted || handle == 0) {
+                    if (handle != 0)
+                        _destroy(handle);
+                    mRequest.onWorkerDone(0);
+                    return;
+                }
+                mNativeHandle = handle;
+            }
+
+            int error = 0;
+            try {
+                error = extract(handle);
+            } finally {
+                synchronized (this) {
+                    mNativeHandle = 0;
+                }
+                _destroy(handle);
+                mRequest.onWorkerDone(error);
+            }
+        }
+
+        private int extract(long handle) {
+            Request request = mRequest;
+            long[] info = new long[3];
+            int ret = _open(handle, request.mUrl, request.mOptionKeys, request.mOptionValues, info);
+            if (ret < 0) {
+                Log.w(TAG, String.format("open %s failed: %d", request.mUrl, ret));
+                return ret;
+            }
+
+            int tileStride = request.mWidth * BYTES_PER_PIXEL;
+            ByteBuffer pixels = null;
+            int stride = tileStride;
+            if (request.mSprite != null)
+                stride = request.mColumns * tileStride;
+            else
+                pixels = ByteBuffer.allocateDirect(tileStride * request.mHeight).order(ByteOrder.nativeOrder());
+
+            long[] result = new long[2];
+            int error = 0;
+            for (int index : mIndices) {
+                if (request.mCancelled)
+                    break;
+
+                long timeMs = request.mTimesMs[index];
+                if (request.mSprite != null) {
+                    int column = index % request.mColumns;
+                    int row = index / request.mColumns;
+                    int offset = row * request.mHeight * stride + column * tileStride;
+                    ret = _extract(handle, timeMs, request.mSprite, offset, stride,
+                            request.mWidth, request.mHeight, result);
+                } else {
+                    ret = _extract(handle, timeMs, pixels, 0, stride,
+                            request.mWidth, request.mHeight, result);
+                }
+                if (ret < 0) {
+                    // a missing frame does not fail the others
+                    error = ret;
+                    continue;
+                }
+
+                request.mExtractedCount.incrementAndGet();
+                if (pixels != null)
+                    pixels.clear();
+                request.mListener.onFrameExtracted(request, new Frame(index, timeMs, result[0], result[1],
+                        request.mWidth, request.mHeight, pixels));
+            }
+            return error;
+        }
+    }
+
+    public static final class Frame {
+        private final int mIndex;
+        private final long mTimeMs;
+        private final long mFrameTimeMs;
+        private final long mDecodeTimeUs;
+        private final int mWidth;
+        private final int mHeight;
+        private final ByteBuffer mPixels;
+
+        private Frame(int index, long timeMs, long frameTimeMs, long decodeTimeUs,
+                      int width, int height, ByteBuffer pixels) {
+            mIndex = index;
+            mTimeMs = timeMs;
+            mFrameTimeMs = frameTimeMs;
+            mDecodeTimeUs = decodeTimeUs;
+            mWidth = width;
+            mHeight = height;
+            mPixels = pixels;
+        }
+
+        /**
+         * @return index of the requested timestamp
+         */
+        public int getIndex() {
+            return mIndex;
+        }
+
+        public long getTimeMs() {
+            return mTimeMs;
+        }
+
+        /**
+         * @return presentation time of the key frame actually decoded
+         */
+        public long getFrameTimeMs() {
+            return mFrameTimeMs;
+        }
+
+        /**
+         * @return time spent seeking and decoding, 0 when the previous key frame was reused
+         */
+        public long getDecodeTimeUs() {
+            return mDecodeTimeUs;
+        }
+
+        public int getWidth() {
+            return mWidth;
+        }
+
+        public int getHeight() {
+            return mHeight;
+        }
+
+        /**
+         * @return RGBA pixels, reused for the next frame once the callback returns;
+         *         null for sprite requests
+         */
+        public ByteBuffer getPixels() {
+            return mPixels;
+        }
+
+        /**
+         * @return a copy of the pixels, or null for sprite requests
+         */
+        public Bitmap toBitmap() {
+            if (mPixels == null)
+                return null;
+
+            Bitmap bitmap = Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.ARGB_8888);
+            mPixels.rewind();
+            bitmap.copyPixelsFromBuffer(mPixels);
+            return bitmap;
+        }
+    }
+
+    /**
+     * All methods are called on worker threads.
+     */
+    public interface Listener {
+        void onFrameExtracted(Request request, Frame frame);
+
+        void onSpriteExtracted(Request request, Bitmap sprite);
+
+        /**
+         * @param error 0, or the last negative ffmpeg error code if some frames are missing
+         */
+        void onExtractFinished(Request request, int error);
+    }
+
+    private static final class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, TAG + "-" + mCount.incrementAndGet());
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    }
+
+    private static native long _create();
+    private static native void _abort(long handle);
+    private static native void _destroy(long handle);
+    private static native int _open(long handle, String url, String[] keys, String[] values, long[] info);
+    private static native int _extract(long handle, long timeMs, ByteBuffer buffer, int offset, int stride,
+                                       int width, int height, long[] result);
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2017 Bilibili
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.danmaku.ijk.media.player;
+
+import java.util.Locale;
+
+/**
+ * Process-wide pool of idle keep-alive HTTP connections, shared by every
+ * player which opted in with
+ * <pre>
+ *     player.setOption(IjkMediaPlayer.OPT_CATEGORY_PLAYER, "http-connection-pool", 1);
+ * </pre>
+ * Such a player asks servers to keep connections alive, and parks a
+ * connection when a response was read to its end, so that the next request
+ * to the same host and port skips the TCP handshake.
+ * {@link IjkMediaPlayer.OnNativeInvokeListener#CTRL_WILL_TCP_OPEN} and
+ * {@link IjkMediaPlayer.OnNativeInvokeListener#CTRL_DID_TCP_OPEN} are still
+ * reported for a pooled connection. The segments of an HLS stream share the
+ * pool too.
+ * <p>
+ * Only plain HTTP is pooled. HTTPS connections are not: TLS opens its own
+ * socket below the pool and its session is not kept.
+ */
+public final class IjkHttpConnectionPool {
+    public static final int DEFAULT_MAX_IDLE_PER_HOST = 4;
+    public static final long DEFAULT_IDLE_TIMEOUT_MS = 15000;
+    public static final int MAX_IDLE = 32;
+
+    private IjkHttpConnectionPool() {
+    }
+
+    /**
+     * @param maxIdlePerHost idle connections kept per host and port, up to {@link #MAX_IDLE} in total, 0 to disable the pool
+     * @param idleTimeoutMs  idle connections older than this are closed
+     */
+    public static void setLimits(int maxIdlePerHost, long idleTimeoutMs) {
+        if (maxIdlePerHost < 0 || maxIdlePerHost > MAX_IDLE)
+            throw new IllegalArgumentException("invalid max idle per host " + maxIdlePerHost);
+        if (idleTimeoutMs < 0)
+            throw new IllegalArgumentException("invalid idle timeout " + idleTimeoutMs);
+
+        IjkMediaPlayer.loadLibrariesOnce(null);
+        _setLimits(maxIdlePerHost, idleTimeoutMs);
+    }
+
+    public static Statistic getStatistic() {
+        long[] values = new long[4];
+
+        IjkMediaPlayer.loadLibrariesOnce(null);
+        _getStatistic(values);
+        return new Statistic(values[0], values[1], values[2], values[3]);
+    }
+
+    /**
+     * Closes every idle connection, e.g. after a network change.
+     */
+    public static void clear() {
+        IjkMediaPlayer.loadLibrariesOnce(null);
+        _clear();
+    }
+
+    public static final class Statistic {
+        /** connections taken from the pool */
+        public final long mHitCount;
+        /** connections opened because none was idle */
+        public final long mMissCount;
+        /** idle connections closed: timed out, closed by the server, or above the limits */
+        public final long mEvictCount;
+        public final long mIdleCount;
+
+        Statistic(long hitCount, long missCount, long evictCount, long idleCount) {
+            mHitCount = hitCount;
+            mMissCount = missCount;
+            mEvictCount = evictCount;
+            mIdleCount = idleCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "hit=%d, miss=%d, evict=%d, idle=%d",
+                    mHitCount, mMissCount, mEvictCount, mIdleCount);
+        }
+    }
+
+    private static native void _setLimits(int maxIdlePerHost, long idleTimeoutMs);
+    private static native void _getStatistic(long[] values);
+    private static native void _clear();
+}
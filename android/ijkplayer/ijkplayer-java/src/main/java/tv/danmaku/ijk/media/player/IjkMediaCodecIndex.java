@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2017 Bilibili
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.danmaku.ijk.media.player;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.os.Build;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Process-wide index of the decoders of the device, ranked by
+ * {@link IjkMediaCodecInfo#setupCandidate(MediaCodecInfo, String)}.
+ * <p>
+ * Walking {@link MediaCodecList} takes tens of milliseconds on low-end
+ * devices, so it is done once per process, or once per firmware when
+ * {@link #prepare(Context)} was called: the index is then persisted in the
+ * cache directory, keyed by {@link Build#FINGERPRINT}, and built on a
+ * background thread if it is not there yet.
+ */
+public final class IjkMediaCodecIndex {
+    private static final String TAG = "IjkMediaCodecIndex";
+
+    private static final String FILE_NAME = "ijkmediacodec.index";
+    private static final int FORMAT_VERSION = 1;
+
+    private static File sFile;
+    private static IjkMediaCodecIndex sInstance;
+
+    // lower case mime type -> decoders by descending rank
+    private final Map<String, Codec[]> mCodecs;
+
+    private IjkMediaCodecIndex(Map<String, Codec[]> codecs) {
+        mCodecs = codecs;
+    }
+
+    /**
+     * Persists the index in the cache directory of {@code context}, and builds
+     * it on a background thread unless a previous process already did.
+     * Optional, usually called from {@code Application.onCreate()}, before
+     * the first player is prepared.
+     */
+    public static void prepare(Context context) {
+        synchronized (IjkMediaCodecIndex.class) {
+            if (sFile != null)
+                return;
+            sFile = new File(context.getApplicationContext().getCacheDir(), FILE_NAME);
+        }
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                getInstance();
+            }
+        }, TAG);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Loads or builds the index. Blocks while another thread is building it.
+     */
+    public static synchronized IjkMediaCodecIndex getInstance() {
+        if (sInstance != null)
+            return sInstance;
+
+        long startMs = SystemClock.elapsedRealtime();
+        Map<String, Codec[]> codecs = null;
+        if (sFile != null)
+            codecs = load(sFile);
+
+        if (codecs != null) {
+            Log.i(TAG, String.format(Locale.US, "loaded %d mime types in %d ms",
+                    codecs.size(), SystemClock.elapsedRealtime() - startMs));
+        } else {
+            codecs = build();
+            Log.i(TAG, String.format(Locale.US, "built %d mime types in %d ms",
+                    codecs.size(), SystemClock.elapsedRealtime() - startMs));
+            if (sFile != null)
+                save(sFile, codecs);
+        }
+
+        sInstance = new IjkMediaCodecIndex(codecs);
+        return sInstance;
+    }
+
+    /**
+     * Drops the index, both in memory and on disk, so that the next query
+     * walks {@link MediaCodecList} again.
+     */
+    public static synchronized void invalidate() {
+        sInstance = null;
+        if (sFile != null && sFile.exists() && !sFile.delete())
+            Log.w(TAG, "failed to delete " + sFile);
+    }
+
+    /**
+     * @return decoders of {@code mimeType} by descending rank, possibly empty
+     */
+    public List<Codec> getCodecs(String mimeType) {
+        if (TextUtils.isEmpty(mimeType))
+            return Collections.emptyList();
+
+        Codec[] codecs = mCodecs.get(mimeType.toLowerCase(Locale.US));
+        if (codecs == null)
+            return Collections.emptyList();
+
+        List<Codec> list = new ArrayList<Codec>(codecs.length);
+        Collections.addAll(list, codecs);
+        return list;
+    }
+
+    /**
+     * The best ranked decoder of {@code mimeType}, unless it ranks below
+     * {@link IjkMediaCodecInfo#RANK_LAST_CHANCE}. {@code profile} and {@code level}
+     * are ffmpeg values rather than CodecProfileLevel constants, so they are only logged.
+     *
+     * @return codec name, or null to fall back to software decoding
+     */
+    public String select(String mimeType, int profile, int level) {
+        if (TextUtils.isEmpty(mimeType))
+            return null;
+
+        Codec[] codecs = mCodecs.get(mimeType.toLowerCase(Locale.US));
+        if (codecs == null || codecs.length == 0) {
+            Log.i(TAG, String.format(Locale.US, "no codec: mime=%s, profile=%d, level=%d", mimeType, profile, level));
+            return null;
+        }
+
+        Codec bestCodec = codecs[0];
+        if (bestCodec.mRank < IjkMediaCodecInfo.RANK_LAST_CHANCE) {
+            Log.w(TAG, String.format(Locale.US, "unaccetable codec: %s", bestCodec.mName));
+            return null;
+        }
+
+        Log.i(TAG, String.format(Locale.US, "selected codec: %s rank=%d, mime=%s, profile=%d, level=%d",
+                bestCodec.mName, bestCodec.mRank, mimeType, profile, level));
+        return bestCodec.mName;
+    }
+
+    public static final class Codec {
+        public final String mName;
+        public final int mRank;
+
+        Codec(String name, int rank) {
+            mName = name;
+            mRank = rank;
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static Map<String, Codec[]> build() {
+        Map<String, List<Codec>> lists = new HashMap<String, List<Codec>>();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            int numCodecs = MediaCodecList.getCodecCount();
+            for (int i = 0; i < numCodecs; i++) {
+                MediaCodecInfo codecInfo = MediaCodecList.getCodecInfoAt(i);
+                if (codecInfo.isEncoder())
+                    continue;
+
+                String[] types = codecInfo.getSupportedTypes();
+                if (types == null)
+                    continue;
+
+                for (String type : types) {
+                    if (TextUtils.isEmpty(type))
+                        continue;
+
+                    IjkMediaCodecInfo candidate = IjkMediaCodecInfo.setupCandidate(codecInfo, type);
+                    if (candidate == null)
+                        continue;
+
+                    Log.d(TAG, String.format(Locale.US, "  codec: %s mime=%s rank=%d", codecInfo.getName(), type, candidate.mRank));
+                    String mimeType = type.toLowerCase(Locale.US);
+                    List<Codec> list = lists.get(mimeType);
+                    if (list == null) {
+                        list = new ArrayList<Codec>();
+                        lists.put(mimeType, list);
+                    }
+                    list.add(new Codec(codecInfo.getName(), candidate.mRank));
+                }
+            }
+        }
+
+        Map<String, Codec[]> codecs = new HashMap<String, Codec[]>();
+        for (Map.Entry<String, List<Codec>> entry : lists.entrySet()) {
+            List<Codec> list = entry.getValue();
+            // stable, the first listed codec wins among equal ranks
+            Collections.sort(list, RANK_ORDER);
+            codecs.put(entry.getKey(), list.toArray(new Codec[list.size()]));
+        }
+        return codecs;
+    }
+
+    private static String header() {
+        return FORMAT_VERSION + "\t" + Build.VERSION.SDK_INT + "\t" + Build.FINGERPRINT;
+    }
+
+    // header line, then one "mime\tname\trank" line per codec, by descending rank
+    private static Map<String, Codec[]> load(File file) {
+        if (!file.exists())
+            return null;
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(file));
+            if (!header().equals(reader.readLine())) {
+                Log.i(TAG, "codec index is stale");
+                return null;
+            }
+
+            Map<String, List<Codec>> lists = new HashMap<String, List<Codec>>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length != 3)
+                    return null;
+
+                List<Codec> list = lists.get(fields[0]);
+                if (list == null) {
+                    list = new ArrayList<Codec>();
+                    lists.put(fields[0], list);
+                }
+                list.add(new Codec(fields[1], Integer.parseInt(fields[2])));
+            }
+
+            Map<String, Codec[]> codecs = new HashMap<String, Codec[]>();
+            for (Map.Entry<String, List<Codec>> entry : lists.entrySet()) {
+                List<Codec> list = entry.getValue();
+                codecs.put(entry.getKey(), list.toArray(new Codec[list.size()]));
+            }
+            return codecs;
+        } catch (IOException e) {
+            Log.w(TAG, "failed to read codec index", e);
+            return null;
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "corrupted codec index", e);
+            return null;
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    private static void save(File file, Map<String, Codec[]> codecs) {
+        File tempFile = new File(file.getPath() + ".tmp");
+        FileWriter writer = null;
+        try {
+            writer = new FileWriter(tempFile);
+            writer.write(header());
+            writer.write('\n');
+            for (Map.Entry<String, Codec[]> entry : codecs.entrySet()) {
+                for (Codec codec : entry.getValue()) {
+                    writer.write(entry.getKey() + "\t" + codec.mName + "\t" + codec.mRank);
+                    writer.write('\n');
+                }
+            }
+            writer.close();
+            writer = null;
+
+            if (!tempFile.renameTo(file))
+                Log.w(TAG, "failed to replace codec index");
+        } catch (IOException e) {
+            Log.w(TAG, "failed to write codec index", e);
+        } finally {
+            closeQuietly(writer);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null)
+            return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static final Comparator<Codec> RANK_ORDER = new Comparator<Codec>() {
+        @Override
+        public int compare(Codec lhs, Codec rhs) {
+            return rhs.mRank < lhs.mRank ? -1 : (rhs.mRank == lhs.mRank ? 0 : 1);
+        }
+    };
+}
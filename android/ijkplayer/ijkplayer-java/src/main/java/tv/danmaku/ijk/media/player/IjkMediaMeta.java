@@ -47,6 +47,39 @@ public class IjkMediaMeta {
 
     public static final String IJKM_KEY_STREAMS = "streams";
 
+    // flat meta layout, keep in sync with ijkplayer_jni.c
+    static final int FLAT_LONG_DURATION_US = 0;
+    static final int FLAT_LONG_START_US = 1;
+    static final int FLAT_LONG_BITRATE = 2;
+    static final int FLAT_LONG_VIDEO_STREAM = 3;
+    static final int FLAT_LONG_AUDIO_STREAM = 4;
+    static final int FLAT_LONG_TIMEDTEXT_STREAM = 5;
+    static final int FLAT_LONG_STREAM_COUNT = 6;
+    static final int FLAT_LONG_HEADER = 7;
+
+    static final int FLAT_STREAM_LONG_BITRATE = 0;
+    static final int FLAT_STREAM_LONG_WIDTH = 1;
+    static final int FLAT_STREAM_LONG_HEIGHT = 2;
+    static final int FLAT_STREAM_LONG_FPS_NUM = 3;
+    static final int FLAT_STREAM_LONG_FPS_DEN = 4;
+    static final int FLAT_STREAM_LONG_TBR_NUM = 5;
+    static final int FLAT_STREAM_LONG_TBR_DEN = 6;
+    static final int FLAT_STREAM_LONG_SAR_NUM = 7;
+    static final int FLAT_STREAM_LONG_SAR_DEN = 8;
+    static final int FLAT_STREAM_LONG_SAMPLE_RATE = 9;
+    static final int FLAT_STREAM_LONG_CHANNEL_LAYOUT = 10;
+    static final int FLAT_STREAM_LONGS = 11;
+
+    static final int FLAT_STRING_FORMAT = 0;
+    static final int FLAT_STRING_HEADER = 1;
+
+    static final int FLAT_STREAM_STRING_TYPE = 0;
+    static final int FLAT_STREAM_STRING_LANGUAGE = 1;
+    static final int FLAT_STREAM_STRING_CODEC_NAME = 2;
+    static final int FLAT_STREAM_STRING_CODEC_PROFILE = 3;
+    static final int FLAT_STREAM_STRING_CODEC_LONG_NAME = 4;
+    static final int FLAT_STREAM_STRINGS = 5;
+
     public static final long AV_CH_FRONT_LEFT = 0x00000001;
     public static final long AV_CH_FRONT_RIGHT = 0x00000002;
     public static final long AV_CH_FRONT_CENTER = 0x00000004;
@@ -129,7 +162,13 @@ public class IjkMediaMeta {
     public static final int FF_PROFILE_H264_HIGH_444_INTRA = (244|FF_PROFILE_H264_INTRA);
     public static final int FF_PROFILE_H264_CAVLC_444 = 44;
 
+    /**
+     * @deprecated null for a meta parsed from the flat layout until a keyed
+     * getter has run, use {@link #getMediaMetaBundle()} instead.
+     */
+    @Deprecated
     public Bundle mMediaMeta;
+    private BundleSource mBundleSource;
 
     public String mFormat;
     public long mDurationUS;
@@ -141,7 +180,8 @@ public class IjkMediaMeta {
     public IjkStreamMeta mAudioStream;
 
     public String getString(String key) {
-        return mMediaMeta.getString(key);
+        Bundle mediaMeta = getMediaMetaBundle();
+        return mediaMeta != null ? mediaMeta.getString(key) : null;
     }
 
     public int getInt(String key) {
@@ -177,7 +217,40 @@ public class IjkMediaMeta {
     }
 
     public ArrayList<Bundle> getParcelableArrayList(String key) {
-        return mMediaMeta.getParcelableArrayList(key);
+        Bundle mediaMeta = getMediaMetaBundle();
+        return mediaMeta != null ? mediaMeta.<Bundle>getParcelableArrayList(key) : null;
+    }
+
+    /**
+     * Keys outside the flat layout are only in the Bundle built by native
+     * code, which a flat meta fetches once, on the first keyed read.
+     *
+     * @return the Bundle, or null if the player has been released or its
+     * meta has changed since this meta was parsed
+     */
+    public synchronized Bundle getMediaMetaBundle() {
+        BundleSource source = mBundleSource;
+        if (mMediaMeta != null || source == null)
+            return mMediaMeta;
+
+        mBundleSource = null;
+        Bundle mediaMeta = source.getMediaMetaBundle();
+        if (mediaMeta == null)
+            return null;
+
+        ArrayList<Bundle> streams = mediaMeta.getParcelableArrayList(IJKM_KEY_STREAMS);
+        if (streams != null) {
+            for (IjkStreamMeta streamMeta : mStreams) {
+                if (streamMeta.mIndex < streams.size())
+                    streamMeta.mMeta = streams.get(streamMeta.mIndex);
+            }
+        }
+        mMediaMeta = mediaMeta;
+        return mediaMeta;
+    }
+
+    /* package */ interface BundleSource {
+        Bundle getMediaMetaBundle();
     }
 
     public String getDurationInline() {
@@ -262,8 +335,100 @@ public class IjkMediaMeta {
         return meta;
     }
 
+    /**
+     * Builds the meta from the typed arrays filled by native code, without
+     * any string to number conversion. {@link #mMediaMeta} is left null
+     * until a keyed getter asks {@code bundleSource} for it.
+     */
+    static IjkMediaMeta parseFlat(long[] longs, String[] strings, BundleSource bundleSource) {
+        IjkMediaMeta meta = new IjkMediaMeta();
+        meta.mBundleSource = bundleSource;
+        meta.mFormat = strings[FLAT_STRING_FORMAT];
+        meta.mDurationUS = longs[FLAT_LONG_DURATION_US];
+        meta.mStartUS = longs[FLAT_LONG_START_US];
+        meta.mBitrate = longs[FLAT_LONG_BITRATE];
+
+        long videoStreamIndex = longs[FLAT_LONG_VIDEO_STREAM];
+        long audioStreamIndex = longs[FLAT_LONG_AUDIO_STREAM];
+        int streamCount = (int) longs[FLAT_LONG_STREAM_COUNT];
+
+        meta.mStreams.ensureCapacity(streamCount);
+        for (int index = 0; index < streamCount; index++) {
+            int l = FLAT_LONG_HEADER + index * FLAT_STREAM_LONGS;
+            int s = FLAT_STRING_HEADER + index * FLAT_STREAM_STRINGS;
+
+            String type = strings[s + FLAT_STREAM_STRING_TYPE];
+            if (TextUtils.isEmpty(type))
+                continue;
+
+            IjkStreamMeta streamMeta = new IjkStreamMeta(index);
+            streamMeta.mParent = meta;
+            streamMeta.mType = type;
+            streamMeta.mLanguage = strings[s + FLAT_STREAM_STRING_LANGUAGE];
+            streamMeta.mCodecName = strings[s + FLAT_STREAM_STRING_CODEC_NAME];
+            streamMeta.mCodecProfile = strings[s + FLAT_STREAM_STRING_CODEC_PROFILE];
+            streamMeta.mCodecLongName = strings[s + FLAT_STREAM_STRING_CODEC_LONG_NAME];
+            streamMeta.mBitrate = longs[l + FLAT_STREAM_LONG_BITRATE];
+
+            if (type.equalsIgnoreCase(IJKM_VAL_TYPE__VIDEO)) {
+                streamMeta.mWidth = (int) longs[l + FLAT_STREAM_LONG_WIDTH];
+                streamMeta.mHeight = (int) longs[l + FLAT_STREAM_LONG_HEIGHT];
+                streamMeta.mFpsNum = (int) longs[l + FLAT_STREAM_LONG_FPS_NUM];
+                streamMeta.mFpsDen = (int) longs[l + FLAT_STREAM_LONG_FPS_DEN];
+                streamMeta.mTbrNum = (int) longs[l + FLAT_STREAM_LONG_TBR_NUM];
+                streamMeta.mTbrDen = (int) longs[l + FLAT_STREAM_LONG_TBR_DEN];
+                streamMeta.mSarNum = (int) longs[l + FLAT_STREAM_LONG_SAR_NUM];
+                streamMeta.mSarDen = (int) longs[l + FLAT_STREAM_LONG_SAR_DEN];
+
+                if (videoStreamIndex == index) {
+                    meta.mVideoStream = streamMeta;
+                }
+            } else if (type.equalsIgnoreCase(IJKM_VAL_TYPE__AUDIO)) {
+                streamMeta.mSampleRate = (int) longs[l + FLAT_STREAM_LONG_SAMPLE_RATE];
+                streamMeta.mChannelLayout = longs[l + FLAT_STREAM_LONG_CHANNEL_LAYOUT];
+
+                if (audioStreamIndex == index) {
+                    meta.mAudioStream = streamMeta;
+                }
+            }
+            meta.mStreams.add(streamMeta);
+        }
+
+        return meta;
+    }
+
+    /**
+     * @return a copy of a flat meta, with streams of its own and the Bundle
+     *         still to be decoded, so that a cached meta is never handed out
+     */
+    /* package */ IjkMediaMeta copyFlat() {
+        IjkMediaMeta meta = new IjkMediaMeta();
+        meta.mBundleSource = mBundleSource;
+        meta.mFormat = mFormat;
+        meta.mDurationUS = mDurationUS;
+        meta.mStartUS = mStartUS;
+        meta.mBitrate = mBitrate;
+
+        meta.mStreams.ensureCapacity(mStreams.size());
+        for (IjkStreamMeta streamMeta : mStreams) {
+            IjkStreamMeta copy = streamMeta.copy(meta);
+            if (streamMeta == mVideoStream)
+                meta.mVideoStream = copy;
+            else if (streamMeta == mAudioStream)
+                meta.mAudioStream = copy;
+            meta.mStreams.add(copy);
+        }
+        return meta;
+    }
+
     public static class IjkStreamMeta {
+        /**
+         * @deprecated null for a meta parsed from the flat layout until a
+         * keyed getter has run, use {@link #getMetaBundle()} instead.
+         */
+        @Deprecated
         public Bundle mMeta;
+        private IjkMediaMeta mParent;
 
         public final int mIndex;
         public String mType;
@@ -293,8 +458,37 @@ public class IjkMediaMeta {
             mIndex = index;
         }
 
+        private IjkStreamMeta copy(IjkMediaMeta parent) {
+            IjkStreamMeta streamMeta = new IjkStreamMeta(mIndex);
+            streamMeta.mParent = parent;
+            streamMeta.mType = mType;
+            streamMeta.mLanguage = mLanguage;
+            streamMeta.mCodecName = mCodecName;
+            streamMeta.mCodecProfile = mCodecProfile;
+            streamMeta.mCodecLongName = mCodecLongName;
+            streamMeta.mBitrate = mBitrate;
+            streamMeta.mWidth = mWidth;
+            streamMeta.mHeight = mHeight;
+            streamMeta.mFpsNum = mFpsNum;
+            streamMeta.mFpsDen = mFpsDen;
+            streamMeta.mTbrNum = mTbrNum;
+            streamMeta.mTbrDen = mTbrDen;
+            streamMeta.mSarNum = mSarNum;
+            streamMeta.mSarDen = mSarDen;
+            streamMeta.mSampleRate = mSampleRate;
+            streamMeta.mChannelLayout = mChannelLayout;
+            return streamMeta;
+        }
+
+        public Bundle getMetaBundle() {
+            if (mMeta == null && mParent != null)
+                mParent.getMediaMetaBundle();
+            return mMeta;
+        }
+
         public String getString(String key) {
-            return mMeta.getString(key);
+            Bundle meta = getMetaBundle();
+            return meta != null ? meta.getString(key) : null;
         }
 
         public int getInt(String key) {
@@ -25,8 +25,6 @@ import android.content.Context;
 import android.content.res.AssetFileDescriptor;
 import android.graphics.SurfaceTexture;
 import android.graphics.Rect;
-import android.media.MediaCodecInfo;
-import android.media.MediaCodecList;
 import android.media.RingtoneManager;
 import android.net.Uri;
 import android.os.Build;
@@ -49,7 +47,6 @@ import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
-import java.util.Locale;
 import java.util.Map;
 
 import tv.danmaku.ijk.media.player.annotations.AccessedByNative;
@@ -79,6 +76,11 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
     private static final int MEDIA_INFO = 200;
 
     protected static final int MEDIA_SET_VIDEO_SAR = 10001;
+    private static final int MEDIA_DRAIN_EVENT_RING = 10002;
+    private static final int MEDIA_STARTUP_WATERFALL = 10003;
+
+    private static final int EVENT_RING_CAPACITY = 64;
+    private static final long EVENT_RING_DRAIN_DELAY_MS = 16;
 
     //----------------------------------------
     // options
@@ -108,7 +110,11 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
     public static final int PROP_FLOAT_VIDEO_DECODE_FRAMES_PER_SECOND       = 10001;
     public static final int PROP_FLOAT_VIDEO_OUTPUT_FRAMES_PER_SECOND       = 10002;
     public static final int FFP_PROP_FLOAT_PLAYBACK_RATE                    = 10003;
+    public static final int FFP_PROP_FLOAT_AVDELAY                          = 10004;
+    public static final int FFP_PROP_FLOAT_AVDIFF                           = 10005;
+    public static final int FFP_PROP_FLOAT_PLAYBACK_VOLUME                  = 10006;
     public static final int FFP_PROP_FLOAT_DROP_FRAME_RATE                  = 10007;
+    public static final int FFP_PROP_FLOAT_FRAMEDROP_TARGET_FPS             = 10008;
 
     public static final int FFP_PROP_INT64_SELECTED_VIDEO_STREAM            = 20001;
     public static final int FFP_PROP_INT64_SELECTED_AUDIO_STREAM            = 20002;
@@ -143,6 +149,38 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
     public static final int FFP_PROP_INT64_HW_DECODEC_ERROR_CODE            = 20212;
     public static final int FFP_PROP_INT64_ASYNC_ERROR_CODE                 = 20213;
     public static final int FFP_PROP_INT64_DEMUX_ERROR_CODE                 = 20214;
+    public static final int FFP_PROP_INT64_CACHE_STATISTIC_READ_BYTES       = 20215;
+    public static final int FFP_PROP_INT64_VIDEO_PACKET_QUEUE_WAIT_COUNT    = 20216;
+    public static final int FFP_PROP_INT64_VIDEO_PACKET_QUEUE_WAIT_TIME     = 20217;
+    public static final int FFP_PROP_INT64_VIDEO_PACKET_QUEUE_CONTENTION    = 20218;
+    public static final int FFP_PROP_INT64_AUDIO_PACKET_QUEUE_WAIT_COUNT    = 20219;
+    public static final int FFP_PROP_INT64_AUDIO_PACKET_QUEUE_WAIT_TIME     = 20220;
+    public static final int FFP_PROP_INT64_AUDIO_PACKET_QUEUE_CONTENTION    = 20221;
+    public static final int FFP_PROP_INT64_VIDEO_OVERLAY_ALLOC_COUNT        = 20222;
+    public static final int FFP_PROP_INT64_VIDEO_OVERLAY_POOL_HIT_COUNT     = 20223;
+    public static final int FFP_PROP_INT64_VIDEO_OVERLAY_POOL_SIZE          = 20224;
+    public static final int FFP_PROP_INT64_FRAMEDROP_MAX_LEVEL              = 20225;
+    public static final int FFP_PROP_INT64_FRAMEDROP_LEVEL                  = 20226;
+    public static final int     FFP_PROPV_FRAMEDROP_LEVEL_NONE              = 0;
+    public static final int     FFP_PROPV_FRAMEDROP_LEVEL_LOOP_FILTER_NONREF = 1;
+    public static final int     FFP_PROPV_FRAMEDROP_LEVEL_LOOP_FILTER_ALL   = 2;
+    public static final int     FFP_PROPV_FRAMEDROP_LEVEL_SKIP_NONREF       = 3;
+    public static final int     FFP_PROPV_FRAMEDROP_LEVEL_DROP_LATE         = 4;
+    public static final int FFP_PROP_INT64_LIVE_LATENCY                     = 20232;
+    public static final int FFP_PROP_INT64_LIVE_LATENCY_TARGET              = 20233;
+    public static final int FFP_PROP_INT64_LIVE_LATENCY_JUMP_COUNT          = 20234;
+    public static final int FFP_PROP_INT64_CACHE_STATISTIC_RANGE_BYTES      = 20235;
+    public static final int FFP_PROP_INT64_CACHE_STATISTIC_CONNECTIONS      = 20236;
+    public static final int FFP_PROP_INT64_DROP_FRAME_COUNT                 = 20237;
+    public static final int FFP_PROP_INT64_STREAM_INFO_CACHE                = 20238;
+    public static final int FFP_PROP_INT64_AUDIO_INIT_DURATION              = 20239;
+    public static final int FFP_PROP_INT64_VIDEO_INIT_DURATION              = 20240;
+
+    public static final int STREAM_INFO_CACHE_MISS = 0;
+    public static final int STREAM_INFO_CACHE_HIT = 1;
+    public static final int STREAM_INFO_CACHE_SHORTENED = 2;
+    public static final int STREAM_INFO_CACHE_MISMATCH = 3;
+    public static final int STREAM_INFO_CACHE_FALLBACK = 4;
 
     //----------------------------------------
 
@@ -173,6 +211,13 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
 
     private String mDataSource;
 
+    private IjkMediaMeta mParsedMediaMeta;
+    private int mParsedMediaMetaGeneration;
+    private int mParsedMediaMetaStreams = 4;
+
+    private volatile IjkEventRing mEventRing;
+    private boolean mEventRingDrainScheduled;
+
     /**
      * Default library loader
      * Load them by yourself, if your libraries are not installed at default place.
@@ -497,6 +542,17 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
         _setAndroidIOCallback(androidIO);
     }
 
+    /**
+     * Sets the smallest block the native layer asks an {@link IAndroidIO} for.
+     * Smaller reads are served from the block already fetched, so a larger value
+     * means fewer JNI upcalls. Must be called before {@link #prepareAsync()}.
+     *
+     * @param bytes minimum read size in bytes, 0 to read exactly what is asked for
+     */
+    public void setAndroidIOMinReadSize(int bytes) {
+        setOption(OPT_CATEGORY_FORMAT, "androidio-min-read-size", bytes);
+    }
+
     private native void _setDataSource(String path, String[] keys, String[] values)
             throws IOException, IllegalArgumentException, SecurityException, IllegalStateException;
 
@@ -516,6 +572,7 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
 
     @Override
     public void prepareAsync() throws IllegalStateException {
+        mStartupWaterfall = null;
         _prepareAsync();
     }
 
@@ -600,11 +657,7 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
 
     @Override
     public IjkTrackInfo[] getTrackInfo() {
-        Bundle bundle = getMediaMeta();
-        if (bundle == null)
-            return null;
-
-        IjkMediaMeta mediaMeta = IjkMediaMeta.parse(bundle);
+        IjkMediaMeta mediaMeta = getParsedMediaMeta();
         if (mediaMeta == null || mediaMeta.mStreams == null)
             return null;
 
@@ -705,6 +758,7 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
         stayAwake(false);
         updateSurfaceScreenOn();
         resetListeners();
+        abortEventRing();
         _release();
     }
 
@@ -713,16 +767,49 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
     @Override
     public void reset() {
         stayAwake(false);
+        abortEventRing();
         _reset();
         // make sure none of the listeners get called anymore
         mEventHandler.removeCallbacksAndMessages(null);
+        clearEventRing();
+        clearParsedMediaMeta();
 
         mVideoWidth = 0;
         mVideoHeight = 0;
+        mStartupWaterfall = null;
     }
 
     private native void _reset();
 
+    /**
+     * Same as {@link #reset()}, but keeps the native player with its video
+     * output, audio output and pipeline, so that the next prepare does not
+     * create them again. Display, data source, listeners and options are
+     * cleared as after a regular reset.
+     */
+    /* package */ void resetForReuse() {
+        stayAwake(false);
+        mSurfaceHolder = null;
+        updateSurfaceScreenOn();
+        abortEventRing();
+        _warmReset();
+        // make sure none of the listeners get called anymore
+        mEventHandler.removeCallbacksAndMessages(null);
+        clearEventRing();
+        mEventRing = null;
+        clearParsedMediaMeta();
+        resetListeners();
+
+        mVideoWidth = 0;
+        mVideoHeight = 0;
+        mVideoSarNum = 0;
+        mVideoSarDen = 0;
+        mDataSource = null;
+        mStartupWaterfall = null;
+    }
+
+    private native void _warmReset();
+
     /**
      * Sets the player to be looping or non-looping.
      *
@@ -817,6 +904,22 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
         }
         return 0;
     }
+
+    /**
+     * @return milliseconds the last open of the audio decoder and output took,
+     * in parallel with the video one with the "parallel-init-decoder" option
+     */
+    public long getAudioInitDuration() {
+        return _getPropertyLong(FFP_PROP_INT64_AUDIO_INIT_DURATION, 0);
+    }
+
+    /**
+     * @return milliseconds the last open of the video decoder took
+     */
+    public long getVideoInitDuration() {
+        return _getPropertyLong(FFP_PROP_INT64_VIDEO_INIT_DURATION, 0);
+    }
+
     public long getVideoCachedPackets() {
         return _getPropertyLong(FFP_PROP_INT64_VIDEO_CACHED_PACKETS, 0);
     }
@@ -833,6 +936,11 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
         return _getPropertyLong(FFP_PROP_INT64_ASYNC_STATISTIC_BUF_FORWARDS, 0);
     }
 
+    /**
+     * @return bytes of the "async:" buffer, backwards capacity included.
+     * With the "async-forwards-duration" format option, the forwards capacity
+     * follows the bitrate of the stream, up to "async-max-forwards-capacity".
+     */
     public long getAsyncStatisticBufCapacity() {
         return _getPropertyLong(FFP_PROP_INT64_ASYNC_STATISTIC_BUF_CAPACITY, 0);
     }
@@ -857,10 +965,98 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
         return _getPropertyLong(FFP_PROP_INT64_CACHE_STATISTIC_COUNT_BYTES, 0);
     }
 
+    public long getCacheStatisticReadBytes() {
+        return _getPropertyLong(FFP_PROP_INT64_CACHE_STATISTIC_READ_BYTES, 0);
+    }
+
+    /**
+     * @return bytes downloaded by the parallel range connections of the cache,
+     * which are enabled by the "cache_parallel_connections" format option
+     */
+    public long getCacheStatisticRangeBytes() {
+        return _getPropertyLong(FFP_PROP_INT64_CACHE_STATISTIC_RANGE_BYTES, 0);
+    }
+
+    /**
+     * @return connections the cache is downloading over, the sequential one included
+     */
+    public long getCacheStatisticConnections() {
+        return _getPropertyLong(FFP_PROP_INT64_CACHE_STATISTIC_CONNECTIONS, 0);
+    }
+
+    private native long[] _getCacheConnectionSpeeds();
+
+    /**
+     * Throughput of each connection of the cache while it is receiving.
+     * Setting the "cache_parallel_connections" format option to up to 4 lets
+     * the cache download ranges of "cache_parallel_chunk_size" bytes ahead
+     * over extra connections, within "cache_file_forwards_capacity" of the
+     * read position.
+     *
+     * @return bytes per second, the sequential connection first, then the range connections
+     */
+    public long[] getCacheConnectionSpeeds() {
+        return _getCacheConnectionSpeeds();
+    }
+
     public long getFileSize() {
         return _getPropertyLong(FFP_PROP_INT64_LOGICAL_FILE_SIZE, 0);
     }
 
+    /**
+     * @return times the video decoder waited on an empty packet queue
+     */
+    public long getVideoPacketQueueWaitCount() {
+        return _getPropertyLong(FFP_PROP_INT64_VIDEO_PACKET_QUEUE_WAIT_COUNT, 0);
+    }
+
+    /**
+     * @return total time the video decoder waited on an empty packet queue, in microseconds
+     */
+    public long getVideoPacketQueueWaitTimeUs() {
+        return _getPropertyLong(FFP_PROP_INT64_VIDEO_PACKET_QUEUE_WAIT_TIME, 0);
+    }
+
+    /**
+     * @return times the lock of the video packet queue was already held
+     */
+    public long getVideoPacketQueueContention() {
+        return _getPropertyLong(FFP_PROP_INT64_VIDEO_PACKET_QUEUE_CONTENTION, 0);
+    }
+
+    public long getAudioPacketQueueWaitCount() {
+        return _getPropertyLong(FFP_PROP_INT64_AUDIO_PACKET_QUEUE_WAIT_COUNT, 0);
+    }
+
+    public long getAudioPacketQueueWaitTimeUs() {
+        return _getPropertyLong(FFP_PROP_INT64_AUDIO_PACKET_QUEUE_WAIT_TIME, 0);
+    }
+
+    public long getAudioPacketQueueContention() {
+        return _getPropertyLong(FFP_PROP_INT64_AUDIO_PACKET_QUEUE_CONTENTION, 0);
+    }
+
+    /**
+     * @return video overlays created since the player was created or reset
+     */
+    public long getVideoOverlayAllocCount() {
+        return _getPropertyLong(FFP_PROP_INT64_VIDEO_OVERLAY_ALLOC_COUNT, 0);
+    }
+
+    /**
+     * @return video overlays reused from the pool since the player was created or reset
+     */
+    public long getVideoOverlayPoolHitCount() {
+        return _getPropertyLong(FFP_PROP_INT64_VIDEO_OVERLAY_POOL_HIT_COUNT, 0);
+    }
+
+    /**
+     * @return video overlays currently kept in the pool
+     */
+    public long getVideoOverlayPoolSize() {
+        return _getPropertyLong(FFP_PROP_INT64_VIDEO_OVERLAY_POOL_SIZE, 0);
+    }
+
     public long getBitRate() {
         return _getPropertyLong(FFP_PROP_INT64_BIT_RATE, 0);
     }
@@ -877,11 +1073,117 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
     private native void  _setPropertyFloat(int property, float value);
     private native long  _getPropertyLong(int property, long defaultValue);
     private native void  _setPropertyLong(int property, long value);
+    private native void  _getPropertySnapshot(int[] longProperties, long[] longValues,
+                                              int[] floatProperties, float[] floatValues);
+
+    /**
+     * Reads all statistic properties with a single native call.
+     *
+     * @param reuse snapshot to fill, or null to allocate a new one
+     * @return the filled snapshot
+     */
+    public IjkPlayerStats getStatsSnapshot(IjkPlayerStats reuse) {
+        IjkPlayerStats stats = reuse != null ? reuse : new IjkPlayerStats();
+        stats.resetToDefaults();
+        _getPropertySnapshot(IjkPlayerStats.INT64_PROPERTIES, stats.mInt64Values,
+                IjkPlayerStats.FLOAT_PROPERTIES, stats.mFloatValues);
+        return stats;
+    }
 
     public float getDropFrameRate() {
         return _getPropertyFloat(FFP_PROP_FLOAT_DROP_FRAME_RATE, .0f);
     }
 
+    /**
+     * @return video frames dropped since the data source was set
+     */
+    public long getDropFrameCount() {
+        return _getPropertyLong(FFP_PROP_INT64_DROP_FRAME_COUNT, 0);
+    }
+
+    /**
+     * How the "stream-info-cache" player option served the last prepare:
+     * {@link #STREAM_INFO_CACHE_HIT} skipped avformat_find_stream_info,
+     * {@link #STREAM_INFO_CACHE_SHORTENED} probed with a shorter setup, for
+     * instance because the start times were neither in the header nor cached
+     * for a file of the same size, as for live streams,
+     * {@link #STREAM_INFO_CACHE_MISMATCH} found the content changed and
+     * {@link #STREAM_INFO_CACHE_FALLBACK} probed again after a decoder
+     * failed to open with the cached parameters.
+     */
+    public int getStreamInfoCacheResult() {
+        return (int) _getPropertyLong(FFP_PROP_INT64_STREAM_INFO_CACHE, STREAM_INFO_CACHE_MISS);
+    }
+
+    /**
+     * Lets the adaptive frame drop degrade the software decoding down to
+     * {@code maxLevel} when the device cannot keep up, the quality floor.
+     * It skips the loop filter, then non-reference frames, then drops late
+     * frames, and goes back up once the decoder keeps up again.
+     * Also available as the "framedrop-max-level" player option.
+     *
+     * @param maxLevel one of the FFP_PROPV_FRAMEDROP_LEVEL_* values,
+     *                 {@link #FFP_PROPV_FRAMEDROP_LEVEL_NONE} to disable it
+     */
+    public void setFrameDropMaxLevel(int maxLevel) {
+        _setPropertyLong(FFP_PROP_INT64_FRAMEDROP_MAX_LEVEL, maxLevel);
+    }
+
+    public int getFrameDropMaxLevel() {
+        return (int) _getPropertyLong(FFP_PROP_INT64_FRAMEDROP_MAX_LEVEL, FFP_PROPV_FRAMEDROP_LEVEL_NONE);
+    }
+
+    /**
+     * Output frame rate below which the adaptive frame drop degrades the
+     * decoding, in addition to late frames. 0, the default, ignores the frame rate.
+     * Also available as the "framedrop-target-fps" player option.
+     */
+    public void setFrameDropTargetFps(float fps) {
+        _setPropertyFloat(FFP_PROP_FLOAT_FRAMEDROP_TARGET_FPS, fps);
+    }
+
+    public float getFrameDropTargetFps() {
+        return _getPropertyFloat(FFP_PROP_FLOAT_FRAMEDROP_TARGET_FPS, .0f);
+    }
+
+    /**
+     * @return current level of the adaptive frame drop, one of the FFP_PROPV_FRAMEDROP_LEVEL_* values
+     */
+    public int getFrameDropLevel() {
+        return (int) _getPropertyLong(FFP_PROP_INT64_FRAMEDROP_LEVEL, FFP_PROPV_FRAMEDROP_LEVEL_NONE);
+    }
+
+    /**
+     * Keeps the latency of a live stream, the duration queued behind the live
+     * edge, around {@code latencyMs}: playback runs up to 10% faster or 5%
+     * slower, and skips to a key frame when it is more than 5 s late.
+     * Tuned by the "live-latency-*" player options, and also available as the
+     * "live-latency-target-ms" option.
+     * <p>
+     * Set it before {@link #prepareAsync()}, the rate changes need soundtouch
+     * to keep the pitch, which is then enabled; otherwise only the skips apply.
+     *
+     * @param latencyMs 0 to disable it, the default
+     */
+    public void setLiveLatencyTarget(long latencyMs) {
+        _setPropertyLong(FFP_PROP_INT64_LIVE_LATENCY_TARGET, latencyMs);
+    }
+
+    public long getLiveLatencyTarget() {
+        return _getPropertyLong(FFP_PROP_INT64_LIVE_LATENCY_TARGET, 0);
+    }
+
+    /**
+     * @return duration queued behind the live edge in milliseconds, 0 if the stream is not live
+     */
+    public long getLiveLatency() {
+        return _getPropertyLong(FFP_PROP_INT64_LIVE_LATENCY, 0);
+    }
+
+    public long getLiveLatencyJumpCount() {
+        return _getPropertyLong(FFP_PROP_INT64_LIVE_LATENCY_JUMP_COUNT, 0);
+    }
+
     @Override
     public native void setVolume(float leftVolume, float rightVolume);
 
@@ -893,32 +1195,11 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
         MediaInfo mediaInfo = new MediaInfo();
         mediaInfo.mMediaPlayerName = "ijkplayer";
 
-        String videoCodecInfo = _getVideoCodecInfo();
-        if (!TextUtils.isEmpty(videoCodecInfo)) {
-            String nodes[] = videoCodecInfo.split(",");
-            if (nodes.length >= 2) {
-                mediaInfo.mVideoDecoder = nodes[0];
-                mediaInfo.mVideoDecoderImpl = nodes[1];
-            } else if (nodes.length >= 1) {
-                mediaInfo.mVideoDecoder = nodes[0];
-                mediaInfo.mVideoDecoderImpl = "";
-            }
-        }
-
-        String audioCodecInfo = _getAudioCodecInfo();
-        if (!TextUtils.isEmpty(audioCodecInfo)) {
-            String nodes[] = audioCodecInfo.split(",");
-            if (nodes.length >= 2) {
-                mediaInfo.mAudioDecoder = nodes[0];
-                mediaInfo.mAudioDecoderImpl = nodes[1];
-            } else if (nodes.length >= 1) {
-                mediaInfo.mAudioDecoder = nodes[0];
-                mediaInfo.mAudioDecoderImpl = "";
-            }
-        }
+        mediaInfo.setVideoCodecInfo(_getVideoCodecInfo());
+        mediaInfo.setAudioCodecInfo(_getAudioCodecInfo());
 
         try {
-            mediaInfo.mMeta = IjkMediaMeta.parse(_getMediaMeta());
+            mediaInfo.mMeta = getParsedMediaMeta();
         } catch (Throwable e) {
             e.printStackTrace();
         }
@@ -956,6 +1237,77 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
     }
     private native Bundle _getMediaMeta();
 
+    /**
+     * Reads the media meta as typed arrays, and keeps the result until the
+     * native meta changes, so that polling getMediaInfo() or getTrackInfo()
+     * neither builds a Bundle per stream nor parses numbers from strings.
+     * Callers get a copy of the kept meta, whose Bundle is only built by
+     * native code if a keyed getter needs it.
+     */
+    private synchronized IjkMediaMeta getParsedMediaMeta() {
+        int generation = _getMediaMetaGeneration();
+        if (mParsedMediaMeta != null && mParsedMediaMetaGeneration == generation)
+            return mParsedMediaMeta.copyFlat();
+
+        int streams = mParsedMediaMetaStreams;
+        for (;;) {
+            long[] longs = new long[IjkMediaMeta.FLAT_LONG_HEADER + streams * IjkMediaMeta.FLAT_STREAM_LONGS];
+            String[] strings = new String[IjkMediaMeta.FLAT_STRING_HEADER + streams * IjkMediaMeta.FLAT_STREAM_STRINGS];
+            int ret = _getMediaMetaFlat(longs, strings);
+            if (ret < 0) {
+                // streams were appended meanwhile, retry with the reported count
+                streams = -ret - 1;
+                continue;
+            }
+
+            mParsedMediaMeta = IjkMediaMeta.parseFlat(longs, strings, new MediaMetaBundleSource(this, ret));
+            mParsedMediaMetaGeneration = ret;
+            mParsedMediaMetaStreams = (int) longs[IjkMediaMeta.FLAT_LONG_STREAM_COUNT];
+            return mParsedMediaMeta.copyFlat();
+        }
+    }
+
+    private synchronized void clearParsedMediaMeta() {
+        mParsedMediaMeta = null;
+        mParsedMediaMetaGeneration = 0;
+    }
+
+    private native int _getMediaMetaGeneration();
+    private native int _getMediaMetaFlat(long[] longs, String[] strings);
+
+    /**
+     * Fetches the Bundle of the native meta the flat arrays were read from,
+     * nothing once the native meta has moved to another generation, after a
+     * reset or a new data source.
+     */
+    private static class MediaMetaBundleSource implements IjkMediaMeta.BundleSource {
+        private final WeakReference<IjkMediaPlayer> mWeakPlayer;
+        private final int mGeneration;
+
+        public MediaMetaBundleSource(IjkMediaPlayer player, int generation) {
+            mWeakPlayer = new WeakReference<IjkMediaPlayer>(player);
+            mGeneration = generation;
+        }
+
+        @Override
+        public Bundle getMediaMetaBundle() {
+            IjkMediaPlayer player = mWeakPlayer.get();
+            if (player == null)
+                return null;
+
+            try {
+                // the generation only grows, so an unchanged one after the read covers the read
+                Bundle mediaMeta = player._getMediaMeta();
+                if (player._getMediaMetaGeneration() != mGeneration)
+                    return null;
+                return mediaMeta;
+            } catch (IllegalStateException e) {
+                // released meanwhile
+                return null;
+            }
+        }
+    }
+
     public static String getColorFormatName(int mediaCodecColorFormat) {
         return _getColorFormatName(mediaCodecColorFormat);
     }
@@ -993,7 +1345,116 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
         _setPropertyLong(FFP_PROP_INT64_SHARE_CACHE_DATA, (long)share);
     }
 
-    private static class EventHandler extends Handler {
+    /**
+     * Batched event mode: native events are queued into a preallocated ring
+     * and delivered to listeners in one Looper pass per frame, instead of one
+     * Message per event. Pending buffering updates are coalesced, so only the
+     * latest percentage is reported.
+     * Should be called before {@link #prepareAsync()}.
+     */
+    public void setEventBatchingEnabled(boolean enabled) {
+        if (enabled) {
+            if (mEventRing == null)
+                mEventRing = new IjkEventRing(EVENT_RING_CAPACITY);
+            return;
+        }
+
+        // flush pending events in order before falling back to one Message per event
+        IjkEventRing ring = mEventRing;
+        mEventRing = null;
+        if (ring != null && mEventHandler != null)
+            mEventHandler.sendMessage(mEventHandler.obtainMessage(MEDIA_DRAIN_EVENT_RING, ring));
+    }
+
+    public boolean isEventBatchingEnabled() {
+        return mEventRing != null;
+    }
+
+    /**
+     * @return number of buffering updates dropped because the event ring was full
+     */
+    public long getEventBatchDroppedCount() {
+        IjkEventRing ring = mEventRing;
+        return ring != null ? ring.getDroppedCount() : 0;
+    }
+
+    /**
+     * @return number of events merged into an already pending event of the same kind
+     */
+    public long getEventBatchCoalescedCount() {
+        IjkEventRing ring = mEventRing;
+        return ring != null ? ring.getCoalescedCount() : 0;
+    }
+
+    // the native message thread may be waiting for room, let it go before joining it
+    private void abortEventRing() {
+        IjkEventRing ring = mEventRing;
+        if (ring != null)
+            ring.abort();
+    }
+
+    private void clearEventRing() {
+        IjkEventRing ring = mEventRing;
+        if (ring != null)
+            ring.clear();
+        synchronized (this) {
+            mEventRingDrainScheduled = false;
+        }
+    }
+
+    private void postEventToRing(IjkEventRing ring, int what, int arg1, int arg2, Object obj) {
+        boolean coalesce = (what == MEDIA_BUFFERING_UPDATE);
+        // state changes are not held back until the next frame
+        boolean urgent = (what == MEDIA_PREPARED || what == MEDIA_PLAYBACK_COMPLETE || what == MEDIA_ERROR);
+
+        int result = ring.offer(what, arg1, arg2, obj, coalesce);
+        if (result == IjkEventRing.OFFER_FULL) {
+            if (coalesce) {
+                ring.countDropped();
+                return;
+            }
+            // wait for the Looper to make room, an event posted around the
+            // ring would overtake the older ones still queued in it
+            do {
+                if (!ring.awaitSpace())
+                    return;
+                result = ring.offer(what, arg1, arg2, obj, false);
+            } while (result == IjkEventRing.OFFER_FULL);
+        }
+
+        if (result == IjkEventRing.OFFER_QUEUED || urgent)
+            scheduleEventRingDrain(ring, urgent || ring != mEventRing);
+    }
+
+    private void scheduleEventRingDrain(IjkEventRing ring, boolean now) {
+        synchronized (this) {
+            if (mEventRingDrainScheduled && !now)
+                return;
+            mEventRingDrainScheduled = true;
+        }
+        Message m = mEventHandler.obtainMessage(MEDIA_DRAIN_EVENT_RING, ring);
+        if (now)
+            mEventHandler.sendMessage(m);
+        else
+            mEventHandler.sendMessageDelayed(m, EVENT_RING_DRAIN_DELAY_MS);
+    }
+
+    private void drainEventRing(IjkEventRing ring, IjkEventRing.Consumer consumer) {
+        synchronized (this) {
+            mEventRingDrainScheduled = false;
+        }
+
+        // events posted while draining are left for the next frame
+        int pending = ring.size();
+        while (pending-- > 0 && ring.poll(consumer)) {
+            // dispatched by consumer
+        }
+
+        if (ring.size() > 0)
+            scheduleEventRingDrain(ring, false);
+    }
+
+    private static class EventHandler extends Handler implements IjkEventRing.Consumer {
         private final WeakReference<IjkMediaPlayer> mWeakPlayer;
 
         public EventHandler(IjkMediaPlayer mp, Looper looper) {
@@ -1003,6 +1464,18 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
 
         @Override
         public void handleMessage(Message msg) {
+            if (msg.what == MEDIA_DRAIN_EVENT_RING) {
+                IjkMediaPlayer player = mWeakPlayer.get();
+                if (player != null)
+                    player.drainEventRing((IjkEventRing) msg.obj, this);
+                return;
+            }
+
+            onEvent(msg.what, msg.arg1, msg.arg2, msg.obj);
+        }
+
+        @Override
+        public void onEvent(int what, int arg1, int arg2, Object obj) {
             IjkMediaPlayer player = mWeakPlayer.get();
             if (player == null || player.mNativeMediaPlayer == 0) {
                 DebugLog.w(TAG,
@@ -1010,7 +1483,7 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
                 return;
             }
 
-            switch (msg.what) {
+            switch (what) {
             case MEDIA_PREPARED:
                 player.notifyOnPrepared();
                 return;
@@ -1021,7 +1494,7 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
                 return;
 
             case MEDIA_BUFFERING_UPDATE:
-                long bufferPosition = msg.arg1;
+                long bufferPosition = arg1;
                 if (bufferPosition < 0) {
                     bufferPosition = 0;
                 }
@@ -1044,34 +1517,34 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
                 return;
 
             case MEDIA_SET_VIDEO_SIZE:
-                player.mVideoWidth = msg.arg1;
-                player.mVideoHeight = msg.arg2;
+                player.mVideoWidth = arg1;
+                player.mVideoHeight = arg2;
                 player.notifyOnVideoSizeChanged(player.mVideoWidth, player.mVideoHeight,
                         player.mVideoSarNum, player.mVideoSarDen);
                 return;
 
             case MEDIA_ERROR:
-                DebugLog.e(TAG, "Error (" + msg.arg1 + "," + msg.arg2 + ")");
-                if (!player.notifyOnError(msg.arg1, msg.arg2)) {
+                DebugLog.e(TAG, "Error (" + arg1 + "," + arg2 + ")");
+                if (!player.notifyOnError(arg1, arg2)) {
                     player.notifyOnCompletion();
                 }
                 player.stayAwake(false);
                 return;
 
             case MEDIA_INFO:
-                switch (msg.arg1) {
+                switch (arg1) {
                     case MEDIA_INFO_VIDEO_RENDERING_START:
                         DebugLog.i(TAG, "Info: MEDIA_INFO_VIDEO_RENDERING_START\n");
                         break;
                 }
-                player.notifyOnInfo(msg.arg1, msg.arg2);
+                player.notifyOnInfo(arg1, arg2);
                 // No real default action so far.
                 return;
             case MEDIA_TIMED_TEXT:
-                if (msg.obj == null) {
+                if (obj == null) {
                     player.notifyOnTimedText(null);
                 } else {
-                    IjkTimedText text = new IjkTimedText(new Rect(0, 0, 1, 1), (String)msg.obj);
+                    IjkTimedText text = new IjkTimedText(new Rect(0, 0, 1, 1), (String)obj);
                     player.notifyOnTimedText(text);
                 }
                 return;
@@ -1079,14 +1552,21 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
                 break;
 
             case MEDIA_SET_VIDEO_SAR:
-                player.mVideoSarNum = msg.arg1;
-                player.mVideoSarDen = msg.arg2;
+                player.mVideoSarNum = arg1;
+                player.mVideoSarDen = arg2;
                 player.notifyOnVideoSizeChanged(player.mVideoWidth, player.mVideoHeight,
                         player.mVideoSarNum, player.mVideoSarDen);
                 break;
 
+            case MEDIA_STARTUP_WATERFALL:
+                player.mStartupWaterfall = new IjkStartupWaterfall((long[]) obj);
+                DebugLog.i(TAG, player.mStartupWaterfall.toString());
+                if (player.mOnStartupWaterfallListener != null)
+                    player.mOnStartupWaterfallListener.onStartupWaterfall(player, player.mStartupWaterfall);
+                break;
+
             default:
-                DebugLog.e(TAG, "Unknown message type " + msg.what);
+                DebugLog.e(TAG, "Unknown message type " + what);
             }
         }
     }
@@ -1116,11 +1596,41 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
             mp.start();
         }
         if (mp.mEventHandler != null) {
+            IjkEventRing ring = mp.mEventRing;
+            if (ring != null) {
+                mp.postEventToRing(ring, what, arg1, arg2, obj);
+                return;
+            }
+
             Message m = mp.mEventHandler.obtainMessage(what, arg1, arg2, obj);
             mp.mEventHandler.sendMessage(m);
         }
     }
 
+    /*
+     * StartupWaterfall
+     */
+
+    private IjkStartupWaterfall mStartupWaterfall;
+    private OnStartupWaterfallListener mOnStartupWaterfallListener;
+    public void setOnStartupWaterfallListener(OnStartupWaterfallListener listener) {
+        mOnStartupWaterfallListener = listener;
+    }
+
+    public interface OnStartupWaterfallListener {
+        /**
+         * Called once per prepare, when the first frame of every opened stream is rendered.
+         */
+        void onStartupWaterfall(IMediaPlayer mp, IjkStartupWaterfall waterfall);
+    }
+
+    /**
+     * @return stages of the last startup, or null until its first frames are rendered
+     */
+    public IjkStartupWaterfall getStartupWaterfall() {
+        return mStartupWaterfall;
+    }
+
     /*
      * ControlMessage
      */
@@ -1151,6 +1661,7 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
         int CTRL_WILL_HTTP_OPEN = 0x20003;              // ARG_URL, ARG_SEGMENT_INDEX, ARG_RETRY_COUNTER
         int CTRL_WILL_LIVE_OPEN = 0x20005;              // ARG_URL, ARG_RETRY_COUNTER
         int CTRL_WILL_CONCAT_RESOLVE_SEGMENT = 0x20007; // ARG_URL, ARG_SEGMENT_INDEX, ARG_RETRY_COUNTER
+        int CTRL_WILL_DNS_RESOLVE = 0x20101;            // ARG_HOST, answered with ARG_IP and optional ARG_TTL_MS, see IjkDns
 
         int EVENT_WILL_HTTP_OPEN = 0x1;                 // ARG_URL
         int EVENT_DID_HTTP_OPEN = 0x2;                  // ARG_URL, ARG_ERROR, ARG_HTTP_CODE
@@ -1167,6 +1678,9 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
         String ARG_PORT = "port";
         String ARG_FD = "fd";
 
+        String ARG_HOST = "host";
+        String ARG_TTL_MS = "ttl_ms";
+
         String ARG_OFFSET = "offset";
         String ARG_HTTP_CODE = "http_code";
         String ARG_FILE_SIZE = "file_size";
@@ -1231,6 +1745,9 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
     public void resetListeners() {
         super.resetListeners();
         mOnMediaCodecSelectListener = null;
+        mOnStartupWaterfallListener = null;
+        mOnNativeInvokeListener = null;
+        mOnControlMessageListener = null;
     }
 
     @CalledByNative
@@ -1254,8 +1771,10 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
     public static class DefaultMediaCodecSelector implements OnMediaCodecSelectListener {
         public static final DefaultMediaCodecSelector sInstance = new DefaultMediaCodecSelector();
 
-        @SuppressWarnings("deprecation")
-        @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+        /**
+         * Looks the codec up in {@link IjkMediaCodecIndex}, instead of walking
+         * {@code MediaCodecList} on every prepare.
+         */
         public String onMediaCodecSelect(IMediaPlayer mp, String mimeType, int profile, int level) {
             if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN)
                 return null;
@@ -1263,56 +1782,7 @@ public final class IjkMediaPlayer extends AbstractMediaPlayer {
             if (TextUtils.isEmpty(mimeType))
                 return null;
 
-            Log.i(TAG, String.format(Locale.US, "onSelectCodec: mime=%s, profile=%d, level=%d", mimeType, profile, level));
-            ArrayList<IjkMediaCodecInfo> candidateCodecList = new ArrayList<IjkMediaCodecInfo>();
-            int numCodecs = MediaCodecList.getCodecCount();
-            for (int i = 0; i < numCodecs; i++) {
-                MediaCodecInfo codecInfo = MediaCodecList.getCodecInfoAt(i);
-                Log.d(TAG, String.format(Locale.US, "  found codec: %s", codecInfo.getName()));
-                if (codecInfo.isEncoder())
-                    continue;
-
-                String[] types = codecInfo.getSupportedTypes();
-                if (types == null)
-                    continue;
-
-                for(String type: types) {
-                    if (TextUtils.isEmpty(type))
-                        continue;
-
-                    Log.d(TAG, String.format(Locale.US, "    mime: %s", type));
-                    if (!type.equalsIgnoreCase(mimeType))
-                        continue;
-
-                    IjkMediaCodecInfo candidate = IjkMediaCodecInfo.setupCandidate(codecInfo, mimeType);
-                    if (candidate == null)
-                        continue;
-
-                    candidateCodecList.add(candidate);
-                    Log.i(TAG, String.format(Locale.US, "candidate codec: %s rank=%d", codecInfo.getName(), candidate.mRank));
-                    candidate.dumpProfileLevels(mimeType);
-                }
-            }
-
-            if (candidateCodecList.isEmpty()) {
-                return null;
-            }
-
-            IjkMediaCodecInfo bestCodec = candidateCodecList.get(0);
-
-            for (IjkMediaCodecInfo codec : candidateCodecList) {
-                if (codec.mRank > bestCodec.mRank) {
-                    bestCodec = codec;
-                }
-            }
-
-            if (bestCodec.mRank < IjkMediaCodecInfo.RANK_LAST_CHANCE) {
-                Log.w(TAG, String.format(Locale.US, "unaccetable codec: %s", bestCodec.mCodecInfo.getName()));
-                return null;
-            }
-
-            Log.i(TAG, String.format(Locale.US, "selected codec: %s rank=%d", bestCodec.mCodecInfo.getName(), bestCodec.mRank));
-            return bestCodec.mCodecInfo.getName();
+            return IjkMediaCodecIndex.getInstance().select(mimeType, profile, level);
         }
     }
 
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2017 Bilibili
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.danmaku.ijk.media.player;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Keeps released players warm for reuse, instead of tearing down and
+ * creating the native player, its video output, audio output and pipeline
+ * for every item of a feed.
+ * <p>
+ * Players are handed out by {@link #acquire()} and given back with
+ * {@link #recycle(IjkMediaPlayer)}, which resets them. A player idle for longer
+ * than the idle timeout, or recycled while the pool is full, is released.
+ * <p>
+ * Events of a player are delivered on the Looper of the thread which created
+ * it, so {@link #acquire()} should always be called from the same thread,
+ * usually the main thread.
+ */
+public final class IjkMediaPlayerPool {
+    public static final int DEFAULT_MAX_SIZE = 2;
+    public static final long DEFAULT_IDLE_TIMEOUT_MS = 60 * 1000;
+
+    private final int mMaxSize;
+    private final long mIdleTimeoutMs;
+    private final IjkLibLoader mLibLoader;
+    private final Handler mHandler;
+
+    private final ArrayDeque<IdlePlayer> mIdlePlayers = new ArrayDeque<IdlePlayer>();
+    private boolean mClosed;
+
+    private long mCreatedCount;
+    private long mCreationTimeNs;
+    private long mReusedCount;
+    private long mSavedTimeNs;
+    private long mResetCount;
+    private long mResetTimeNs;
+    private long mEvictedCount;
+
+    public IjkMediaPlayerPool() {
+        this(null, DEFAULT_MAX_SIZE, DEFAULT_IDLE_TIMEOUT_MS);
+    }
+
+    /**
+     * @param libLoader     passed to {@link IjkMediaPlayer#IjkMediaPlayer(IjkLibLoader)}, may be null
+     * @param maxSize       number of idle players kept
+     * @param idleTimeoutMs idle players are released after this long
+     */
+    public IjkMediaPlayerPool(IjkLibLoader libLoader, int maxSize, long idleTimeoutMs) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("invalid max size " + maxSize);
+        if (idleTimeoutMs <= 0)
+            throw new IllegalArgumentException("invalid idle timeout " + idleTimeoutMs);
+
+        mLibLoader = libLoader;
+        mMaxSize = maxSize;
+        mIdleTimeoutMs = idleTimeoutMs;
+
+        Looper looper = Looper.myLooper();
+        mHandler = new Handler(looper != null ? looper : Looper.getMainLooper());
+    }
+
+    /**
+     * @return an idle player if there is one, a new player otherwise
+     */
+    public IjkMediaPlayer acquire() {
+        synchronized (this) {
+            if (mClosed)
+                throw new IllegalStateException("pool is closed");
+
+            IdlePlayer idle = mIdlePlayers.pollLast();
+            if (idle != null) {
+                mReusedCount++;
+                if (mCreatedCount > 0)
+                    mSavedTimeNs += mCreationTimeNs / mCreatedCount;
+                return idle.mPlayer;
+            }
+        }
+
+        long startNs = System.nanoTime();
+        IjkMediaPlayer player = mLibLoader != null ? new IjkMediaPlayer(mLibLoader) : new IjkMediaPlayer();
+        long costNs = System.nanoTime() - startNs;
+
+        synchronized (this) {
+            mCreatedCount++;
+            mCreationTimeNs += costNs;
+        }
+        return player;
+    }
+
+    /**
+     * Resets {@code player} and keeps it for a later {@link #acquire()}.
+     * The caller must not use the player anymore.
+     */
+    public void recycle(IjkMediaPlayer player) {
+        if (player == null)
+            return;
+
+        boolean release;
+        synchronized (this) {
+            if (contains(player))
+                return;
+            release = mClosed || mIdlePlayers.size() >= mMaxSize;
+            if (release)
+                mEvictedCount++;
+        }
+        if (release) {
+            player.release();
+            return;
+        }
+
+        long startNs = System.nanoTime();
+        player.resetForReuse();
+        long costNs = System.nanoTime() - startNs;
+
+        boolean keep;
+        synchronized (this) {
+            mResetCount++;
+            mResetTimeNs += costNs;
+            keep = !mClosed && mIdlePlayers.size() < mMaxSize;
+            if (keep) {
+                mIdlePlayers.addLast(new IdlePlayer(player, SystemClock.elapsedRealtime()));
+                scheduleEviction();
+            } else {
+                mEvictedCount++;
+            }
+        }
+        if (!keep)
+            player.release();
+    }
+
+    /**
+     * Releases every idle player. The pool can still be used afterwards.
+     */
+    public void clear() {
+        List<IjkMediaPlayer> players = new ArrayList<IjkMediaPlayer>();
+        synchronized (this) {
+            for (IdlePlayer idle : mIdlePlayers)
+                players.add(idle.mPlayer);
+            mEvictedCount += mIdlePlayers.size();
+            mIdlePlayers.clear();
+            mHandler.removeCallbacks(mEvictRunnable);
+        }
+        for (IjkMediaPlayer player : players)
+            player.release();
+    }
+
+    /**
+     * Releases every idle player. Players recycled afterwards are released immediately.
+     */
+    public void close() {
+        synchronized (this) {
+            mClosed = true;
+        }
+        clear();
+    }
+
+    public synchronized int getIdleCount() {
+        return mIdlePlayers.size();
+    }
+
+    public int getMaxSize() {
+        return mMaxSize;
+    }
+
+    public long getIdleTimeoutMs() {
+        return mIdleTimeoutMs;
+    }
+
+    /**
+     * @return players created because no idle player was available
+     */
+    public synchronized long getCreatedCount() {
+        return mCreatedCount;
+    }
+
+    /**
+     * @return players handed out from the pool
+     */
+    public synchronized long getReusedCount() {
+        return mReusedCount;
+    }
+
+    /**
+     * @return idle players released by timeout, {@link #clear()} or a full pool
+     */
+    public synchronized long getEvictedCount() {
+        return mEvictedCount;
+    }
+
+    public synchronized long getAverageCreationTimeUs() {
+        return mCreatedCount > 0 ? mCreationTimeNs / mCreatedCount / 1000 : 0;
+    }
+
+    public synchronized long getAverageResetTimeUs() {
+        return mResetCount > 0 ? mResetTimeNs / mResetCount / 1000 : 0;
+    }
+
+    /**
+     * @return player creation time avoided by reuse, based on the average creation time
+     */
+    public synchronized long getSavedCreationTimeMs() {
+        return mSavedTimeNs / 1000000;
+    }
+
+    private boolean contains(IjkMediaPlayer player) {
+        for (IdlePlayer idle : mIdlePlayers) {
+            if (idle.mPlayer == player)
+                return true;
+        }
+        return false;
+    }
+
+    private void scheduleEviction() {
+        mHandler.removeCallbacks(mEvictRunnable);
+        IdlePlayer oldest = mIdlePlayers.peekFirst();
+        if (oldest == null)
+            return;
+
+        long delay = oldest.mIdleSince + mIdleTimeoutMs - SystemClock.elapsedRealtime();
+        mHandler.postDelayed(mEvictRunnable, Math.max(0, delay));
+    }
+
+    private void evictExpired() {
+        List<IjkMediaPlayer> expired = new ArrayList<IjkMediaPlayer>();
+        synchronized (this) {
+            long now = SystemClock.elapsedRealtime();
+            Iterator<IdlePlayer> it = mIdlePlayers.iterator();
+            while (it.hasNext()) {
+                IdlePlayer idle = it.next();
+                if (now - idle.mIdleSince < mIdleTimeoutMs)
+                    break;
+                expired.add(idle.mPlayer);
+                it.remove();
+            }
+            mEvictedCount += expired.size();
+            scheduleEviction();
+        }
+        for (IjkMediaPlayer player : expired)
+            player.release();
+    }
+
+    private final Runnable mEvictRunnable = new Runnable() {
+        @Override
+        public void run() {
+            evictExpired();
+        }
+    };
+
+    private static final class IdlePlayer {
+        final IjkMediaPlayer mPlayer;
+        final long mIdleSince;
+
+        IdlePlayer(IjkMediaPlayer player, long idleSince) {
+            mPlayer = player;
+            mIdleSince = idleSince;
+        }
+    }
+}
@@ -0,0 +1,748 @@
+/*
+ * Copyright (C) 2017 Bilibili
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.danmaku.ijk.media.player;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the picture size, sample aspect ratio, profile and level from H.264
+ * and HEVC parameter sets, without copying or allocating.
+ * <p>
+ * Accepts the codec extradata as found in mp4 and flv (avcC, hvcC, see
+ * h264_nal.h and hevc_nal.h) or in Annex B form, as well as single NAL units
+ * including their header. Emulation prevention bytes are skipped while
+ * reading. An instance keeps the result of the last successful parse and can
+ * be reused, but is not thread-safe.
+ * <pre>
+ *     IjkParameterSetParser parser = new IjkParameterSetParser();
+ *     if (parser.parseAvcExtradata(extradata, 0, extradata.length))
+ *         surface.setDefaultBufferSize(parser.getWidth(), parser.getHeight());
+ * </pre>
+ */
+public final class IjkParameterSetParser {
+    public static final int CODEC_UNKNOWN = 0;
+    public static final int CODEC_H264 = 1;
+    public static final int CODEC_HEVC = 2;
+
+    private static final int H264_NAL_SPS = 7;
+    private static final int HEVC_NAL_VPS = 32;
+    private static final int HEVC_NAL_SPS = 33;
+
+    private static final int EXTENDED_SAR = 255;
+    // Table E-1, shared by H.264 and HEVC
+    private static final int[] SAR_NUM = {0, 1, 12, 10, 16, 40, 24, 20, 32, 80, 18, 15, 64, 160, 4, 3, 2};
+    private static final int[] SAR_DEN = {0, 1, 11, 11, 11, 33, 11, 11, 11, 33, 11, 11, 33,  99, 3, 2, 1};
+
+    private static final int HEVC_MAX_SHORT_TERM_RPS = 64;
+
+    private int mCodec;
+    private int mProfile;
+    private int mLevel;
+    private int mTier;
+    private int mWidth;
+    private int mHeight;
+    private int mSarNum;
+    private int mSarDen;
+    private int mChromaFormat;
+    private int mBitDepth;
+
+    // source, either an array or a buffer
+    private byte[] mBytes;
+    private ByteBuffer mBuffer;
+
+    // bit reader state
+    private int mPos;
+    private int mEnd;
+    private int mZeros;
+    private int mCurrent;
+    private int mBitsLeft;
+    private boolean mOverrun;
+
+    private final int[] mNumDeltaPocs = new int[HEVC_MAX_SHORT_TERM_RPS];
+
+    public int getCodec() {
+        return mCodec;
+    }
+
+    /**
+     * @return profile_idc, or general_profile_idc for HEVC
+     */
+    public int getProfile() {
+        return mProfile;
+    }
+
+    /**
+     * @return level_idc, or general_level_idc for HEVC
+     */
+    public int getLevel() {
+        return mLevel;
+    }
+
+    /**
+     * @return general_tier_flag for HEVC, 0 for H.264
+     */
+    public int getTier() {
+        return mTier;
+    }
+
+    /**
+     * @return display width, after cropping
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * @return display height, after cropping
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * @return numerator of the sample aspect ratio, 0 when not signalled
+     */
+    public int getSarNum() {
+        return mSarNum;
+    }
+
+    /**
+     * @return denominator of the sample aspect ratio, 0 when not signalled
+     */
+    public int getSarDen() {
+        return mSarDen;
+    }
+
+    public int getChromaFormat() {
+        return mChromaFormat;
+    }
+
+    public int getBitDepth() {
+        return mBitDepth;
+    }
+
+    public boolean parseAvcExtradata(byte[] data, int offset, int length) {
+        checkBounds(data.length, offset, length);
+        setSource(data, null);
+        try {
+            return parseAvcExtradata(offset, offset + length);
+        } finally {
+            setSource(null, null);
+        }
+    }
+
+    /**
+     * Reads from the position to the limit of {@code buffer}, without changing them.
+     */
+    public boolean parseAvcExtradata(ByteBuffer buffer) {
+        setSource(null, buffer);
+        try {
+            return parseAvcExtradata(buffer.position(), buffer.limit());
+        } finally {
+            setSource(null, null);
+        }
+    }
+
+    public boolean parseHevcExtradata(byte[] data, int offset, int length) {
+        checkBounds(data.length, offset, length);
+        setSource(data, null);
+        try {
+            return parseHevcExtradata(offset, offset + length);
+        } finally {
+            setSource(null, null);
+        }
+    }
+
+    /**
+     * Reads from the position to the limit of {@code buffer}, without changing them.
+     */
+    public boolean parseHevcExtradata(ByteBuffer buffer) {
+        setSource(null, buffer);
+        try {
+            return parseHevcExtradata(buffer.position(), buffer.limit());
+        } finally {
+            setSource(null, null);
+        }
+    }
+
+    /**
+     * @param nal a sequence parameter set NAL unit, starting with its header
+     */
+    public boolean parseH264Sps(byte[] nal, int offset, int length) {
+        checkBounds(nal.length, offset, length);
+        setSource(nal, null);
+        try {
+            return parseH264Sps(offset, offset + length);
+        } finally {
+            setSource(null, null);
+        }
+    }
+
+    public boolean parseH264Sps(ByteBuffer nal) {
+        setSource(null, nal);
+        try {
+            return parseH264Sps(nal.position(), nal.limit());
+        } finally {
+            setSource(null, null);
+        }
+    }
+
+    /**
+     * @param nal a sequence parameter set NAL unit, starting with its header
+     */
+    public boolean parseHevcSps(byte[] nal, int offset, int length) {
+        checkBounds(nal.length, offset, length);
+        setSource(nal, null);
+        try {
+            return parseHevcSps(offset, offset + length);
+        } finally {
+            setSource(null, null);
+        }
+    }
+
+    public boolean parseHevcSps(ByteBuffer nal) {
+        setSource(null, nal);
+        try {
+            return parseHevcSps(nal.position(), nal.limit());
+        } finally {
+            setSource(null, null);
+        }
+    }
+
+    /**
+     * Reads profile, tier and level only, the picture size is in the SPS.
+     *
+     * @param nal a video parameter set NAL unit, starting with its header
+     */
+    public boolean parseHevcVps(byte[] nal, int offset, int length) {
+        checkBounds(nal.length, offset, length);
+        setSource(nal, null);
+        try {
+            return parseHevcVps(offset, offset + length);
+        } finally {
+            setSource(null, null);
+        }
+    }
+
+    public boolean parseHevcVps(ByteBuffer nal) {
+        setSource(null, nal);
+        try {
+            return parseHevcVps(nal.position(), nal.limit());
+        } finally {
+            setSource(null, null);
+        }
+    }
+
+    private static void checkBounds(int arrayLength, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > arrayLength - length)
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + ", array " + arrayLength);
+    }
+
+    // not kept after parsing, the caller may recycle it
+    private void setSource(byte[] bytes, ByteBuffer buffer) {
+        mBytes = bytes;
+        mBuffer = buffer;
+    }
+
+    private int byteAt(int index) {
+        return (mBytes != null ? mBytes[index] : mBuffer.get(index)) & 0xff;
+    }
+
+    private int readUInt16(int index) {
+        return (byteAt(index) << 8) | byteAt(index + 1);
+    }
+
+    private boolean isAnnexB(int start, int end) {
+        return end - start > 3 && byteAt(start) == 0 && byteAt(start + 1) == 0 && byteAt(start + 2) <= 1;
+    }
+
+    // start of the NAL unit following the start code at or after index, end if none
+    private int nextAnnexBNal(int index, int end) {
+        for (int i = index; i + 2 < end; i++) {
+            if (byteAt(i) == 0 && byteAt(i + 1) == 0 && byteAt(i + 2) == 1)
+                return i + 3;
+        }
+        return end;
+    }
+
+    // end of the NAL unit starting at index
+    private int annexBNalEnd(int index, int end) {
+        for (int i = index; i + 2 < end; i++) {
+            if (byteAt(i) == 0 && byteAt(i + 1) == 0 && byteAt(i + 2) <= 1)
+                return i;
+        }
+        return end;
+    }
+
+    private boolean parseAvcExtradata(int start, int end) {
+        reset();
+        if (isAnnexB(start, end)) {
+            for (int nal = nextAnnexBNal(start, end); nal < end; nal = nextAnnexBNal(nal, end)) {
+                if ((byteAt(nal) & 0x1f) == H264_NAL_SPS && parseH264Sps(nal, annexBNalEnd(nal, end)))
+                    return true;
+            }
+            return false;
+        }
+
+        // avcC: version, profile, compatibility, level, length size, SPS count
+        if (end - start < 7)
+            return false;
+
+        int count = byteAt(start + 5) & 0x1f;
+        int pos = start + 6;
+        for (int i = 0; i < count && pos + 2 <= end; i++) {
+            int size = readUInt16(pos);
+            pos += 2;
+            if (size > end - pos)
+                return false;
+            if (parseH264Sps(pos, pos + size))
+                return true;
+            pos += size;
+        }
+        return false;
+    }
+
+    private boolean parseHevcExtradata(int start, int end) {
+        reset();
+        if (isAnnexB(start, end)) {
+            for (int nal = nextAnnexBNal(start, end); nal < end; nal = nextAnnexBNal(nal, end)) {
+                int type = (byteAt(nal) >> 1) & 0x3f;
+                if (type == HEVC_NAL_SPS && parseHevcSps(nal, annexBNalEnd(nal, end)))
+                    return true;
+            }
+            return false;
+        }
+
+        // hvcC: 22 bytes of configuration, then arrays of NAL units
+        if (end - start < 23)
+            return false;
+
+        int arrays = byteAt(start + 22);
+        int pos = start + 23;
+        for (int i = 0; i < arrays; i++) {
+            if (end - pos < 3)
+                return false;
+            int type = byteAt(pos) & 0x3f;
+            int count = readUInt16(pos + 1);
+            pos += 3;
+
+            for (int j = 0; j < count; j++) {
+                if (end - pos < 2)
+                    return false;
+                int size = readUInt16(pos);
+                pos += 2;
+                if (size > end - pos)
+                    return false;
+                if (type == HEVC_NAL_SPS && parseHevcSps(pos, pos + size))
+                    return true;
+                pos += size;
+            }
+        }
+        return false;
+    }
+
+    private void reset() {
+        mCodec = CODEC_UNKNOWN;
+        mProfile = 0;
+        mLevel = 0;
+        mTier = 0;
+        mWidth = 0;
+        mHeight = 0;
+        mSarNum = 0;
+        mSarDen = 0;
+        mChromaFormat = 0;
+        mBitDepth = 0;
+    }
+
+    private boolean parseH264Sps(int start, int end) {
+        reset();
+        if (end - start < 4 || (byteAt(start) & 0x1f) != H264_NAL_SPS)
+            return false;
+
+        startReading(start + 1, end);
+        int profile = readBits(8);
+        skipBits(8); // constraint_set flags
+        int level = readBits(8);
+        readUE(); // seq_parameter_set_id
+
+        int chromaFormat = 1;
+        boolean separateColourPlane = false;
+        int bitDepth = 8;
+        if (profile == 100 || profile == 110 || profile == 122 || profile == 144 || profile == 244 ||
+                profile == 44 || profile == 83 || profile == 86 || profile == 118 ||
+                profile == 128 || profile == 138 || profile == 139 || profile == 134 || profile == 135) {
+            chromaFormat = readUE();
+            if (chromaFormat == 3)
+                separateColourPlane = readBits(1) != 0;
+            bitDepth = readUE() + 8;
+            readUE(); // bit_depth_chroma_minus8
+            skipBits(1); // qpprime_y_zero_transform_bypass_flag
+            if (readBits(1) != 0) {
+                int lists = chromaFormat != 3 ? 8 : 12;
+                for (int i = 0; i < lists; i++) {
+                    if (readBits(1) != 0)
+                        skipH264ScalingList(i < 6 ? 16 : 64);
+                }
+            }
+        }
+
+        readUE(); // log2_max_frame_num_minus4
+        int pocType = readUE();
+        if (pocType == 0) {
+            readUE(); // log2_max_pic_order_cnt_lsb_minus4
+        } else if (pocType == 1) {
+            skipBits(1); // delta_pic_order_always_zero_flag
+            readSE(); // offset_for_non_ref_pic
+            readSE(); // offset_for_top_to_bottom_field
+            int cycle = readUE();
+            for (int i = 0; i < cycle && !mOverrun; i++)
+                readSE(); // offset_for_ref_frame
+        }
+        readUE(); // max_num_ref_frames
+        skipBits(1); // gaps_in_frame_num_value_allowed_flag
+
+        int widthInMbs = readUE() + 1;
+        int heightInMapUnits = readUE() + 1;
+        int frameMbsOnly = readBits(1);
+        if (frameMbsOnly == 0)
+            skipBits(1); // mb_adaptive_frame_field_flag
+        skipBits(1); // direct_8x8_inference_flag
+
+        int cropLeft = 0, cropRight = 0, cropTop = 0, cropBottom = 0;
+        if (readBits(1) != 0) {
+            cropLeft = readUE();
+            cropRight = readUE();
+            cropTop = readUE();
+            cropBottom = readUE();
+        }
+        if (mOverrun)
+            return false;
+
+        int chromaArrayType = separateColourPlane ? 0 : chromaFormat;
+        int cropUnitX = 1;
+        int cropUnitY = 2 - frameMbsOnly;
+        if (chromaArrayType != 0) {
+            cropUnitX = chromaArrayType == 3 ? 1 : 2;
+            cropUnitY *= chromaArrayType == 1 ? 2 : 1;
+        }
+
+        int width = widthInMbs * 16 - (cropLeft + cropRight) * cropUnitX;
+        int height = (2 - frameMbsOnly) * heightInMapUnits * 16 - (cropTop + cropBottom) * cropUnitY;
+        if (width <= 0 || height <= 0)
+            return false;
+
+        if (readBits(1) != 0)
+            readAspectRatioInfo();
+
+        mCodec = CODEC_H264;
+        mProfile = profile;
+        mLevel = level;
+        mWidth = width;
+        mHeight = height;
+        mChromaFormat = chromaFormat;
+        mBitDepth = bitDepth;
+        return true;
+    }
+
+    private void skipH264ScalingList(int size) {
+        int lastScale = 8;
+        int nextScale = 8;
+        for (int i = 0; i < size && !mOverrun; i++) {
+            if (nextScale != 0)
+                nextScale = (lastScale + readSE() + 256) % 256;
+            lastScale = nextScale == 0 ? lastScale : nextScale;
+        }
+    }
+
+    private boolean parseHevcVps(int start, int end) {
+        reset();
+        if (end - start < 4 || ((byteAt(start) >> 1) & 0x3f) != HEVC_NAL_VPS)
+            return false;
+
+        startReading(start + 2, end);
+        skipBits(4); // vps_video_parameter_set_id
+        skipBits(2); // vps_base_layer_internal_flag, vps_base_layer_available_flag
+        skipBits(6); // vps_max_layers_minus1
+        int maxSubLayersMinus1 = readBits(3);
+        skipBits(1); // vps_temporal_id_nesting_flag
+        skipBits(16); // vps_reserved_0xffff_16bits
+        readHevcProfileTierLevel(maxSubLayersMinus1);
+        if (mOverrun) {
+            reset();
+            return false;
+        }
+
+        mCodec = CODEC_HEVC;
+        return true;
+    }
+
+    private boolean parseHevcSps(int start, int end) {
+        reset();
+        if (end - start < 4 || ((byteAt(start) >> 1) & 0x3f) != HEVC_NAL_SPS)
+            return false;
+
+        startReading(start + 2, end);
+        skipBits(4); // sps_video_parameter_set_id
+        int maxSubLayersMinus1 = readBits(3);
+        skipBits(1); // sps_temporal_id_nesting_flag
+        readHevcProfileTierLevel(maxSubLayersMinus1);
+        readUE(); // sps_seq_parameter_set_id
+
+        int chromaFormat = readUE();
+        boolean separateColourPlane = false;
+        if (chromaFormat == 3)
+            separateColourPlane = readBits(1) != 0;
+        int width = readUE();
+        int height = readUE();
+        if (readBits(1) != 0) {
+            int chromaArrayType = separateColourPlane ? 0 : chromaFormat;
+            int subWidth = chromaArrayType == 1 || chromaArrayType == 2 ? 2 : 1;
+            int subHeight = chromaArrayType == 1 ? 2 : 1;
+            width -= (readUE() + readUE()) * subWidth;
+            height -= (readUE() + readUE()) * subHeight;
+        }
+        if (mOverrun || width <= 0 || height <= 0) {
+            reset();
+            return false;
+        }
+
+        mCodec = CODEC_HEVC;
+        mWidth = width;
+        mHeight = height;
+        mChromaFormat = chromaFormat;
+        mBitDepth = readUE() + 8;
+        readUE(); // bit_depth_chroma_minus8
+        int log2MaxPocLsb = readUE() + 4;
+
+        boolean subLayerOrderingInfo = readBits(1) != 0;
+        for (int i = subLayerOrderingInfo ? 0 : maxSubLayersMinus1; i <= maxSubLayersMinus1; i++) {
+            readUE(); // sps_max_dec_pic_buffering_minus1
+            readUE(); // sps_max_num_reorder_pics
+            readUE(); // sps_max_latency_increase_plus1
+        }
+
+        readUE(); // log2_min_luma_coding_block_size_minus3
+        readUE(); // log2_diff_max_min_luma_coding_block_size
+        readUE(); // log2_min_luma_transform_block_size_minus2
+        readUE(); // log2_diff_max_min_luma_transform_block_size
+        readUE(); // max_transform_hierarchy_depth_inter
+        readUE(); // max_transform_hierarchy_depth_intra
+
+        if (readBits(1) != 0 && readBits(1) != 0)
+            skipHevcScalingListData();
+
+        skipBits(1); // amp_enabled_flag
+        skipBits(1); // sample_adaptive_offset_enabled_flag
+        if (readBits(1) != 0) {
+            skipBits(4); // pcm_sample_bit_depth_luma_minus1
+            skipBits(4); // pcm_sample_bit_depth_chroma_minus1
+            readUE(); // log2_min_pcm_luma_coding_block_size_minus3
+            readUE(); // log2_diff_max_min_pcm_luma_coding_block_size
+            skipBits(1); // pcm_loop_filter_disabled_flag
+        }
+
+        int numShortTermRps = readUE();
+        if (numShortTermRps > HEVC_MAX_SHORT_TERM_RPS)
+            return true;
+        for (int i = 0; i < numShortTermRps && !mOverrun; i++)
+            skipHevcShortTermRps(i);
+
+        if (readBits(1) != 0) {
+            int numLongTermRefPics = readUE();
+            for (int i = 0; i < numLongTermRefPics && !mOverrun; i++) {
+                skipBits(log2MaxPocLsb); // lt_ref_pic_poc_lsb_sps
+                skipBits(1); // used_by_curr_pic_lt_sps_flag
+            }
+        }
+
+        skipBits(1); // sps_temporal_mvp_enabled_flag
+        skipBits(1); // strong_intra_smoothing_enabled_flag
+        if (readBits(1) != 0)
+            readAspectRatioInfo();
+        return true;
+    }
+
+    private void readHevcProfileTierLevel(int maxSubLayersMinus1) {
+        skipBits(2); // general_profile_space
+        mTier = readBits(1);
+        mProfile = readBits(5);
+        skipBits(32); // general_profile_compatibility_flag
+        skipBits(4); // progressive, interlaced, non packed and frame only constraint flags
+        skipBits(32); // reserved, 43 bits
+        skipBits(11);
+        skipBits(1); // general_inbld_flag
+        mLevel = readBits(8);
+
+        int subLayerFlags = 0;
+        for (int i = 0; i < maxSubLayersMinus1; i++)
+            subLayerFlags = (subLayerFlags << 2) | readBits(2);
+        if (maxSubLayersMinus1 > 0) {
+            for (int i = maxSubLayersMinus1; i < 8; i++)
+                skipBits(2); // reserved_zero_2bits
+        }
+        for (int i = maxSubLayersMinus1 - 1; i >= 0; i--) {
+            int flags = (subLayerFlags >> (i * 2)) & 0x3;
+            if ((flags & 0x2) != 0) {
+                // sub_layer profile space to sub_layer_inbld_flag
+                skipBits(32);
+                skipBits(32);
+                skipBits(24);
+            }
+            if ((flags & 0x1) != 0)
+                skipBits(8); // sub_layer_level_idc
+        }
+    }
+
+    private void skipHevcScalingListData() {
+        for (int sizeId = 0; sizeId < 4; sizeId++) {
+            for (int matrixId = 0; matrixId < 6; matrixId += sizeId == 3 ? 3 : 1) {
+                if (readBits(1) == 0) {
+                    readUE(); // scaling_list_pred_matrix_id_delta
+                } else {
+                    int coefNum = Math.min(64, 1 << (4 + (sizeId << 1)));
+                    if (sizeId > 1)
+                        readSE(); // scaling_list_dc_coef_minus8
+                    for (int i = 0; i < coefNum && !mOverrun; i++)
+                        readSE(); // scaling_list_delta_coef
+                }
+            }
+        }
+    }
+
+    private void skipHevcShortTermRps(int index) {
+        boolean interRpsPrediction = index != 0 && readBits(1) != 0;
+        if (interRpsPrediction) {
+            skipBits(1); // delta_rps_sign
+            readUE(); // abs_delta_rps_minus1
+            int numDeltaPocs = 0;
+            for (int j = 0; j <= mNumDeltaPocs[index - 1]; j++) {
+                boolean usedByCurrPic = readBits(1) != 0;
+                if (usedByCurrPic || readBits(1) != 0)
+                    numDeltaPocs++;
+            }
+            mNumDeltaPocs[index] = numDeltaPocs;
+        } else {
+            int numNegative = readUE();
+            int numPositive = readUE();
+            if (numNegative + numPositive > 32) {
+                mOverrun = true;
+                return;
+            }
+            for (int j = 0; j < numNegative + numPositive; j++) {
+                readUE(); // delta_poc_s0_minus1 or delta_poc_s1_minus1
+                skipBits(1); // used_by_curr_pic_s0_flag or used_by_curr_pic_s1_flag
+            }
+            mNumDeltaPocs[index] = numNegative + numPositive;
+        }
+    }
+
+    private void readAspectRatioInfo() {
+        if (readBits(1) == 0)
+            return;
+
+        int num;
+        int den;
+        int idc = readBits(8);
+        if (idc == EXTENDED_SAR) {
+            num = readBits(16);
+            den = readBits(16);
+        } else if (idc < SAR_NUM.length) {
+            num = SAR_NUM[idc];
+            den = SAR_DEN[idc];
+        } else {
+            return;
+        }
+
+        if (!mOverrun && num > 0 && den > 0) {
+            mSarNum = num;
+            mSarDen = den;
+        }
+    }
+
+    /*
+     * RBSP bit reader, skipping emulation_prevention_three_byte
+     */
+
+    private void startReading(int start, int end) {
+        mPos = start;
+        mEnd = end;
+        mZeros = 0;
+        mCurrent = 0;
+        mBitsLeft = 0;
+        mOverrun = false;
+    }
+
+    private int nextByte() {
+        if (mPos >= mEnd) {
+            mOverrun = true;
+            return 0;
+        }
+
+        int value = byteAt(mPos++);
+        if (mZeros >= 2 && value == 3) {
+            mZeros = 0;
+            if (mPos >= mEnd) {
+                mOverrun = true;
+                return 0;
+            }
+            value = byteAt(mPos++);
+        }
+        mZeros = value == 0 ? mZeros + 1 : 0;
+        return value;
+    }
+
+    // up to 32 bits
+    private int readBits(int bits) {
+        int result = 0;
+        while (bits > 0) {
+            if (mBitsLeft == 0) {
+                mCurrent = nextByte();
+                mBitsLeft = 8;
+            }
+
+            int take = Math.min(bits, mBitsLeft);
+            mBitsLeft -= take;
+            result = (result << take) | ((mCurrent >>> mBitsLeft) & ((1 << take) - 1));
+            bits -= take;
+        }
+        return result;
+    }
+
+    private void skipBits(int bits) {
+        readBits(bits);
+    }
+
+    private int readUE() {
+        int leadingZeros = 0;
+        while (readBits(1) == 0) {
+            if (mOverrun || ++leadingZeros > 31) {
+                mOverrun = true;
+                return 0;
+            }
+        }
+        if (leadingZeros == 0)
+            return 0;
+
+        long value = (1L << leadingZeros) - 1 + (readBits(leadingZeros) & 0xffffffffL);
+        return value > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) value;
+    }
+
+    private int readSE() {
+        int value = readUE();
+        return (value & 1) != 0 ? (value + 1) >>> 1 : -(value >>> 1);
+    }
+}
@@ -0,0 +1,389 @@
+/*
+ * Copyright (C) 2017 Bilibili
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.danmaku.ijk.media.player;
+
+/**
+ * Reusable snapshot of the player properties, filled by
+ * {@link IjkMediaPlayer#getStatsSnapshot(IjkPlayerStats)} with a single native
+ * call. All values are read under the player lock, so they are consistent
+ * with each other.
+ */
+public final class IjkPlayerStats {
+    private static final int I_SELECTED_VIDEO_STREAM            = 0;
+    private static final int I_SELECTED_AUDIO_STREAM            = 1;
+    private static final int I_SELECTED_TIMEDTEXT_STREAM        = 2;
+    private static final int I_VIDEO_DECODER                    = 3;
+    private static final int I_AUDIO_DECODER                    = 4;
+    private static final int I_VIDEO_CACHED_DURATION            = 5;
+    private static final int I_AUDIO_CACHED_DURATION            = 6;
+    private static final int I_VIDEO_CACHED_BYTES               = 7;
+    private static final int I_AUDIO_CACHED_BYTES               = 8;
+    private static final int I_VIDEO_CACHED_PACKETS             = 9;
+    private static final int I_AUDIO_CACHED_PACKETS             = 10;
+    private static final int I_ASYNC_STATISTIC_BUF_BACKWARDS    = 11;
+    private static final int I_ASYNC_STATISTIC_BUF_FORWARDS     = 12;
+    private static final int I_ASYNC_STATISTIC_BUF_CAPACITY     = 13;
+    private static final int I_TRAFFIC_STATISTIC_BYTE_COUNT     = 14;
+    private static final int I_CACHE_STATISTIC_PHYSICAL_POS     = 15;
+    private static final int I_CACHE_STATISTIC_FILE_FORWARDS    = 16;
+    private static final int I_CACHE_STATISTIC_FILE_POS         = 17;
+    private static final int I_CACHE_STATISTIC_COUNT_BYTES      = 18;
+    private static final int I_LOGICAL_FILE_SIZE                = 19;
+    private static final int I_BIT_RATE                         = 20;
+    private static final int I_TCP_SPEED                        = 21;
+    private static final int I_LATEST_SEEK_LOAD_DURATION        = 22;
+    private static final int I_HW_DECODEC_ERROR_CODE            = 23;
+    private static final int I_ASYNC_ERROR_CODE                 = 24;
+    private static final int I_DEMUX_ERROR_CODE                 = 25;
+    private static final int I_CACHE_STATISTIC_READ_BYTES       = 26;
+    private static final int I_VIDEO_PACKET_QUEUE_WAIT_COUNT    = 27;
+    private static final int I_VIDEO_PACKET_QUEUE_WAIT_TIME     = 28;
+    private static final int I_VIDEO_PACKET_QUEUE_CONTENTION    = 29;
+    private static final int I_AUDIO_PACKET_QUEUE_WAIT_COUNT    = 30;
+    private static final int I_AUDIO_PACKET_QUEUE_WAIT_TIME     = 31;
+    private static final int I_AUDIO_PACKET_QUEUE_CONTENTION    = 32;
+    private static final int I_VIDEO_OVERLAY_ALLOC_COUNT        = 33;
+    private static final int I_VIDEO_OVERLAY_POOL_HIT_COUNT     = 34;
+    private static final int I_VIDEO_OVERLAY_POOL_SIZE          = 35;
+    private static final int I_FRAMEDROP_LEVEL                  = 36;
+    private static final int I_LIVE_LATENCY                     = 37;
+    private static final int I_LIVE_LATENCY_JUMP_COUNT          = 38;
+    private static final int I_CACHE_STATISTIC_RANGE_BYTES      = 39;
+    private static final int I_CACHE_STATISTIC_CONNECTIONS      = 40;
+    private static final int I_DROP_FRAME_COUNT                 = 41;
+    private static final int I_STREAM_INFO_CACHE                = 42;
+    private static final int I_AUDIO_INIT_DURATION              = 43;
+    private static final int I_VIDEO_INIT_DURATION              = 44;
+
+    static final int[] INT64_PROPERTIES = {
+            IjkMediaPlayer.FFP_PROP_INT64_SELECTED_VIDEO_STREAM,
+            IjkMediaPlayer.FFP_PROP_INT64_SELECTED_AUDIO_STREAM,
+            IjkMediaPlayer.FFP_PROP_INT64_SELECTED_TIMEDTEXT_STREAM,
+            IjkMediaPlayer.FFP_PROP_INT64_VIDEO_DECODER,
+            IjkMediaPlayer.FFP_PROP_INT64_AUDIO_DECODER,
+            IjkMediaPlayer.FFP_PROP_INT64_VIDEO_CACHED_DURATION,
+            IjkMediaPlayer.FFP_PROP_INT64_AUDIO_CACHED_DURATION,
+            IjkMediaPlayer.FFP_PROP_INT64_VIDEO_CACHED_BYTES,
+            IjkMediaPlayer.FFP_PROP_INT64_AUDIO_CACHED_BYTES,
+            IjkMediaPlayer.FFP_PROP_INT64_VIDEO_CACHED_PACKETS,
+            IjkMediaPlayer.FFP_PROP_INT64_AUDIO_CACHED_PACKETS,
+            IjkMediaPlayer.FFP_PROP_INT64_ASYNC_STATISTIC_BUF_BACKWARDS,
+            IjkMediaPlayer.FFP_PROP_INT64_ASYNC_STATISTIC_BUF_FORWARDS,
+            IjkMediaPlayer.FFP_PROP_INT64_ASYNC_STATISTIC_BUF_CAPACITY,
+            IjkMediaPlayer.FFP_PROP_INT64_TRAFFIC_STATISTIC_BYTE_COUNT,
+            IjkMediaPlayer.FFP_PROP_INT64_CACHE_STATISTIC_PHYSICAL_POS,
+            IjkMediaPlayer.FFP_PROP_INT64_CACHE_STATISTIC_FILE_FORWARDS,
+            IjkMediaPlayer.FFP_PROP_INT64_CACHE_STATISTIC_FILE_POS,
+            IjkMediaPlayer.FFP_PROP_INT64_CACHE_STATISTIC_COUNT_BYTES,
+            IjkMediaPlayer.FFP_PROP_INT64_LOGICAL_FILE_SIZE,
+            IjkMediaPlayer.FFP_PROP_INT64_BIT_RATE,
+            IjkMediaPlayer.FFP_PROP_INT64_TCP_SPEED,
+            IjkMediaPlayer.FFP_PROP_INT64_LATEST_SEEK_LOAD_DURATION,
+            IjkMediaPlayer.FFP_PROP_INT64_HW_DECODEC_ERROR_CODE,
+            IjkMediaPlayer.FFP_PROP_INT64_ASYNC_ERROR_CODE,
+            IjkMediaPlayer.FFP_PROP_INT64_DEMUX_ERROR_CODE,
+            IjkMediaPlayer.FFP_PROP_INT64_CACHE_STATISTIC_READ_BYTES,
+            IjkMediaPlayer.FFP_PROP_INT64_VIDEO_PACKET_QUEUE_WAIT_COUNT,
+            IjkMediaPlayer.FFP_PROP_INT64_VIDEO_PACKET_QUEUE_WAIT_TIME,
+            IjkMediaPlayer.FFP_PROP_INT64_VIDEO_PACKET_QUEUE_CONTENTION,
+            IjkMediaPlayer.FFP_PROP_INT64_AUDIO_PACKET_QUEUE_WAIT_COUNT,
+            IjkMediaPlayer.FFP_PROP_INT64_AUDIO_PACKET_QUEUE_WAIT_TIME,
+            IjkMediaPlayer.FFP_PROP_INT64_AUDIO_PACKET_QUEUE_CONTENTION,
+            IjkMediaPlayer.FFP_PROP_INT64_VIDEO_OVERLAY_ALLOC_COUNT,
+            IjkMediaPlayer.FFP_PROP_INT64_VIDEO_OVERLAY_POOL_HIT_COUNT,
+            IjkMediaPlayer.FFP_PROP_INT64_VIDEO_OVERLAY_POOL_SIZE,
+            IjkMediaPlayer.FFP_PROP_INT64_FRAMEDROP_LEVEL,
+            IjkMediaPlayer.FFP_PROP_INT64_LIVE_LATENCY,
+            IjkMediaPlayer.FFP_PROP_INT64_LIVE_LATENCY_JUMP_COUNT,
+            IjkMediaPlayer.FFP_PROP_INT64_CACHE_STATISTIC_RANGE_BYTES,
+            IjkMediaPlayer.FFP_PROP_INT64_CACHE_STATISTIC_CONNECTIONS,
+            IjkMediaPlayer.FFP_PROP_INT64_DROP_FRAME_COUNT,
+            IjkMediaPlayer.FFP_PROP_INT64_STREAM_INFO_CACHE,
+            IjkMediaPlayer.FFP_PROP_INT64_AUDIO_INIT_DURATION,
+            IjkMediaPlayer.FFP_PROP_INT64_VIDEO_INIT_DURATION,
+    };
+
+    private static final long[] INT64_DEFAULTS = new long[INT64_PROPERTIES.length];
+    static {
+        INT64_DEFAULTS[I_SELECTED_VIDEO_STREAM] = -1;
+        INT64_DEFAULTS[I_SELECTED_AUDIO_STREAM] = -1;
+        INT64_DEFAULTS[I_SELECTED_TIMEDTEXT_STREAM] = -1;
+        INT64_DEFAULTS[I_VIDEO_DECODER] = IjkMediaPlayer.FFP_PROPV_DECODER_UNKNOWN;
+    }
+
+    private static final int I_VIDEO_DECODE_FRAMES_PER_SECOND   = 0;
+    private static final int I_VIDEO_OUTPUT_FRAMES_PER_SECOND   = 1;
+    private static final int I_PLAYBACK_RATE                    = 2;
+    private static final int I_AVDELAY                          = 3;
+    private static final int I_AVDIFF                           = 4;
+    private static final int I_PLAYBACK_VOLUME                  = 5;
+    private static final int I_DROP_FRAME_RATE                  = 6;
+
+    static final int[] FLOAT_PROPERTIES = {
+            IjkMediaPlayer.PROP_FLOAT_VIDEO_DECODE_FRAMES_PER_SECOND,
+            IjkMediaPlayer.PROP_FLOAT_VIDEO_OUTPUT_FRAMES_PER_SECOND,
+            IjkMediaPlayer.FFP_PROP_FLOAT_PLAYBACK_RATE,
+            IjkMediaPlayer.FFP_PROP_FLOAT_AVDELAY,
+            IjkMediaPlayer.FFP_PROP_FLOAT_AVDIFF,
+            IjkMediaPlayer.FFP_PROP_FLOAT_PLAYBACK_VOLUME,
+            IjkMediaPlayer.FFP_PROP_FLOAT_DROP_FRAME_RATE,
+    };
+
+    private static final float[] FLOAT_DEFAULTS = new float[FLOAT_PROPERTIES.length];
+
+    final long[] mInt64Values = new long[INT64_PROPERTIES.length];
+    final float[] mFloatValues = new float[FLOAT_PROPERTIES.length];
+
+    void resetToDefaults() {
+        System.arraycopy(INT64_DEFAULTS, 0, mInt64Values, 0, INT64_DEFAULTS.length);
+        System.arraycopy(FLOAT_DEFAULTS, 0, mFloatValues, 0, FLOAT_DEFAULTS.length);
+    }
+
+    public IjkPlayerStats() {
+        resetToDefaults();
+    }
+
+    /**
+     * @param property one of the FFP_PROP_INT64_* values of {@link IjkMediaPlayer}
+     */
+    public long getPropertyLong(int property, long defaultValue) {
+        for (int i = 0; i < INT64_PROPERTIES.length; i++) {
+            if (INT64_PROPERTIES[i] == property)
+                return mInt64Values[i];
+        }
+        return defaultValue;
+    }
+
+    /**
+     * @param property one of the FFP_PROP_FLOAT_* values of {@link IjkMediaPlayer}
+     */
+    public float getPropertyFloat(int property, float defaultValue) {
+        for (int i = 0; i < FLOAT_PROPERTIES.length; i++) {
+            if (FLOAT_PROPERTIES[i] == property)
+                return mFloatValues[i];
+        }
+        return defaultValue;
+    }
+
+    public int getSelectedVideoStream() {
+        return (int) mInt64Values[I_SELECTED_VIDEO_STREAM];
+    }
+
+    public int getSelectedAudioStream() {
+        return (int) mInt64Values[I_SELECTED_AUDIO_STREAM];
+    }
+
+    public int getSelectedTimedTextStream() {
+        return (int) mInt64Values[I_SELECTED_TIMEDTEXT_STREAM];
+    }
+
+    public int getVideoDecoder() {
+        return (int) mInt64Values[I_VIDEO_DECODER];
+    }
+
+    public int getAudioDecoder() {
+        return (int) mInt64Values[I_AUDIO_DECODER];
+    }
+
+    public long getVideoCachedDuration() {
+        return mInt64Values[I_VIDEO_CACHED_DURATION];
+    }
+
+    public long getAudioCachedDuration() {
+        return mInt64Values[I_AUDIO_CACHED_DURATION];
+    }
+
+    public long getVideoCachedBytes() {
+        return mInt64Values[I_VIDEO_CACHED_BYTES];
+    }
+
+    public long getAudioCachedBytes() {
+        return mInt64Values[I_AUDIO_CACHED_BYTES];
+    }
+
+    public long getVideoCachedPackets() {
+        return mInt64Values[I_VIDEO_CACHED_PACKETS];
+    }
+
+    public long getAudioCachedPackets() {
+        return mInt64Values[I_AUDIO_CACHED_PACKETS];
+    }
+
+    public long getAsyncStatisticBufBackwards() {
+        return mInt64Values[I_ASYNC_STATISTIC_BUF_BACKWARDS];
+    }
+
+    public long getAsyncStatisticBufForwards() {
+        return mInt64Values[I_ASYNC_STATISTIC_BUF_FORWARDS];
+    }
+
+    public long getAsyncStatisticBufCapacity() {
+        return mInt64Values[I_ASYNC_STATISTIC_BUF_CAPACITY];
+    }
+
+    public long getTrafficStatisticByteCount() {
+        return mInt64Values[I_TRAFFIC_STATISTIC_BYTE_COUNT];
+    }
+
+    public long getCacheStatisticPhysicalPos() {
+        return mInt64Values[I_CACHE_STATISTIC_PHYSICAL_POS];
+    }
+
+    public long getCacheStatisticFileForwards() {
+        return mInt64Values[I_CACHE_STATISTIC_FILE_FORWARDS];
+    }
+
+    public long getCacheStatisticFilePos() {
+        return mInt64Values[I_CACHE_STATISTIC_FILE_POS];
+    }
+
+    public long getCacheStatisticCountBytes() {
+        return mInt64Values[I_CACHE_STATISTIC_COUNT_BYTES];
+    }
+
+    public long getCacheStatisticReadBytes() {
+        return mInt64Values[I_CACHE_STATISTIC_READ_BYTES];
+    }
+
+    public long getFileSize() {
+        return mInt64Values[I_LOGICAL_FILE_SIZE];
+    }
+
+    public long getBitRate() {
+        return mInt64Values[I_BIT_RATE];
+    }
+
+    public long getTcpSpeed() {
+        return mInt64Values[I_TCP_SPEED];
+    }
+
+    public long getSeekLoadDuration() {
+        return mInt64Values[I_LATEST_SEEK_LOAD_DURATION];
+    }
+
+    public long getHWDecodeErrorCode() {
+        return mInt64Values[I_HW_DECODEC_ERROR_CODE];
+    }
+
+    public long getAsyncInitDecoderErrorCode() {
+        return mInt64Values[I_ASYNC_ERROR_CODE];
+    }
+
+    public long getAudioInitDuration() {
+        return mInt64Values[I_AUDIO_INIT_DURATION];
+    }
+
+    public long getVideoInitDuration() {
+        return mInt64Values[I_VIDEO_INIT_DURATION];
+    }
+
+    public long getDemuxErrorCode() {
+        return mInt64Values[I_DEMUX_ERROR_CODE];
+    }
+
+    public long getVideoPacketQueueWaitCount() {
+        return mInt64Values[I_VIDEO_PACKET_QUEUE_WAIT_COUNT];
+    }
+
+    public long getVideoPacketQueueWaitTimeUs() {
+        return mInt64Values[I_VIDEO_PACKET_QUEUE_WAIT_TIME];
+    }
+
+    public long getVideoPacketQueueContention() {
+        return mInt64Values[I_VIDEO_PACKET_QUEUE_CONTENTION];
+    }
+
+    public long getAudioPacketQueueWaitCount() {
+        return mInt64Values[I_AUDIO_PACKET_QUEUE_WAIT_COUNT];
+    }
+
+    public long getAudioPacketQueueWaitTimeUs() {
+        return mInt64Values[I_AUDIO_PACKET_QUEUE_WAIT_TIME];
+    }
+
+    public long getAudioPacketQueueContention() {
+        return mInt64Values[I_AUDIO_PACKET_QUEUE_CONTENTION];
+    }
+
+    public long getVideoOverlayAllocCount() {
+        return mInt64Values[I_VIDEO_OVERLAY_ALLOC_COUNT];
+    }
+
+    public long getVideoOverlayPoolHitCount() {
+        return mInt64Values[I_VIDEO_OVERLAY_POOL_HIT_COUNT];
+    }
+
+    public long getVideoOverlayPoolSize() {
+        return mInt64Values[I_VIDEO_OVERLAY_POOL_SIZE];
+    }
+
+    public int getFrameDropLevel() {
+        return (int) mInt64Values[I_FRAMEDROP_LEVEL];
+    }
+
+    public long getLiveLatency() {
+        return mInt64Values[I_LIVE_LATENCY];
+    }
+
+    public long getLiveLatencyJumpCount() {
+        return mInt64Values[I_LIVE_LATENCY_JUMP_COUNT];
+    }
+
+    public long getCacheStatisticRangeBytes() {
+        return mInt64Values[I_CACHE_STATISTIC_RANGE_BYTES];
+    }
+
+    public long getCacheStatisticConnections() {
+        return mInt64Values[I_CACHE_STATISTIC_CONNECTIONS];
+    }
+
+    public long getDropFrameCount() {
+        return mInt64Values[I_DROP_FRAME_COUNT];
+    }
+
+    public int getStreamInfoCacheResult() {
+        return (int) mInt64Values[I_STREAM_INFO_CACHE];
+    }
+
+    public float getVideoDecodeFramesPerSecond() {
+        return mFloatValues[I_VIDEO_DECODE_FRAMES_PER_SECOND];
+    }
+
+    public float getVideoOutputFramesPerSecond() {
+        return mFloatValues[I_VIDEO_OUTPUT_FRAMES_PER_SECOND];
+    }
+
+    public float getSpeed() {
+        return mFloatValues[I_PLAYBACK_RATE];
+    }
+
+    public float getAvDelay() {
+        return mFloatValues[I_AVDELAY];
+    }
+
+    public float getAvDiff() {
+        return mFloatValues[I_AVDIFF];
+    }
+
+    public float getVolume() {
+        return mFloatValues[I_PLAYBACK_VOLUME];
+    }
+
+    public float getDropFrameRate() {
+        return mFloatValues[I_DROP_FRAME_RATE];
+    }
+}
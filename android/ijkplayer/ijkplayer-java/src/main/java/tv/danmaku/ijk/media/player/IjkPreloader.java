@@ -0,0 +1,328 @@
+/*
+ * Copyright (C) 2017 Bilibili
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.danmaku.ijk.media.player;
+
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Downloads the head of upcoming videos into an {@link IjkCacheManager}, so
+ * that a player attached to the same cache later opens from disk.
+ * <p>
+ * A preload opens the URL through ijkio like a player would, resolving the
+ * host, probing the container and reading packets until the byte or duration
+ * budget is reached. It is cancelled as soon as a player attaches to the same
+ * cache entry, and the attach waits for it to close the cache files.
+ * <pre>
+ *     preloader.preload(nextUrl, 1024 * 1024, 5000, null);
+ *     ...
+ *     player.setDataSource(cacheManager.attach(player, nextUrl));
+ * </pre>
+ */
+public final class IjkPreloader {
+    private static final String TAG = "IjkPreloader";
+
+    public static final int DEFAULT_MAX_CONCURRENT = 2;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+    private static final int AVERROR_ENOMEM = -12;
+
+    private final IjkCacheManager mCacheManager;
+    private final ThreadPoolExecutor mExecutor;
+    private final Map<String, Task> mTasks = new HashMap<String, Task>();
+
+    public IjkPreloader(IjkCacheManager cacheManager) {
+        this(cacheManager, DEFAULT_MAX_CONCURRENT);
+    }
+
+    public IjkPreloader(IjkCacheManager cacheManager, int maxConcurrent) {
+        if (cacheManager == null)
+            throw new IllegalArgumentException("cache manager is required");
+        if (maxConcurrent <= 0)
+            throw new IllegalArgumentException("invalid max concurrent " + maxConcurrent);
+
+        IjkMediaPlayer.loadLibrariesOnce(null);
+
+        mCacheManager = cacheManager;
+        mExecutor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new PreloadThreadFactory());
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues a preload of {@code url}. A pending preload of the same URL is reused.
+     *
+     * @param maxBytes      bytes to read from the start of the stream, 0 for no limit
+     * @param maxDurationMs media duration to read from the start of the stream, 0 for no limit
+     * @param listener      called on a preload thread, may be null
+     */
+    public synchronized Task preload(String url, long maxBytes, long maxDurationMs, Listener listener) {
+        if (TextUtils.isEmpty(url))
+            throw new IllegalArgumentException("url is required");
+        if (maxBytes <= 0 && maxDurationMs <= 0)
+            throw new IllegalArgumentException("either max bytes or max duration is required");
+        if (mExecutor.isShutdown())
+            throw new IllegalStateException("preloader is shut down");
+
+        Task task = mTasks.get(url);
+        if (task != null && !task.isDone())
+            return task;
+
+        task = new Task(url, maxBytes, maxDurationMs, listener);
+        mTasks.put(url, task);
+        task.mFuture = mExecutor.submit(task);
+        return task;
+    }
+
+    /**
+     * @return false if no preload of {@code url} is pending
+     */
+    public synchronized boolean cancel(String url) {
+        Task task = mTasks.get(url);
+        if (task == null)
+            return false;
+
+        task.cancel();
+        return true;
+    }
+
+    public synchronized void cancelAll() {
+        for (Task task : new ArrayList<Task>(mTasks.values()))
+            task.cancel();
+    }
+
+    /**
+     * Cancels every preload and stops the preload threads.
+     */
+    public void shutdown() {
+        cancelAll();
+        mExecutor.shutdown();
+    }
+
+    private synchronized void onTaskDone(Task task) {
+        if (mTasks.get(task.mUrl) == task)
+            mTasks.remove(task.mUrl);
+    }
+
+    public final class Task implements Runnable {
+        private final String mUrl;
+        private final long mMaxBytes;
+        private final long mMaxDurationMs;
+        private final Listener mListener;
+        private final long[] mStatistic = new long[3];
+        // counted down once the task no longer writes to the cache files
+        private final CountDownLatch mClosed = new CountDownLatch(1);
+
+        private Future<?> mFuture;
+        private long mNativeHandle;
+        private boolean mStarted;
+        private boolean mCancelled;
+        private boolean mDone;
+
+        // run by the cache manager, the attaching player must not open the files before they are closed
+        private final Runnable mPreempt = new Runnable() {
+            @Override
+            public void run() {
+                cancel();
+                awaitClosed();
+            }
+        };
+
+        private Task(String url, long maxBytes, long maxDurationMs, Listener listener) {
+            mUrl = url;
+            mMaxBytes = maxBytes;
+            mMaxDurationMs = maxDurationMs;
+            mListener = listener;
+        }
+
+        public String getUrl() {
+            return mUrl;
+        }
+
+        public synchronized boolean isDone() {
+            return mDone;
+        }
+
+        public synchronized boolean isCancelled() {
+            return mCancelled;
+        }
+
+        /**
+         * @return bytes read from the start of the stream, valid once the task is done
+         */
+        public synchronized long getPreloadedBytes() {
+            return mStatistic[0];
+        }
+
+        /**
+         * @return bytes actually downloaded, the rest was already cached
+         */
+        public synchronized long getNetworkBytes() {
+            return mStatistic[1];
+        }
+
+        /**
+         * @return media duration preloaded, in milliseconds
+         */
+        public synchronized long getPreloadedDurationMs() {
+            return mStatistic[2];
+        }
+
+        public void cancel() {
+            Future<?> future;
+            synchronized (this) {
+                if (mCancelled || mDone)
+                    return;
+
+                mCancelled = true;
+                if (mNativeHandle != 0)
+                    _abort(mNativeHandle);
+                future = mFuture;
+            }
+            // a running task reports from its own thread once native returns
+            if (future != null && future.cancel(false) && !isStarted())
+                finish(false, 0);
+        }
+
+        private synchronized boolean isStarted() {
+            return mStarted;
+        }
+
+        private void awaitClosed() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    mClosed.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+
+        @Override
+        public void run() {
+            boolean cancelled;
+            synchronized (this) {
+                mStarted = true;
+                cancelled = mCancelled;
+            }
+            if (cancelled) {
+                // cancelled while the future was already running
+                finish(false, 0);
+                return;
+            }
+
+            String[] values = mCacheManager.acquire(mUrl, mPreempt);
+            if (values == null) {
+                // a player already owns the entry
+                finish(false, 0);
+                return;
+            }
+
+            long handle = _create();
+            synchronized (this) {
+                cancelled = mCancelled;
+                if (!cancelled && handle != 0)
+                    mNativeHandle = handle;
+            }
+            if (cancelled || handle == 0) {
+                if (handle != 0)
+                    _destroy(handle);
+                mClosed.countDown();
+                mCacheManager.release(mUrl, mPreempt, 0);
+                finish(false, handle == 0 ? AVERROR_ENOMEM : 0);
+                return;
+            }
+
+            long[] statistic = new long[3];
+            int ret = _run(handle, IjkCacheManager.CACHE_URL_PREFIX + mUrl,
+                    IjkCacheManager.CACHE_OPTION_KEYS, values,
+                    mMaxBytes, mMaxDurationMs, statistic);
+
+            synchronized (this) {
+                mNativeHandle = 0;
+                System.arraycopy(statistic, 0, mStatistic, 0, statistic.length);
+            }
+            // ijkio writes the .map of the entry when it is destroyed
+            _destroy(handle);
+            mClosed.countDown();
+            mCacheManager.release(mUrl, mPreempt, statistic[1]);
+
+            if (ret < 0 && !isCancelled())
+                Log.w(TAG, String.format("preload %s failed: %d", mUrl, ret));
+            finish(ret >= 0, ret);
+        }
+
+        private void finish(boolean completed, int error) {
+            mClosed.countDown();
+            synchronized (this) {
+                if (mDone)
+                    return;
+                mDone = true;
+            }
+            onTaskDone(this);
+
+            if (mListener == null)
+                return;
+            if (completed)
+                mListener.onPreloadCompleted(this);
+            else
+                mListener.onPreloadFailed(this, error);
+        }
+    }
+
+    public interface Listener {
+        void onPreloadCompleted(Task task);
+
+        /**
+         * @param error negative ffmpeg error code, 0 when cancelled or preempted by a player
+         */
+        void onPreloadFailed(Task task, int error);
+    }
+
+    private static final class PreloadThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, TAG + "-" + mCount.incrementAndGet());
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    }
+
+    private static native long _create();
+    private static native void _abort(long handle);
+    private static native void _destroy(long handle);
+    private static native int _run(long handle, String url, String[] keys, String[] values,
+                                   long maxBytes, long maxDurationMs, long[] statistic);
+}
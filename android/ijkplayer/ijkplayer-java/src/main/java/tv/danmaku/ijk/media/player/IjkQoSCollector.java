@@ -0,0 +1,398 @@
+/*
+ * Copyright (C) 2017 Bilibili
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.danmaku.ijk.media.player;
+
+import android.os.SystemClock;
+
+/**
+ * Records the quality of experience of each playback session of the wrapped
+ * player: startup time, rebuffers, seek latencies and dropped frames.
+ * <p>
+ * A session lasts from {@link #prepareAsync()} to {@link #reset()},
+ * {@link #release()} or the next prepare, then is written as one JSON line
+ * to the spool. Listeners must be set on the collector, not on the wrapped
+ * player, as it takes the player's listener slots.
+ */
+public class IjkQoSCollector extends MediaPlayerProxy {
+    public static final int END_REASON_RESET = 1;
+    public static final int END_REASON_RELEASE = 2;
+    public static final int END_REASON_PREPARE = 3;
+
+    private static final int MAX_EVENTS = 32;
+
+    private final IjkQoSSpool mSpool;
+    private final IjkMediaPlayer mIjkMediaPlayer;
+    private final Session mSession = new Session();
+    private final StringBuilder mLine = new StringBuilder(1024);
+    private long mSessionCount;
+
+    private OnPreparedListener mOnPreparedListener;
+    private OnCompletionListener mOnCompletionListener;
+    private OnBufferingUpdateListener mOnBufferingUpdateListener;
+    private OnSeekCompleteListener mOnSeekCompleteListener;
+    private OnErrorListener mOnErrorListener;
+    private OnInfoListener mOnInfoListener;
+
+    public IjkQoSCollector(IMediaPlayer backEndMediaPlayer, IjkQoSSpool spool) {
+        super(backEndMediaPlayer);
+        mSpool = spool;
+
+        IMediaPlayer internal = backEndMediaPlayer;
+        while (internal instanceof MediaPlayerProxy)
+            internal = ((MediaPlayerProxy) internal).getInternalMediaPlayer();
+        mIjkMediaPlayer = internal instanceof IjkMediaPlayer ? (IjkMediaPlayer) internal : null;
+
+        mBackEndMediaPlayer.setOnPreparedListener(new IMediaPlayer.OnPreparedListener() {
+            @Override
+            public void onPrepared(IMediaPlayer mp) {
+                if (mSession.mActive && mSession.mPrepareTime < 0)
+                    mSession.mPrepareTime = now() - mSession.mStartTime;
+                if (mOnPreparedListener != null)
+                    mOnPreparedListener.onPrepared(IjkQoSCollector.this);
+            }
+        });
+        mBackEndMediaPlayer.setOnCompletionListener(new IMediaPlayer.OnCompletionListener() {
+            @Override
+            public void onCompletion(IMediaPlayer mp) {
+                if (mSession.mActive) {
+                    mSession.mCompleted = true;
+                    mSession.stopPlaying(now());
+                }
+                if (mOnCompletionListener != null)
+                    mOnCompletionListener.onCompletion(IjkQoSCollector.this);
+            }
+        });
+        mBackEndMediaPlayer.setOnBufferingUpdateListener(new IMediaPlayer.OnBufferingUpdateListener() {
+            @Override
+            public void onBufferingUpdate(IMediaPlayer mp, int percent) {
+                if (mOnBufferingUpdateListener != null)
+                    mOnBufferingUpdateListener.onBufferingUpdate(IjkQoSCollector.this, percent);
+            }
+        });
+        mBackEndMediaPlayer.setOnSeekCompleteListener(new IMediaPlayer.OnSeekCompleteListener() {
+            @Override
+            public void onSeekComplete(IMediaPlayer mp) {
+                // ijkplayer reports when the first frame after the seek is rendered
+                if (mSession.mActive && mIjkMediaPlayer == null)
+                    mSession.endSeek(now());
+                if (mOnSeekCompleteListener != null)
+                    mOnSeekCompleteListener.onSeekComplete(IjkQoSCollector.this);
+            }
+        });
+        mBackEndMediaPlayer.setOnErrorListener(new IMediaPlayer.OnErrorListener() {
+            @Override
+            public boolean onError(IMediaPlayer mp, int what, int extra) {
+                if (mSession.mActive) {
+                    mSession.mErrorWhat = what;
+                    mSession.mErrorExtra = extra;
+                    mSession.stopPlaying(now());
+                }
+                return mOnErrorListener != null && mOnErrorListener.onError(IjkQoSCollector.this, what, extra);
+            }
+        });
+        mBackEndMediaPlayer.setOnInfoListener(new IMediaPlayer.OnInfoListener() {
+            @Override
+            public boolean onInfo(IMediaPlayer mp, int what, int extra) {
+                if (mSession.mActive)
+                    onSessionInfo(what, extra);
+                return mOnInfoListener != null && mOnInfoListener.onInfo(IjkQoSCollector.this, what, extra);
+            }
+        });
+    }
+
+    @Override
+    public void prepareAsync() throws IllegalStateException {
+        if (mSession.mActive)
+            endSession(END_REASON_PREPARE);
+        mSession.begin(++mSessionCount, getDataSource(), now(), System.currentTimeMillis());
+        super.prepareAsync();
+    }
+
+    @Override
+    public void start() throws IllegalStateException {
+        super.start();
+        if (mSession.mActive && mSession.mPlayingSince < 0)
+            mSession.mPlayingSince = now();
+    }
+
+    @Override
+    public void pause() throws IllegalStateException {
+        super.pause();
+        if (mSession.mActive)
+            mSession.stopPlaying(now());
+    }
+
+    @Override
+    public void stop() throws IllegalStateException {
+        super.stop();
+        if (mSession.mActive)
+            mSession.stopPlaying(now());
+    }
+
+    @Override
+    public void seekTo(long msec) throws IllegalStateException {
+        super.seekTo(msec);
+        if (mSession.mActive) {
+            mSession.endRebuffer(now());
+            mSession.mSeekStart = now();
+        }
+    }
+
+    @Override
+    public void reset() {
+        if (mSession.mActive)
+            endSession(END_REASON_RESET);
+        super.reset();
+    }
+
+    @Override
+    public void release() {
+        if (mSession.mActive)
+            endSession(END_REASON_RELEASE);
+        super.release();
+    }
+
+    @Override
+    public void setOnPreparedListener(OnPreparedListener listener) {
+        mOnPreparedListener = listener;
+    }
+
+    @Override
+    public void setOnCompletionListener(OnCompletionListener listener) {
+        mOnCompletionListener = listener;
+    }
+
+    @Override
+    public void setOnBufferingUpdateListener(OnBufferingUpdateListener listener) {
+        mOnBufferingUpdateListener = listener;
+    }
+
+    @Override
+    public void setOnSeekCompleteListener(OnSeekCompleteListener listener) {
+        mOnSeekCompleteListener = listener;
+    }
+
+    @Override
+    public void setOnErrorListener(OnErrorListener listener) {
+        mOnErrorListener = listener;
+    }
+
+    @Override
+    public void setOnInfoListener(OnInfoListener listener) {
+        mOnInfoListener = listener;
+    }
+
+    private void onSessionInfo(int what, int extra) {
+        long now = now();
+        switch (what) {
+            case MEDIA_INFO_VIDEO_RENDERING_START:
+            case MEDIA_INFO_AUDIO_RENDERING_START:
+                if (mSession.mFirstFrameTime < 0)
+                    mSession.mFirstFrameTime = now - mSession.mStartTime;
+                break;
+            case MEDIA_INFO_VIDEO_SEEK_RENDERING_START:
+            case MEDIA_INFO_AUDIO_SEEK_RENDERING_START:
+                mSession.endSeek(now);
+                break;
+            case MEDIA_INFO_BUFFERING_START:
+                // extra is 1 when ijkplayer buffers for a seek
+                if (extra == 0 && mSession.mFirstFrameTime >= 0 && mSession.mSeekStart < 0)
+                    mSession.beginRebuffer(now);
+                break;
+            case MEDIA_INFO_BUFFERING_END:
+                mSession.endRebuffer(now);
+                break;
+        }
+    }
+
+    private void endSession(int reason) {
+        long now = now();
+        mSession.endRebuffer(now);
+        mSession.stopPlaying(now);
+        if (mIjkMediaPlayer != null)
+            mSession.mDroppedFrames = mIjkMediaPlayer.getDropFrameCount();
+        mSession.mEndReason = reason;
+        mSession.mEndTime = now - mSession.mStartTime;
+        mSession.mActive = false;
+
+        mLine.setLength(0);
+        mSession.writeJson(mLine);
+        if (mSpool != null)
+            mSpool.offer(mLine.toString());
+    }
+
+    private static long now() {
+        return SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Times are in milliseconds since prepareAsync, -1 when not reached.
+     */
+    private static class Session {
+        boolean mActive;
+        long mId;
+        String mDataSource;
+        long mWallTime;
+        long mStartTime;
+        long mEndTime;
+        int mEndReason;
+
+        long mPrepareTime;
+        long mFirstFrameTime;
+
+        long mPlayingSince;
+        long mPlayTime;
+
+        long mRebufferSince;
+        int mRebufferCount;
+        long mRebufferDuration;
+        final long[] mRebufferAt = new long[MAX_EVENTS];
+        final long[] mRebufferLength = new long[MAX_EVENTS];
+
+        long mSeekStart;
+        int mSeekCount;
+        final long[] mSeekAt = new long[MAX_EVENTS];
+        final long[] mSeekLatency = new long[MAX_EVENTS];
+
+        long mDroppedFrames;
+        boolean mCompleted;
+        int mErrorWhat;
+        int mErrorExtra;
+
+        void begin(long id, String dataSource, long startTime, long wallTime) {
+            mActive = true;
+            mId = id;
+            mDataSource = dataSource;
+            mWallTime = wallTime;
+            mStartTime = startTime;
+            mEndTime = -1;
+            mEndReason = 0;
+            mPrepareTime = -1;
+            mFirstFrameTime = -1;
+            mPlayingSince = -1;
+            mPlayTime = 0;
+            mRebufferSince = -1;
+            mRebufferCount = 0;
+            mRebufferDuration = 0;
+            mSeekStart = -1;
+            mSeekCount = 0;
+            mDroppedFrames = -1;
+            mCompleted = false;
+            mErrorWhat = 0;
+            mErrorExtra = 0;
+        }
+
+        void stopPlaying(long now) {
+            if (mPlayingSince >= 0) {
+                mPlayTime += now - mPlayingSince;
+                mPlayingSince = -1;
+            }
+        }
+
+        void beginRebuffer(long now) {
+            if (mRebufferSince < 0)
+                mRebufferSince = now;
+        }
+
+        void endRebuffer(long now) {
+            if (mRebufferSince < 0)
+                return;
+
+            long length = now - mRebufferSince;
+            if (mRebufferCount < MAX_EVENTS) {
+                mRebufferAt[mRebufferCount] = mRebufferSince - mStartTime;
+                mRebufferLength[mRebufferCount] = length;
+            }
+            mRebufferCount++;
+            mRebufferDuration += length;
+            mRebufferSince = -1;
+        }
+
+        void endSeek(long now) {
+            if (mSeekStart < 0)
+                return;
+
+            if (mSeekCount < MAX_EVENTS) {
+                mSeekAt[mSeekCount] = mSeekStart - mStartTime;
+                mSeekLatency[mSeekCount] = now - mSeekStart;
+            }
+            mSeekCount++;
+            mSeekStart = -1;
+        }
+
+        void writeJson(StringBuilder sb) {
+            sb.append("{\"id\":").append(mId);
+            sb.append(",\"ts\":").append(mWallTime);
+            sb.append(",\"url\":");
+            appendString(sb, mDataSource);
+            sb.append(",\"prepare_ms\":").append(mPrepareTime);
+            sb.append(",\"startup_ms\":").append(mFirstFrameTime);
+            sb.append(",\"play_ms\":").append(mPlayTime);
+            sb.append(",\"duration_ms\":").append(mEndTime);
+            sb.append(",\"rebuffer_count\":").append(mRebufferCount);
+            sb.append(",\"rebuffer_ms\":").append(mRebufferDuration);
+            sb.append(",\"rebuffers\":");
+            appendPairs(sb, mRebufferAt, mRebufferLength, mRebufferCount);
+            sb.append(",\"seek_count\":").append(mSeekCount);
+            sb.append(",\"seeks\":");
+            appendPairs(sb, mSeekAt, mSeekLatency, mSeekCount);
+            sb.append(",\"dropped_frames\":").append(mDroppedFrames);
+            sb.append(",\"completed\":").append(mCompleted);
+            sb.append(",\"error\":[").append(mErrorWhat).append(',').append(mErrorExtra).append(']');
+            sb.append(",\"end\":").append(mEndReason);
+            sb.append('}');
+        }
+
+        private static void appendPairs(StringBuilder sb, long[] at, long[] value, int count) {
+            sb.append('[');
+            for (int i = 0; i < Math.min(count, MAX_EVENTS); i++) {
+                if (i > 0)
+                    sb.append(',');
+                sb.append('[').append(at[i]).append(',').append(value[i]).append(']');
+            }
+            sb.append(']');
+        }
+
+        private static void appendString(StringBuilder sb, String value) {
+            if (value == null) {
+                sb.append("null");
+                return;
+            }
+
+            sb.append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"':
+                        sb.append("\\\"");
+                        break;
+                    case '\\':
+                        sb.append("\\\\");
+                        break;
+                    default:
+                        if (c < 0x20) {
+                            sb.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            sb.append(c);
+                        }
+                        break;
+                }
+            }
+            sb.append('"');
+        }
+    }
+}
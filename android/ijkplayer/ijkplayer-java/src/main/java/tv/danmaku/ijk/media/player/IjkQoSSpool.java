@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2017 Bilibili
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.danmaku.ijk.media.player;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded on-disk spool of the sessions recorded by {@link IjkQoSCollector},
+ * one JSON object per line, in batch files of about {@code batchSize} bytes.
+ * <pre>
+ *     for (File batch : spool.takeBatches()) {
+ *         if (upload(batch))
+ *             spool.remove(batch);
+ *     }
+ * </pre>
+ * Lines are written on a background thread. Once the spool grows over its
+ * size, the oldest batches are deleted, taken ones included.
+ */
+public final class IjkQoSSpool {
+    private static final String TAG = "IjkQoSSpool";
+
+    public static final long DEFAULT_MAX_SIZE = 1024 * 1024;
+    public static final long DEFAULT_BATCH_SIZE = 64 * 1024;
+
+    private static final String BATCH_PREFIX = "qos-";
+    private static final String BATCH_SUFFIX = ".jsonl";
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final File mDirectory;
+    private final long mMaxSize;
+    private final long mBatchSize;
+    private final ThreadPoolExecutor mExecutor;
+
+    private long mNextSequence;
+    private File mCurrentBatch;
+
+    public IjkQoSSpool(File directory) {
+        this(directory, DEFAULT_MAX_SIZE, DEFAULT_BATCH_SIZE);
+    }
+
+    public IjkQoSSpool(File directory, long maxSize, long batchSize) {
+        if (maxSize <= 0 || batchSize <= 0 || batchSize > maxSize)
+            throw new IllegalArgumentException("invalid sizes " + maxSize + ", " + batchSize);
+
+        mDirectory = directory;
+        mMaxSize = maxSize;
+        mBatchSize = batchSize;
+
+        mExecutor = new ThreadPoolExecutor(1, 1,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new SpoolThreadFactory());
+        mExecutor.allowCoreThreadTimeOut(true);
+
+        //noinspection ResultOfMethodCallIgnored
+        mDirectory.mkdirs();
+        File[] batches = listBatches();
+        if (batches.length > 0)
+            mNextSequence = sequenceOf(batches[batches.length - 1]) + 1;
+    }
+
+    /**
+     * Appends a line on the spool thread, it must not contain a line break.
+     */
+    public void offer(final String line) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                append(line);
+            }
+        });
+    }
+
+    /**
+     * Closes the batch being written, lines offered afterwards go to a new one.
+     *
+     * @return batches by age, oldest first
+     */
+    public synchronized List<File> takeBatches() {
+        mCurrentBatch = null;
+        return new ArrayList<File>(Arrays.asList(listBatches()));
+    }
+
+    /**
+     * Deletes a batch once uploaded.
+     */
+    public synchronized void remove(File batch) {
+        if (batch.equals(mCurrentBatch))
+            mCurrentBatch = null;
+        //noinspection ResultOfMethodCallIgnored
+        batch.delete();
+    }
+
+    public synchronized long getSize() {
+        long size = 0;
+        for (File batch : listBatches())
+            size += batch.length();
+        return size;
+    }
+
+    private synchronized void append(String line) {
+        if (mCurrentBatch == null || mCurrentBatch.length() >= mBatchSize) {
+            mCurrentBatch = new File(mDirectory,
+                    String.format(Locale.US, "%s%010d%s", BATCH_PREFIX, mNextSequence++, BATCH_SUFFIX));
+        }
+
+        FileOutputStream out = null;
+        try {
+            //noinspection ResultOfMethodCallIgnored
+            mDirectory.mkdirs();
+            out = new FileOutputStream(mCurrentBatch, true);
+            out.write((line + "\n").getBytes("UTF-8"));
+        } catch (IOException e) {
+            Log.w(TAG, "failed to write " + mCurrentBatch, e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        trimLocked();
+    }
+
+    private void trimLocked() {
+        File[] batches = listBatches();
+        long size = 0;
+        for (File batch : batches)
+            size += batch.length();
+
+        for (int i = 0; i < batches.length && size > mMaxSize; i++) {
+            size -= batches[i].length();
+            if (batches[i].equals(mCurrentBatch))
+                mCurrentBatch = null;
+            //noinspection ResultOfMethodCallIgnored
+            batches[i].delete();
+        }
+    }
+
+    private File[] listBatches() {
+        File[] files = mDirectory.listFiles();
+        if (files == null)
+            return new File[0];
+
+        List<File> batches = new ArrayList<File>();
+        for (File file : files) {
+            if (sequenceOf(file) >= 0)
+                batches.add(file);
+        }
+        File[] sorted = batches.toArray(new File[batches.size()]);
+        Arrays.sort(sorted, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = sequenceOf(lhs);
+                long r = sequenceOf(rhs);
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        return sorted;
+    }
+
+    private static long sequenceOf(File file) {
+        String name = file.getName();
+        if (!name.startsWith(BATCH_PREFIX) || !name.endsWith(BATCH_SUFFIX))
+            return -1;
+
+        try {
+            return Long.parseLong(name.substring(BATCH_PREFIX.length(), name.length() - BATCH_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static class SpoolThreadFactory implements ThreadFactory {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, TAG);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
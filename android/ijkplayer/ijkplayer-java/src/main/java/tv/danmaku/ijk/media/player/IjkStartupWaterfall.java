@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2017 Bilibili
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.danmaku.ijk.media.player;
+
+/**
+ * When each stage of a startup began and ended, in microseconds since
+ * {@link IjkMediaPlayer#prepareAsync()}, measured natively with a monotonic
+ * clock. Only the first occurrence of a stage counts, a stage not reached
+ * is -1.
+ * <p>
+ * DNS only covers the lookup in the dns cache and
+ * {@link IjkMediaPlayer.OnNativeInvokeListener#CTRL_WILL_DNS_RESOLVE}; a host
+ * resolved by the system is part of the tcp connect stage.
+ */
+public final class IjkStartupWaterfall {
+    public static final int STAGE_DNS = 0;
+    public static final int STAGE_TCP_CONNECT = 1;
+    public static final int STAGE_HTTP_OPEN = 2;
+    public static final int STAGE_OPEN_INPUT = 3;
+    public static final int STAGE_FIND_STREAM_INFO = 4;
+    public static final int STAGE_COMPONENT_OPEN = 5;
+    public static final int STAGE_AUDIO_DECODE = 6;    // decoder started to first frame decoded
+    public static final int STAGE_VIDEO_DECODE = 7;
+    public static final int STAGE_AUDIO_RENDER = 8;    // first frame decoded to first frame rendered
+    public static final int STAGE_VIDEO_RENDER = 9;
+    public static final int STAGE_COUNT = 10;
+
+    private static final String[] STAGE_NAMES = {
+            "dns",
+            "tcp_connect",
+            "http_open",
+            "open_input",
+            "find_stream_info",
+            "component_open",
+            "audio_decode",
+            "video_decode",
+            "audio_render",
+            "video_render",
+    };
+
+    private final long[] mStages;
+
+    /* package */ IjkStartupWaterfall(long[] stages) {
+        mStages = new long[STAGE_COUNT * 2];
+        for (int i = 0; i < mStages.length; i++)
+            mStages[i] = i < stages.length ? stages[i] : -1;
+    }
+
+    public static String getStageName(int stage) {
+        return STAGE_NAMES[stage];
+    }
+
+    public long getBeginUs(int stage) {
+        return mStages[stage * 2];
+    }
+
+    public long getEndUs(int stage) {
+        return mStages[stage * 2 + 1];
+    }
+
+    /**
+     * @return duration of the stage, or -1 if it did not complete
+     */
+    public long getDurationUs(int stage) {
+        long begin = getBeginUs(stage);
+        long end = getEndUs(stage);
+        return begin >= 0 && end >= 0 ? end - begin : -1;
+    }
+
+    /**
+     * @return when the last frame of the startup was rendered
+     */
+    public long getFirstFrameUs() {
+        return Math.max(getEndUs(STAGE_AUDIO_RENDER), getEndUs(STAGE_VIDEO_RENDER));
+    }
+
+    /**
+     * Appends the completed stages as trace events, complete ("X") events on
+     * one thread per stage, that chrome://tracing or Perfetto load from
+     * <pre>{"traceEvents":[ ... ]}</pre>
+     *
+     * @param sb      events are appended comma separated, without brackets
+     * @param pid     process of the events, to tell players apart
+     * @param baseUs  added to every timestamp, to lay out several startups
+     */
+    public void appendTraceEvents(StringBuilder sb, int pid, long baseUs) {
+        boolean first = true;
+        for (int stage = 0; stage < STAGE_COUNT; stage++) {
+            long duration = getDurationUs(stage);
+            if (duration < 0)
+                continue;
+
+            if (!first)
+                sb.append(',');
+            first = false;
+            sb.append("{\"name\":\"").append(STAGE_NAMES[stage]).append('"');
+            sb.append(",\"cat\":\"startup\",\"ph\":\"X\"");
+            sb.append(",\"ts\":").append(baseUs + getBeginUs(stage));
+            sb.append(",\"dur\":").append(duration);
+            sb.append(",\"pid\":").append(pid);
+            sb.append(",\"tid\":").append(stage);
+            sb.append('}');
+        }
+    }
+
+    public String toTraceJson() {
+        StringBuilder sb = new StringBuilder(1024);
+        sb.append("{\"traceEvents\":[");
+        appendTraceEvents(sb, 0, 0);
+        sb.append("]}");
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("IjkStartupWaterfall{");
+        for (int stage = 0; stage < STAGE_COUNT; stage++) {
+            if (stage > 0)
+                sb.append(", ");
+            sb.append(STAGE_NAMES[stage]).append('=')
+                    .append(getBeginUs(stage)).append('+').append(getDurationUs(stage));
+        }
+        sb.append('}');
+        return sb.toString();
+    }
+}
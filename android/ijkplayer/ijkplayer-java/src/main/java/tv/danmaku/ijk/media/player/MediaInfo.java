@@ -17,6 +17,8 @@
 
 package tv.danmaku.ijk.media.player;
 
+import android.text.TextUtils;
+
 public class MediaInfo {
     public String mMediaPlayerName;
 
@@ -27,4 +29,34 @@ public class MediaInfo {
     public String mAudioDecoderImpl;
 
     public IjkMediaMeta mMeta;
+
+    /* package */ void setVideoCodecInfo(String codecInfo) {
+        String[] nodes = splitCodecInfo(codecInfo);
+        if (nodes != null) {
+            mVideoDecoder = nodes[0];
+            mVideoDecoderImpl = nodes[1];
+        }
+    }
+
+    /* package */ void setAudioCodecInfo(String codecInfo) {
+        String[] nodes = splitCodecInfo(codecInfo);
+        if (nodes != null) {
+            mAudioDecoder = nodes[0];
+            mAudioDecoderImpl = nodes[1];
+        }
+    }
+
+    // "decoder,impl" as reported by native, impl may be missing
+    private static String[] splitCodecInfo(String codecInfo) {
+        if (TextUtils.isEmpty(codecInfo))
+            return null;
+
+        String nodes[] = codecInfo.split(",");
+        if (nodes.length >= 2) {
+            return new String[] {nodes[0], nodes[1]};
+        } else if (nodes.length >= 1) {
+            return new String[] {nodes[0], ""};
+        }
+        return null;
+    }
 }
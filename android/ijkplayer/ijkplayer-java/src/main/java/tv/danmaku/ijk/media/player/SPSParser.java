@@ -10,6 +10,11 @@ import java.io.DataInputStream;
  */
 
 // Support H.264 201602 version
+/**
+ * @deprecated use {@link IjkParameterSetParser}, which also handles HEVC and
+ * emulation prevention bytes, and does not allocate.
+ */
+@Deprecated
 public class SPSParser {
     public  static SPS parseExtradata(String extradata_base64) {
         SPSParser parser = new SPSParser(extradata_base64);
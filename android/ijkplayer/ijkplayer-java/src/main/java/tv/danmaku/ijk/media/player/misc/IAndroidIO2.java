@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2017 Bilibili
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package tv.danmaku.ijk.media.player.misc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link IAndroidIO} which reads into a direct buffer owned by the native side.
+ * <p>
+ * When the callback implements this interface, {@link #read(ByteBuffer, int)} is
+ * used instead of {@link #read(byte[], int)}.
+ */
+@SuppressWarnings("RedundantThrows")
+public interface IAndroidIO2 extends IAndroidIO {
+    /**
+     * @param buffer direct buffer wrapping native memory, reused across calls.
+     *               Write the data from index 0; position and limit are
+     *               undefined on entry. Do not keep a reference to it.
+     * @param size   maximum number of bytes to write
+     * @return bytes read, 0 if no data is available yet, or negative at end of stream
+     */
+    int read(ByteBuffer buffer, int size) throws IOException;
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2017 Bilibili
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.danmaku.ijk.media.player.misc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link IMediaDataSource} which can read straight into the demuxer buffer.
+ * <p>
+ * The native side prefers {@link #readAt(long, ByteBuffer, int)} for data reads.
+ * {@link #readAt(long, byte[], int, int)} is still used for seek probes
+ * (size == 0), and by players which do not know this interface.
+ */
+@SuppressWarnings("RedundantThrows")
+public interface IMediaDataSource2 extends IMediaDataSource {
+    /**
+     * @param position absolute offset in the media to read from
+     * @param buffer direct buffer wrapping native memory. Write the data from
+     *               index 0; position and limit are undefined on entry.
+     *               The buffer must not be used after this call returns.
+     * @param size   maximum number of bytes to write
+     * @return bytes read, 0 if no data is available yet, or negative at end of stream
+     */
+    int readAt(long position, ByteBuffer buffer, int size) throws IOException;
+}
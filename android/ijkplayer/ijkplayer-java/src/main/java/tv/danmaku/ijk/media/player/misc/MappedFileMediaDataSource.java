@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2017 Bilibili
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package tv.danmaku.ijk.media.player.misc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Local file data source backed by a read-only memory mapping.
+ * Reads are a single copy from the page cache into the demuxer buffer.
+ * Files larger than the window size are mapped one window at a time.
+ */
+public class MappedFileMediaDataSource implements IMediaDataSource2 {
+    private static final long DEFAULT_WINDOW_SIZE = 256 * 1024 * 1024;
+
+    private RandomAccessFile mFile;
+    private FileChannel mChannel;
+    private final long mFileSize;
+    private final long mWindowSize;
+
+    private MappedByteBuffer mWindow;
+    private long mWindowStart = -1;
+
+    public MappedFileMediaDataSource(File file) throws IOException {
+        this(file, DEFAULT_WINDOW_SIZE);
+    }
+
+    public MappedFileMediaDataSource(File file, long windowSize) throws IOException {
+        if (windowSize <= 0 || windowSize > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("invalid window size " + windowSize);
+
+        mFile = new RandomAccessFile(file, "r");
+        mChannel = mFile.getChannel();
+        mFileSize = mChannel.size();
+        mWindowSize = windowSize;
+    }
+
+    private MappedByteBuffer mapWindow(long position) throws IOException {
+        long windowStart = position - position % mWindowSize;
+        if (mWindow == null || mWindowStart != windowStart) {
+            long length = Math.min(mWindowSize, mFileSize - windowStart);
+            mWindow = mChannel.map(FileChannel.MapMode.READ_ONLY, windowStart, length);
+            mWindowStart = windowStart;
+        }
+        return mWindow;
+    }
+
+    @Override
+    public int readAt(long position, ByteBuffer buffer, int size) throws IOException {
+        if (mChannel == null)
+            throw new IOException("data source closed");
+        if (position >= mFileSize)
+            return -1;
+        if (size <= 0)
+            return 0;
+
+        buffer.clear();
+        int total = 0;
+        while (total < size && position < mFileSize) {
+            MappedByteBuffer window = mapWindow(position);
+            int offset = (int) (position - mWindowStart);
+            int count = Math.min(size - total, window.capacity() - offset);
+
+            window.limit(offset + count);
+            window.position(offset);
+            buffer.put(window);
+
+            total += count;
+            position += count;
+        }
+        return total;
+    }
+
+    @Override
+    public int readAt(long position, byte[] buffer, int offset, int size) throws IOException {
+        if (mChannel == null)
+            throw new IOException("data source closed");
+        if (position >= mFileSize)
+            return -1;
+        if (size <= 0)
+            return 0;
+
+        int total = 0;
+        while (total < size && position < mFileSize) {
+            MappedByteBuffer window = mapWindow(position);
+            int windowOffset = (int) (position - mWindowStart);
+            int count = Math.min(size - total, window.capacity() - windowOffset);
+
+            window.limit(windowOffset + count);
+            window.position(windowOffset);
+            window.get(buffer, offset + total, count);
+
+            total += count;
+            position += count;
+        }
+        return total;
+    }
+
+    @Override
+    public long getSize() throws IOException {
+        return mFileSize;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mWindow = null;
+        mWindowStart = -1;
+        if (mChannel != null) {
+            mChannel.close();
+            mChannel = null;
+        }
+        if (mFile != null) {
+            mFile.close();
+            mFile = null;
+        }
+    }
+}
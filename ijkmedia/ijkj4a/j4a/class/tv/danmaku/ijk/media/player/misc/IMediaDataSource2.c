@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2015 Zhang Rui <bbcallen@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * https://github.com/Bilibili/jni4android
+ * This file is automatically generated by jni4android, do not modify.
+ */
+
+#include "IMediaDataSource2.h"
+
+typedef struct J4AC_tv_danmaku_ijk_media_player_misc_IMediaDataSource2 {
+    jclass id;
+
+    jmethodID method_readAt;
+} J4AC_tv_danmaku_ijk_media_player_misc_IMediaDataSource2;
+static J4AC_tv_danmaku_ijk_media_player_misc_IMediaDataSource2 class_J4AC_tv_danmaku_ijk_media_player_misc_IMediaDataSource2;
+
+jint J4AC_tv_danmaku_ijk_media_player_misc_IMediaDataSource2__readAt(JNIEnv *env, jobject thiz, jlong position, jobject buffer, jint size)
+{
+    return (*env)->CallIntMethod(env, thiz, class_J4AC_tv_danmaku_ijk_media_player_misc_IMediaDataSource2.method_readAt, position, buffer, size);
+}
+
+jint J4AC_tv_danmaku_ijk_media_player_misc_IMediaDataSource2__readAt__catchAll(JNIEnv *env, jobject thiz, jlong position, jobject buffer, jint size)
+{
+    jint ret_value = J4AC_tv_danmaku_ijk_media_player_misc_IMediaDataSource2__readAt(env, thiz, position, buffer, size);
+    if (J4A_ExceptionCheck__catchAll(env)) {
+        return 0;
+    }
+
+    return ret_value;
+}
+
+int J4A_loadClass__J4AC_tv_danmaku_ijk_media_player_misc_IMediaDataSource2(JNIEnv *env)
+{
+    int         ret                   = -1;
+    const char *J4A_UNUSED(name)      = NULL;
+    const char *J4A_UNUSED(sign)      = NULL;
+    jclass      J4A_UNUSED(class_id)  = NULL;
+    int         J4A_UNUSED(api_level) = 0;
+
+    if (class_J4AC_tv_danmaku_ijk_media_player_misc_IMediaDataSource2.id != NULL)
+        return 0;
+
+    sign = "tv/danmaku/ijk/media/player/misc/IMediaDataSource2";
+    class_J4AC_tv_danmaku_ijk_media_player_misc_IMediaDataSource2.id = J4A_FindClass__asGlobalRef__catchAll(env, sign);
+    if (class_J4AC_tv_danmaku_ijk_media_player_misc_IMediaDataSource2.id == NULL)
+        goto fail;
+
+    class_id = class_J4AC_tv_danmaku_ijk_media_player_misc_IMediaDataSource2.id;
+    name     = "readAt";
+    sign     = "(JLjava/nio/ByteBuffer;I)I";
+    class_J4AC_tv_danmaku_ijk_media_player_misc_IMediaDataSource2.method_readAt = J4A_GetMethodID__catchAll(env, class_id, name, sign);
+    if (class_J4AC_tv_danmaku_ijk_media_player_misc_IMediaDataSource2.method_readAt == NULL)
+        goto fail;
+
+    J4A_ALOGD("J4ALoader: OK: '%s' loaded\n", "tv.danmaku.ijk.media.player.misc.IMediaDataSource2");
+    ret = 0;
+fail:
+    return ret;
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2015 Zhang Rui <bbcallen@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * https://github.com/Bilibili/jni4android
+ * This file is automatically generated by jni4android, do not modify.
+ */
+
+#ifndef J4A__tv_danmaku_ijk_media_player_misc_IMediaDataSource2__H
+#define J4A__tv_danmaku_ijk_media_player_misc_IMediaDataSource2__H
+
+#include "j4a/j4a_base.h"
+
+jint J4AC_tv_danmaku_ijk_media_player_misc_IMediaDataSource2__readAt(JNIEnv *env, jobject thiz, jlong position, jobject buffer, jint size);
+jint J4AC_tv_danmaku_ijk_media_player_misc_IMediaDataSource2__readAt__catchAll(JNIEnv *env, jobject thiz, jlong position, jobject buffer, jint size);
+int J4A_loadClass__J4AC_tv_danmaku_ijk_media_player_misc_IMediaDataSource2(JNIEnv *env);
+
+#define J4A_HAVE_SIMPLE__J4AC_tv_danmaku_ijk_media_player_misc_IMediaDataSource2
+
+#define J4AC_IMediaDataSource2__readAt J4AC_tv_danmaku_ijk_media_player_misc_IMediaDataSource2__readAt
+#define J4AC_IMediaDataSource2__readAt__catchAll J4AC_tv_danmaku_ijk_media_player_misc_IMediaDataSource2__readAt__catchAll
+#define J4A_loadClass__J4AC_IMediaDataSource2 J4A_loadClass__J4AC_tv_danmaku_ijk_media_player_misc_IMediaDataSource2
+
+#endif//J4A__tv_danmaku_ijk_media_player_misc_IMediaDataSource2__H
@@ -8,5 +8,7 @@
 #include "j4a/class/android/os/Build.h"
 #include "j4a/class/android/os/Bundle.h"
 #include "j4a/class/tv/danmaku/ijk/media/player/misc/IMediaDataSource.h"
+#include "j4a/class/tv/danmaku/ijk/media/player/misc/IMediaDataSource2.h"
 #include "j4a/class/tv/danmaku/ijk/media/player/misc/IAndroidIO.h"
+#include "j4a/class/tv/danmaku/ijk/media/player/misc/IAndroidIO2.h"
 #include "j4a/class/tv/danmaku/ijk/media/player/IjkMediaPlayer.h"
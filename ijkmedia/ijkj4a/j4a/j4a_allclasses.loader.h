@@ -8,5 +8,7 @@
     J4A_LOAD_CLASS(android_os_Build);
     J4A_LOAD_CLASS(android_os_Bundle);
     J4A_LOAD_CLASS(tv_danmaku_ijk_media_player_misc_IMediaDataSource);
+    J4A_LOAD_CLASS(tv_danmaku_ijk_media_player_misc_IMediaDataSource2);
     J4A_LOAD_CLASS(tv_danmaku_ijk_media_player_misc_IAndroidIO);
+    J4A_LOAD_CLASS(tv_danmaku_ijk_media_player_misc_IAndroidIO2);
     J4A_LOAD_CLASS(tv_danmaku_ijk_media_player_IjkMediaPlayer);
@@ -28,6 +28,9 @@ LOCAL_CFLAGS += -mfloat-abi=soft
 endif
 LOCAL_CFLAGS += -std=c99
 LOCAL_LDLIBS += -llog -landroid
+# ijkasync keeps its ring positions in 64-bit __atomic builtins, which
+# armeabi lowers to __atomic_*_8 calls provided by libatomic
+LOCAL_LDLIBS += -latomic
 
 LOCAL_C_INCLUDES += $(LOCAL_PATH)
 LOCAL_C_INCLUDES += $(realpath $(LOCAL_PATH)/..)
@@ -39,6 +42,8 @@ LOCAL_SRC_FILES += ff_ffplay.c
 LOCAL_SRC_FILES += ff_ffpipeline.c
 LOCAL_SRC_FILES += ff_ffpipenode.c
 LOCAL_SRC_FILES += ijkmeta.c
+LOCAL_SRC_FILES += ijkstreaminfo.c
+LOCAL_SRC_FILES += ijkframeextractor.c
 LOCAL_SRC_FILES += ijkplayer.c
 
 LOCAL_SRC_FILES += pipeline/ffpipeline_ffplay.c
@@ -47,6 +52,10 @@ LOCAL_SRC_FILES += pipeline/ffpipenode_ffplay_vdec.c
 LOCAL_SRC_FILES += android/ffmpeg_api_jni.c
 LOCAL_SRC_FILES += android/ijkplayer_android.c
 LOCAL_SRC_FILES += android/ijkplayer_jni.c
+LOCAL_SRC_FILES += android/ijkframeextractor_jni.c
+LOCAL_SRC_FILES += android/ijkpreloader_jni.c
+LOCAL_SRC_FILES += android/ijkhttppool_jni.c
+LOCAL_SRC_FILES += android/ijkdns_jni.c
 
 LOCAL_SRC_FILES += android/pipeline/ffpipeline_android.c
 LOCAL_SRC_FILES += android/pipeline/ffpipenode_android_mediacodec_vdec.c
@@ -62,11 +71,14 @@ LOCAL_SRC_FILES += ijkavformat/ijkioandroidio.c
 LOCAL_SRC_FILES += ijkavformat/ijkioprotocol.c
 LOCAL_SRC_FILES += ijkavformat/ijkioapplication.c
 LOCAL_SRC_FILES += ijkavformat/ijkiourlhook.c
+LOCAL_SRC_FILES += ijkavformat/ijkiopreload.c
 
 LOCAL_SRC_FILES  += ijkavformat/ijkasync.c
 LOCAL_SRC_FILES  += ijkavformat/ijkurlhook.c
 LOCAL_SRC_FILES  += ijkavformat/ijklongurl.c
 LOCAL_SRC_FILES  += ijkavformat/ijksegment.c
+LOCAL_SRC_FILES  += ijkavformat/ijktcppool.c
+LOCAL_SRC_FILES  += ijkavformat/ijkdns.c
 
 LOCAL_SRC_FILES += ijkavutil/ijkdict.c
 LOCAL_SRC_FILES += ijkavutil/ijkutils.c
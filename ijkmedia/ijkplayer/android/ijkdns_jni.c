@@ -0,0 +1,148 @@
+/*
+ * ijkdns_jni.c
+ *
+ * Copyright (c) 2017 Bilibili
+ *
+ * This file is part of ijkPlayer.
+ *
+ * ijkPlayer is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * ijkPlayer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with ijkPlayer; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+#include "ijkdns_jni.h"
+
+#include <assert.h>
+#include <jni.h>
+#include "../ijkavformat/ijkdns.h"
+#include "ijksdl/ijksdl_log.h"
+#include "ijksdl/android/ijksdl_android_jni.h"
+
+#define JNI_CLASS_IJK_DNS "tv/danmaku/ijk/media/player/IjkDns"
+
+typedef struct ijk_dns_fields_t {
+    jclass clazz;
+} ijk_dns_fields_t;
+static ijk_dns_fields_t g_clazz;
+
+static void
+IjkDns_native_setDefaultTtl(JNIEnv *env, jclass clazz, jlong ttl_ms)
+{
+    ijkdns_set_default_ttl(ttl_ms);
+}
+
+static jstring
+IjkDns_native_resolve(JNIEnv *env, jclass clazz, jstring host)
+{
+    const char *c_host = NULL;
+    char        ip[IJKDNS_IP_SIZE];
+    int         ret;
+
+    if (!host)
+        return NULL;
+    c_host = (*env)->GetStringUTFChars(env, host, NULL);
+    if (!c_host)
+        return NULL;
+
+    ret = ijkdns_resolve(c_host, ip, sizeof(ip));
+    (*env)->ReleaseStringUTFChars(env, host, c_host);
+    if (ret)
+        return NULL;
+    return (*env)->NewStringUTF(env, ip);
+}
+
+static jstring
+IjkDns_native_lookup(JNIEnv *env, jclass clazz, jstring host)
+{
+    const char *c_host = NULL;
+    char        ip[IJKDNS_IP_SIZE];
+    int         ret;
+
+    if (!host)
+        return NULL;
+    c_host = (*env)->GetStringUTFChars(env, host, NULL);
+    if (!c_host)
+        return NULL;
+
+    ret = ijkdns_lookup(c_host, ip, sizeof(ip));
+    (*env)->ReleaseStringUTFChars(env, host, c_host);
+    if (ret)
+        return NULL;
+    return (*env)->NewStringUTF(env, ip);
+}
+
+static jboolean
+IjkDns_native_put(JNIEnv *env, jclass clazz, jstring host, jstring ip, jlong ttl_ms)
+{
+    const char *c_host = NULL;
+    const char *c_ip   = NULL;
+    jboolean    ret    = JNI_FALSE;
+
+    if (!host || !ip)
+        return JNI_FALSE;
+    c_host = (*env)->GetStringUTFChars(env, host, NULL);
+    c_ip   = (*env)->GetStringUTFChars(env, ip, NULL);
+    if (!c_host || !c_ip)
+        goto fail;
+    if (!ijkdns_is_numeric(c_ip))
+        goto fail;
+
+    ijkdns_put(c_host, c_ip, ttl_ms);
+    ret = JNI_TRUE;
+fail:
+    if (c_ip)
+        (*env)->ReleaseStringUTFChars(env, ip, c_ip);
+    if (c_host)
+        (*env)->ReleaseStringUTFChars(env, host, c_host);
+    return ret;
+}
+
+static void
+IjkDns_native_remove(JNIEnv *env, jclass clazz, jstring host)
+{
+    const char *c_host = NULL;
+
+    if (!host)
+        return;
+    c_host = (*env)->GetStringUTFChars(env, host, NULL);
+    if (!c_host)
+        return;
+
+    ijkdns_remove(c_host);
+    (*env)->ReleaseStringUTFChars(env, host, c_host);
+}
+
+static void
+IjkDns_native_clear(JNIEnv *env, jclass clazz)
+{
+    ijkdns_clear();
+}
+
+static JNINativeMethod g_methods[] = {
+    {"_setDefaultTtl", "(J)V",                                       (void *) IjkDns_native_setDefaultTtl},
+    {"_resolve",       "(Ljava/lang/String;)Ljava/lang/String;",     (void *) IjkDns_native_resolve},
+    {"_lookup",        "(Ljava/lang/String;)Ljava/lang/String;",     (void *) IjkDns_native_lookup},
+    {"_put",           "(Ljava/lang/String;Ljava/lang/String;J)Z",   (void *) IjkDns_native_put},
+    {"_remove",        "(Ljava/lang/String;)V",                      (void *) IjkDns_native_remove},
+    {"_clear",         "()V",                                        (void *) IjkDns_native_clear},
+};
+
+int IjkDns_global_init(JNIEnv *env)
+{
+    int ret = 0;
+
+    IJK_FIND_JAVA_CLASS(env, g_clazz.clazz, JNI_CLASS_IJK_DNS);
+    (*env)->RegisterNatives(env, g_clazz.clazz, g_methods, NELEM(g_methods));
+
+    return ret;
+}
@@ -0,0 +1,162 @@
+/*
+ * ijkframeextractor_jni.c
+ *
+ * Copyright (c) 2017 Bilibili
+ *
+ * This file is part of ijkPlayer.
+ *
+ * ijkPlayer is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * ijkPlayer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with ijkPlayer; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+#include "ijkframeextractor_jni.h"
+
+#include <assert.h>
+#include <string.h>
+#include <jni.h>
+#include "../ff_ffinc.h"
+#include "../ijkframeextractor.h"
+#include "ijksdl/ijksdl_log.h"
+#include "ijksdl/android/ijksdl_android_jni.h"
+
+#define JNI_CLASS_IJK_FRAME_EXTRACTOR "tv/danmaku/ijk/media/player/IjkFrameExtractor"
+
+typedef struct ijk_frame_extractor_fields_t {
+    jclass clazz;
+} ijk_frame_extractor_fields_t;
+static ijk_frame_extractor_fields_t g_clazz;
+
+static jlong
+IjkFrameExtractor_native_create(JNIEnv *env, jclass clazz)
+{
+    return (jlong)(intptr_t)ijkfe_create();
+}
+
+static void
+IjkFrameExtractor_native_abort(JNIEnv *env, jclass clazz, jlong handle)
+{
+    ijkfe_abort((IjkFrameExtractor *)(intptr_t)handle);
+}
+
+static void
+IjkFrameExtractor_native_destroy(JNIEnv *env, jclass clazz, jlong handle)
+{
+    IjkFrameExtractor *fe = (IjkFrameExtractor *)(intptr_t)handle;
+    ijkfe_destroyp(&fe);
+}
+
+static jint
+IjkFrameExtractor_native_open(JNIEnv *env, jclass clazz, jlong handle, jstring url,
+                              jobjectArray keys, jobjectArray values, jlongArray info_out)
+{
+    IjkFrameExtractor *fe     = (IjkFrameExtractor *)(intptr_t)handle;
+    AVDictionary      *opts   = NULL;
+    const char        *c_url  = NULL;
+    jlong              info[3];
+    int                width  = 0;
+    int                height = 0;
+    int64_t            duration_ms = 0;
+    jsize              count  = 0;
+    jsize              i      = 0;
+    int                ret    = AVERROR(EINVAL);
+
+    if (!fe || !url)
+        return ret;
+
+    if (keys && values) {
+        count = (*env)->GetArrayLength(env, keys);
+        if (count > (*env)->GetArrayLength(env, values))
+            count = (*env)->GetArrayLength(env, values);
+    }
+    for (i = 0; i < count; ++i) {
+        jstring key   = (jstring)(*env)->GetObjectArrayElement(env, keys, i);
+        jstring value = (jstring)(*env)->GetObjectArrayElement(env, values, i);
+        int     err   = SDL_JNI_AVDictSetString(env, &opts, key, value);
+        SDL_JNI_DeleteLocalRefP(env, (jobject *)&key);
+        SDL_JNI_DeleteLocalRefP(env, (jobject *)&value);
+        if (err < 0) {
+            ret = AVERROR(ENOMEM);
+            goto fail;
+        }
+    }
+
+    c_url = (*env)->GetStringUTFChars(env, url, NULL);
+    if (!c_url) {
+        ret = AVERROR(ENOMEM);
+        goto fail;
+    }
+
+    ret = ijkfe_open(fe, c_url, &opts);
+    if (ret >= 0 && info_out && (*env)->GetArrayLength(env, info_out) >= 3) {
+        ijkfe_get_info(fe, &width, &height, &duration_ms);
+        info[0] = width;
+        info[1] = height;
+        info[2] = duration_ms;
+        (*env)->SetLongArrayRegion(env, info_out, 0, 3, info);
+    }
+
+fail:
+    if (c_url)
+        (*env)->ReleaseStringUTFChars(env, url, c_url);
+    av_dict_free(&opts);
+    return ret;
+}
+
+static jint
+IjkFrameExtractor_native_extract(JNIEnv *env, jclass clazz, jlong handle, jlong time_ms,
+                                 jobject buffer, jint offset, jint stride, jint width, jint height,
+                                 jlongArray result_out)
+{
+    IjkFrameExtractor *fe       = (IjkFrameExtractor *)(intptr_t)handle;
+    uint8_t           *address  = NULL;
+    jlong              capacity = 0;
+    jlong              result[2];
+    int64_t            frame_time_ms = 0;
+    int64_t            decode_us     = 0;
+    int                ret      = 0;
+
+    if (!fe || !buffer || offset < 0 || stride < width * 4 || width <= 0 || height <= 0)
+        return AVERROR(EINVAL);
+
+    address  = (uint8_t *)(*env)->GetDirectBufferAddress(env, buffer);
+    capacity = (*env)->GetDirectBufferCapacity(env, buffer);
+    if (!address || (jlong)offset + (jlong)stride * (height - 1) + width * 4 > capacity)
+        return AVERROR(EINVAL);
+
+    ret = ijkfe_extract(fe, time_ms, address + offset, stride, width, height, &frame_time_ms, &decode_us);
+    if (ret >= 0 && result_out && (*env)->GetArrayLength(env, result_out) >= 2) {
+        result[0] = frame_time_ms;
+        result[1] = decode_us;
+        (*env)->SetLongArrayRegion(env, result_out, 0, 2, result);
+    }
+    return ret;
+}
+
+static JNINativeMethod g_methods[] = {
+    {"_create",  "()J",  (void *) IjkFrameExtractor_native_create},
+    {"_abort",   "(J)V", (void *) IjkFrameExtractor_native_abort},
+    {"_destroy", "(J)V", (void *) IjkFrameExtractor_native_destroy},
+    {"_open",    "(JLjava/lang/String;[Ljava/lang/String;[Ljava/lang/String;[J)I", (void *) IjkFrameExtractor_native_open},
+    {"_extract", "(JJLjava/nio/ByteBuffer;IIII[J)I", (void *) IjkFrameExtractor_native_extract},
+};
+
+int IjkFrameExtractor_global_init(JNIEnv *env)
+{
+    int ret = 0;
+
+    IJK_FIND_JAVA_CLASS(env, g_clazz.clazz, JNI_CLASS_IJK_FRAME_EXTRACTOR);
+    (*env)->RegisterNatives(env, g_clazz.clazz, g_methods, NELEM(g_methods));
+
+    return ret;
+}
@@ -0,0 +1,81 @@
+/*
+ * ijkpreloader_jni.c
+ *
+ * Copyright (c) 2017 Bilibili
+ *
+ * This file is part of ijkPlayer.
+ *
+ * ijkPlayer is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * ijkPlayer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with ijkPlayer; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+#include "ijkhttppool_jni.h"
+
+#include <assert.h>
+#include <jni.h>
+#include "../ijkavformat/ijktcppool.h"
+#include "ijksdl/ijksdl_log.h"
+#include "ijksdl/android/ijksdl_android_jni.h"
+
+#define JNI_CLASS_IJK_HTTP_CONNECTION_POOL "tv/danmaku/ijk/media/player/IjkHttpConnectionPool"
+
+typedef struct ijk_http_connection_pool_fields_t {
+    jclass clazz;
+} ijk_http_connection_pool_fields_t;
+static ijk_http_connection_pool_fields_t g_clazz;
+
+static void
+IjkHttpConnectionPool_native_setLimits(JNIEnv *env, jclass clazz, jint max_idle_per_host, jlong idle_timeout_ms)
+{
+    ijktcppool_set_limits(max_idle_per_host, idle_timeout_ms);
+}
+
+static void
+IjkHttpConnectionPool_native_getStatistic(JNIEnv *env, jclass clazz, jlongArray stat_out)
+{
+    IjkTcpPoolStatistic statistic;
+    jlong stat[4];
+
+    if (!stat_out || (*env)->GetArrayLength(env, stat_out) < 4)
+        return;
+
+    ijktcppool_get_statistic(&statistic);
+    stat[0] = statistic.hit_count;
+    stat[1] = statistic.miss_count;
+    stat[2] = statistic.evict_count;
+    stat[3] = statistic.idle_count;
+    (*env)->SetLongArrayRegion(env, stat_out, 0, 4, stat);
+}
+
+static void
+IjkHttpConnectionPool_native_clear(JNIEnv *env, jclass clazz)
+{
+    ijktcppool_clear();
+}
+
+static JNINativeMethod g_methods[] = {
+    {"_setLimits",    "(IJ)V",  (void *) IjkHttpConnectionPool_native_setLimits},
+    {"_getStatistic", "([J)V",  (void *) IjkHttpConnectionPool_native_getStatistic},
+    {"_clear",        "()V",    (void *) IjkHttpConnectionPool_native_clear},
+};
+
+int IjkHttpConnectionPool_global_init(JNIEnv *env)
+{
+    int ret = 0;
+
+    IJK_FIND_JAVA_CLASS(env, g_clazz.clazz, JNI_CLASS_IJK_HTTP_CONNECTION_POOL);
+    (*env)->RegisterNatives(env, g_clazz.clazz, g_methods, NELEM(g_methods));
+
+    return ret;
+}
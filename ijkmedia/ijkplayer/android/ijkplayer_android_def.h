@@ -43,6 +43,7 @@ enum media_event_type {
 
 
     MEDIA_SET_VIDEO_SAR     = 10001,    // arg1 = sar.num, arg2 = sar.den
+    MEDIA_STARTUP_WATERFALL = 10003,    // obj = long[] begin and end of each startup stage
 };
 
 // Generic error codes for the media player framework.  Errors are fatal, the
@@ -34,11 +34,16 @@
 #include "ijksdl/ijksdl_log.h"
 #include "../ff_ffplay.h"
 #include "ffmpeg_api_jni.h"
+#include "ijkframeextractor_jni.h"
+#include "ijkpreloader_jni.h"
+#include "ijkhttppool_jni.h"
+#include "ijkdns_jni.h"
 #include "ijkplayer_android_def.h"
 #include "ijkplayer_android.h"
 #include "ijksdl/android/ijksdl_android_jni.h"
 #include "ijksdl/android/ijksdl_codec_android_mediadef.h"
 #include "ijkavformat/ijkavformat.h"
+#include "ijkavformat/ijkdns.h"
 
 #define JNI_MODULE_PACKAGE      "tv/danmaku/ijk/media/player"
 #define JNI_CLASS_IJKPLAYER     "tv/danmaku/ijk/media/player/IjkMediaPlayer"
@@ -197,6 +202,21 @@ LABEL_RETURN:
     ijkmp_dec_ref_p(&mp);
 }
 
+static int
+jni_is_instance_of(JNIEnv *env, jobject obj, const char *class_sign)
+{
+    jclass clazz = NULL;
+    int    ret   = 0;
+
+    clazz = J4A_FindClass__catchAll(env, class_sign);
+    if (!clazz)
+        return 0;
+
+    ret = (*env)->IsInstanceOf(env, obj, clazz) ? 1 : 0;
+    J4A_DeleteLocalRef(env, clazz);
+    return ret;
+}
+
 static void
 IjkMediaPlayer_setDataSourceCallback(JNIEnv *env, jobject thiz, jobject callback)
 {
@@ -214,6 +234,9 @@ IjkMediaPlayer_setDataSourceCallback(JNIEnv *env, jobject thiz, jobject callback
     ALOGV("setDataSourceCallback: %"PRId64"\n", nativeMediaDataSource);
     snprintf(uri, sizeof(uri), "ijkmediadatasource:%"PRId64, nativeMediaDataSource);
 
+    ijkmp_set_option_int(mp, FFP_OPT_CATEGORY_FORMAT, "ijkmds-direct-read",
+                         jni_is_instance_of(env, callback, "tv/danmaku/ijk/media/player/misc/IMediaDataSource2"));
+
     retval = ijkmp_set_data_source(mp, uri);
 
     IJK_CHECK_MPRET_GOTO(retval, env, LABEL_RETURN);
@@ -235,6 +258,8 @@ IjkMediaPlayer_setAndroidIOCallback(JNIEnv *env, jobject thiz, jobject callback)
     JNI_CHECK_GOTO(nativeAndroidIO, env, "java/lang/IllegalStateException", "mpjni: jni_set_ijkio_androidio: NewGlobalRef", LABEL_RETURN);
 
     ijkmp_set_option_int(mp, FFP_OPT_CATEGORY_FORMAT, "androidio-inject-callback", nativeAndroidIO);
+    ijkmp_set_option_int(mp, FFP_OPT_CATEGORY_FORMAT, "androidio-direct-read",
+                         jni_is_instance_of(env, callback, "tv/danmaku/ijk/media/player/misc/IAndroidIO2"));
 
 LABEL_RETURN:
     ijkmp_dec_ref_p(&mp);
@@ -398,6 +423,26 @@ IjkMediaPlayer_reset(JNIEnv *env, jobject thiz)
     ijkmp_dec_ref_p(&mp);
 }
 
+static void
+IjkMediaPlayer_warmReset(JNIEnv *env, jobject thiz)
+{
+    MPTRACE("%s\n", __func__);
+    IjkMediaPlayer *mp = jni_get_media_player(env, thiz);
+    JNI_CHECK_GOTO(mp, env, "java/lang/IllegalStateException", "mpjni: warmReset: null mp", LABEL_RETURN);
+
+    ijkmp_android_set_surface(env, mp, NULL);
+    ijkmp_reset(mp);
+    jni_set_media_data_source(env, thiz, NULL);
+    jni_set_ijkio_androidio(env, thiz, NULL);
+
+    // cleared by ffp_reset(), weak_thiz itself lives until release
+    ijkmp_set_inject_opaque(mp, ijkmp_get_weak_thiz(mp));
+    ijkmp_set_ijkio_inject_opaque(mp, ijkmp_get_weak_thiz(mp));
+
+LABEL_RETURN:
+    ijkmp_dec_ref_p(&mp);
+}
+
 static void
 IjkMediaPlayer_setLoopCount(JNIEnv *env, jobject thiz, jint loop_count)
 {
@@ -480,6 +525,69 @@ LABEL_RETURN:
     return;
 }
 
+#define IJK_PROPERTY_SNAPSHOT_MAX 64
+static void
+ijkMediaPlayer_getPropertySnapshot(JNIEnv *env, jobject thiz,
+    jintArray jint64_ids, jlongArray jint64_values,
+    jintArray jfloat_ids, jfloatArray jfloat_values)
+{
+    jint   int64_ids[IJK_PROPERTY_SNAPSHOT_MAX];
+    jlong  int64_values[IJK_PROPERTY_SNAPSHOT_MAX];
+    jint   float_ids[IJK_PROPERTY_SNAPSHOT_MAX];
+    jfloat float_values[IJK_PROPERTY_SNAPSHOT_MAX];
+    int    int64_count = 0;
+    int    float_count = 0;
+    IjkMediaPlayer *mp = jni_get_media_player(env, thiz);
+    JNI_CHECK_GOTO(mp, env, NULL, "mpjni: getPropertySnapshot: null mp", LABEL_RETURN);
+    JNI_CHECK_GOTO(jint64_ids && jint64_values && jfloat_ids && jfloat_values, env, "java/lang/IllegalArgumentException", "mpjni: getPropertySnapshot: null array", LABEL_RETURN);
+
+    int64_count = (*env)->GetArrayLength(env, jint64_ids);
+    float_count = (*env)->GetArrayLength(env, jfloat_ids);
+    JNI_CHECK_GOTO(int64_count <= IJK_PROPERTY_SNAPSHOT_MAX && int64_count <= (*env)->GetArrayLength(env, jint64_values),
+        env, "java/lang/IllegalArgumentException", "mpjni: getPropertySnapshot: invalid int64 array", LABEL_RETURN);
+    JNI_CHECK_GOTO(float_count <= IJK_PROPERTY_SNAPSHOT_MAX && float_count <= (*env)->GetArrayLength(env, jfloat_values),
+        env, "java/lang/IllegalArgumentException", "mpjni: getPropertySnapshot: invalid float array", LABEL_RETURN);
+
+    (*env)->GetIntArrayRegion(env, jint64_ids, 0, int64_count, int64_ids);
+    (*env)->GetLongArrayRegion(env, jint64_values, 0, int64_count, int64_values);
+    (*env)->GetIntArrayRegion(env, jfloat_ids, 0, float_count, float_ids);
+    (*env)->GetFloatArrayRegion(env, jfloat_values, 0, float_count, float_values);
+    if (J4A_ExceptionCheck__throwAny(env))
+        goto LABEL_RETURN;
+
+    ijkmp_get_property_snapshot(mp,
+        (const int *) int64_ids, (int64_t *) int64_values, int64_count,
+        (const int *) float_ids, (float *) float_values, float_count);
+
+    (*env)->SetLongArrayRegion(env, jint64_values, 0, int64_count, int64_values);
+    (*env)->SetFloatArrayRegion(env, jfloat_values, 0, float_count, float_values);
+
+LABEL_RETURN:
+    ijkmp_dec_ref_p(&mp);
+    return;
+}
+
+static jlongArray
+ijkMediaPlayer_getCacheConnectionSpeeds(JNIEnv *env, jobject thiz)
+{
+    jlongArray jspeeds = NULL;
+    int64_t speeds[IJKIOAPP_CACHE_MAX_CONNECTIONS];
+    int count = 0;
+    IjkMediaPlayer *mp = jni_get_media_player(env, thiz);
+    JNI_CHECK_GOTO(mp, env, NULL, "mpjni: getCacheConnectionSpeeds: null mp", LABEL_RETURN);
+
+    count = ijkmp_get_cache_connection_speeds(mp, speeds, IJKIOAPP_CACHE_MAX_CONNECTIONS);
+    count = FFMIN(count, IJKIOAPP_CACHE_MAX_CONNECTIONS);
+
+    jspeeds = (*env)->NewLongArray(env, count);
+    JNI_CHECK_GOTO(jspeeds, env, "java/lang/OutOfMemoryError", "mpjni: getCacheConnectionSpeeds: oom", LABEL_RETURN);
+    (*env)->SetLongArrayRegion(env, jspeeds, 0, count, (const jlong *) speeds);
+
+LABEL_RETURN:
+    ijkmp_dec_ref_p(&mp);
+    return jspeeds;
+}
+
 static void
 ijkMediaPlayer_setStreamSelected(JNIEnv *env, jobject thiz, jint stream, jboolean selected)
 {
@@ -740,6 +848,154 @@ LABEL_RETURN:
     return jret_bundle;
 }
 
+// keep in sync with IjkMediaMeta.FLAT_*
+#define META_FLAT_LONG_DURATION_US      0
+#define META_FLAT_LONG_START_US         1
+#define META_FLAT_LONG_BITRATE          2
+#define META_FLAT_LONG_VIDEO_STREAM     3
+#define META_FLAT_LONG_AUDIO_STREAM     4
+#define META_FLAT_LONG_TIMEDTEXT_STREAM 5
+#define META_FLAT_LONG_STREAM_COUNT     6
+#define META_FLAT_LONG_HEADER           7
+
+#define META_FLAT_STRING_FORMAT         0
+#define META_FLAT_STRING_HEADER         1
+
+static const char *g_meta_flat_stream_long_keys[] = {
+    IJKM_KEY_BITRATE,
+    IJKM_KEY_WIDTH,
+    IJKM_KEY_HEIGHT,
+    IJKM_KEY_FPS_NUM,
+    IJKM_KEY_FPS_DEN,
+    IJKM_KEY_TBR_NUM,
+    IJKM_KEY_TBR_DEN,
+    IJKM_KEY_SAR_NUM,
+    IJKM_KEY_SAR_DEN,
+    IJKM_KEY_SAMPLE_RATE,
+    IJKM_KEY_CHANNEL_LAYOUT,
+};
+
+static const char *g_meta_flat_stream_string_keys[] = {
+    IJKM_KEY_TYPE,
+    IJKM_KEY_LANGUAGE,
+    IJKM_KEY_CODEC_NAME,
+    IJKM_KEY_CODEC_PROFILE,
+    IJKM_KEY_CODEC_LONG_NAME,
+};
+
+static jint
+IjkMediaPlayer_getMediaMetaGeneration(JNIEnv *env, jobject thiz)
+{
+    jint generation = 0;
+    IjkMediaMeta *meta = NULL;
+    IjkMediaPlayer *mp = jni_get_media_player(env, thiz);
+    JNI_CHECK_GOTO(mp, env, "java/lang/IllegalStateException", "mpjni: getMediaMetaGeneration: null mp", LABEL_RETURN);
+
+    meta = ijkmp_get_meta_l(mp);
+    if (!meta)
+        goto LABEL_RETURN;
+
+    ijkmeta_lock(meta);
+    generation = ijkmeta_get_generation_l(meta);
+    ijkmeta_unlock(meta);
+
+LABEL_RETURN:
+    ijkmp_dec_ref_p(&mp);
+    return generation;
+}
+
+static int
+set_meta_flat_string(JNIEnv *env, jobjectArray jstrings, jsize index, IjkMediaMeta *meta, const char *key)
+{
+    const char *value = ijkmeta_get_string_l(meta, key);
+    jstring     jvalue = NULL;
+
+    if (!value)
+        return 0;
+
+    jvalue = (*env)->NewStringUTF(env, value);
+    if (J4A_ExceptionCheck__throwAny(env) || !jvalue)
+        return -1;
+
+    (*env)->SetObjectArrayElement(env, jstrings, index, jvalue);
+    SDL_JNI_DeleteLocalRefP(env, (jobject *)&jvalue);
+    return J4A_ExceptionCheck__throwAny(env) ? -1 : 0;
+}
+
+/*
+ * Flat, typed copy of the media meta, without a Bundle per stream.
+ * Returns the meta generation, or -(stream count) - 1 when the arrays are too small.
+ */
+static jint
+IjkMediaPlayer_getMediaMetaFlat(JNIEnv *env, jobject thiz, jlongArray jlongs, jobjectArray jstrings)
+{
+    jint retval = 0;
+    bool is_locked = false;
+    jlong *longs = NULL;
+    jsize long_count = 0;
+    jsize string_count = 0;
+    size_t stream_count = 0;
+    const int stream_longs = NELEM(g_meta_flat_stream_long_keys);
+    const int stream_strings = NELEM(g_meta_flat_stream_string_keys);
+    IjkMediaMeta *meta = NULL;
+    IjkMediaPlayer *mp = jni_get_media_player(env, thiz);
+    JNI_CHECK_GOTO(mp, env, "java/lang/IllegalStateException", "mpjni: getMediaMetaFlat: null mp", LABEL_RETURN);
+    JNI_CHECK_GOTO(jlongs && jstrings, env, "java/lang/IllegalArgumentException", "mpjni: getMediaMetaFlat: null array", LABEL_RETURN);
+
+    meta = ijkmp_get_meta_l(mp);
+    if (!meta)
+        goto LABEL_RETURN;
+
+    ijkmeta_lock(meta);
+    is_locked = true;
+
+    stream_count = ijkmeta_get_children_count_l(meta);
+    long_count   = (*env)->GetArrayLength(env, jlongs);
+    string_count = (*env)->GetArrayLength(env, jstrings);
+    if (long_count < META_FLAT_LONG_HEADER + stream_count * stream_longs ||
+        string_count < META_FLAT_STRING_HEADER + stream_count * stream_strings) {
+        retval = -(jint)stream_count - 1;
+        goto LABEL_RETURN;
+    }
+
+    longs = (*env)->GetLongArrayElements(env, jlongs, NULL);
+    JNI_CHECK_GOTO(longs, env, "java/lang/OutOfMemoryError", "mpjni: getMediaMetaFlat: longs oom", LABEL_RETURN);
+
+    longs[META_FLAT_LONG_DURATION_US]      = ijkmeta_get_int64_l(meta, IJKM_KEY_DURATION_US, 0);
+    longs[META_FLAT_LONG_START_US]         = ijkmeta_get_int64_l(meta, IJKM_KEY_START_US, 0);
+    longs[META_FLAT_LONG_BITRATE]          = ijkmeta_get_int64_l(meta, IJKM_KEY_BITRATE, 0);
+    longs[META_FLAT_LONG_VIDEO_STREAM]     = ijkmeta_get_int64_l(meta, IJKM_KEY_VIDEO_STREAM, -1);
+    longs[META_FLAT_LONG_AUDIO_STREAM]     = ijkmeta_get_int64_l(meta, IJKM_KEY_AUDIO_STREAM, -1);
+    longs[META_FLAT_LONG_TIMEDTEXT_STREAM] = ijkmeta_get_int64_l(meta, IJKM_KEY_TIMEDTEXT_STREAM, -1);
+    longs[META_FLAT_LONG_STREAM_COUNT]     = stream_count;
+    if (set_meta_flat_string(env, jstrings, META_FLAT_STRING_FORMAT, meta, IJKM_KEY_FORMAT))
+        goto LABEL_RETURN;
+
+    for (size_t i = 0; i < stream_count; ++i) {
+        IjkMediaMeta *stream_meta = ijkmeta_get_child_l(meta, i);
+        jlong *stream_long = longs + META_FLAT_LONG_HEADER + i * stream_longs;
+        jsize  string_base = META_FLAT_STRING_HEADER + i * stream_strings;
+
+        for (int j = 0; j < stream_longs; ++j)
+            stream_long[j] = ijkmeta_get_int64_l(stream_meta, g_meta_flat_stream_long_keys[j], 0);
+        for (int j = 0; j < stream_strings; ++j) {
+            if (set_meta_flat_string(env, jstrings, string_base + j, stream_meta, g_meta_flat_stream_string_keys[j]))
+                goto LABEL_RETURN;
+        }
+    }
+
+    retval = ijkmeta_get_generation_l(meta);
+
+LABEL_RETURN:
+    if (longs)
+        (*env)->ReleaseLongArrayElements(env, jlongs, longs, 0);
+    if (is_locked && meta)
+        ijkmeta_unlock(meta);
+
+    ijkmp_dec_ref_p(&mp);
+    return retval;
+}
+
 static void
 IjkMediaPlayer_native_init(JNIEnv *env)
 {
@@ -849,6 +1105,27 @@ inject_callback(void *opaque, int what, void *data, size_t data_size)
             ret = 0;
             break;
         }
+        case IJKDNS_CTRL_WILL_RESOLVE: {
+            IjkDnsControl *real_data = (IjkDnsControl *)data;
+            jbundle = J4AC_Bundle__Bundle__catchAll(env);
+            if (!jbundle) {
+                ALOGE("%s: J4AC_Bundle__Bundle__catchAll failed for case %d\n", __func__, what);
+                goto fail;
+            }
+            J4AC_Bundle__putString__withCString__catchAll(env, jbundle, "host", real_data->host);
+            jboolean is_handled = J4AC_IjkMediaPlayer__onNativeInvoke(env, weak_thiz, what, jbundle);
+            if (J4A_ExceptionCheck__catchAll(env) || !is_handled)
+                goto fail;
+
+            J4AC_Bundle__getString__withCString__asCBuffer(env, jbundle, "ip", real_data->ip, sizeof(real_data->ip));
+            if (J4A_ExceptionCheck__catchAll(env)) {
+                real_data->ip[0] = '\0';
+                goto fail;
+            }
+            real_data->ttl_ms = J4AC_Bundle__getLong__withCString__catchAll(env, jbundle, "ttl_ms");
+            ret = 0;
+            break;
+        }
         default: {
             ret = 0;
         }
@@ -1019,6 +1296,18 @@ static void message_loop_n(JNIEnv *env, IjkMediaPlayer *mp)
             MPTRACE("FFP_MSG_AUDIO_SEEK_RENDERING_START:\n");
             post_event(env, weak_thiz, MEDIA_INFO, MEDIA_INFO_AUDIO_SEEK_RENDERING_START, msg.arg1);
             break;
+        case FFP_MSG_STARTUP_WATERFALL:
+            MPTRACE("FFP_MSG_STARTUP_WATERFALL:\n");
+            if (msg.obj) {
+                jsize count = msg.arg1;
+                jlongArray stages = (*env)->NewLongArray(env, count);
+                if (J4A_ExceptionCheck__catchAll(env) || !stages)
+                    break;
+                (*env)->SetLongArrayRegion(env, stages, 0, count, (const jlong *) msg.obj);
+                post_event2(env, weak_thiz, MEDIA_STARTUP_WATERFALL, 0, 0, stages);
+                J4A_DeleteLocalRef__p(env, &stages);
+            }
+            break;
         default:
             ALOGE("unknown FFP_MSG_xxx(%d)\n", msg.what);
             break;
@@ -1156,6 +1445,7 @@ static JNINativeMethod g_methods[] = {
     { "getDuration",            "()J",      (void *) IjkMediaPlayer_getDuration },
     { "_release",               "()V",      (void *) IjkMediaPlayer_release },
     { "_reset",                 "()V",      (void *) IjkMediaPlayer_reset },
+    { "_warmReset",             "()V",      (void *) IjkMediaPlayer_warmReset },
     { "setVolume",              "(FF)V",    (void *) IjkMediaPlayer_setVolume },
     { "getAudioSessionId",      "()I",      (void *) IjkMediaPlayer_getAudioSessionId },
     { "native_init",            "()V",      (void *) IjkMediaPlayer_native_init },
@@ -1169,6 +1459,8 @@ static JNINativeMethod g_methods[] = {
     { "_getVideoCodecInfo",     "()Ljava/lang/String;",     (void *) IjkMediaPlayer_getVideoCodecInfo },
     { "_getAudioCodecInfo",     "()Ljava/lang/String;",     (void *) IjkMediaPlayer_getAudioCodecInfo },
     { "_getMediaMeta",          "()Landroid/os/Bundle;",    (void *) IjkMediaPlayer_getMediaMeta },
+    { "_getMediaMetaGeneration", "()I",                     (void *) IjkMediaPlayer_getMediaMetaGeneration },
+    { "_getMediaMetaFlat",      "([J[Ljava/lang/String;)I", (void *) IjkMediaPlayer_getMediaMetaFlat },
     { "_setLoopCount",          "(I)V",                     (void *) IjkMediaPlayer_setLoopCount },
     { "_getLoopCount",          "()I",                      (void *) IjkMediaPlayer_getLoopCount },
     { "_getPropertyFloat",      "(IF)F",                    (void *) ijkMediaPlayer_getPropertyFloat },
@@ -1176,6 +1468,8 @@ static JNINativeMethod g_methods[] = {
     { "_getPropertyLong",       "(IJ)J",                    (void *) ijkMediaPlayer_getPropertyLong },
     { "_setPropertyLong",       "(IJ)V",                    (void *) ijkMediaPlayer_setPropertyLong },
     { "_setStreamSelected",     "(IZ)V",                    (void *) ijkMediaPlayer_setStreamSelected },
+    { "_getPropertySnapshot",   "([I[J[I[F)V",              (void *) ijkMediaPlayer_getPropertySnapshot },
+    { "_getCacheConnectionSpeeds", "()[J",                  (void *) ijkMediaPlayer_getCacheConnectionSpeeds },
 
     { "native_profileBegin",    "(Ljava/lang/String;)V",    (void *) IjkMediaPlayer_native_profileBegin },
     { "native_profileEnd",      "()V",                      (void *) IjkMediaPlayer_native_profileEnd },
@@ -1204,6 +1498,10 @@ JNIEXPORT jint JNI_OnLoad(JavaVM *vm, void *reserved)
     ijkmp_global_set_inject_callback(inject_callback);
 
     FFmpegApi_global_init(env);
+    IjkPreloader_global_init(env);
+    IjkFrameExtractor_global_init(env);
+    IjkHttpConnectionPool_global_init(env);
+    IjkDns_global_init(env);
 
     return JNI_VERSION_1_4;
 }
@@ -0,0 +1,131 @@
+/*
+ * ijkpreloader_jni.c
+ *
+ * Copyright (c) 2017 Bilibili
+ *
+ * This file is part of ijkPlayer.
+ *
+ * ijkPlayer is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * ijkPlayer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with ijkPlayer; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+#include "ijkpreloader_jni.h"
+
+#include <assert.h>
+#include <string.h>
+#include <jni.h>
+#include "../ff_ffinc.h"
+#include "../ijkavformat/ijkiopreload.h"
+#include "ijksdl/ijksdl_log.h"
+#include "ijksdl/android/ijksdl_android_jni.h"
+
+#define JNI_CLASS_IJK_PRELOADER "tv/danmaku/ijk/media/player/IjkPreloader"
+
+typedef struct ijk_preloader_fields_t {
+    jclass clazz;
+} ijk_preloader_fields_t;
+static ijk_preloader_fields_t g_clazz;
+
+static jlong
+IjkPreloader_native_create(JNIEnv *env, jclass clazz)
+{
+    return (jlong)(intptr_t)ijkio_preload_create();
+}
+
+static void
+IjkPreloader_native_abort(JNIEnv *env, jclass clazz, jlong handle)
+{
+    ijkio_preload_abort((IjkIOPreloadContext *)(intptr_t)handle);
+}
+
+static void
+IjkPreloader_native_destroy(JNIEnv *env, jclass clazz, jlong handle)
+{
+    IjkIOPreloadContext *h = (IjkIOPreloadContext *)(intptr_t)handle;
+    ijkio_preload_destroyp(&h);
+}
+
+static jint
+IjkPreloader_native_run(JNIEnv *env, jclass clazz, jlong handle, jstring url,
+                        jobjectArray keys, jobjectArray values,
+                        jlong max_bytes, jlong max_duration_ms, jlongArray stat_out)
+{
+    IjkIOPreloadContext  *h          = (IjkIOPreloadContext *)(intptr_t)handle;
+    AVDictionary         *opts       = NULL;
+    IjkIOPreloadStatistic statistic;
+    const char           *c_url      = NULL;
+    jlong                 stat[3];
+    jsize                 count      = 0;
+    jsize                 i          = 0;
+    int                   ret        = AVERROR(EINVAL);
+
+    memset(&statistic, 0, sizeof(statistic));
+    if (!h || !url)
+        return ret;
+
+    if (keys && values) {
+        count = (*env)->GetArrayLength(env, keys);
+        if (count > (*env)->GetArrayLength(env, values))
+            count = (*env)->GetArrayLength(env, values);
+    }
+    for (i = 0; i < count; ++i) {
+        jstring key   = (jstring)(*env)->GetObjectArrayElement(env, keys, i);
+        jstring value = (jstring)(*env)->GetObjectArrayElement(env, values, i);
+        int     err   = SDL_JNI_AVDictSetString(env, &opts, key, value);
+        SDL_JNI_DeleteLocalRefP(env, (jobject *)&key);
+        SDL_JNI_DeleteLocalRefP(env, (jobject *)&value);
+        if (err < 0) {
+            ret = AVERROR(ENOMEM);
+            goto fail;
+        }
+    }
+
+    c_url = (*env)->GetStringUTFChars(env, url, NULL);
+    if (!c_url) {
+        ret = AVERROR(ENOMEM);
+        goto fail;
+    }
+
+    ret = ijkio_preload_run(h, c_url, &opts, max_bytes, max_duration_ms, &statistic);
+
+    if (stat_out && (*env)->GetArrayLength(env, stat_out) >= 3) {
+        stat[0] = statistic.read_bytes;
+        stat[1] = statistic.network_bytes;
+        stat[2] = statistic.duration_ms;
+        (*env)->SetLongArrayRegion(env, stat_out, 0, 3, stat);
+    }
+
+fail:
+    if (c_url)
+        (*env)->ReleaseStringUTFChars(env, url, c_url);
+    av_dict_free(&opts);
+    return ret;
+}
+
+static JNINativeMethod g_methods[] = {
+    {"_create",  "()J",  (void *) IjkPreloader_native_create},
+    {"_abort",   "(J)V", (void *) IjkPreloader_native_abort},
+    {"_destroy", "(J)V", (void *) IjkPreloader_native_destroy},
+    {"_run",     "(JLjava/lang/String;[Ljava/lang/String;[Ljava/lang/String;JJ[J)I", (void *) IjkPreloader_native_run},
+};
+
+int IjkPreloader_global_init(JNIEnv *env)
+{
+    int ret = 0;
+
+    IJK_FIND_JAVA_CLASS(env, g_clazz.clazz, JNI_CLASS_IJK_PRELOADER);
+    (*env)->RegisterNatives(env, g_clazz.clazz, g_methods, NELEM(g_methods));
+
+    return ret;
+}
@@ -41,6 +41,7 @@
 #define FFP_MSG_COMPONENT_OPEN              409
 #define FFP_MSG_VIDEO_SEEK_RENDERING_START  410
 #define FFP_MSG_AUDIO_SEEK_RENDERING_START  411
+#define FFP_MSG_STARTUP_WATERFALL           413     /* arg1 = count, obj = FFStartupWaterfall.stages */
 
 #define FFP_MSG_BUFFERING_START             500
 #define FFP_MSG_BUFFERING_END               501
@@ -66,6 +67,7 @@
 #define FFP_PROP_FLOAT_AVDELAY                          10004
 #define FFP_PROP_FLOAT_AVDIFF                           10005
 #define FFP_PROP_FLOAT_DROP_FRAME_RATE                  10007
+#define FFP_PROP_FLOAT_FRAMEDROP_TARGET_FPS             10008
 
 #define FFP_PROP_INT64_SELECTED_VIDEO_STREAM            20001
 #define FFP_PROP_INT64_SELECTED_AUDIO_STREAM            20002
@@ -108,6 +110,27 @@
 #define FFP_PROP_INT64_HW_DECODEC_ERROR_CODE            20212
 #define FFP_PROP_INT64_ASYNC_ERROR_CODE                 20213
 #define FFP_PROP_INT64_DEMUX_ERROR_CODE                 20214
+#define FFP_PROP_INT64_CACHE_STATISTIC_READ_BYTES       20215
+#define FFP_PROP_INT64_VIDEO_PACKET_QUEUE_WAIT_COUNT    20216
+#define FFP_PROP_INT64_VIDEO_PACKET_QUEUE_WAIT_TIME     20217
+#define FFP_PROP_INT64_VIDEO_PACKET_QUEUE_CONTENTION    20218
+#define FFP_PROP_INT64_AUDIO_PACKET_QUEUE_WAIT_COUNT    20219
+#define FFP_PROP_INT64_AUDIO_PACKET_QUEUE_WAIT_TIME     20220
+#define FFP_PROP_INT64_AUDIO_PACKET_QUEUE_CONTENTION    20221
+#define FFP_PROP_INT64_VIDEO_OVERLAY_ALLOC_COUNT        20222
+#define FFP_PROP_INT64_VIDEO_OVERLAY_POOL_HIT_COUNT     20223
+#define FFP_PROP_INT64_VIDEO_OVERLAY_POOL_SIZE          20224
+#define FFP_PROP_INT64_FRAMEDROP_MAX_LEVEL              20225
+#define FFP_PROP_INT64_FRAMEDROP_LEVEL                  20226
+#define FFP_PROP_INT64_LIVE_LATENCY                     20232
+#define FFP_PROP_INT64_LIVE_LATENCY_TARGET              20233
+#define FFP_PROP_INT64_LIVE_LATENCY_JUMP_COUNT          20234
+#define FFP_PROP_INT64_CACHE_STATISTIC_RANGE_BYTES      20235
+#define FFP_PROP_INT64_CACHE_STATISTIC_CONNECTIONS      20236
+#define FFP_PROP_INT64_DROP_FRAME_COUNT                 20237
+#define FFP_PROP_INT64_STREAM_INFO_CACHE                20238
+#define FFP_PROP_INT64_AUDIO_INIT_DURATION              20239
+#define FFP_PROP_INT64_VIDEO_INIT_DURATION              20240
 
 #define FFP_PROP_INT64_DELETE_FRAMEOUTPUT_TASK          30001
 
@@ -66,12 +66,14 @@
 #include "libavutil/base64.h"
 #include "ijksdl/ijksdl_log.h"
 #include "ijkavformat/ijkavformat.h"
+#include "ijkavformat/ijkdns.h"
 #include "ff_cmdutils.h"
 #include "ff_fferror.h"
 #include "ff_ffpipeline.h"
 #include "ff_ffpipenode.h"
 #include "ff_ffplay_debug.h"
 #include "ijkmeta.h"
+#include "ijkstreaminfo.h"
 #include "ijkversion.h"
 #include "ijkplayer.h"
 #include <stdatomic.h>
@@ -141,51 +143,103 @@ int64_t get_valid_channel_layout(int64_t channel_layout, int channels)
 
 static void free_picture(Frame *vp);
 
+static void packet_queue_lock(PacketQueue *q)
+{
+    int contended = __atomic_fetch_add(&q->nb_lockers, 1, __ATOMIC_ACQUIRE) > 0;
+
+    SDL_LockMutex(q->mutex);
+    if (contended)
+        q->contention_count++;
+}
+
+static void packet_queue_unlock(PacketQueue *q)
+{
+    SDL_UnlockMutex(q->mutex);
+    __atomic_fetch_sub(&q->nb_lockers, 1, __ATOMIC_RELEASE);
+}
+
+/* consumer side, with the mutex held */
+static void packet_queue_wait(PacketQueue *q)
+{
+    int64_t start = av_gettime_relative();
+
+    __atomic_fetch_sub(&q->nb_lockers, 1, __ATOMIC_RELEASE);
+    SDL_CondWait(q->cond, q->mutex);
+    __atomic_fetch_add(&q->nb_lockers, 1, __ATOMIC_ACQUIRE);
+
+    q->wait_count++;
+    q->wait_time_us += av_gettime_relative() - start;
+}
+
+static PacketQueueSegment *packet_queue_alloc_segment(PacketQueue *q)
+{
+    PacketQueueSegment *seg = q->first_seg;
+    int i;
+
+    /* segments before the one of the consumer have been passed for good */
+    if (seg && seg != __atomic_load_n(&q->head_seg, __ATOMIC_ACQUIRE)) {
+        q->first_seg = seg->next;
+    } else {
+        seg = av_malloc(sizeof(PacketQueueSegment));
+        if (!seg)
+            return NULL;
+        q->nb_segments++;
+    }
+
+    for (i = 0; i < PACKET_QUEUE_SEGMENT_SIZE; i++)
+        seg->slots[i].state = PACKET_QUEUE_SLOT_EMPTY;
+    seg->next = NULL;
+    if (!q->first_seg)
+        q->first_seg = seg;
+    return seg;
+}
+
+static uint32_t packet_queue_slot_duration(PacketQueueSlot *slot)
+{
+    return (uint32_t)FFMAX(slot->pkt.duration, MIN_PKT_DURATION);
+}
+
+/* the difference of the wrapped counters is exact while below INT32_MAX */
+static int64_t packet_queue_duration(PacketQueue *q)
+{
+    uint32_t duration = __atomic_load_n(&q->duration, __ATOMIC_RELAXED);
+
+    return (int32_t)(duration - __atomic_load_n(&q->duration_taken, __ATOMIC_RELAXED));
+}
+
 static int packet_queue_put_private(PacketQueue *q, AVPacket *pkt)
 {
-    MyAVPacketList *pkt1;
+    PacketQueueSegment *seg;
+    PacketQueueSlot *slot;
 
     if (q->abort_request)
         return -1;
 
-#ifdef FFP_MERGE
-    pkt1 = av_malloc(sizeof(MyAVPacketList));
-#else
-    pkt1 = q->recycle_pkt;
-    if (pkt1) {
-        q->recycle_pkt = pkt1->next;
-        q->recycle_count++;
-    } else {
-        q->alloc_count++;
-        pkt1 = av_malloc(sizeof(MyAVPacketList));
-    }
-#ifdef FFP_SHOW_PKT_RECYCLE
-    int total_count = q->recycle_count + q->alloc_count;
-    if (!(total_count % 50)) {
-        av_log(ffp, AV_LOG_DEBUG, "pkt-recycle \t%d + \t%d = \t%d\n", q->recycle_count, q->alloc_count, total_count);
+    if (q->last_idx >= PACKET_QUEUE_SEGMENT_SIZE) {
+        seg = packet_queue_alloc_segment(q);
+        if (!seg)
+            return -1;
+        __atomic_store_n(&q->last_seg->next, seg, __ATOMIC_RELEASE);
+        q->last_seg = seg;
+        q->last_idx = 0;
     }
-#endif
-#endif
-    if (!pkt1)
-        return -1;
-    pkt1->pkt = *pkt;
-    pkt1->next = NULL;
+
     if (pkt == &flush_pkt)
         q->serial++;
-    pkt1->serial = q->serial;
 
-    if (!q->last_pkt)
-        q->first_pkt = pkt1;
-    else
-        q->last_pkt->next = pkt1;
-    q->last_pkt = pkt1;
-    q->nb_packets++;
-    q->size += pkt1->pkt.size + sizeof(*pkt1);
+    slot = &q->last_seg->slots[q->last_idx++];
+    slot->pkt = *pkt;
+    slot->serial = q->serial;
 
-    q->duration += FFMAX(pkt1->pkt.duration, MIN_PKT_DURATION);
+    __atomic_add_fetch(&q->nb_packets, 1, __ATOMIC_RELAXED);
+    __atomic_add_fetch(&q->size, (int)(slot->pkt.size + sizeof(*slot)), __ATOMIC_RELAXED);
+    __atomic_add_fetch(&q->duration, packet_queue_slot_duration(slot), __ATOMIC_RELAXED);
 
     /* XXX: should duplicate packet data in DV case */
-    SDL_CondSignal(q->cond);
+    __atomic_store_n(&slot->state, PACKET_QUEUE_SLOT_FULL, __ATOMIC_RELEASE);
+
+    if (q->consumer_waiting)
+        SDL_CondSignal(q->cond);
     return 0;
 }
 
@@ -193,9 +247,9 @@ static int packet_queue_put(PacketQueue *q, AVPacket *pkt)
 {
     int ret;
 
-    SDL_LockMutex(q->mutex);
+    packet_queue_lock(q);
     ret = packet_queue_put_private(q, pkt);
-    SDL_UnlockMutex(q->mutex);
+    packet_queue_unlock(q);
 
     if (pkt != &flush_pkt && ret < 0)
         av_packet_unref(pkt);
@@ -227,44 +281,147 @@ static int packet_queue_init(PacketQueue *q)
         av_log(NULL, AV_LOG_FATAL, "SDL_CreateCond(): %s\n", SDL_GetError());
         return AVERROR(ENOMEM);
     }
+    q->last_seg = packet_queue_alloc_segment(q);
+    if (!q->last_seg) {
+        av_log(NULL, AV_LOG_FATAL, "packet_queue_alloc_segment(): out of memory\n");
+        return AVERROR(ENOMEM);
+    }
+    q->head_seg = q->last_seg;
     q->abort_request = 1;
     return 0;
 }
 
 static void packet_queue_flush(PacketQueue *q)
 {
-    MyAVPacketList *pkt, *pkt1;
+    PacketQueueSegment *seg;
+    PacketQueueSlot *slot;
+    int i, state;
+
+    packet_queue_lock(q);
+    for (seg = q->first_seg; seg; seg = seg->next) {
+        for (i = 0; i < PACKET_QUEUE_SEGMENT_SIZE; i++) {
+            slot = &seg->slots[i];
+            state = PACKET_QUEUE_SLOT_FULL;
+            /* races with the consumer taking the same slot */
+            if (!__atomic_compare_exchange_n(&slot->state, &state, PACKET_QUEUE_SLOT_DROPPED,
+                                             0, __ATOMIC_ACQUIRE, __ATOMIC_RELAXED))
+                continue;
 
-    SDL_LockMutex(q->mutex);
-    for (pkt = q->first_pkt; pkt; pkt = pkt1) {
-        pkt1 = pkt->next;
-        av_packet_unref(&pkt->pkt);
-#ifdef FFP_MERGE
-        av_freep(&pkt);
-#else
-        pkt->next = q->recycle_pkt;
-        q->recycle_pkt = pkt;
-#endif
+            __atomic_sub_fetch(&q->nb_packets, 1, __ATOMIC_RELAXED);
+            __atomic_sub_fetch(&q->size, (int)(slot->pkt.size + sizeof(*slot)), __ATOMIC_RELAXED);
+            __atomic_sub_fetch(&q->duration, packet_queue_slot_duration(slot), __ATOMIC_RELAXED);
+            av_packet_unref(&slot->pkt);
+        }
     }
-    q->last_pkt = NULL;
-    q->first_pkt = NULL;
-    q->nb_packets = 0;
-    q->size = 0;
-    q->duration = 0;
-    SDL_UnlockMutex(q->mutex);
+    packet_queue_unlock(q);
+}
+
+static int64_t packet_queue_slot_ts(PacketQueueSlot *slot)
+{
+    return slot->pkt.pts != AV_NOPTS_VALUE ? slot->pkt.pts : slot->pkt.dts;
+}
+
+/* timestamp of the next packet to take, AV_NOPTS_VALUE if unknown */
+static int64_t packet_queue_head_ts(PacketQueue *q)
+{
+    PacketQueueSegment *seg;
+    PacketQueueSlot *slot;
+    int64_t ts = AV_NOPTS_VALUE;
+    int i;
+
+    packet_queue_lock(q);
+    for (seg = q->first_seg; seg; seg = seg->next) {
+        for (i = 0; i < PACKET_QUEUE_SEGMENT_SIZE; i++) {
+            slot = &seg->slots[i];
+            if (__atomic_load_n(&slot->state, __ATOMIC_ACQUIRE) != PACKET_QUEUE_SLOT_FULL)
+                continue;
+            if (slot->pkt.data != flush_pkt.data)
+                ts = packet_queue_slot_ts(slot);
+            goto done;
+        }
+    }
+done:
+    packet_queue_unlock(q);
+    return ts;
+}
+
+/*
+ * Drops the packets queued before the first one at or after ts, which must be
+ * a key frame if key_only. Nothing is dropped across a flush or end of stream
+ * packet. Returns the timestamp of the packet kept, AV_NOPTS_VALUE if none.
+ */
+static int64_t packet_queue_drop_until(PacketQueue *q, int64_t ts, int key_only)
+{
+    PacketQueueSegment *seg;
+    PacketQueueSegment *found_seg = NULL;
+    PacketQueueSlot *slot;
+    int64_t found_ts = AV_NOPTS_VALUE;
+    int64_t slot_ts;
+    int found_idx = 0;
+    int i, state;
+
+    packet_queue_lock(q);
+    for (seg = q->first_seg; seg && !found_seg; seg = seg->next) {
+        for (i = 0; i < PACKET_QUEUE_SEGMENT_SIZE; i++) {
+            slot = &seg->slots[i];
+            state = __atomic_load_n(&slot->state, __ATOMIC_ACQUIRE);
+            if (state == PACKET_QUEUE_SLOT_EMPTY)
+                goto done;
+            if (state != PACKET_QUEUE_SLOT_FULL)
+                continue;
+            if (slot->pkt.data == flush_pkt.data || !slot->pkt.data)
+                goto done;
+
+            slot_ts = packet_queue_slot_ts(slot);
+            if (slot_ts != AV_NOPTS_VALUE && slot_ts >= ts &&
+                (!key_only || (slot->pkt.flags & AV_PKT_FLAG_KEY))) {
+                found_seg = seg;
+                found_idx = i;
+                found_ts  = slot_ts;
+                break;
+            }
+        }
+    }
+    if (!found_seg)
+        goto done;
+
+    for (seg = q->first_seg; seg; seg = seg->next) {
+        for (i = 0; i < PACKET_QUEUE_SEGMENT_SIZE; i++) {
+            if (seg == found_seg && i == found_idx)
+                goto done;
+
+            slot = &seg->slots[i];
+            state = PACKET_QUEUE_SLOT_FULL;
+            /* races with the consumer taking the same slot */
+            if (!__atomic_compare_exchange_n(&slot->state, &state, PACKET_QUEUE_SLOT_DROPPED,
+                                             0, __ATOMIC_ACQUIRE, __ATOMIC_RELAXED))
+                continue;
+
+            __atomic_sub_fetch(&q->nb_packets, 1, __ATOMIC_RELAXED);
+            __atomic_sub_fetch(&q->size, (int)(slot->pkt.size + sizeof(*slot)), __ATOMIC_RELAXED);
+            __atomic_sub_fetch(&q->duration, packet_queue_slot_duration(slot), __ATOMIC_RELAXED);
+            av_packet_unref(&slot->pkt);
+        }
+    }
+done:
+    packet_queue_unlock(q);
+    return found_ts;
 }
 
 static void packet_queue_destroy(PacketQueue *q)
 {
+    PacketQueueSegment *seg;
+
     packet_queue_flush(q);
 
     SDL_LockMutex(q->mutex);
-    while(q->recycle_pkt) {
-        MyAVPacketList *pkt = q->recycle_pkt;
-        if (pkt)
-            q->recycle_pkt = pkt->next;
-        av_freep(&pkt);
+    while (q->first_seg) {
+        seg = q->first_seg;
+        q->first_seg = seg->next;
+        av_freep(&seg);
     }
+    q->last_seg = NULL;
+    q->head_seg = NULL;
     SDL_UnlockMutex(q->mutex);
 
     SDL_DestroyMutex(q->mutex);
@@ -273,64 +430,94 @@ static void packet_queue_destroy(PacketQueue *q)
 
 static void packet_queue_abort(PacketQueue *q)
 {
-    SDL_LockMutex(q->mutex);
+    packet_queue_lock(q);
 
-    q->abort_request = 1;
+    __atomic_store_n(&q->abort_request, 1, __ATOMIC_RELEASE);
 
     SDL_CondSignal(q->cond);
 
-    SDL_UnlockMutex(q->mutex);
+    packet_queue_unlock(q);
 }
 
 static void packet_queue_start(PacketQueue *q)
 {
-    SDL_LockMutex(q->mutex);
-    q->abort_request = 0;
+    packet_queue_lock(q);
+    __atomic_store_n(&q->abort_request, 0, __ATOMIC_RELEASE);
     packet_queue_put_private(q, &flush_pkt);
-    SDL_UnlockMutex(q->mutex);
+    packet_queue_unlock(q);
+}
+
+/* consumer side, lock free, return 1 if a packet was taken */
+static int packet_queue_take(PacketQueue *q, AVPacket *pkt, int *serial)
+{
+    PacketQueueSegment *seg = q->head_seg;
+    PacketQueueSegment *next;
+    PacketQueueSlot *slot;
+    int state;
+
+    for (;;) {
+        if (q->head_idx >= PACKET_QUEUE_SEGMENT_SIZE) {
+            next = __atomic_load_n(&seg->next, __ATOMIC_ACQUIRE);
+            if (!next)
+                return 0;
+            /* the producer may recycle seg once it sees the new head */
+            seg = next;
+            q->head_idx = 0;
+            __atomic_store_n(&q->head_seg, seg, __ATOMIC_RELEASE);
+        }
+
+        slot = &seg->slots[q->head_idx];
+        state = __atomic_load_n(&slot->state, __ATOMIC_ACQUIRE);
+        if (state == PACKET_QUEUE_SLOT_EMPTY)
+            return 0;
+
+        q->head_idx++;
+        if (state != PACKET_QUEUE_SLOT_FULL ||
+            !__atomic_compare_exchange_n(&slot->state, &state, PACKET_QUEUE_SLOT_TAKEN,
+                                         0, __ATOMIC_ACQUIRE, __ATOMIC_RELAXED))
+            continue; /* dropped by a flush */
+
+        *pkt = slot->pkt;
+        if (serial)
+            *serial = slot->serial;
+
+        __atomic_sub_fetch(&q->nb_packets, 1, __ATOMIC_RELAXED);
+        __atomic_sub_fetch(&q->size, (int)(slot->pkt.size + sizeof(*slot)), __ATOMIC_RELAXED);
+        __atomic_add_fetch(&q->duration_taken, packet_queue_slot_duration(slot), __ATOMIC_RELAXED);
+        return 1;
+    }
 }
 
 /* return < 0 if aborted, 0 if no packet and > 0 if packet.  */
 static int packet_queue_get(PacketQueue *q, AVPacket *pkt, int block, int *serial)
 {
-    MyAVPacketList *pkt1;
     int ret;
 
-    SDL_LockMutex(q->mutex);
+    if (__atomic_load_n(&q->abort_request, __ATOMIC_ACQUIRE))
+        return -1;
+    if (packet_queue_take(q, pkt, serial))
+        return 1;
+    if (!block)
+        return 0;
 
+    /* producers publish with the mutex held, so nothing is missed once it is taken */
+    packet_queue_lock(q);
+    q->consumer_waiting = 1;
     for (;;) {
         if (q->abort_request) {
             ret = -1;
             break;
         }
 
-        pkt1 = q->first_pkt;
-        if (pkt1) {
-            q->first_pkt = pkt1->next;
-            if (!q->first_pkt)
-                q->last_pkt = NULL;
-            q->nb_packets--;
-            q->size -= pkt1->pkt.size + sizeof(*pkt1);
-            q->duration -= FFMAX(pkt1->pkt.duration, MIN_PKT_DURATION);
-            *pkt = pkt1->pkt;
-            if (serial)
-                *serial = pkt1->serial;
-#ifdef FFP_MERGE
-            av_free(pkt1);
-#else
-            pkt1->next = q->recycle_pkt;
-            q->recycle_pkt = pkt1;
-#endif
+        if (packet_queue_take(q, pkt, serial)) {
             ret = 1;
             break;
-        } else if (!block) {
-            ret = 0;
-            break;
-        } else {
-            SDL_CondWait(q->cond, q->mutex);
         }
+
+        packet_queue_wait(q);
     }
-    SDL_UnlockMutex(q->mutex);
+    q->consumer_waiting = 0;
+    packet_queue_unlock(q);
     return ret;
 }
 
@@ -884,6 +1071,78 @@ static void free_picture(Frame *vp)
     }
 }
 
+/* keeps the overlay of vp, which must still describe it, for a later overlay_pool_acquire() */
+static void overlay_pool_release(FFPlayer *ffp, Frame *vp)
+{
+    FFOverlayPool *pool = &ffp->overlay_pool;
+    SDL_VoutOverlay *evicted = NULL;
+    FFOverlayPoolEntry *entry;
+
+    if (!vp->bmp)
+        return;
+
+    SDL_VoutUnrefYUVOverlay(vp->bmp);
+
+    SDL_LockMutex(pool->mutex);
+    if (pool->nb_entries >= FFP_OVERLAY_POOL_SIZE) {
+        evicted = pool->entries[0].overlay;
+        memmove(&pool->entries[0], &pool->entries[1], (FFP_OVERLAY_POOL_SIZE - 1) * sizeof(FFOverlayPoolEntry));
+        pool->nb_entries--;
+    }
+    entry = &pool->entries[pool->nb_entries++];
+    entry->overlay        = vp->bmp;
+    entry->width          = vp->width;
+    entry->height         = vp->height;
+    entry->frame_format   = vp->format;
+    entry->overlay_format = ffp->overlay_format;
+    SDL_UnlockMutex(pool->mutex);
+
+    vp->bmp = NULL;
+    SDL_VoutFreeYUVOverlay(evicted);
+}
+
+static SDL_VoutOverlay *overlay_pool_acquire(FFPlayer *ffp, int width, int height, int frame_format)
+{
+    FFOverlayPool *pool = &ffp->overlay_pool;
+    SDL_VoutOverlay *overlay = NULL;
+    FFOverlayPoolEntry *entry;
+    int i;
+
+    SDL_LockMutex(pool->mutex);
+    for (i = pool->nb_entries - 1; i >= 0; i--) {
+        entry = &pool->entries[i];
+        if (entry->width == width && entry->height == height &&
+            entry->frame_format == frame_format && entry->overlay_format == ffp->overlay_format) {
+            overlay = entry->overlay;
+            memmove(entry, entry + 1, (pool->nb_entries - i - 1) * sizeof(FFOverlayPoolEntry));
+            pool->nb_entries--;
+            ffp->stat.overlay_pool_hit_count++;
+            break;
+        }
+    }
+    SDL_UnlockMutex(pool->mutex);
+
+    if (!overlay) {
+        SDL_VoutSetOverlayFormat(ffp->vout, ffp->overlay_format);
+        overlay = SDL_Vout_CreateOverlay(width, height, frame_format, ffp->vout);
+        if (overlay)
+            ffp->stat.overlay_alloc_count++;
+    }
+    return overlay;
+}
+
+static void overlay_pool_clear(FFPlayer *ffp)
+{
+    FFOverlayPool *pool = &ffp->overlay_pool;
+    int i;
+
+    SDL_LockMutex(pool->mutex);
+    for (i = 0; i < pool->nb_entries; i++)
+        SDL_VoutFreeYUVOverlay(pool->entries[i].overlay);
+    pool->nb_entries = 0;
+    SDL_UnlockMutex(pool->mutex);
+}
+
 // FFP_MERGE: realloc_texture
 // FFP_MERGE: calculate_display_rect
 // FFP_MERGE: upload_texture
@@ -929,6 +1188,54 @@ static size_t parse_ass_subtitle(const char *ass, char *output)
     return 0;
 }
 
+static void startup_mark(FFPlayer *ffp, int stage, int end)
+{
+    FFStartupWaterfall *sw = &ffp->startup;
+    int32_t unset = -1;
+    int64_t offset;
+
+    if (!sw->prepare_time || __atomic_load_n(&sw->delivered, __ATOMIC_RELAXED))
+        return;
+    if (end && __atomic_load_n(&sw->stages[stage * 2], __ATOMIC_RELAXED) < 0)
+        return;
+
+    offset = FFMIN(av_gettime_relative() - sw->prepare_time, INT32_MAX);
+    __atomic_compare_exchange_n(&sw->stages[stage * 2 + end], &unset, (int32_t)offset,
+                                0, __ATOMIC_RELAXED, __ATOMIC_RELAXED);
+}
+
+static void startup_begin(FFPlayer *ffp, int stage)
+{
+    startup_mark(ffp, stage, 0);
+}
+
+static void startup_end(FFPlayer *ffp, int stage)
+{
+    startup_mark(ffp, stage, 1);
+}
+
+/* posts the waterfall once the first frame of every opened stream is rendered */
+static void startup_check_rendered(FFPlayer *ffp)
+{
+    FFStartupWaterfall *sw = &ffp->startup;
+    VideoState *is = ffp->is;
+    int64_t stages[FFP_STARTUP_STAGE_NB * 2];
+    int i;
+
+    if (!sw->prepare_time || !is)
+        return;
+    if (is->audio_st && __atomic_load_n(&sw->stages[FFP_STARTUP_STAGE_AUDIO_RENDER * 2 + 1], __ATOMIC_SEQ_CST) < 0)
+        return;
+    if (is->video_st && __atomic_load_n(&sw->stages[FFP_STARTUP_STAGE_VIDEO_RENDER * 2 + 1], __ATOMIC_SEQ_CST) < 0)
+        return;
+    if (__atomic_exchange_n(&sw->delivered, 1, __ATOMIC_SEQ_CST))
+        return;
+
+    for (i = 0; i < FFP_STARTUP_STAGE_NB * 2; i++)
+        stages[i] = __atomic_load_n(&sw->stages[i], __ATOMIC_SEQ_CST);
+    ffp_notify_msg4(ffp, FFP_MSG_STARTUP_WATERFALL, FFP_STARTUP_STAGE_NB * 2, 0, stages, sizeof(stages));
+}
+
 static void video_image_display2(FFPlayer *ffp)
 {
     VideoState *is = ffp->is;
@@ -963,6 +1270,8 @@ static void video_image_display2(FFPlayer *ffp)
             if (!ffp->first_video_frame_rendered) {
                 ffp->first_video_frame_rendered = 1;
                 ffp_notify_msg1(ffp, FFP_MSG_VIDEO_RENDERING_START);
+                startup_end(ffp, FFP_STARTUP_STAGE_VIDEO_RENDER);
+                startup_check_rendered(ffp);
                 is->audclk.paused = is->vidclk.paused = is->extclk.paused = is->pause_req;
                 while (is->pause_req && !is->abort_request) {
                     SDL_Delay(20);
@@ -981,6 +1290,8 @@ static void video_image_display2(FFPlayer *ffp)
         if (!ffp->first_video_frame_rendered) {
             ffp->first_video_frame_rendered = 1;
             ffp_notify_msg1(ffp, FFP_MSG_VIDEO_RENDERING_START);
+            startup_end(ffp, FFP_STARTUP_STAGE_VIDEO_RENDER);
+            startup_check_rendered(ffp);
         }
 
         if (is->latest_video_seek_load_serial == vp->serial) {
@@ -1064,6 +1375,7 @@ static void stream_component_close(FFPlayer *ffp, int stream_index)
 static void stream_close(FFPlayer *ffp)
 {
     VideoState *is = ffp->is;
+    int i;
     /* XXX: use a special url_shutdown call to abort parse cleanly */
     is->abort_request = 1;
     packet_queue_abort(&is->videoq);
@@ -1090,7 +1402,9 @@ static void stream_close(FFPlayer *ffp)
     packet_queue_destroy(&is->subtitleq);
     packet_queue_destroy(&is->videoq_bak);
 
-    /* free all pictures */
+    /* free all pictures, but keep their overlays for the next stream */
+    for (i = 0; i < is->pictq.max_size; i++)
+        overlay_pool_release(ffp, &is->pictq.queue[i]);
     frame_queue_destory(&is->pictq);
     frame_queue_destory(&is->sampq);
     frame_queue_destory(&is->subpq);
@@ -1362,6 +1676,13 @@ static void update_video_pts(VideoState *is, double pts, int64_t pos, int serial
     sync_clock_to_slave(&is->extclk, &is->vidclk);
 }
 
+static int effective_framedrop(FFPlayer *ffp)
+{
+    if (ffp->fdc.level >= FFP_FRAMEDROP_LEVEL_DROP_LATE)
+        return FFMAX(ffp->framedrop, FFP_FRAMEDROP_CONTROL_FRAMEDROP);
+    return ffp->framedrop;
+}
+
 /* called to display each frame */
 static void video_refresh(FFPlayer *opaque, double *remaining_time)
 {
@@ -1430,7 +1751,9 @@ retry:
             if (frame_queue_nb_remaining(&is->pictq) > 1) {
                 Frame *nextvp = frame_queue_peek_next(&is->pictq);
                 duration = vp_duration(is, vp, nextvp);
-                if(!is->step && (ffp->framedrop > 0 || (ffp->framedrop && get_master_sync_type(is) != AV_SYNC_VIDEO_MASTER)) && time > is->frame_timer + duration) {
+                int frame_drop = effective_framedrop(ffp);
+                if(!is->step && (frame_drop > 0 || (frame_drop && get_master_sync_type(is) != AV_SYNC_VIDEO_MASTER)) && time > is->frame_timer + duration) {
+                    is->frame_drops_late++;
                     frame_queue_next(&is->pictq);
                     goto retry;
                 }
@@ -1539,10 +1862,7 @@ static void alloc_picture(FFPlayer *ffp, int frame_format)
     video_open(is, vp);
 #endif
 
-    SDL_VoutSetOverlayFormat(ffp->vout, ffp->overlay_format);
-    vp->bmp = SDL_Vout_CreateOverlay(vp->width, vp->height,
-                                   frame_format,
-                                   ffp->vout);
+    vp->bmp = overlay_pool_acquire(ffp, vp->width, vp->height, frame_format);
 #ifdef FFP_MERGE
     if (vp->format == AV_PIX_FMT_YUV420P)
         sdl_format = SDL_PIXELFORMAT_YV12;
@@ -1686,6 +2006,7 @@ static int queue_picture(FFPlayer *ffp, AVFrame *src_frame, double pts, double d
         vp->format != src_frame->format) {
 
         vp->allocated = 0;
+        overlay_pool_release(ffp, vp);
         vp->width = src_frame->width;
         vp->height = src_frame->height;
         vp->format = src_frame->format;
@@ -1735,6 +2056,8 @@ static int queue_picture(FFPlayer *ffp, AVFrame *src_frame, double pts, double d
         if (!is->viddec.first_frame_decoded) {
             ALOGD("Video: first frame decoded\n");
             ffp_notify_msg1(ffp, FFP_MSG_VIDEO_DECODED_START);
+            startup_end(ffp, FFP_STARTUP_STAGE_VIDEO_DECODE);
+            startup_begin(ffp, FFP_STARTUP_STAGE_VIDEO_RENDER);
             is->viddec.first_frame_decoded_time = SDL_GetTickHR();
             is->viddec.first_frame_decoded = 1;
         }
@@ -1742,10 +2065,127 @@ static int queue_picture(FFPlayer *ffp, AVFrame *src_frame, double pts, double d
     return 0;
 }
 
+static void frame_drop_control_apply(FFPlayer *ffp, AVCodecContext *avctx)
+{
+    FFFrameDropControl *fdc = &ffp->fdc;
+    enum AVDiscard skip_loop_filter = fdc->base_skip_loop_filter;
+    enum AVDiscard skip_frame       = fdc->base_skip_frame;
+
+    if (fdc->level >= FFP_FRAMEDROP_LEVEL_LOOP_FILTER_NONREF)
+        skip_loop_filter = FFMAX(skip_loop_filter, AVDISCARD_NONREF);
+    if (fdc->level >= FFP_FRAMEDROP_LEVEL_LOOP_FILTER_ALL)
+        skip_loop_filter = FFMAX(skip_loop_filter, AVDISCARD_ALL);
+    if (fdc->level >= FFP_FRAMEDROP_LEVEL_SKIP_NONREF)
+        skip_frame = FFMAX(skip_frame, AVDISCARD_NONREF);
+
+    avctx->skip_loop_filter = skip_loop_filter;
+    avctx->skip_frame       = skip_frame;
+}
+
+static void frame_drop_control_start_window(FFPlayer *ffp, int64_t now, int serial)
+{
+    VideoState *is = ffp->is;
+    FFFrameDropControl *fdc = &ffp->fdc;
+
+    fdc->window_start       = now;
+    fdc->window_serial      = serial;
+    fdc->window_frames      = 0;
+    fdc->window_late_frames = 0;
+    fdc->window_drops       = is->frame_drops_early + is->frame_drops_late;
+}
+
+/* called by the video decoder for each decoded frame, diff < 0 if it is behind the master clock */
+static void frame_drop_control_update(FFPlayer *ffp, double diff, int serial)
+{
+    VideoState *is = ffp->is;
+    AVCodecContext *avctx = is->viddec.avctx;
+    FFFrameDropControl *fdc = &ffp->fdc;
+    int64_t now = SDL_GetTickHR();
+    int max_level = FFMIN(fdc->max_level, FFP_FRAMEDROP_LEVEL_MAX);
+    int level = fdc->level;
+    int drops;
+    int lagging;
+    int64_t elapsed;
+
+    if (fdc->avctx != avctx) {
+        /* new stream, its codec context has its own settings */
+        fdc->avctx                 = avctx;
+        fdc->level                 = FFP_FRAMEDROP_LEVEL_NONE;
+        fdc->base_skip_loop_filter = avctx->skip_loop_filter;
+        fdc->base_skip_frame       = avctx->skip_frame;
+        fdc->stable_windows        = 0;
+        fdc->relax_windows         = FFP_FRAMEDROP_CONTROL_RELAX_WINDOWS;
+        fdc->windows_since_relax   = FFP_FRAMEDROP_CONTROL_RELAX_WINDOWS_MAX;
+        fdc->window_start          = 0;
+        level = FFP_FRAMEDROP_LEVEL_NONE;
+    }
+
+    if (level > max_level) {
+        /* lowered from java */
+        level = max_level;
+        goto apply;
+    }
+    if (max_level <= 0)
+        return;
+
+    /* a window across a pause, a buffering or a seek would not measure the decoder */
+    if (!fdc->window_start || is->paused || is->buffering_on || serial != fdc->window_serial ||
+        get_master_sync_type(is) == AV_SYNC_VIDEO_MASTER) {
+        frame_drop_control_start_window(ffp, now, serial);
+        return;
+    }
+
+    fdc->window_frames++;
+    if (!isnan(diff) && diff < 0)
+        fdc->window_late_frames++;
+
+    elapsed = now - fdc->window_start;
+    if (elapsed < FFP_FRAMEDROP_CONTROL_WINDOW_MS)
+        return;
+
+    drops = is->frame_drops_early + is->frame_drops_late - fdc->window_drops;
+    lagging = fdc->window_late_frames * 10 > fdc->window_frames || drops * 20 > fdc->window_frames;
+    /* skipping non-reference frames lowers the frame rate on purpose */
+    if (fdc->target_fps > 0 && level < FFP_FRAMEDROP_LEVEL_SKIP_NONREF)
+        lagging = lagging || ffp->stat.vfps < fdc->target_fps * 0.9;
+
+    if (fdc->windows_since_relax < FFP_FRAMEDROP_CONTROL_RELAX_WINDOWS_MAX)
+        fdc->windows_since_relax++;
+    if (lagging) {
+        fdc->stable_windows = 0;
+        if (level < max_level) {
+            /* back up right after going down: wait longer before the next try */
+            if (fdc->windows_since_relax <= 2)
+                fdc->relax_windows = FFMIN(fdc->relax_windows * 2, FFP_FRAMEDROP_CONTROL_RELAX_WINDOWS_MAX);
+            if (level == FFP_FRAMEDROP_LEVEL_NONE) {
+                fdc->base_skip_loop_filter = avctx->skip_loop_filter;
+                fdc->base_skip_frame       = avctx->skip_frame;
+            }
+            level++;
+        }
+    } else if (level > FFP_FRAMEDROP_LEVEL_NONE && ++fdc->stable_windows >= fdc->relax_windows) {
+        fdc->stable_windows = 0;
+        fdc->windows_since_relax = 0;
+        level--;
+    }
+
+    av_log(ffp, AV_LOG_DEBUG, "framedrop: %d frames, %d late, %d dropped, vfps %.2f, level %d\n",
+           fdc->window_frames, fdc->window_late_frames, drops, ffp->stat.vfps, level);
+    frame_drop_control_start_window(ffp, now, serial);
+
+apply:
+    if (level == fdc->level)
+        return;
+    av_log(ffp, AV_LOG_INFO, "framedrop: level %d -> %d\n", fdc->level, level);
+    fdc->level = level;
+    frame_drop_control_apply(ffp, avctx);
+}
+
 static int get_video_frame(FFPlayer *ffp, AVFrame *frame)
 {
     VideoState *is = ffp->is;
     int got_picture;
+    int frame_drop;
 
     ffp_video_statistic_l(ffp);
     if ((got_picture = decoder_decode_frame(ffp, &is->viddec, frame, NULL)) < 0)
@@ -1759,7 +2199,15 @@ static int get_video_frame(FFPlayer *ffp, AVFrame *frame)
 
         frame->sample_aspect_ratio = av_guess_sample_aspect_ratio(is->ic, is->video_st, frame);
 
-        if (ffp->framedrop>0 || (ffp->framedrop && get_master_sync_type(is) != AV_SYNC_VIDEO_MASTER)) {
+        if (ffp->fdc.max_level > 0 || ffp->fdc.level > 0) {
+            double diff = NAN;
+            if (frame->pts != AV_NOPTS_VALUE)
+                diff = dpts - get_master_clock(is);
+            frame_drop_control_update(ffp, diff, is->viddec.pkt_serial);
+        }
+
+        frame_drop = effective_framedrop(ffp);
+        if (frame_drop>0 || (frame_drop && get_master_sync_type(is) != AV_SYNC_VIDEO_MASTER)) {
             ffp->stat.decode_frame_count++;
             if (frame->pts != AV_NOPTS_VALUE) {
                 double diff = dpts - get_master_clock(is);
@@ -1769,7 +2217,7 @@ static int get_video_frame(FFPlayer *ffp, AVFrame *frame)
                     is->videoq.nb_packets) {
                     is->frame_drops_early++;
                     is->continuous_frame_drops_early++;
-                    if (is->continuous_frame_drops_early > ffp->framedrop) {
+                    if (is->continuous_frame_drops_early > frame_drop) {
                         is->continuous_frame_drops_early = 0;
                     } else {
                         ffp->stat.drop_frame_count++;
@@ -2746,6 +3194,8 @@ reload:
     if (!is->auddec.first_frame_decoded) {
         ALOGD("avcodec/Audio: first frame decoded\n");
         ffp_notify_msg1(ffp, FFP_MSG_AUDIO_DECODED_START);
+        startup_end(ffp, FFP_STARTUP_STAGE_AUDIO_DECODE);
+        startup_begin(ffp, FFP_STARTUP_STAGE_AUDIO_RENDER);
         is->auddec.first_frame_decoded_time = SDL_GetTickHR();
         is->auddec.first_frame_decoded = 1;
     }
@@ -2825,6 +3275,8 @@ static void sdl_audio_callback(void *opaque, Uint8 *stream, int len)
     if (!ffp->first_audio_frame_rendered) {
         ffp->first_audio_frame_rendered = 1;
         ffp_notify_msg1(ffp, FFP_MSG_AUDIO_RENDERING_START);
+        startup_end(ffp, FFP_STARTUP_STAGE_AUDIO_RENDER);
+        startup_check_rendered(ffp);
         if (ffp->render_wait_start && !ffp->start_on_prepared && is->pause_req) {
             is->audclk.paused = is->vidclk.paused = is->extclk.paused = is->pause_req;
             SDL_AoutPauseAudio(ffp->aout, 1);
@@ -2943,9 +3395,11 @@ static int stream_component_open(FFPlayer *ffp, int stream_index)
     int64_t channel_layout;
     int ret = 0;
     int stream_lowres = ffp->lowres;
+    int64_t init_start = av_gettime_relative();
 
     if (stream_index < 0 || stream_index >= ic->nb_streams)
         return -1;
+    startup_begin(ffp, FFP_STARTUP_STAGE_COMPONENT_OPEN);
     avctx = avcodec_alloc_context3(NULL);
     if (!avctx)
         return AVERROR(ENOMEM);
@@ -3065,9 +3519,11 @@ static int stream_component_open(FFPlayer *ffp, int stream_index)
             is->auddec.start_pts = is->audio_st->start_time;
             is->auddec.start_pts_tb = is->audio_st->time_base;
         }
+        startup_begin(ffp, FFP_STARTUP_STAGE_AUDIO_DECODE);
         if ((ret = decoder_start(&is->auddec, audio_thread, ffp, "ff_audio_dec")) < 0)
             goto out;
-        SDL_AoutPauseAudio(ffp->aout, 0);
+        if (!is->audio_start_deferred)
+            SDL_AoutPauseAudio(ffp->aout, 0);
         break;
     case AVMEDIA_TYPE_VIDEO:
         is->video_stream = stream_index;
@@ -3098,6 +3554,7 @@ static int stream_component_open(FFPlayer *ffp, int stream_index)
 
         packet_queue_start(&is->videoq_bak);
 
+        startup_begin(ffp, FFP_STARTUP_STAGE_VIDEO_DECODE);
         if ((ret = decoder_start(&is->viddec, video_thread, ffp, "ff_video_dec")) < 0)
             goto out;
 
@@ -3154,6 +3611,53 @@ fail:
 out:
     av_dict_free(&opts);
 
+    switch (ic->streams[stream_index]->codecpar->codec_type) {
+        case AVMEDIA_TYPE_AUDIO: ffp->stat.audio_init_duration = (av_gettime_relative() - init_start) / 1000; break;
+        case AVMEDIA_TYPE_VIDEO: ffp->stat.video_init_duration = (av_gettime_relative() - init_start) / 1000; break;
+        default: break;
+    }
+    return ret;
+}
+
+typedef struct ComponentOpenTask {
+    FFPlayer *ffp;
+    int       stream_index;
+    int       ret;
+} ComponentOpenTask;
+
+static int component_open_thread(void *arg)
+{
+    ComponentOpenTask *task = arg;
+    task->ret = stream_component_open(task->ffp, task->stream_index);
+    return 0;
+}
+
+/*
+ * Opens the audio decoder and output on a thread of their own while the
+ * video decoder opens on the calling thread, and joins them: the audio
+ * output is started by the caller once both are open.
+ * Returns the result of the video open, the audio one in *audio_ret.
+ */
+static int stream_components_open_parallel(FFPlayer *ffp, int audio_index, int video_index, int *audio_ret)
+{
+    VideoState *is = ffp->is;
+    ComponentOpenTask task = { ffp, audio_index, -1 };
+    SDL_Thread audio_open_thread;
+    SDL_Thread *audio_open_tid;
+    int ret;
+
+    is->audio_start_deferred = 1;
+    audio_open_tid = SDL_CreateThreadEx(&audio_open_thread, component_open_thread, &task, "ff_aopen");
+    if (!audio_open_tid)
+        task.ret = stream_component_open(ffp, audio_index);
+
+    ret = stream_component_open(ffp, video_index);
+
+    if (audio_open_tid)
+        SDL_WaitThread(audio_open_tid, NULL);
+    is->audio_start_deferred = 0;
+
+    *audio_ret = task.ret;
     return ret;
 }
 
@@ -3278,16 +3782,141 @@ static int decode_interrupt_cb(void *ctx)
     return is->abort_request;
 }
 
+/*
+ * Demuxers such as hls open their segments with a few whitelisted avio
+ * options. Segments over http get the tcp hook options of the player too, so
+ * they share the pooled connections and the dns cache.
+ */
+static int ffp_io_open(AVFormatContext *s, AVIOContext **pb, const char *url, int flags, AVDictionary **options)
+{
+    static const char *const hook_options[] = {
+        "http-tcp-hook", "multiple_requests", "ijktcphook-pool", "ijktcphook-dns-cache", NULL
+    };
+    FFPlayer *ffp = s->opaque;
+    AVDictionary *tmp = NULL;
+    AVDictionaryEntry *t;
+    int ret;
+    int i;
+
+    if (options)
+        av_dict_copy(&tmp, *options, 0);
+    if (av_strstart(url, "http:", NULL) || av_strstart(url, "https:", NULL)) {
+        for (i = 0; hook_options[i]; i++) {
+            if ((t = av_dict_get(ffp->format_opts, hook_options[i], NULL, AV_DICT_MATCH_CASE)))
+                av_dict_set(&tmp, hook_options[i], t->value, AV_DICT_DONT_OVERWRITE);
+        }
+    }
+
+    ret = ffp->is->ic_io_open(s, pb, url, flags, &tmp);
+    if (options) {
+        av_dict_free(options);
+        *options = tmp;
+    } else {
+        av_dict_free(&tmp);
+    }
+    return ret;
+}
+
 static int stream_has_enough_packets(AVStream *st, int stream_id, PacketQueue *queue, int min_frames) {
     return stream_id < 0 ||
            queue->abort_request ||
            (st->disposition & AV_DISPOSITION_ATTACHED_PIC) ||
 #ifdef FFP_MERGE
-           queue->nb_packets > MIN_FRAMES && (!queue->duration || av_q2d(st->time_base) * queue->duration > 1.0);
+           queue->nb_packets > MIN_FRAMES && (!packet_queue_duration(queue) || av_q2d(st->time_base) * packet_queue_duration(queue) > 1.0);
 #endif
            queue->nb_packets > min_frames;
 }
 
+static void live_latency_set_speed(FFPlayer *ffp, float speed)
+{
+    FFLiveLatencyControl *llc = &ffp->llc;
+
+    /* set by the application since the last update */
+    if (ffp->pf_playback_rate != llc->speed)
+        return;
+    if (speed == llc->speed)
+        return;
+
+    llc->speed = speed;
+    ffp->pf_playback_rate = speed;
+    ffp->pf_playback_rate_changed = 1;
+    if (ffp->av_sync_type == AV_SYNC_EXTERNAL_CLOCK)
+        set_clock_speed(&ffp->is->extclk, speed);
+}
+
+/* cuts the queues at a key frame, latency_ms - target_ms after their head */
+static void live_latency_jump(FFPlayer *ffp, int64_t skip_ms)
+{
+    VideoState *is = ffp->is;
+    int64_t head_ts;
+    int64_t kept_ts;
+    int64_t cut_us;
+
+    if (is->video_st) {
+        head_ts = packet_queue_head_ts(&is->videoq);
+        if (head_ts == AV_NOPTS_VALUE)
+            return;
+        kept_ts = packet_queue_drop_until(&is->videoq,
+                                          head_ts + av_rescale_q(skip_ms, (AVRational){1, 1000}, is->video_st->time_base), 1);
+        if (kept_ts == AV_NOPTS_VALUE)
+            return;
+        cut_us = av_rescale_q(kept_ts, is->video_st->time_base, AV_TIME_BASE_Q);
+    } else {
+        head_ts = packet_queue_head_ts(&is->audioq);
+        if (head_ts == AV_NOPTS_VALUE)
+            return;
+        cut_us = av_rescale_q(head_ts, is->audio_st->time_base, AV_TIME_BASE_Q) + skip_ms * 1000;
+    }
+    if (is->audio_st)
+        packet_queue_drop_until(&is->audioq, av_rescale_q(cut_us, AV_TIME_BASE_Q, is->audio_st->time_base), 0);
+
+    ffp->llc.jump_count++;
+    av_log(ffp, AV_LOG_INFO, "live latency: skipped %"PRId64" ms to %.3f\n", skip_ms, cut_us / 1000000.0);
+}
+
+/* called from read_thread */
+static void live_latency_update(FFPlayer *ffp)
+{
+    VideoState *is = ffp->is;
+    FFLiveLatencyControl *llc = &ffp->llc;
+    int64_t now = SDL_GetTickHR();
+    int64_t error_ms;
+    float speed = 1.0f;
+
+    if (now - llc->last_update_tick < FFP_LIVE_LATENCY_UPDATE_INTERVAL_MS)
+        return;
+    llc->last_update_tick = now;
+
+    /* a live stream has no duration */
+    if (!is->realtime && is->ic->duration != AV_NOPTS_VALUE && is->ic->duration > 0)
+        return;
+
+    llc->latency_ms = is->audio_st ? ffp->stat.audio_cache.duration : ffp->stat.video_cache.duration;
+    if (llc->target_ms <= 0 || is->paused || is->buffering_on || is->seek_req) {
+        live_latency_set_speed(ffp, 1.0f);
+        return;
+    }
+
+    error_ms = llc->latency_ms - llc->target_ms;
+    if (llc->jump_ms > 0 && error_ms > llc->jump_ms) {
+        live_latency_jump(ffp, error_ms);
+        return;
+    }
+
+#if defined(__ANDROID__)
+    /* without soundtouch, audiotrack would change the pitch too */
+    if (!is->handle)
+        return;
+#endif
+    if (FFABS(error_ms) > FFP_LIVE_LATENCY_TOLERANCE_MS) {
+        speed = 1.0f + error_ms / 1000.0f * FFP_LIVE_LATENCY_SPEED_PER_SECOND;
+        speed = av_clipf(speed, llc->min_speed, llc->max_speed);
+        /* steps of 1%, so that the rate does not change on every update */
+        speed = roundf(speed * 100) / 100;
+    }
+    live_latency_set_speed(ffp, speed);
+}
+
 static int is_realtime(AVFormatContext *s)
 {
     if(   !strcmp(s->iformat->name, "rtp")
@@ -3567,6 +4196,48 @@ FF_DISABLE_DEPRECATION_WARNINGS
 FF_ENABLE_DEPRECATION_WARNINGS
 }
 
+static const char *stream_info_cache_key(FFPlayer *ffp)
+{
+    if (!ffp->stream_info_cache)
+        return NULL;
+    if (ffp->stream_info_cache_key && *ffp->stream_info_cache_key)
+        return ffp->stream_info_cache_key;
+    return ffp->is->filename;
+}
+
+/*
+ * Parameters taken from the cache instead of avformat_find_stream_info() are
+ * only in codecpar, the parsers read them from the internal context.
+ */
+static void stream_info_cache_update_contexts(AVFormatContext *ic)
+{
+    unsigned int i;
+    for (i = 0; i < ic->nb_streams; i++)
+        ic->streams[i]->internal->need_context_update = 1;
+}
+
+/*
+ * A decoder failed to open with the cached parameters: drop the entry and
+ * probe for real. Returns 1 if the stream components should be opened again.
+ */
+static int stream_info_cache_fallback(FFPlayer *ffp)
+{
+    VideoState *is = ffp->is;
+    const char *key = stream_info_cache_key(ffp);
+
+    if (!key || ffp->stream_info_cache_result != IJKSTREAMINFO_HIT)
+        return 0;
+
+    av_log(NULL, AV_LOG_WARNING, "stream info cache: decoder open failed, probing %s\n", is->filename);
+    ijkstreaminfo_remove(key);
+    ffp->stream_info_cache_result = IJKSTREAMINFO_FALLBACK;
+    if (avformat_find_stream_info(is->ic, NULL) < 0)
+        return 0;
+
+    ijkstreaminfo_store(key, is->ic);
+    return 1;
+}
+
 /* this thread gets the stream from the disk or the network */
 static int read_thread(void *arg)
 {
@@ -3617,6 +4288,11 @@ retry_info:
     }
     ic->interrupt_callback.callback = decode_interrupt_cb;
     ic->interrupt_callback.opaque = is;
+    if (av_dict_get(ffp->format_opts, "http-tcp-hook", NULL, AV_DICT_MATCH_CASE)) {
+        is->ic_io_open = ic->io_open;
+        ic->io_open    = ffp_io_open;
+        ic->opaque     = ffp;
+    }
     if (!av_dict_get(ffp->format_opts, "scan_all_pmts", NULL, AV_DICT_MATCH_CASE)) {
         av_dict_set(&ffp->format_opts, "scan_all_pmts", "1", AV_DICT_DONT_OVERWRITE);
         scan_all_pmts_set = 1;
@@ -3650,6 +4326,7 @@ retry_info:
 
     if (ffp->iformat_name && strlen(ffp->iformat_name))
         is->iformat = av_find_input_format(ffp->iformat_name);
+    startup_begin(ffp, FFP_STARTUP_STAGE_OPEN_INPUT);
     err = avformat_open_input(&ic, is->filename, is->iformat, &ffp->format_opts);
     if (err < 0) {
         print_error(is->filename, err);
@@ -3662,6 +4339,7 @@ retry_info:
         goto fail;
     }
     ffp_notify_msg1(ffp, FFP_MSG_OPEN_INPUT);
+    startup_end(ffp, FFP_STARTUP_STAGE_OPEN_INPUT);
 
     if (scan_all_pmts_set)
         av_dict_set(&ffp->format_opts, "scan_all_pmts", NULL, AV_DICT_MATCH_CASE);
@@ -3692,6 +4370,7 @@ retry_info:
     //orig_nb_streams = ic->nb_streams;
 
 
+    startup_begin(ffp, FFP_STARTUP_STAGE_FIND_STREAM_INFO);
     if (!ffp->async_init_decoder || !ffp->use_extradata) {
         AVDictionary **opts = setup_find_stream_info_opts(ic, ffp->codec_opts);
         int orig_nb_streams = ic->nb_streams;
@@ -3708,9 +4387,19 @@ retry_info:
                     break;
                 }
             }
+            if (stream_info_cache_key(ffp)) {
+                ffp->stream_info_cache_result = ijkstreaminfo_apply(stream_info_cache_key(ffp), ic);
+                if (ffp->stream_info_cache_result == IJKSTREAMINFO_HIT) {
+                    stream_info_cache_update_contexts(ic);
+                    break;
+                }
+            }
             err = avformat_find_stream_info(ic, opts);
+            if (err >= 0 && stream_info_cache_key(ffp))
+                ijkstreaminfo_store(stream_info_cache_key(ffp), ic);
         } while(0);
         ffp_notify_msg1(ffp, FFP_MSG_FIND_STREAM_INFO);
+        startup_end(ffp, FFP_STARTUP_STAGE_FIND_STREAM_INFO);
 
         for (i = 0; i < orig_nb_streams; i++)
             av_dict_free(&opts[i]);
@@ -3788,6 +4477,7 @@ retry_info:
             goto retry_info;
         }
         ffp_notify_msg1(ffp, FFP_MSG_FIND_STREAM_INFO);
+        startup_end(ffp, FFP_STARTUP_STAGE_FIND_STREAM_INFO);
         av_log(NULL, AV_LOG_INFO, "nb_streams = %d\n", ic->nb_streams);
     }
     if (ffp->async_init_decoder && ffp->use_extradata && is->viddec.avctx) {
@@ -3896,16 +4586,33 @@ retry_info:
 #endif
 
         /* open the streams */
-        if (st_index[AVMEDIA_TYPE_AUDIO] >= 0) {
-            stream_component_open(ffp, st_index[AVMEDIA_TYPE_AUDIO]);
+        if (ffp->parallel_init_decoder && st_index[AVMEDIA_TYPE_AUDIO] >= 0 && st_index[AVMEDIA_TYPE_VIDEO] >= 0) {
+            int audio_ret;
+
+            ret = stream_components_open_parallel(ffp, st_index[AVMEDIA_TYPE_AUDIO], st_index[AVMEDIA_TYPE_VIDEO], &audio_ret);
+            if ((audio_ret < 0 || ret < 0) && stream_info_cache_fallback(ffp)) {
+                if (audio_ret < 0)
+                    audio_ret = stream_component_open(ffp, st_index[AVMEDIA_TYPE_AUDIO]);
+                if (ret < 0)
+                    ret = stream_component_open(ffp, st_index[AVMEDIA_TYPE_VIDEO]);
+            }
+            if (audio_ret >= 0)
+                SDL_AoutPauseAudio(ffp->aout, 0);
         } else {
-            ffp->av_sync_type = AV_SYNC_EXTERNAL_CLOCK;
-            is->av_sync_type  = ffp->av_sync_type;
-        }
+            if (st_index[AVMEDIA_TYPE_AUDIO] >= 0) {
+                if (stream_component_open(ffp, st_index[AVMEDIA_TYPE_AUDIO]) < 0 && stream_info_cache_fallback(ffp))
+                    stream_component_open(ffp, st_index[AVMEDIA_TYPE_AUDIO]);
+            } else {
+                ffp->av_sync_type = AV_SYNC_EXTERNAL_CLOCK;
+                is->av_sync_type  = ffp->av_sync_type;
+            }
 
-        ret = -1;
-        if (st_index[AVMEDIA_TYPE_VIDEO] >= 0) {
-            ret = stream_component_open(ffp, st_index[AVMEDIA_TYPE_VIDEO]);
+            ret = -1;
+            if (st_index[AVMEDIA_TYPE_VIDEO] >= 0) {
+                ret = stream_component_open(ffp, st_index[AVMEDIA_TYPE_VIDEO]);
+                if (ret < 0 && stream_info_cache_fallback(ffp))
+                    ret = stream_component_open(ffp, st_index[AVMEDIA_TYPE_VIDEO]);
+            }
         }
         if (is->show_mode == SHOW_MODE_NONE)
             is->show_mode = ret >= 0 ? SHOW_MODE_VIDEO : SHOW_MODE_RDFT;
@@ -3921,6 +4628,7 @@ retry_info:
     }
 
     ffp_notify_msg1(ffp, FFP_MSG_COMPONENT_OPEN);
+    startup_end(ffp, FFP_STARTUP_STAGE_COMPONENT_OPEN);
 
     if (!ffp->ijkmeta_delay_init) {
         ijkmeta_set_avformat_context_l(ffp->meta, ic);
@@ -4137,6 +4845,8 @@ retry_info:
             is->queue_attachments_req = 0;
         }
 
+        live_latency_update(ffp);
+
         /* if the queue are full, no need to read more */
         if (ffp->infinite_buffer<1 && !is->seek_req &&
 #ifdef FFP_MERGE
@@ -4441,6 +5151,9 @@ static VideoState *stream_open(FFPlayer *ffp, const char *filename, AVInputForma
     is->ytop    = 0;
     is->xleft   = 0;
 #if defined(__ANDROID__)
+    /* the live latency control changes the rate, keep the pitch */
+    if (ffp->llc.target_ms > 0)
+        ffp->soundtouch_enable = 1;
     if (ffp->soundtouch_enable) {
         is->handle = ijk_soundtouch_create();
     }
@@ -4545,15 +5258,19 @@ static VideoState *stream_open(FFPlayer *ffp, const char *filename, AVInputForma
             /* open the decoders*/
             av_log(ffp, AV_LOG_ERROR, "async init decoder begin\n");
 
+            int64_t init_start = av_gettime_relative();
             if (is->video_stream >= 0 && decoder_open(ffp, &ffp->is->viddec.avctx) < 0) {
                 av_log(NULL, AV_LOG_ERROR, "open video codec fail\n");
                 is->async_init_flags |= ASYNC_INIT_VCODEC_FAIL;
             }
+            ffp->stat.video_init_duration = (av_gettime_relative() - init_start) / 1000;
 
+            init_start = av_gettime_relative();
             if (is->audio_stream >= 0 && decoder_open(ffp, &ffp->is->auddec.avctx) < 0) {
                 av_log(NULL, AV_LOG_ERROR, "open audio codec fail\n");
                 is->async_init_flags |= ASYNC_INIT_ACODEC_FAIL;
             }
+            ffp->stat.audio_init_duration = (av_gettime_relative() - init_start) / 1000;
 
             av_log(NULL, AV_LOG_ERROR, "async init decoder end\n");
         } else {
@@ -4860,6 +5577,7 @@ FFPlayer *ffp_create()
     msg_queue_init(&ffp->msg_queue);
     ffp->af_mutex = SDL_CreateMutex();
     ffp->vf_mutex = SDL_CreateMutex();
+    ffp->overlay_pool.mutex = SDL_CreateMutex();
 
     ffp_reset_internal(ffp);
     ffp->av_class = &ffp_context_class;
@@ -4870,22 +5588,14 @@ FFPlayer *ffp_create()
     return ffp;
 }
 
-void ffp_destroy(FFPlayer *ffp)
+static void ffp_free_frame_output(FFPlayer *ffp)
 {
-    if (!ffp)
-        return;
-
-    if (ffp->is) {
-        av_log(NULL, AV_LOG_WARNING, "ffp_destroy_ffplayer: force stream_close()");
-        stream_close(ffp);
-        ffp->is = NULL;
-    }
     if (ffp->get_frame_mode &&ffp->frame_output_info) {
         if (ffp->frame_output_mutex) {
-            SDL_DestroyMutex(ffp->frame_output_mutex);
+            SDL_DestroyMutexP(&ffp->frame_output_mutex);
         }
         if (ffp->frame_output_cond) {
-            SDL_DestroyCond(ffp->frame_output_cond);
+            SDL_DestroyCondP(&ffp->frame_output_cond);
         }
         if (ffp->frame_output_info->frame_img_convert_ctx) {
             sws_freeContext(ffp->frame_output_info->frame_img_convert_ctx);
@@ -4895,7 +5605,21 @@ void ffp_destroy(FFPlayer *ffp)
         }
         av_freep(&ffp->frame_output_info);
     }
+}
+
+void ffp_destroy(FFPlayer *ffp)
+{
+    if (!ffp)
+        return;
 
+    if (ffp->is) {
+        av_log(NULL, AV_LOG_WARNING, "ffp_destroy_ffplayer: force stream_close()");
+        stream_close(ffp);
+        ffp->is = NULL;
+    }
+    ffp_free_frame_output(ffp);
+
+    overlay_pool_clear(ffp);
     SDL_VoutFreeP(&ffp->vout);
     SDL_AoutFreeP(&ffp->aout);
     ffpipenode_free_p(&ffp->node_vdec);
@@ -4905,6 +5629,7 @@ void ffp_destroy(FFPlayer *ffp)
 
     SDL_DestroyMutexP(&ffp->af_mutex);
     SDL_DestroyMutexP(&ffp->vf_mutex);
+    SDL_DestroyMutexP(&ffp->overlay_pool.mutex);
 
     msg_queue_destroy(&ffp->msg_queue);
 
@@ -4921,6 +5646,41 @@ void ffp_destroy_p(FFPlayer **pffp)
     *pffp = NULL;
 }
 
+/*
+ * Returns a stopped player to its just-created state without tearing down
+ * vout, aout and pipeline, so that the next prepare skips their creation.
+ * The video decoder node is bound to the closed stream and is released.
+ */
+void ffp_reset(FFPlayer *ffp)
+{
+    SDL_Vout        *vout     = NULL;
+    SDL_Aout        *aout     = NULL;
+    IJKFF_Pipeline  *pipeline = NULL;
+
+    if (!ffp)
+        return;
+
+    if (ffp->is) {
+        av_log(NULL, AV_LOG_WARNING, "ffp_reset: force stream_close()");
+        stream_close(ffp);
+        ffp->is = NULL;
+    }
+    ffp_free_frame_output(ffp);
+    ffpipenode_free_p(&ffp->node_vdec);
+
+    vout     = ffp->vout;
+    aout     = ffp->aout;
+    pipeline = ffp->pipeline;
+
+    ffp_reset_internal(ffp);
+    ffp->av_class = &ffp_context_class;
+    av_opt_set_defaults(ffp);
+
+    ffp->vout     = vout;
+    ffp->aout     = aout;
+    ffp->pipeline = pipeline;
+}
+
 static AVDictionary **ffp_get_opt_dict(FFPlayer *ffp, int opt_category)
 {
     assert(ffp);
@@ -4943,6 +5703,15 @@ static int app_func_event(AVApplicationContext *h, int message ,void *data, size
         return 0;
 
     FFPlayer *ffp = (FFPlayer *)h->opaque;
+    switch (message) {
+        case IJKDNS_EVENT_WILL_RESOLVE:     startup_begin(ffp, FFP_STARTUP_STAGE_DNS);          return 0;
+        case IJKDNS_EVENT_DID_RESOLVE:      startup_end(ffp, FFP_STARTUP_STAGE_DNS);            return 0;
+        case AVAPP_CTRL_WILL_TCP_OPEN:      startup_begin(ffp, FFP_STARTUP_STAGE_TCP_CONNECT);  break;
+        case AVAPP_CTRL_DID_TCP_OPEN:       startup_end(ffp, FFP_STARTUP_STAGE_TCP_CONNECT);    break;
+        case AVAPP_EVENT_WILL_HTTP_OPEN:    startup_begin(ffp, FFP_STARTUP_STAGE_HTTP_OPEN);    break;
+        case AVAPP_EVENT_DID_HTTP_OPEN:     startup_end(ffp, FFP_STARTUP_STAGE_HTTP_OPEN);      break;
+    }
+
     if (!ffp->inject_opaque)
         return 0;
     if (message == AVAPP_EVENT_IO_TRAFFIC && sizeof(AVAppIOTraffic) == size) {
@@ -4976,6 +5745,10 @@ static int ijkio_app_func_event(IjkIOApplicationContext *h, int message ,void *d
         ffp->stat.cache_file_pos          = statistic->cache_file_pos;
         ffp->stat.cache_count_bytes       = statistic->cache_count_bytes;
         ffp->stat.logical_file_size       = statistic->logical_file_size;
+        ffp->stat.cache_read_bytes        = statistic->cache_read_bytes;
+        ffp->stat.cache_range_bytes       = statistic->cache_range_bytes;
+        ffp->stat.cache_connections       = statistic->cache_connections;
+        memcpy(ffp->stat.cache_connection_speeds, statistic->cache_connection_speeds, sizeof(ffp->stat.cache_connection_speeds));
     }
 
     return 0;
@@ -5164,6 +5937,8 @@ int ffp_prepare_async_l(FFPlayer *ffp, const char *file_name)
     assert(!ffp->is);
     assert(file_name);
 
+    ffp_reset_startup_waterfall(&ffp->startup, av_gettime_relative());
+
     if (av_stristart(file_name, "rtmp", NULL) ||
         av_stristart(file_name, "rtsp", NULL)) {
         // There is total different meaning for 'timeout' option in rtmp
@@ -5197,6 +5972,19 @@ int ffp_prepare_async_l(FFPlayer *ffp, const char *file_name)
     av_log(NULL, AV_LOG_INFO, "===================\n");
 
     av_opt_set_dict(ffp, &ffp->player_opts);
+    ffp->stream_info_cache_result = IJKSTREAMINFO_MISS;
+    if (ffp->stream_info_cache && ffp->stream_info_cache_dir)
+        ijkstreaminfo_set_dir(ffp->stream_info_cache_dir);
+    // http reaches tcp through ijktcphook, which parks idle keep-alive connections
+    // and connects to the addresses of the process-wide dns cache
+    if (ffp->http_connection_pool || ffp->dns_cache)
+        av_dict_set(&ffp->format_opts, "http-tcp-hook", "ijktcphook", AV_DICT_DONT_OVERWRITE);
+    if (ffp->http_connection_pool) {
+        av_dict_set(&ffp->format_opts, "multiple_requests", "1", AV_DICT_DONT_OVERWRITE);
+        av_dict_set_int(&ffp->format_opts, "ijktcphook-pool", 1, 0);
+    }
+    if (ffp->dns_cache)
+        av_dict_set_int(&ffp->format_opts, "ijktcphook-dns-cache", 1, 0);
     if (!ffp->aout) {
         ffp->aout = ffpipeline_open_audio_output(ffp->pipeline, ffp);
         if (!ffp->aout)
@@ -5533,7 +6321,7 @@ void ffp_track_statistic_l(FFPlayer *ffp, AVStream *st, PacketQueue *q, FFTrackC
     }
 
     if (q && st && st->time_base.den > 0 && st->time_base.num > 0) {
-        cache->duration = q->duration * av_q2d(st->time_base) * 1000;
+        cache->duration = packet_queue_duration(q) * av_q2d(st->time_base) * 1000;
     }
 }
 
@@ -5817,6 +6605,8 @@ float ffp_get_property_float(FFPlayer *ffp, int id, float default_value)
             return ffp ? ffp->pf_playback_volume : default_value;
         case FFP_PROP_FLOAT_DROP_FRAME_RATE:
             return ffp ? ffp->stat.drop_frame_rate : default_value;
+        case FFP_PROP_FLOAT_FRAMEDROP_TARGET_FPS:
+            return ffp ? ffp->fdc.target_fps : default_value;
         default:
             return default_value;
     }
@@ -5831,6 +6621,10 @@ void ffp_set_property_float(FFPlayer *ffp, int id, float value)
         case FFP_PROP_FLOAT_PLAYBACK_VOLUME:
             ffp_set_playback_volume(ffp, value);
             break;
+        case FFP_PROP_FLOAT_FRAMEDROP_TARGET_FPS:
+            if (ffp)
+                ffp->fdc.target_fps = FFMAX(value, 0);
+            break;
         default:
             return;
     }
@@ -5918,6 +6712,10 @@ int64_t ffp_get_property_int64(FFPlayer *ffp, int id, int64_t default_value)
             if (!ffp)
                 return default_value;
             return ffp->stat.cache_count_bytes;
+       case FFP_PROP_INT64_CACHE_STATISTIC_READ_BYTES:
+            if (!ffp)
+                return default_value;
+            return ffp->stat.cache_read_bytes;
        case FFP_PROP_INT64_LOGICAL_FILE_SIZE:
             if (!ffp)
                 return default_value;
@@ -5934,6 +6732,86 @@ int64_t ffp_get_property_int64(FFPlayer *ffp, int id, int64_t default_value)
             if (!ffp || !ffp->is || !ffp->is->ic)
                 return default_value;
             return ffp->is->ic->demuxer_status_code;
+        case FFP_PROP_INT64_VIDEO_PACKET_QUEUE_WAIT_COUNT:
+            if (!ffp || !ffp->is)
+                return default_value;
+            return ffp->is->videoq.wait_count;
+        case FFP_PROP_INT64_VIDEO_PACKET_QUEUE_WAIT_TIME:
+            if (!ffp || !ffp->is)
+                return default_value;
+            return ffp->is->videoq.wait_time_us;
+        case FFP_PROP_INT64_VIDEO_PACKET_QUEUE_CONTENTION:
+            if (!ffp || !ffp->is)
+                return default_value;
+            return ffp->is->videoq.contention_count;
+        case FFP_PROP_INT64_AUDIO_PACKET_QUEUE_WAIT_COUNT:
+            if (!ffp || !ffp->is)
+                return default_value;
+            return ffp->is->audioq.wait_count;
+        case FFP_PROP_INT64_AUDIO_PACKET_QUEUE_WAIT_TIME:
+            if (!ffp || !ffp->is)
+                return default_value;
+            return ffp->is->audioq.wait_time_us;
+        case FFP_PROP_INT64_AUDIO_PACKET_QUEUE_CONTENTION:
+            if (!ffp || !ffp->is)
+                return default_value;
+            return ffp->is->audioq.contention_count;
+        case FFP_PROP_INT64_VIDEO_OVERLAY_ALLOC_COUNT:
+            if (!ffp)
+                return default_value;
+            return ffp->stat.overlay_alloc_count;
+        case FFP_PROP_INT64_VIDEO_OVERLAY_POOL_HIT_COUNT:
+            if (!ffp)
+                return default_value;
+            return ffp->stat.overlay_pool_hit_count;
+        case FFP_PROP_INT64_VIDEO_OVERLAY_POOL_SIZE:
+            if (!ffp)
+                return default_value;
+            return ffp->overlay_pool.nb_entries;
+        case FFP_PROP_INT64_FRAMEDROP_MAX_LEVEL:
+            if (!ffp)
+                return default_value;
+            return ffp->fdc.max_level;
+        case FFP_PROP_INT64_FRAMEDROP_LEVEL:
+            if (!ffp)
+                return default_value;
+            return ffp->fdc.level;
+        case FFP_PROP_INT64_LIVE_LATENCY:
+            if (!ffp)
+                return default_value;
+            return ffp->llc.latency_ms;
+        case FFP_PROP_INT64_LIVE_LATENCY_TARGET:
+            if (!ffp)
+                return default_value;
+            return ffp->llc.target_ms;
+        case FFP_PROP_INT64_LIVE_LATENCY_JUMP_COUNT:
+            if (!ffp)
+                return default_value;
+            return ffp->llc.jump_count;
+        case FFP_PROP_INT64_CACHE_STATISTIC_RANGE_BYTES:
+            if (!ffp)
+                return default_value;
+            return ffp->stat.cache_range_bytes;
+        case FFP_PROP_INT64_CACHE_STATISTIC_CONNECTIONS:
+            if (!ffp)
+                return default_value;
+            return ffp->stat.cache_connections;
+        case FFP_PROP_INT64_DROP_FRAME_COUNT:
+            if (!ffp)
+                return default_value;
+            return ffp->stat.drop_frame_count;
+        case FFP_PROP_INT64_STREAM_INFO_CACHE:
+            if (!ffp)
+                return default_value;
+            return ffp->stream_info_cache_result;
+        case FFP_PROP_INT64_AUDIO_INIT_DURATION:
+            if (!ffp)
+                return default_value;
+            return ffp->stat.audio_init_duration;
+        case FFP_PROP_INT64_VIDEO_INIT_DURATION:
+            if (!ffp)
+                return default_value;
+            return ffp->stat.video_init_duration;
         default:
             return default_value;
     }
@@ -5962,11 +6840,34 @@ void ffp_set_property_int64(FFPlayer *ffp, int id, int64_t value)
             if (ffp) {
                 ffp_delete_frame_output_task(ffp, value);
             }
+            break;
+        case FFP_PROP_INT64_FRAMEDROP_MAX_LEVEL:
+            if (ffp) {
+                ffp->fdc.max_level = (int)FFMIN(FFMAX(value, 0), FFP_FRAMEDROP_LEVEL_MAX);
+            }
+            break;
+        case FFP_PROP_INT64_LIVE_LATENCY_TARGET:
+            if (ffp) {
+                ffp->llc.target_ms = (int)FFMIN(FFMAX(value, 0), MAX_CACHE_TIME);
+            }
+            break;
         default:
             break;
     }
 }
 
+int ffp_get_cache_connection_speeds(FFPlayer *ffp, int64_t *speeds, int capacity)
+{
+    int i;
+
+    if (!ffp)
+        return 0;
+
+    for (i = 0; i < IJKIOAPP_CACHE_MAX_CONNECTIONS && i < capacity; i++)
+        speeds[i] = ffp->stat.cache_connection_speeds[i];
+    return IJKIOAPP_CACHE_MAX_CONNECTIONS;
+}
+
 IjkMediaMeta *ffp_get_meta_l(FFPlayer *ffp)
 {
     if (!ffp)
@@ -180,24 +180,58 @@ typedef struct FrameOutputTaskInfo {
     struct SwsContext *frame_img_convert_ctx;
 } FrameOutputTaskInfo;
 
-typedef struct MyAVPacketList {
+#define PACKET_QUEUE_SEGMENT_SIZE 64
+
+#define PACKET_QUEUE_SLOT_EMPTY     0
+#define PACKET_QUEUE_SLOT_FULL      1
+#define PACKET_QUEUE_SLOT_TAKEN     2
+#define PACKET_QUEUE_SLOT_DROPPED   3
+
+typedef struct PacketQueueSlot {
     AVPacket pkt;
-    struct MyAVPacketList *next;
     int serial;
-} MyAVPacketList;
+    int state;
+} PacketQueueSlot;
+
+typedef struct PacketQueueSegment {
+    PacketQueueSlot slots[PACKET_QUEUE_SEGMENT_SIZE];
+    struct PacketQueueSegment *next;
+} PacketQueueSegment;
 
+/*
+ * Single consumer queue of preallocated slots, in a chain of segments.
+ * The consumer takes packets without locking, and only locks to sleep on an
+ * empty queue. Producer side calls (put, flush, start, abort) are serialized
+ * by the mutex, which is uncontended with a single producer. Segments passed
+ * by the consumer are recycled by the producer, a new one is only allocated
+ * when all of them are in use.
+ */
 typedef struct PacketQueue {
-    MyAVPacketList *first_pkt, *last_pkt;
+    /* producer side */
+    PacketQueueSegment *first_seg;
+    PacketQueueSegment *last_seg;
+    int last_idx;
+
+    /* consumer side */
+    PacketQueueSegment *head_seg;
+    int head_idx;
+    int consumer_waiting;
+
     int nb_packets;
     int size;
-    int64_t duration;
+    /* in time base units, wrapping 32-bit counters so that the atomics are native on armeabi */
+    uint32_t duration;          /* put minus flushed, see packet_queue_duration() */
+    uint32_t duration_taken;    /* written by the consumer only */
     int abort_request;
     int serial;
     SDL_mutex *mutex;
     SDL_cond *cond;
-    MyAVPacketList *recycle_pkt;
-    int recycle_count;
-    int alloc_count;
+    int nb_segments;
+    int nb_lockers;
+
+    int64_t wait_count;
+    int64_t wait_time_us;
+    int64_t contention_count;
 
     int is_buffer_indicator;
 } PacketQueue;
@@ -313,6 +347,8 @@ typedef struct VideoState {
     int read_pause_return;
 #endif
     AVFormatContext *ic;
+    int (*ic_io_open)(struct AVFormatContext *s, AVIOContext **pb, const char *url,
+                      int flags, AVDictionary **options);    /* replaced by ffp_io_open */
     int realtime;
 
     Clock audclk;
@@ -445,6 +481,9 @@ typedef struct VideoState {
     /* Only used for async-init-decoder */
     uint32_t async_init_flags;
     volatile int initialized_decoder;
+
+    /* parallel-init-decoder: the audio output starts once the video decoder is open too */
+    int audio_start_deferred;
     int          nb_streams_guess;
     AVDictionary *orig_format_opts;
     AVDictionary *orig_codec_opts;
@@ -550,8 +589,16 @@ typedef struct FFStatistic
     int64_t cache_file_pos;
     int64_t cache_count_bytes;
     int64_t logical_file_size;
+    int64_t cache_read_bytes;
+    int64_t cache_range_bytes;
+    int64_t cache_connections;
+    int64_t cache_connection_speeds[IJKIOAPP_CACHE_MAX_CONNECTIONS];
+    int64_t overlay_alloc_count;
+    int64_t overlay_pool_hit_count;
     int drop_frame_count;
     int decode_frame_count;
+    int64_t audio_init_duration;
+    int64_t video_init_duration;
     float drop_frame_rate;
 } FFStatistic;
 
@@ -586,6 +633,142 @@ inline static void ffp_reset_demux_cache_control(FFDemuxCacheControl *dcc)
     dcc->current_high_water_mark_in_ms  = DEFAULT_FIRST_HIGH_WATER_MARK_IN_MS;
 }
 
+/*
+ * Levels of the adaptive frame drop, each one includes the previous ones.
+ * The controller goes up a level when decoded frames are behind the master
+ * clock or frames get dropped, and down again after the decoder has kept up
+ * for a while.
+ */
+#define FFP_FRAMEDROP_LEVEL_NONE                0
+#define FFP_FRAMEDROP_LEVEL_LOOP_FILTER_NONREF  1   /* no deblocking of non-reference frames */
+#define FFP_FRAMEDROP_LEVEL_LOOP_FILTER_ALL     2   /* no deblocking at all */
+#define FFP_FRAMEDROP_LEVEL_SKIP_NONREF         3   /* non-reference frames are not decoded */
+#define FFP_FRAMEDROP_LEVEL_DROP_LATE           4   /* late frames are dropped, several in a row */
+#define FFP_FRAMEDROP_LEVEL_MAX                 FFP_FRAMEDROP_LEVEL_DROP_LATE
+
+#define FFP_FRAMEDROP_CONTROL_WINDOW_MS         1000
+#define FFP_FRAMEDROP_CONTROL_RELAX_WINDOWS     5
+#define FFP_FRAMEDROP_CONTROL_RELAX_WINDOWS_MAX 60
+#define FFP_FRAMEDROP_CONTROL_FRAMEDROP         5
+
+typedef struct FFFrameDropControl
+{
+    int max_level;              /* 0 disables the controller */
+    double target_fps;          /* 0 to only watch lateness and drops */
+    int level;
+
+    AVCodecContext *avctx;
+    enum AVDiscard base_skip_loop_filter;
+    enum AVDiscard base_skip_frame;
+
+    int64_t window_start;
+    int window_serial;
+    int window_frames;
+    int window_late_frames;
+    int window_drops;
+
+    int stable_windows;
+    int relax_windows;
+    int windows_since_relax;
+} FFFrameDropControl;
+
+inline static void ffp_reset_frame_drop_control(FFFrameDropControl *fdc)
+{
+    memset(fdc, 0, sizeof(FFFrameDropControl));
+    fdc->relax_windows = FFP_FRAMEDROP_CONTROL_RELAX_WINDOWS;
+    fdc->windows_since_relax = FFP_FRAMEDROP_CONTROL_RELAX_WINDOWS_MAX;
+}
+
+/*
+ * Overlays released by the picture queue, by size and format, so that a
+ * resolution or format flip back and forth does not recreate them. Owned by
+ * the player rather than by the stream, the overlays belong to its vout.
+ */
+#define FFP_OVERLAY_POOL_SIZE (2 * VIDEO_PICTURE_QUEUE_SIZE_DEFAULT)
+
+typedef struct FFOverlayPoolEntry
+{
+    SDL_VoutOverlay *overlay;
+    int width;
+    int height;
+    int frame_format;
+    Uint32 overlay_format;
+} FFOverlayPoolEntry;
+
+typedef struct FFOverlayPool
+{
+    SDL_mutex *mutex;
+    FFOverlayPoolEntry entries[FFP_OVERLAY_POOL_SIZE]; /* least recently released first */
+    int nb_entries;
+} FFOverlayPool;
+
+/*
+ * Keeps the data queued by a live stream, its latency behind the live edge,
+ * around a target: playback is sped up or slowed down a little, and the
+ * queues are cut at a key frame when the latency is far beyond the target.
+ */
+#define FFP_LIVE_LATENCY_UPDATE_INTERVAL_MS 200
+#define FFP_LIVE_LATENCY_TOLERANCE_MS       200
+#define FFP_LIVE_LATENCY_SPEED_PER_SECOND   0.05    /* speed change per second off target */
+
+typedef struct FFLiveLatencyControl
+{
+    /* options */
+    int target_ms;              /* 0 disables the control */
+    int jump_ms;                /* cut the queues above target_ms + jump_ms, 0 never */
+    double min_speed;
+    double max_speed;
+
+    int64_t latency_ms;
+    float speed;                /* playback rate last applied, the application owns it when it differs */
+    int jump_count;
+    int64_t last_update_tick;
+} FFLiveLatencyControl;
+
+inline static void ffp_reset_live_latency_control(FFLiveLatencyControl *llc)
+{
+    memset(llc, 0, sizeof(FFLiveLatencyControl));
+    llc->speed = 1.0f;
+}
+
+/*
+ * Startup waterfall: when each stage of the startup began and ended, in
+ * microseconds since ffp_prepare_async_l(), -1 for a stage not reached.
+ * Only the first occurrence of a stage counts. Written by the threads running
+ * the stages with atomics, and posted once as FFP_MSG_STARTUP_WATERFALL when
+ * the first frame of every opened stream is rendered.
+ * The offsets are kept in 32 bits, saturated at INT32_MAX (about 35 minutes),
+ * so that the atomics stay lock-free on 32-bit targets without libatomic.
+ */
+#define FFP_STARTUP_STAGE_DNS               0
+#define FFP_STARTUP_STAGE_TCP_CONNECT       1
+#define FFP_STARTUP_STAGE_HTTP_OPEN         2
+#define FFP_STARTUP_STAGE_OPEN_INPUT        3
+#define FFP_STARTUP_STAGE_FIND_STREAM_INFO  4
+#define FFP_STARTUP_STAGE_COMPONENT_OPEN    5
+#define FFP_STARTUP_STAGE_AUDIO_DECODE      6   /* decoder started to first frame decoded */
+#define FFP_STARTUP_STAGE_VIDEO_DECODE      7
+#define FFP_STARTUP_STAGE_AUDIO_RENDER      8   /* first frame decoded to first frame rendered */
+#define FFP_STARTUP_STAGE_VIDEO_RENDER      9
+#define FFP_STARTUP_STAGE_NB                10
+
+typedef struct FFStartupWaterfall
+{
+    int64_t prepare_time;                       /* av_gettime_relative() */
+    int32_t stages[FFP_STARTUP_STAGE_NB * 2];   /* begin and end of each stage */
+    int delivered;
+} FFStartupWaterfall;
+
+inline static void ffp_reset_startup_waterfall(FFStartupWaterfall *sw, int64_t prepare_time)
+{
+    int i;
+
+    sw->prepare_time = prepare_time;
+    for (i = 0; i < FFP_STARTUP_STAGE_NB * 2; i++)
+        sw->stages[i] = -1;
+    sw->delivered = 0;
+}
+
 /* ffplayer */
 struct IjkMediaMeta;
 struct IJKFF_Pipeline;
@@ -754,6 +937,10 @@ typedef struct FFPlayer {
     void               *log_output_opaque;
     FFStatistic         stat;
     FFDemuxCacheControl dcc;
+    FFFrameDropControl  fdc;
+    FFOverlayPool       overlay_pool;
+    FFLiveLatencyControl llc;
+    FFStartupWaterfall  startup;
 
     AVApplicationContext *app_ctx;
     IjkIOManagerContext *ijkio_manager_ctx;
@@ -765,6 +952,7 @@ typedef struct FFPlayer {
     int get_frame_mode;
     FrameOutputTaskInfo *frame_output_info;
     int async_init_decoder;
+    int parallel_init_decoder;
     char *video_mime_type;
     char *mediacodec_default_name;
     int ijkmeta_delay_init;
@@ -779,6 +967,12 @@ typedef struct FFPlayer {
     char *buffering_water_mark_string;
     int water_mark_index;
     int water_mark_array[WATER_MARK_ARRAY_SIZE];
+    int http_connection_pool;
+    int dns_cache;
+    int stream_info_cache;
+    char *stream_info_cache_key;
+    char *stream_info_cache_dir;
+    int64_t stream_info_cache_result;
 } FFPlayer;
 
 #define fftime_to_milliseconds(ts) (av_rescale(ts, 1000, AV_TIME_BASE))
@@ -898,6 +1092,7 @@ inline static void ffp_reset_internal(FFPlayer *ffp)
 
     ffp->no_time_adjust                 = 0; // option
     ffp->async_init_decoder             = 0; // option
+    ffp->parallel_init_decoder          = 0; // option
     ffp->video_mime_type                = NULL; // option
     ffp->mediacodec_default_name        = NULL; // option
     ffp->ijkmeta_delay_init             = 0; // option
@@ -907,6 +1102,12 @@ inline static void ffp_reset_internal(FFPlayer *ffp)
     ffp->hw_decode_error_code           = 0;
     ffp->max_cache_time                 = 0;
     ffp->buffering_water_mark_string    = NULL;
+    ffp->http_connection_pool           = 0; // option
+    ffp->dns_cache                      = 0; // option
+    ffp->stream_info_cache              = 0; // option
+    ffp->stream_info_cache_key          = NULL; // option
+    ffp->stream_info_cache_dir          = NULL; // option
+    ffp->stream_info_cache_result       = 0;
 
     ijkmeta_reset(ffp->meta);
 
@@ -930,6 +1131,9 @@ inline static void ffp_reset_internal(FFPlayer *ffp)
     ffp->ijkio_inject_opaque = NULL;
     ffp_reset_statistic(&ffp->stat);
     ffp_reset_demux_cache_control(&ffp->dcc);
+    ffp_reset_frame_drop_control(&ffp->fdc);
+    ffp_reset_live_latency_control(&ffp->llc);
+    ffp_reset_startup_waterfall(&ffp->startup, 0);
 }
 
 
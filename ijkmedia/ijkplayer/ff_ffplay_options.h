@@ -102,6 +102,18 @@ static const AVOption ffp_context_options[] = {
     // extended options in ff_ffplay.c
     { "max-fps",                        "drop frames in video whose fps is greater than max-fps",
         OPTION_OFFSET(max_fps),         OPTION_INT(31, -1, 121) },
+    { "framedrop-max-level",            "highest level of the adaptive frame drop, 0 to disable it",
+        OPTION_OFFSET(fdc.max_level),   OPTION_INT(0, 0, FFP_FRAMEDROP_LEVEL_MAX) },
+    { "framedrop-target-fps",           "output fps the adaptive frame drop tries to keep, 0 to ignore",
+        OPTION_OFFSET(fdc.target_fps),  OPTION_DOUBLE(0, 0, 240) },
+    { "live-latency-target-ms",         "queued duration a live stream is kept around, 0 to disable",
+        OPTION_OFFSET(llc.target_ms),   OPTION_INT(0, 0, MAX_CACHE_TIME) },
+    { "live-latency-jump-ms",           "latency above the target which skips to a key frame, 0 to never skip",
+        OPTION_OFFSET(llc.jump_ms),     OPTION_INT(5000, 0, MAX_CACHE_TIME) },
+    { "live-latency-min-speed",         "slowest playback rate used to get back to the latency target",
+        OPTION_OFFSET(llc.min_speed),   OPTION_DOUBLE(0.95, 0.5, 1) },
+    { "live-latency-max-speed",         "fastest playback rate used to get back to the latency target",
+        OPTION_OFFSET(llc.max_speed),   OPTION_DOUBLE(1.1, 1, 2) },
 
     { "overlay-format",                 "fourcc of overlay format",
         OPTION_OFFSET(overlay_format),  OPTION_INT(SDL_FCC_RV32, INT_MIN, INT_MAX),
@@ -162,6 +174,8 @@ static const AVOption ffp_context_options[] = {
         OPTION_OFFSET(get_frame_mode),       OPTION_INT(0, 0, 1) },
     { "async-init-decoder",                  "async create decoder",
         OPTION_OFFSET(async_init_decoder),   OPTION_INT(0, 0, 1) },
+    { "parallel-init-decoder",              "open the audio decoder and output while the video decoder opens",
+        OPTION_OFFSET(parallel_init_decoder),   OPTION_INT(0, 0, 1) },
     { "video-mime-type",                    "default video mime type",
         OPTION_OFFSET(video_mime_type),     OPTION_STR(NULL) },
     { "hw-decode-fallback-enable",          "try fallback to ffplay decoder when hw decode fail",
@@ -170,6 +184,16 @@ static const AVOption ffp_context_options[] = {
         OPTION_OFFSET(max_cache_time),      OPTION_INT(DEFAULT_CACHE_TIME, MIN_CACHE_TIME, MAX_CACHE_TIME) },
     { "buffering-water-mark-string",                    "buffering water mark",
         OPTION_OFFSET(buffering_water_mark_string),     OPTION_STR(NULL) },
+    { "http-connection-pool",               "reuse keep-alive plain http connections across players",
+        OPTION_OFFSET(http_connection_pool),    OPTION_INT(0, 0, 1) },
+    { "dns-cache",                          "resolve hosts through the process-wide dns cache",
+        OPTION_OFFSET(dns_cache),           OPTION_INT(0, 0, 1) },
+    { "stream-info-cache",                  "reuse the stream parameters of the last open to skip probing",
+        OPTION_OFFSET(stream_info_cache),   OPTION_INT(0, 0, 1) },
+    { "stream-info-cache-key",              "content id of the stream info cache, defaults to the url",
+        OPTION_OFFSET(stream_info_cache_key),   OPTION_STR(NULL) },
+    { "stream-info-cache-dir",              "directory to keep the stream info cache across launches",
+        OPTION_OFFSET(stream_info_cache_dir),   OPTION_STR(NULL) },
 
         // iOS only options
     { "videotoolbox",                       "VideoToolbox: enable",
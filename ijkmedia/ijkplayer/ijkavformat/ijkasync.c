@@ -31,7 +31,6 @@
 #include "libavutil/avassert.h"
 #include "libavutil/avstring.h"
 #include "libavutil/error.h"
-#include "libavutil/fifo.h"
 #include "libavutil/log.h"
 #include "libavutil/opt.h"
 #include "libavutil/thread.h"
@@ -47,114 +46,259 @@
 
 #define SHORT_SEEK_THRESHOLD    (256 * 1024)
 
+#define ASYNC_SAMPLE_INTERVAL   (1000 * 1000)
+#define ASYNC_DEFAULT_MEMORY_CAP (64 * 1024 * 1024)
+
+/* bytes held by the rings of every async context of the process */
+static int64_t g_async_memory;
+static int64_t g_async_memory_cap = ASYNC_DEFAULT_MEMORY_CAP;
+
+typedef struct RingStore
+{
+    int           size;
+    uint8_t       data[];
+} RingStore;
+
+/*
+ * Single producer, single consumer ring, without locking.
+ * head is written by the io thread only; read and tail by the reading thread
+ * only, tail being the oldest byte kept for seeking backwards.
+ * The io thread swaps the store to resize the ring, the replaced one is
+ * freed once the reading thread does not point at it.
+ */
 typedef struct RingBuffer
 {
-    AVFifoBuffer *fifo;
+    RingStore    *store;
+    RingStore    *retired;
+    RingStore    *hazard;
     int           read_back_capacity;
+    int           capacity;
 
-    int           read_pos;
+    int64_t       head;
+    int64_t       read;
+    int64_t       tail;
 } RingBuffer;
 
-typedef struct Context {
-    AVClass        *class;
-    URLContext     *inner;
-
-    int             seek_request;
-    int64_t         seek_pos;
-    int             seek_whence;
-    int             seek_completed;
-    int64_t         seek_ret;
-
-    int             inner_io_error;
-    int             io_error;
-    int             io_eof_reached;
-
-    int64_t         logical_pos;
-    int64_t         logical_size;
-    RingBuffer      ring;
-
-    pthread_cond_t  cond_wakeup_main;
-    pthread_cond_t  cond_wakeup_background;
-    pthread_mutex_t mutex;
-    pthread_t       async_buffer_thread;
+static RingStore *ring_store_alloc(int size)
+{
+    RingStore *store = av_malloc(sizeof(RingStore) + size);
+    if (!store)
+        return NULL;
 
-    int             abort_request;
-    AVIOInterruptCB interrupt_callback;
+    store->size = size;
+    __atomic_add_fetch(&g_async_memory, size, __ATOMIC_RELAXED);
+    return store;
+}
 
-    /* options */
-    int64_t         forwards_capacity;
-    int64_t         backwards_capacity;
-    int64_t         app_ctx_intptr;
-    AVApplicationContext *app_ctx;
-} Context;
+static void ring_store_freep(RingStore **store)
+{
+    if (*store)
+        __atomic_sub_fetch(&g_async_memory, (*store)->size, __ATOMIC_RELAXED);
+    av_freep(store);
+}
 
 static int ring_init(RingBuffer *ring, int64_t capacity, int64_t read_back_capacity)
 {
     memset(ring, 0, sizeof(RingBuffer));
-    ring->fifo = av_fifo_alloc((unsigned int)(capacity + read_back_capacity));
-    if (!ring->fifo)
+    ring->store = ring_store_alloc((int)(capacity + read_back_capacity));
+    if (!ring->store)
         return AVERROR(ENOMEM);
 
     ring->read_back_capacity = (int)read_back_capacity;
+    ring->capacity           = (int)capacity;
     return 0;
 }
 
 static void ring_destroy(RingBuffer *ring)
 {
-    av_fifo_freep(&ring->fifo);
+    ring_store_freep(&ring->store);
+    ring_store_freep(&ring->retired);
 }
 
+/* io thread, while the reading thread waits for a seek */
 static void ring_reset(RingBuffer *ring)
 {
-    av_fifo_reset(ring->fifo);
-    ring->read_pos = 0;
+    __atomic_store_n(&ring->read, ring->head, __ATOMIC_SEQ_CST);
+    __atomic_store_n(&ring->tail, ring->head, __ATOMIC_SEQ_CST);
 }
 
 static int ring_size(RingBuffer *ring)
 {
-    return av_fifo_size(ring->fifo) - ring->read_pos;
+    return (int)(__atomic_load_n(&ring->head, __ATOMIC_SEQ_CST) - __atomic_load_n(&ring->read, __ATOMIC_SEQ_CST));
 }
 
+/* io thread */
 static int ring_space(RingBuffer *ring)
 {
-    return av_fifo_space(ring->fifo);
+    return ring->store->size - (int)(ring->head - __atomic_load_n(&ring->tail, __ATOMIC_SEQ_CST));
+}
+
+static int ring_capacity(RingBuffer *ring)
+{
+    return __atomic_load_n(&ring->capacity, __ATOMIC_RELAXED) + ring->read_back_capacity;
+}
+
+/* reading thread, the store it returns is kept until ring_leave() */
+static RingStore *ring_enter(RingBuffer *ring)
+{
+    RingStore *store;
+
+    do {
+        store = __atomic_load_n(&ring->store, __ATOMIC_SEQ_CST);
+        __atomic_store_n(&ring->hazard, store, __ATOMIC_SEQ_CST);
+    } while (store != __atomic_load_n(&ring->store, __ATOMIC_SEQ_CST));
+
+    return store;
+}
+
+static void ring_leave(RingBuffer *ring)
+{
+    __atomic_store_n(&ring->hazard, NULL, __ATOMIC_SEQ_CST);
+}
+
+/* io thread */
+static void ring_collect(RingBuffer *ring)
+{
+    if (ring->retired && __atomic_load_n(&ring->hazard, __ATOMIC_SEQ_CST) != ring->retired)
+        ring_store_freep(&ring->retired);
 }
 
 static int ring_generic_read(RingBuffer *ring, void *dest, int buf_size, void (*func)(void*, void*, int))
 {
-    int ret;
+    RingStore *store = ring_enter(ring);
+    int64_t    read  = ring->read;
+    int        pos   = (int)(read % store->size);
+    int        len   = FFMIN(buf_size, store->size - pos);
 
     av_assert2(buf_size <= ring_size(ring));
-    ret = av_fifo_generic_peek_at(ring->fifo, dest, ring->read_pos, buf_size, func);
-    ring->read_pos += buf_size;
-
-    if (ring->read_pos > ring->read_back_capacity) {
-        av_fifo_drain(ring->fifo, ring->read_pos - ring->read_back_capacity);
-        ring->read_pos = ring->read_back_capacity;
+    if (func) {
+        func(dest, store->data + pos, len);
+        if (len < buf_size)
+            func(dest, store->data, buf_size - len);
+    } else {
+        memcpy(dest, store->data + pos, len);
+        if (len < buf_size)
+            memcpy((uint8_t *)dest + len, store->data, buf_size - len);
     }
+    ring_leave(ring);
 
-    return ret;
+    read += buf_size;
+    if (read - ring->tail > ring->read_back_capacity)
+        __atomic_store_n(&ring->tail, read - ring->read_back_capacity, __ATOMIC_SEQ_CST);
+    __atomic_store_n(&ring->read, read, __ATOMIC_SEQ_CST);
+    return 0;
 }
 
+/* io thread */
 static int ring_generic_write(RingBuffer *ring, void *src, int size, int (*func)(void*, void*, int))
 {
+    RingStore *store = ring->store;
+    int        pos   = (int)(ring->head % store->size);
+    int        ret;
+
     av_assert2(size <= ring_space(ring));
-    return av_fifo_generic_write(ring->fifo, src, size, func);
+    ret = func(src, store->data + pos, FFMIN(size, store->size - pos));
+    if (ret > 0)
+        __atomic_store_n(&ring->head, ring->head + ret, __ATOMIC_SEQ_CST);
+    return ret;
+}
+
+/*
+ * io thread: moves the kept bytes to a store of capacity forwards bytes.
+ * Fails while the replaced store is still read, or while the kept bytes
+ * would not fit.
+ */
+static int ring_resize(RingBuffer *ring, int capacity)
+{
+    RingStore *store;
+    RingStore *old  = ring->store;
+    int64_t    tail = __atomic_load_n(&ring->tail, __ATOMIC_SEQ_CST);
+    int64_t    i;
+    int        size = capacity + ring->read_back_capacity;
+
+    ring_collect(ring);
+    if (ring->retired)
+        return AVERROR(EAGAIN);
+    if (ring->head - tail > size)
+        return AVERROR(EAGAIN);
+
+    store = ring_store_alloc(size);
+    if (!store)
+        return AVERROR(ENOMEM);
+
+    /* bytes before tail are never read again, even by a backward seek */
+    for (i = tail; i < ring->head; ) {
+        int from = (int)(i % old->size);
+        int to   = (int)(i % size);
+        int len  = (int)FFMIN(ring->head - i, FFMIN(old->size - from, size - to));
+        memcpy(store->data + to, old->data + from, len);
+        i += len;
+    }
+
+    __atomic_store_n(&ring->store, store, __ATOMIC_SEQ_CST);
+    __atomic_store_n(&ring->capacity, capacity, __ATOMIC_RELAXED);
+    ring->retired = old;
+    ring_collect(ring);
+    return 0;
 }
 
 static int ring_size_of_read_back(RingBuffer *ring)
 {
-    return ring->read_pos;
+    return (int)(ring->read - ring->tail);
 }
 
 static int ring_drain(RingBuffer *ring, int offset)
 {
     av_assert2(offset >= -ring_size_of_read_back(ring));
-    av_assert2(offset <= -ring_size(ring));
-    ring->read_pos += offset;
+    av_assert2(offset <= ring_size(ring));
+    __atomic_store_n(&ring->read, ring->read + offset, __ATOMIC_SEQ_CST);
     return 0;
 }
 
+typedef struct Context {
+    AVClass        *class;
+    URLContext     *inner;
+
+    int             seek_request;
+    int64_t         seek_pos;
+    int             seek_whence;
+    int             seek_completed;
+    int64_t         seek_ret;
+
+    int             inner_io_error;
+    int             io_error;
+    int             io_eof_reached;
+
+    int64_t         logical_pos;
+    int64_t         logical_size;
+    RingBuffer      ring;
+
+    pthread_cond_t  cond_wakeup_main;
+    pthread_cond_t  cond_wakeup_background;
+    pthread_mutex_t mutex;
+    pthread_t       async_buffer_thread;
+    int             main_waiting;
+    int             background_waiting;
+
+    int             abort_request;
+    AVIOInterruptCB interrupt_callback;
+
+    /* rate the forwards capacity adapts to, in bytes per second */
+    int64_t         read_bytes;
+    int64_t         sample_read_bytes;
+    int64_t         sample_start_time;
+    int64_t         byte_rate;
+
+    /* options */
+    int64_t         forwards_capacity;
+    int64_t         backwards_capacity;
+    int64_t         max_forwards_capacity;
+    int64_t         forwards_duration;
+    int64_t         memory_cap;
+    int64_t         app_ctx_intptr;
+    AVApplicationContext *app_ctx;
+} Context;
+
 static int async_check_interrupt(void *arg)
 {
     URLContext *h   = arg;
@@ -190,7 +334,7 @@ static void call_inject_statistic(URLContext *h)
         statistic.size = sizeof(statistic);
         statistic.buf_forwards  = ring_size(&c->ring);
         statistic.buf_backwards = ring_size_of_read_back(&c->ring);
-        statistic.buf_capacity  = c->forwards_capacity + c->backwards_capacity;
+        statistic.buf_capacity  = ring_capacity(&c->ring);
         av_application_on_async_statistic(c->app_ctx, &statistic);
     }
 }
@@ -210,6 +354,62 @@ static void call_inject_async_fill_speed(URLContext *h, int is_full_speed, int64
     }
 }
 
+/* wakes the other thread if it sleeps, reads and writes do not lock otherwise */
+static void async_wakeup(Context *c, int *waiting, pthread_cond_t *cond)
+{
+    if (__atomic_load_n(waiting, __ATOMIC_SEQ_CST)) {
+        pthread_mutex_lock(&c->mutex);
+        pthread_cond_signal(cond);
+        pthread_mutex_unlock(&c->mutex);
+    }
+}
+
+/*
+ * Sizes the forwards capacity to hold forwards_duration of the stream, at
+ * the rate it is read, within max_forwards_capacity and the memory cap.
+ */
+static void async_adapt_capacity(URLContext *h)
+{
+    Context    *c    = h->priv_data;
+    RingBuffer *ring = &c->ring;
+    int64_t     now  = av_gettime_relative();
+    int64_t     read_bytes;
+    int64_t     target;
+    int64_t     available;
+    int         capacity;
+
+    if (c->forwards_duration <= 0 || now - c->sample_start_time < ASYNC_SAMPLE_INTERVAL)
+        return;
+
+    /* nothing is read while paused */
+    read_bytes = __atomic_load_n(&c->read_bytes, __ATOMIC_RELAXED);
+    if (read_bytes > c->sample_read_bytes) {
+        int64_t byte_rate = (read_bytes - c->sample_read_bytes) * 1000000 / (now - c->sample_start_time);
+        c->byte_rate = c->byte_rate > 0 ? (c->byte_rate * 3 + byte_rate) / 4 : byte_rate;
+    }
+    c->sample_read_bytes = read_bytes;
+    c->sample_start_time = now;
+    if (c->byte_rate <= 0)
+        return;
+
+    capacity = ring->capacity;
+    target   = c->byte_rate * c->forwards_duration / 1000;
+    target   = av_clip64(target, c->forwards_capacity, c->max_forwards_capacity);
+    if (FFABS(target - capacity) < capacity / 4)
+        return;
+
+    if (target > capacity) {
+        available = g_async_memory_cap - __atomic_load_n(&g_async_memory, __ATOMIC_RELAXED);
+        target    = FFMIN(target, capacity + available);
+        if (target <= capacity)
+            return;
+    }
+
+    if (ring_resize(ring, (int)target) == 0)
+        av_log(h, AV_LOG_DEBUG, "async: forwards capacity %d -> %"PRId64" at %"PRId64" bytes/s\n",
+               capacity, target, c->byte_rate);
+}
+
 static void *async_buffer_task(void *arg)
 {
     URLContext   *h    = arg;
@@ -224,8 +424,8 @@ static void *async_buffer_task(void *arg)
     while (1) {
         int fifo_space, to_copy;
 
-        pthread_mutex_lock(&c->mutex);
         if (async_check_interrupt(h)) {
+            pthread_mutex_lock(&c->mutex);
             c->io_eof_reached = 1;
             c->io_error       = AVERROR_EXIT;
             pthread_cond_signal(&c->cond_wakeup_main);
@@ -233,7 +433,8 @@ static void *async_buffer_task(void *arg)
             break;
         }
 
-        if (c->seek_request) {
+        if (__atomic_load_n(&c->seek_request, __ATOMIC_SEQ_CST)) {
+            pthread_mutex_lock(&c->mutex);
             seek_ret = ffurl_seek(c->inner, c->seek_pos, c->seek_whence);
             if (seek_ret < 0) {
                 c->io_eof_reached = 1;
@@ -256,15 +457,22 @@ static void *async_buffer_task(void *arg)
             continue;
         }
 
+        ring_collect(ring);
+        async_adapt_capacity(h);
+
         fifo_space = ring_space(ring);
         if (c->io_eof_reached || fifo_space <= 0) {
-            pthread_cond_signal(&c->cond_wakeup_main);
-            pthread_cond_wait(&c->cond_wakeup_background, &c->mutex);
+            pthread_mutex_lock(&c->mutex);
+            __atomic_store_n(&c->background_waiting, 1, __ATOMIC_SEQ_CST);
+            if (!c->seek_request && !c->abort_request && (c->io_eof_reached || ring_space(ring) <= 0)) {
+                pthread_cond_signal(&c->cond_wakeup_main);
+                pthread_cond_wait(&c->cond_wakeup_background, &c->mutex);
+            }
+            __atomic_store_n(&c->background_waiting, 0, __ATOMIC_SEQ_CST);
             pthread_mutex_unlock(&c->mutex);
             is_full_speed = 0;
             continue;
         }
-        pthread_mutex_unlock(&c->mutex);
 
         to_copy = FFMIN(4096, fifo_space);
         ret = ring_generic_write(ring, (void *)h, to_copy, (void *)wrapped_url_read);
@@ -277,18 +485,16 @@ static void *async_buffer_task(void *arg)
                 count_bytes = 0;
                 count_start_time_micro = now;
             }
-        }
-
-        pthread_mutex_lock(&c->mutex);
-        if (ret <= 0) {
+            async_wakeup(c, &c->main_waiting, &c->cond_wakeup_main);
+        } else {
+            pthread_mutex_lock(&c->mutex);
             c->io_eof_reached = 1;
             if (c->inner_io_error < 0)
                 c->io_error = c->inner_io_error;
+            pthread_cond_signal(&c->cond_wakeup_main);
+            pthread_mutex_unlock(&c->mutex);
         }
 
-        pthread_cond_signal(&c->cond_wakeup_main);
-        pthread_mutex_unlock(&c->mutex);
-
         call_inject_statistic(h);
     }
 
@@ -303,6 +509,11 @@ static int async_open(URLContext *h, const char *arg, int flags, AVDictionary **
 
     av_strstart(arg, "async:", &arg);
 
+    if (c->memory_cap > 0)
+        __atomic_store_n(&g_async_memory_cap, c->memory_cap, __ATOMIC_RELAXED);
+    c->max_forwards_capacity = FFMAX(c->max_forwards_capacity, c->forwards_capacity);
+    c->sample_start_time     = av_gettime_relative();
+
     ret = ring_init(&c->ring, c->forwards_capacity, c->backwards_capacity);
     if (ret < 0)
         goto fifo_fail;
@@ -392,8 +603,7 @@ static int async_read_internal(URLContext *h, void *dest, int size, int read_com
     RingBuffer   *ring    = &c->ring;
     int           to_read = size;
     int           ret     = 0;
-
-    pthread_mutex_lock(&c->mutex);
+    int           eof     = 0;
 
     while (to_read > 0) {
         int fifo_size, to_copy;
@@ -410,10 +620,28 @@ static int async_read_internal(URLContext *h, void *dest, int size, int read_com
             c->logical_pos += to_copy;
             to_read        -= to_copy;
             ret             = size - to_read;
+            __atomic_add_fetch(&c->read_bytes, to_copy, __ATOMIC_RELAXED);
+            async_wakeup(c, &c->background_waiting, &c->cond_wakeup_background);
 
             if (to_read <= 0 || !read_complete)
                 break;
-        } else if (c->io_eof_reached) {
+            continue;
+        }
+
+        pthread_mutex_lock(&c->mutex);
+        __atomic_store_n(&c->main_waiting, 1, __ATOMIC_SEQ_CST);
+        if (ring_size(ring) <= 0) {
+            if (c->io_eof_reached) {
+                eof = 1;
+            } else {
+                pthread_cond_signal(&c->cond_wakeup_background);
+                pthread_cond_wait(&c->cond_wakeup_main, &c->mutex);
+            }
+        }
+        __atomic_store_n(&c->main_waiting, 0, __ATOMIC_SEQ_CST);
+        pthread_mutex_unlock(&c->mutex);
+
+        if (eof) {
             if (ret <= 0) {
                 if (c->io_error)
                     ret = c->io_error;
@@ -422,13 +650,8 @@ static int async_read_internal(URLContext *h, void *dest, int size, int read_com
             }
             break;
         }
-        pthread_cond_signal(&c->cond_wakeup_background);
-        pthread_cond_wait(&c->cond_wakeup_main, &c->mutex);
     }
 
-    pthread_cond_signal(&c->cond_wakeup_background);
-    pthread_mutex_unlock(&c->mutex);
-
     call_inject_statistic(h);
     return ret;
 }
@@ -500,11 +723,11 @@ static int64_t async_seek(URLContext *h, int64_t pos, int whence)
 
     pthread_mutex_lock(&c->mutex);
 
-    c->seek_request   = 1;
     c->seek_pos       = new_logical_pos;
     c->seek_whence    = SEEK_SET;
     c->seek_completed = 0;
     c->seek_ret       = 0;
+    __atomic_store_n(&c->seek_request, 1, __ATOMIC_SEQ_CST);
 
     while (1) {
         if (async_check_interrupt(h)) {
@@ -535,6 +758,12 @@ static const AVOption options[] = {
         OFFSET(forwards_capacity),  AV_OPT_TYPE_INT64, {.i64 = 128 * 1024}, 128 * 1024, 128 * 1024 * 1024, D },
     { "async-backwards-capacity",   "max bytes that may be seek backward without seeking in inner protocol",
         OFFSET(backwards_capacity), AV_OPT_TYPE_INT64, {.i64 = 128 * 1024}, 128 * 1024, 128 * 1024 * 1024, D },
+    { "async-forwards-duration",    "milliseconds of the stream to read forward, the forwards capacity adapts to its bitrate from async-forwards-capacity up to async-max-forwards-capacity, 0 to keep it fixed",
+        OFFSET(forwards_duration),  AV_OPT_TYPE_INT64, {.i64 = 0}, 0, 600 * 1000, D },
+    { "async-max-forwards-capacity", "max bytes the forwards capacity may adapt to",
+        OFFSET(max_forwards_capacity), AV_OPT_TYPE_INT64, {.i64 = 16 * 1024 * 1024}, 128 * 1024, 128 * 1024 * 1024, D },
+    { "async-memory-cap",           "max bytes of the forwards buffers of every async protocol in the process to adapt within, 0 to keep it",
+        OFFSET(memory_cap),         AV_OPT_TYPE_INT64, {.i64 = 0}, 0, INT64_MAX, D },
     { "ijkapplication", "AVApplicationContext", OFFSET(app_ctx_intptr), AV_OPT_TYPE_INT64, { .i64 = 0 }, INT64_MIN, INT64_MAX, .flags = D },
     {NULL},
 };
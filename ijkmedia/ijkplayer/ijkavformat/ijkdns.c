@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2017 Bilibili
+ *
+ * This file is part of ijkPlayer.
+ *
+ * ijkPlayer is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * ijkPlayer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with ijkPlayer; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+#include "ijkdns.h"
+
+#include <arpa/inet.h>
+#include <netdb.h>
+#include <pthread.h>
+#include <string.h>
+#include <sys/socket.h>
+#include "libavutil/avstring.h"
+#include "libavutil/common.h"
+#include "libavutil/error.h"
+#include "libavutil/log.h"
+#include "libavutil/time.h"
+
+typedef struct IjkDnsEntry {
+    char    host[IJKDNS_HOST_SIZE];
+    char    ip[IJKDNS_IP_SIZE];
+    int64_t expires_at;
+} IjkDnsEntry;
+
+static pthread_mutex_t  g_mutex         = PTHREAD_MUTEX_INITIALIZER;
+static IjkDnsEntry      g_entries[IJKDNS_MAX_ENTRIES];
+static int64_t          g_default_ttl_ms = IJKDNS_DEFAULT_TTL_MS;
+
+static int64_t dns_now_ms(void)
+{
+    return av_gettime_relative() / 1000;
+}
+
+/* called with g_mutex held */
+static IjkDnsEntry *dns_find_l(const char *host)
+{
+    int i;
+
+    for (i = 0; i < IJKDNS_MAX_ENTRIES; i++) {
+        if (g_entries[i].host[0] && !av_strcasecmp(g_entries[i].host, host))
+            return &g_entries[i];
+    }
+    return NULL;
+}
+
+void ijkdns_set_default_ttl(int64_t ttl_ms)
+{
+    pthread_mutex_lock(&g_mutex);
+    g_default_ttl_ms = FFMAX(ttl_ms, 0);
+    pthread_mutex_unlock(&g_mutex);
+}
+
+int ijkdns_lookup(const char *host, char *ip, size_t ip_size)
+{
+    IjkDnsEntry *entry;
+    int ret = -1;
+
+    if (!host || !host[0])
+        return -1;
+
+    pthread_mutex_lock(&g_mutex);
+    entry = dns_find_l(host);
+    if (entry) {
+        if (entry->expires_at > dns_now_ms()) {
+            av_strlcpy(ip, entry->ip, ip_size);
+            ret = 0;
+        } else {
+            entry->host[0] = '\0';
+        }
+    }
+    pthread_mutex_unlock(&g_mutex);
+    return ret;
+}
+
+void ijkdns_put(const char *host, const char *ip, int64_t ttl_ms)
+{
+    IjkDnsEntry *entry;
+    int i;
+
+    if (!host || !host[0] || !ip || !ip[0] || strlen(host) >= IJKDNS_HOST_SIZE)
+        return;
+
+    pthread_mutex_lock(&g_mutex);
+    if (ttl_ms <= 0)
+        ttl_ms = g_default_ttl_ms;
+    if (ttl_ms <= 0) {
+        pthread_mutex_unlock(&g_mutex);
+        return;
+    }
+
+    entry = dns_find_l(host);
+    if (!entry) {
+        /* a free entry, or the one which expires first */
+        for (i = 0; i < IJKDNS_MAX_ENTRIES; i++) {
+            if (!g_entries[i].host[0]) {
+                entry = &g_entries[i];
+                break;
+            }
+            if (!entry || g_entries[i].expires_at < entry->expires_at)
+                entry = &g_entries[i];
+        }
+        av_strlcpy(entry->host, host, sizeof(entry->host));
+    }
+    av_strlcpy(entry->ip, ip, sizeof(entry->ip));
+    entry->expires_at = dns_now_ms() + ttl_ms;
+    pthread_mutex_unlock(&g_mutex);
+}
+
+void ijkdns_put_peer(const char *host, int fd)
+{
+    struct sockaddr_storage addr;
+    socklen_t addr_len = sizeof(addr);
+    char ip[IJKDNS_IP_SIZE];
+
+    if (fd < 0 || getpeername(fd, (struct sockaddr *)&addr, &addr_len))
+        return;
+    if (getnameinfo((struct sockaddr *)&addr, addr_len, ip, sizeof(ip), NULL, 0, NI_NUMERICHOST))
+        return;
+
+    ijkdns_put(host, ip, 0);
+}
+
+int ijkdns_resolve(const char *host, char *ip, size_t ip_size)
+{
+    struct addrinfo hints = { 0 };
+    struct addrinfo *ai = NULL;
+    char resolved_ip[IJKDNS_IP_SIZE];
+    int64_t start;
+    int ret;
+
+    if (!host || !host[0])
+        return AVERROR(EINVAL);
+    if (!ijkdns_lookup(host, ip, ip_size))
+        return 0;
+
+    hints.ai_family   = AF_UNSPEC;
+    hints.ai_socktype = SOCK_STREAM;
+    start = dns_now_ms();
+    ret = getaddrinfo(host, NULL, &hints, &ai);
+    if (ret) {
+        av_log(NULL, AV_LOG_WARNING, "dns: failed to resolve %s: %s\n", host, gai_strerror(ret));
+        return AVERROR(EIO);
+    }
+
+    /* the first address is the one tcp would connect to */
+    ret = getnameinfo(ai->ai_addr, ai->ai_addrlen, resolved_ip, sizeof(resolved_ip), NULL, 0, NI_NUMERICHOST);
+    freeaddrinfo(ai);
+    if (ret)
+        return AVERROR(EIO);
+
+    av_log(NULL, AV_LOG_INFO, "dns: resolved %s to %s in %"PRId64" ms\n", host, resolved_ip, dns_now_ms() - start);
+    ijkdns_put(host, resolved_ip, 0);
+    av_strlcpy(ip, resolved_ip, ip_size);
+    return 0;
+}
+
+void ijkdns_remove(const char *host)
+{
+    IjkDnsEntry *entry;
+
+    if (!host || !host[0])
+        return;
+
+    pthread_mutex_lock(&g_mutex);
+    entry = dns_find_l(host);
+    if (entry)
+        entry->host[0] = '\0';
+    pthread_mutex_unlock(&g_mutex);
+}
+
+void ijkdns_clear(void)
+{
+    pthread_mutex_lock(&g_mutex);
+    memset(g_entries, 0, sizeof(g_entries));
+    pthread_mutex_unlock(&g_mutex);
+}
+
+int ijkdns_is_numeric(const char *host)
+{
+    unsigned char addr[sizeof(struct in6_addr)];
+
+    return inet_pton(AF_INET, host, addr) == 1 || inet_pton(AF_INET6, host, addr) == 1;
+}
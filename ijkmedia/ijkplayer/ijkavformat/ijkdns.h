@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2017 Bilibili
+ *
+ * This file is part of ijkPlayer.
+ *
+ * ijkPlayer is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * ijkPlayer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with ijkPlayer; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+#ifndef IJKAVFORMAT_IJKDNS_H
+#define IJKAVFORMAT_IJKDNS_H
+
+#include <stddef.h>
+#include <stdint.h>
+
+#define IJKDNS_DEFAULT_TTL_MS   60000
+#define IJKDNS_MAX_ENTRIES      64
+#define IJKDNS_HOST_SIZE        256
+#define IJKDNS_IP_SIZE          96
+
+/*
+ * Asks the application to resolve a host before it is looked up by tcp,
+ * through the inject callback, with an IjkDnsControl.
+ * An answer sets ip, and ttl_ms unless the default ttl applies.
+ */
+#define IJKDNS_CTRL_WILL_RESOLVE 0x20101
+
+/*
+ * Reported around the resolution of a host, with an IjkDnsControl, whether
+ * it is answered by the cache, by the application or left to tcp (ip empty).
+ */
+#define IJKDNS_EVENT_WILL_RESOLVE 0x20102
+#define IJKDNS_EVENT_DID_RESOLVE  0x20103
+
+typedef struct IjkDnsControl {
+    size_t  size;
+    char    host[IJKDNS_HOST_SIZE];
+    char    ip[IJKDNS_IP_SIZE];
+    int64_t ttl_ms;
+} IjkDnsControl;
+
+/*
+ * Process-wide cache of resolved hosts, shared by every player.
+ * Entries expire after their ttl; getaddrinfo() does not report the record
+ * ttl, so hosts resolved by the system get the default one.
+ */
+void ijkdns_set_default_ttl(int64_t ttl_ms);
+
+/* 0 and the numeric address of host if it is cached */
+int ijkdns_lookup(const char *host, char *ip, size_t ip_size);
+
+/* ttl_ms <= 0 for the default ttl */
+void ijkdns_put(const char *host, const char *ip, int64_t ttl_ms);
+
+/* caches the peer address of a socket connected to host */
+void ijkdns_put_peer(const char *host, int fd);
+
+/*
+ * Resolves host with getaddrinfo() unless it is cached, blocking.
+ * Returns 0 or an AVERROR.
+ */
+int ijkdns_resolve(const char *host, char *ip, size_t ip_size);
+
+void ijkdns_remove(const char *host);
+void ijkdns_clear(void);
+
+/* 1 if host is an IPv4 or IPv6 address already */
+int ijkdns_is_numeric(const char *host);
+
+#endif  // IJKAVFORMAT_IJKDNS_H
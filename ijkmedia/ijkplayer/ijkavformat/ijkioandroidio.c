@@ -30,6 +30,7 @@
 #include "ijkplayer/ijkavutil/ijkutils.h"
 
 #include "j4a/class/tv/danmaku/ijk/media/player/misc/IAndroidIO.h"
+#include "j4a/class/tv/danmaku/ijk/media/player/misc/IAndroidIO2.h"
 #include "ijksdl/android/ijksdl_android_jni.h"
 #include <assert.h>
 
@@ -38,8 +39,20 @@ typedef struct IjkIOAndroidioContext {
     jbyteArray      jbuffer;
     int             jbuffer_capacity;
     URLContext *inner;
+
+    int             direct_read;
+    int             min_read_size;
+    jobject         jdirect_buffer;
+    uint8_t        *direct_buffer;
+    int             direct_buffer_capacity;
+
+    /* bytes fetched ahead of the caller, kept in jbuffer or direct_buffer */
+    int             pending_offset;
+    int             pending_size;
 } IjkIOAndroidioContext;
 
+#define ANDROIDIO_MAX_MIN_READ_SIZE (16 * 1024 * 1024)
+
 static int ijkio_androidio_open(IjkURLContext *h, const char *url, int flags, IjkAVDictionary **options) {
     IjkIOAndroidioContext *c= h->priv_data;
     JNIEnv *env = NULL;
@@ -59,6 +72,14 @@ static int ijkio_androidio_open(IjkURLContext *h, const char *url, int flags, Ij
         return -1;
     }
 
+    t = ijk_av_dict_get(*options, "androidio-direct-read", NULL, IJK_AV_DICT_MATCH_CASE);
+    if (t)
+        c->direct_read = strtol(t->value, NULL, 10) ? 1 : 0;
+
+    t = ijk_av_dict_get(*options, "androidio-min-read-size", NULL, IJK_AV_DICT_MATCH_CASE);
+    if (t)
+        c->min_read_size = av_clip(strtol(t->value, NULL, 10), 0, ANDROIDIO_MAX_MIN_READ_SIZE);
+
     if (JNI_OK != SDL_JNI_SetupThreadEnv(&env)) {
         av_log(h, AV_LOG_ERROR, "%s: SDL_JNI_SetupThreadEnv: failed", __func__);
         return AVERROR(EINVAL);
@@ -108,11 +129,68 @@ static jobject jbuffer_grow(JNIEnv *env, IjkURLContext *h, int new_capacity) {
     return c->jbuffer;
 }
 
+static jobject direct_buffer_grow(JNIEnv *env, IjkURLContext *h, int new_capacity) {
+    IjkIOAndroidioContext *c = h->priv_data;
+    jobject local_buffer = NULL;
+    if (!c)
+        return NULL;
+
+    if (c->jdirect_buffer && c->direct_buffer_capacity >= new_capacity)
+        return c->jdirect_buffer;
+
+    new_capacity = FFMAX(new_capacity, c->direct_buffer_capacity * 2);
+
+    J4A_DeleteGlobalRef__p(env, &c->jdirect_buffer);
+    av_freep(&c->direct_buffer);
+    c->direct_buffer_capacity = 0;
+
+    c->direct_buffer = av_malloc(new_capacity);
+    if (!c->direct_buffer)
+        return NULL;
+
+    local_buffer = (*env)->NewDirectByteBuffer(env, c->direct_buffer, new_capacity);
+    if (J4A_ExceptionCheck__catchAll(env) || !local_buffer) {
+        av_freep(&c->direct_buffer);
+        return NULL;
+    }
+
+    c->jdirect_buffer = J4A_NewGlobalRef__catchAll(env, local_buffer);
+    J4A_DeleteLocalRef__p(env, &local_buffer);
+    if (!c->jdirect_buffer) {
+        av_freep(&c->direct_buffer);
+        return NULL;
+    }
+
+    c->direct_buffer_capacity = new_capacity;
+    return c->jdirect_buffer;
+}
+
+static int ijkio_androidio_read_pending(JNIEnv *env, IjkURLContext *h, unsigned char *buf, int size) {
+    IjkIOAndroidioContext *c = h->priv_data;
+    int read_size = FFMIN(size, c->pending_size);
+
+    if (c->direct_read) {
+        memcpy(buf, c->direct_buffer + c->pending_offset, read_size);
+    } else {
+        (*env)->GetByteArrayRegion(env, c->jbuffer, c->pending_offset, read_size, (jbyte*)buf);
+        if (J4A_ExceptionCheck__catchAll(env)) {
+            c->pending_size = 0;
+            return AVERROR(EIO);
+        }
+    }
+
+    c->pending_offset += read_size;
+    c->pending_size   -= read_size;
+    return read_size;
+}
+
 static int ijkio_androidio_read(IjkURLContext *h, unsigned char *buf, int size) {
     IjkIOAndroidioContext    *c = h->priv_data;
     JNIEnv     *env = NULL;
     jbyteArray  jbuffer = NULL;
+    jobject     jdirect_buffer = NULL;
     jint        ret = 0;
+    int         fetch_size = 0;
 
     if (!c || !c->ijkio_androidio)
         return AVERROR(EINVAL);
@@ -122,23 +200,36 @@ static int ijkio_androidio_read(IjkURLContext *h, unsigned char *buf, int size)
         return AVERROR(EINVAL);
     }
 
-    jbuffer = jbuffer_grow(env, h, size);
-    if (!jbuffer)
-        return AVERROR(ENOMEM);
+    if (c->pending_size > 0)
+        return ijkio_androidio_read_pending(env, h, buf, size);
 
-    ret = J4AC_IAndroidIO__read(env, c->ijkio_androidio, jbuffer, size);
+    // fetch at least min_read_size, and hand out the surplus on the next calls
+    fetch_size = FFMAX(size, c->min_read_size);
+    if (c->direct_read) {
+        jdirect_buffer = direct_buffer_grow(env, h, fetch_size);
+        if (!jdirect_buffer)
+            return AVERROR(ENOMEM);
+
+        ret = J4AC_IAndroidIO2__read(env, c->ijkio_androidio, jdirect_buffer, fetch_size);
+    } else {
+        jbuffer = jbuffer_grow(env, h, fetch_size);
+        if (!jbuffer)
+            return AVERROR(ENOMEM);
+
+        ret = J4AC_IAndroidIO__read(env, c->ijkio_androidio, jbuffer, fetch_size);
+    }
     if (J4A_ExceptionCheck__catchAll(env))
         return AVERROR(EIO);
     else if (ret < 0)
         return AVERROR_EOF;
     else if (ret == 0)
         return AVERROR(EAGAIN);
-
-    (*env)->GetByteArrayRegion(env, jbuffer, 0, ret, (jbyte*)buf);
-    if (J4A_ExceptionCheck__catchAll(env))
+    else if (ret > fetch_size)
         return AVERROR(EIO);
 
-    return ret;
+    c->pending_offset = 0;
+    c->pending_size   = ret;
+    return ijkio_androidio_read_pending(env, h, buf, size);
 }
 
 static int64_t ijkio_androidio_seek(IjkURLContext *h, int64_t offset, int whence) {
@@ -154,10 +245,19 @@ static int64_t ijkio_androidio_seek(IjkURLContext *h, int64_t offset, int whence
         return AVERROR(EINVAL);
     }
 
+    // the Java side is ahead of us by the bytes still pending
+    if (whence == SEEK_CUR)
+        offset -= c->pending_size;
+
     ret = J4AC_IAndroidIO__seek(env, c->ijkio_androidio, offset, whence);
     if (J4A_ExceptionCheck__catchAll(env))
         return AVERROR(EIO);
 
+    if (ret >= 0 && whence != IJKAVSEEK_SIZE) {
+        c->pending_offset = 0;
+        c->pending_size   = 0;
+    }
+
     return ret;
 }
 
@@ -174,6 +274,9 @@ static int ijkio_androidio_close(IjkURLContext *h) {
         return AVERROR(EINVAL);
 
     J4A_DeleteGlobalRef__p(env, &c->jbuffer);
+    J4A_DeleteGlobalRef__p(env, &c->jdirect_buffer);
+    av_freep(&c->direct_buffer);
+    c->pending_size = 0;
 
     if (c->ijkio_androidio) {
         J4AC_IAndroidIO__close__catchAll(env, c->ijkio_androidio);
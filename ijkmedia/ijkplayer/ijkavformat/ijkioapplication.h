@@ -29,6 +29,7 @@
 
 #define CACHE_FILE_PATH_MAX_LEN        512
 #define IJKIOAPP_EVENT_CACHE_STATISTIC 0x1003  //IJKIOAppCacheStatistic share with avutil/application.h
+#define IJKIOAPP_CACHE_MAX_CONNECTIONS 4
 
 typedef struct IjkIOAppCacheStatistic {
     int64_t cache_physical_pos;
@@ -36,6 +37,10 @@ typedef struct IjkIOAppCacheStatistic {
     int64_t cache_file_pos;
     int64_t cache_count_bytes;
     int64_t logical_file_size;
+    int64_t cache_read_bytes;
+    int64_t cache_range_bytes;      // downloaded by the parallel range connections
+    int64_t cache_connections;      // connections downloading, the sequential one included
+    int64_t cache_connection_speeds[IJKIOAPP_CACHE_MAX_CONNECTIONS];  // bytes per second, [0] is the sequential one
 } IjkIOAppCacheStatistic;
 
 typedef struct IjkCacheEntry {
@@ -53,6 +58,7 @@ struct IjkIOApplicationContext {
     void *cache_info_map;
     void *opaque;
     int64_t cache_count_bytes;
+    int64_t cache_read_bytes;
     int fd;
     pthread_mutex_t mutex;
     int shared;
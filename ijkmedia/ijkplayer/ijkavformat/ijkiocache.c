@@ -26,6 +26,7 @@
 #include "ijkplayer/ijkavutil/ijkthreadpool.h"
 #include "ijkplayer/ijkavutil/ijkstl.h"
 #include "libavutil/log.h"
+#include "libavutil/time.h"
 
 #include <stdint.h>
 #include <stdio.h>
@@ -39,11 +40,25 @@
 
 #define DEFAULT_CACHE_MAX_CAPACITY            (512 * 1024 * 1024)
 #define DEFAULT_CACHE_FILE_FORWARDS_CAPACITY  (8 * 1024 * 1024)
+#define DEFAULT_CACHE_PARALLEL_CHUNK_SIZE     (1024 * 1024)
+#define MIN_CACHE_PARALLEL_CHUNK_SIZE         (64 * 1024)
+#define CACHE_RANGE_READ_SIZE                 (32 * 1024)
 #   ifndef O_BINARY
 #       define O_BINARY 0
 #   endif
 #define FILE_RW_ERROR  (-100)
 
+/*
+ * A byte range downloaded ahead over its own connection.
+ * [cursor, end) is in flight: the sequential download stops at cursor.
+ */
+typedef struct IjkIOCacheRange {
+    int64_t cursor;
+    int64_t end;
+    int64_t bytes;
+    int64_t read_time;
+} IjkIOCacheRange;
+
 typedef struct IjkIOCacheContext {
     char *cache_file_path;
     int fd;
@@ -74,6 +89,7 @@ typedef struct IjkIOCacheContext {
     void *cache_info_map;
     int64_t *last_physical_pos;
     int64_t *cache_count_bytes;
+    int64_t *cache_read_bytes;
 
     pthread_cond_t     cond_wakeup_main;
     pthread_cond_t     cond_wakeup_file_background;
@@ -92,6 +108,14 @@ typedef struct IjkIOCacheContext {
     char inner_url[4096];
     int inner_flags;
     int only_read_file;
+
+    int parallel_connections;
+    int64_t parallel_chunk_size;
+    int range_unsupported;
+    int range_tasks_running;
+    pthread_cond_t cond_wakeup_range;
+    IjkAVDictionary *range_options;
+    IjkIOCacheRange ranges[IJKIOAPP_CACHE_MAX_CONNECTIONS];  // [0] is the sequential download, stats only
 } IjkIOCacheContext;
 
 static int cmp(const void *key, const void *node)
@@ -102,14 +126,27 @@ static int cmp(const void *key, const void *node)
 static void call_inject_statistic(IjkURLContext *h)
 {
     IjkIOCacheContext *c = h->priv_data;
+    int i;
 
     if (c->ijkio_app_ctx) {
         IjkIOAppCacheStatistic statistic = {0};
+        statistic.cache_connections   = 1;
+        for (i = 0; i < IJKIOAPP_CACHE_MAX_CONNECTIONS; i++) {
+            IjkIOCacheRange *range = &c->ranges[i];
+            if (range->read_time > 0)
+                statistic.cache_connection_speeds[i] = range->bytes * 1000000 / range->read_time;
+            if (i > 0) {
+                statistic.cache_range_bytes += range->bytes;
+                if (range->cursor < range->end)
+                    statistic.cache_connections++;
+            }
+        }
         statistic.cache_physical_pos  = c->cache_physical_pos;
         statistic.cache_file_forwards = c->file_logical_pos - c->read_logical_pos;
         statistic.cache_file_pos      = c->file_logical_pos;
         statistic.cache_count_bytes   = *c->cache_count_bytes;
         statistic.logical_file_size   = c->logical_size;
+        statistic.cache_read_bytes    = *c->cache_read_bytes;
         ijkio_application_on_cache_statistic(c->ijkio_app_ctx, &statistic);
     }
 }
@@ -232,7 +269,7 @@ fail:
     return FILE_RW_ERROR;
 }
 
-static int64_t add_entry(IjkURLContext *h, const unsigned char *buf, int size)
+static int64_t add_entry(IjkURLContext *h, int64_t logical_pos, const unsigned char *buf, int size)
 {
     IjkIOCacheContext *c= h->priv_data;
     int64_t pos = -1;
@@ -279,13 +316,13 @@ static int64_t add_entry(IjkURLContext *h, const unsigned char *buf, int size)
     *c->last_physical_pos       += ret;
     c->tree_info->physical_size += ret;
 
-    entry = ijk_av_tree_find(c->tree_info->root, &c->file_logical_pos, cmp, (void**)next);
+    entry = ijk_av_tree_find(c->tree_info->root, &logical_pos, cmp, (void**)next);
 
     if (!entry)
         entry = next[0];
 
     if (!entry ||
-        entry->logical_pos  + entry->size != c->file_logical_pos ||
+        entry->logical_pos  + entry->size != logical_pos ||
         entry->physical_pos + entry->size != pos) {
         entry = malloc(sizeof(*entry));
         node = ijk_av_tree_node_alloc();
@@ -293,7 +330,7 @@ static int64_t add_entry(IjkURLContext *h, const unsigned char *buf, int size)
             ret = IJKAVERROR(ENOMEM);
             goto fail;
         }
-        entry->logical_pos = c->file_logical_pos;
+        entry->logical_pos = logical_pos;
         entry->physical_pos = pos;
         entry->size = ret;
 
@@ -373,18 +410,42 @@ static int ijkio_cache_io_open(IjkURLContext *h, const char *url, int flags, Ijk
     return ret;
 }
 
+/* called with file_mutex held */
+static int64_t ijkio_cache_range_next_l(IjkIOCacheContext *c, int64_t pos, int64_t *busy_end)
+{
+    int64_t next = INT64_MAX;
+    int i;
+
+    *busy_end = 0;
+    for (i = 1; i < IJKIOAPP_CACHE_MAX_CONNECTIONS; i++) {
+        IjkIOCacheRange *range = &c->ranges[i];
+        if (range->cursor >= range->end)
+            continue;
+        if (range->cursor <= pos && pos < range->end)
+            *busy_end = range->end;
+        else if (range->cursor > pos)
+            next = FFMIN(next, range->cursor);
+    }
+    return next;
+}
+
 static int64_t ijkio_cache_write_file(IjkURLContext *h) {
     IjkIOCacheContext *c= h->priv_data;
     int64_t r;
     unsigned char buf[4096] = {0};
     int to_read = 4096;
     int64_t to_copy = (int64_t)to_read;
+    int64_t range_start = 0;
+    int64_t busy_end = 0;
+    int64_t read_start = 0;
 
     IjkCacheEntry *root = NULL ,*l_entry = NULL, *r_entry = NULL, *next[2] = {NULL, NULL};
 
     if (!c || !c->inner || !c->inner->prot)
         return IJKAVERROR(ENOSYS);
 
+    // range tasks insert into the tree too
+    pthread_mutex_lock(&c->file_mutex);
     root = ijk_av_tree_find(c->tree_info->root, &c->file_logical_pos, cmp, (void**)next);
 
     if (!root)
@@ -411,6 +472,16 @@ static int64_t ijkio_cache_write_file(IjkURLContext *h) {
         to_copy = FFMIN(to_copy, to_read);
     }
 
+    range_start = ijkio_cache_range_next_l(c, c->file_logical_pos, &busy_end);
+    if (busy_end > 0) {
+        // wait for the range task downloading it
+        pthread_cond_wait(&c->cond_wakeup_file_background, &c->file_mutex);
+        pthread_mutex_unlock(&c->file_mutex);
+        return 0;
+    }
+    to_copy = FFMIN(to_copy, range_start - c->file_logical_pos);
+    pthread_mutex_unlock(&c->file_mutex);
+
     if (to_copy == 0) {
         return 0;
     }
@@ -455,6 +526,7 @@ static int64_t ijkio_cache_write_file(IjkURLContext *h) {
         }
         c->async_open = 0;
     }
+    read_start = av_gettime_relative();
     r = c->inner->prot->url_read(c->inner, buf, (int)to_copy);
     if (r == 0 && to_copy > 0) {
         c->file_logical_end = c->file_logical_pos;
@@ -464,11 +536,13 @@ static int64_t ijkio_cache_write_file(IjkURLContext *h) {
         c->io_error = (int)r;
         return r;
     }
-    *c->cache_count_bytes += r;
     c->file_inner_pos += r;
 
     pthread_mutex_lock(&c->file_mutex);
-    r = add_entry(h, buf, (int)r);
+    *c->cache_count_bytes   += r;
+    c->ranges[0].bytes      += r;
+    c->ranges[0].read_time  += av_gettime_relative() - read_start;
+    r = add_entry(h, c->file_logical_pos, buf, (int)r);
 
     if (r > 0) {
         c->file_logical_pos += r;
@@ -479,6 +553,183 @@ static int64_t ijkio_cache_write_file(IjkURLContext *h) {
     return r;
 }
 
+/* wakes the sequential task and the idle range tasks, called with file_mutex held */
+static void ijkio_cache_wakeup_background_l(IjkIOCacheContext *c)
+{
+    pthread_cond_signal(&c->cond_wakeup_file_background);
+    pthread_cond_broadcast(&c->cond_wakeup_range);
+}
+
+/*
+ * Claims the first hole of the forwards window which is neither cached nor
+ * in flight, leaving one chunk to the sequential download.
+ * Called with file_mutex held.
+ */
+static int ijkio_cache_range_claim_l(IjkIOCacheContext *c, IjkIOCacheRange *range)
+{
+    IjkCacheEntry *entry = NULL, *next[2] = {NULL, NULL};
+    int64_t file_end    = c->file_logical_end > 0 ? c->file_logical_end : c->logical_size;
+    int64_t window_end  = FFMIN(c->read_logical_pos + c->cache_file_forwards_capacity, file_end);
+    int64_t pos         = c->file_logical_pos + c->parallel_chunk_size;
+    int64_t range_start = 0;
+    int64_t busy_end    = 0;
+
+    if (!c->tree_info || c->logical_size <= 0 || c->seek_request || c->io_error)
+        return 0;
+
+    while (pos < window_end) {
+        next[0] = next[1] = NULL;
+        entry = ijk_av_tree_find(c->tree_info->root, &pos, cmp, (void**)next);
+        if (!entry)
+            entry = next[0];
+        if (entry && entry->logical_pos <= pos && pos < entry->logical_pos + entry->size) {
+            pos = entry->logical_pos + entry->size;
+            continue;
+        }
+
+        range_start = ijkio_cache_range_next_l(c, pos, &busy_end);
+        if (busy_end > 0) {
+            pos = busy_end;
+            continue;
+        }
+
+        range->cursor = pos;
+        range->end    = FFMIN3(pos + c->parallel_chunk_size, file_end, range_start);
+        if (next[1])
+            range->end = FFMIN(range->end, next[1]->logical_pos);
+        return 1;
+    }
+    return 0;
+}
+
+static int ijkio_cache_range_open(IjkURLContext *h, IjkURLContext **inner, int64_t start, int64_t end) {
+    IjkIOCacheContext *c = h->priv_data;
+    IjkAVDictionary *options = NULL;
+    int ret = 0;
+
+    ret = ijkio_alloc_url(inner, c->inner_url);
+    if (ret || !*inner)
+        return ret ? ret : IJKAVERROR(ENOMEM);
+    (*inner)->ijkio_app_ctx = c->ijkio_app_ctx;
+
+    // http options, one request per range
+    ijk_av_dict_copy(&options, c->range_options, 0);
+    ijk_av_dict_set_int(&options, "offset", start, 0);
+    ijk_av_dict_set_int(&options, "end_offset", end, 0);
+    ret = (*inner)->prot->url_open2(*inner, c->inner_url, c->inner_flags, &options);
+    ijk_av_dict_free(&options);
+
+    if (ret == 0 && (*inner)->prot->url_seek(*inner, 0, SEEK_CUR) != start) {
+        av_log(NULL, AV_LOG_WARNING, "ijkio cache range request is not supported, will download sequentially\n");
+        pthread_mutex_lock(&c->file_mutex);
+        c->range_unsupported = 1;
+        pthread_mutex_unlock(&c->file_mutex);
+        (*inner)->prot->url_close(*inner);
+        ret = IJKAVERROR(ENOSYS);
+    }
+
+    if (ret != 0) {
+        ijk_av_freep(&(*inner)->priv_data);
+        ijk_av_freep(inner);
+    }
+    return ret;
+}
+
+/*
+ * Downloads the ranges ahead of the sequential task over its own connection,
+ * and writes them into the cache tree at their logical position.
+ */
+static void ijkio_cache_range_task(void *h, void *r) {
+    IjkIOCacheContext *c = ((IjkURLContext *)h)->priv_data;
+    IjkIOCacheRange *range = r;
+    IjkURLContext *inner = NULL;
+    unsigned char buf[CACHE_RANGE_READ_SIZE];
+    int64_t read_start = 0;
+    int64_t ret = 0;
+    int error_count = 0;
+    int to_read = 0;
+
+    pthread_mutex_lock(&c->file_mutex);
+    while (!c->abort_request && !c->cache_file_close && !c->range_unsupported) {
+        if (!ijkio_cache_range_claim_l(c, range)) {
+            pthread_cond_wait(&c->cond_wakeup_range, &c->file_mutex);
+            continue;
+        }
+        pthread_mutex_unlock(&c->file_mutex);
+
+        ret = ijkio_cache_range_open(h, &inner, range->cursor, range->end);
+        if (ret == 0) {
+            while (range->cursor < range->end) {
+                to_read = (int)FFMIN(CACHE_RANGE_READ_SIZE, range->end - range->cursor);
+                read_start = av_gettime_relative();
+                ret = inner->prot->url_read(inner, buf, to_read);
+                if (ret <= 0) {
+                    ret = ret ? ret : IJKAVERROR_EOF;
+                    break;
+                }
+
+                pthread_mutex_lock(&c->file_mutex);
+                *c->cache_count_bytes += ret;
+                range->bytes          += ret;
+                range->read_time      += av_gettime_relative() - read_start;
+                // dropped by a seek or a cache file error
+                if (c->abort_request || c->cache_file_close || !c->tree_info || c->seek_request ||
+                    range->cursor < c->read_logical_pos ||
+                    range->cursor > c->read_logical_pos + c->cache_file_forwards_capacity + c->parallel_chunk_size) {
+                    pthread_mutex_unlock(&c->file_mutex);
+                    ret = 0;
+                    break;
+                }
+
+                ret = add_entry(h, range->cursor, buf, (int)ret);
+                if (ret > 0) {
+                    range->cursor += ret;
+                    pthread_cond_signal(&c->cond_wakeup_file_background);
+                    pthread_cond_signal(&c->cond_wakeup_main);
+                }
+                pthread_mutex_unlock(&c->file_mutex);
+                if (ret <= 0)
+                    break;
+                error_count = 0;
+            }
+
+            inner->prot->url_close(inner);
+            ijk_av_freep(&inner->priv_data);
+            ijk_av_freep(&inner);
+        }
+
+        pthread_mutex_lock(&c->file_mutex);
+        // the rest of the range is left to the sequential task
+        range->cursor = 0;
+        range->end    = 0;
+        pthread_cond_signal(&c->cond_wakeup_file_background);
+
+        if (ret < 0 && ret != FILE_RW_ERROR && ++error_count > 3) {
+            av_log(NULL, AV_LOG_WARNING, "ijkio cache range task failed: %s\n", av_err2str((int)ret));
+            break;
+        }
+    }
+    c->range_tasks_running--;
+    pthread_cond_signal(&c->cond_wakeup_exit);
+    pthread_mutex_unlock(&c->file_mutex);
+}
+
+/* called with file_mutex held */
+static void ijkio_cache_add_range_tasks_l(IjkURLContext *h) {
+    IjkIOCacheContext *c = h->priv_data;
+    int i;
+
+    for (i = 1; i < c->parallel_connections; i++) {
+        c->ranges[i].cursor = 0;
+        c->ranges[i].end    = 0;
+        c->range_tasks_running++;
+        if (ijk_threadpool_add(c->threadpool_ctx, ijkio_cache_range_task, h, &c->ranges[i], 0)) {
+            c->range_tasks_running--;
+            break;
+        }
+    }
+}
+
 static void ijkio_cache_task(void *h, void *r) {
     IjkIOCacheContext *c= ((IjkURLContext *)h)->priv_data;
     c->task_is_running = 1;
@@ -504,6 +755,7 @@ static void ijkio_cache_task(void *h, void *r) {
             c->file_logical_pos  = c->seek_pos;
             c->seek_ret          = c->seek_pos;
             pthread_cond_signal(&c->cond_wakeup_main);
+            pthread_cond_broadcast(&c->cond_wakeup_range);
             pthread_mutex_unlock(&c->file_mutex);
         }
 
@@ -582,6 +834,25 @@ static int ijkio_cache_open(IjkURLContext *h, const char *url, int flags, IjkAVD
         }
     }
 
+    c->parallel_connections = 1;
+    c->parallel_chunk_size  = DEFAULT_CACHE_PARALLEL_CHUNK_SIZE;
+    t = ijk_av_dict_get(*options, "cache_parallel_connections", NULL, IJK_AV_DICT_MATCH_CASE);
+    if (t) {
+        c->parallel_connections = (int)strtol(t->value, NULL, 10);
+        c->parallel_connections = FFMAX(1, FFMIN(c->parallel_connections, IJKIOAPP_CACHE_MAX_CONNECTIONS));
+    }
+
+    t = ijk_av_dict_get(*options, "cache_parallel_chunk_size", NULL, IJK_AV_DICT_MATCH_CASE);
+    if (t) {
+        c->parallel_chunk_size = strtoll(t->value, NULL, 10);
+        c->parallel_chunk_size = FFMAX(c->parallel_chunk_size, MIN_CACHE_PARALLEL_CHUNK_SIZE);
+    }
+
+    // the range tasks write ahead of the reader, only the async cache has room for them
+    if (!c->cache_file_forwards_capacity || strlen(url) >= sizeof(c->inner_url)) {
+        c->parallel_connections = 1;
+    }
+
     c->cache_file_path = c->ijkio_app_ctx->cache_file_path;
 
     if (c->cache_file_path == NULL || 0 == strlen(c->cache_file_path)) {
@@ -592,6 +863,7 @@ static int ijkio_cache_open(IjkURLContext *h, const char *url, int flags, IjkAVD
     c->cache_info_map       = c->ijkio_app_ctx->cache_info_map;
     c->last_physical_pos    = &c->ijkio_app_ctx->last_physical_pos;
     c->cache_count_bytes    = &c->ijkio_app_ctx->cache_count_bytes;
+    c->cache_read_bytes     = &c->ijkio_app_ctx->cache_read_bytes;
     if (!c->last_physical_pos || !c->threadpool_ctx || !c->cache_info_map) {
         return -1;
     }
@@ -653,6 +925,11 @@ static int ijkio_cache_open(IjkURLContext *h, const char *url, int flags, IjkAVD
     ret = ijkio_alloc_url(&(c->inner), url);
     if (c->inner && !ret) {
         c->inner->ijkio_app_ctx = c->ijkio_app_ctx;
+        if (c->parallel_connections > 1) {
+            ijk_av_dict_copy(&c->range_options, *options, 0);
+            strcpy(c->inner_url, url);
+            c->inner_flags = flags;
+        }
         if (c->logical_size <= 0 || c->async_open == 0) {
             c->async_open = 0;
             ret = ijkio_cache_io_open(h, url, flags, options);
@@ -691,6 +968,12 @@ static int ijkio_cache_open(IjkURLContext *h, const char *url, int flags, IjkAVD
         goto cond_wakeup_exit_fail;
     }
 
+    ret = pthread_cond_init(&c->cond_wakeup_range, NULL);
+    if (ret != 0) {
+        av_log(NULL, AV_LOG_ERROR, "pthread_cond_init failed : %s\n", av_err2str(ret));
+        goto cond_wakeup_range_fail;
+    }
+
     if (!c->cache_file_close && c->cache_file_forwards_capacity) {
         c->task_is_running = 1;
         ret = ijk_threadpool_add(c->threadpool_ctx, ijkio_cache_task, h, NULL, 0);
@@ -699,11 +982,17 @@ static int ijkio_cache_open(IjkURLContext *h, const char *url, int flags, IjkAVD
             pthread_cond_signal(&c->cond_wakeup_exit);
             goto thread_fail;
         }
+
+        pthread_mutex_lock(&c->file_mutex);
+        ijkio_cache_add_range_tasks_l(h);
+        pthread_mutex_unlock(&c->file_mutex);
     }
 
     return 0;
 
 thread_fail:
+    pthread_cond_destroy(&c->cond_wakeup_range);
+cond_wakeup_range_fail:
     pthread_cond_destroy(&c->cond_wakeup_exit);
 cond_wakeup_exit_fail:
     pthread_cond_destroy(&c->cond_wakeup_file_background);
@@ -712,6 +1001,9 @@ cond_wakeup_file_background_fail:
 cond_wakeup_main_fail:
     pthread_mutex_destroy(&c->file_mutex);
 file_mutex_fail:
+    if (c->range_options) {
+        ijk_av_dict_free(&c->range_options);
+    }
     if (c->async_open) {
         if (c->inner_options) {
             ijk_av_dict_free(&c->inner_options);
@@ -971,6 +1263,7 @@ static int ijkio_cache_read(IjkURLContext *h, unsigned char *buf, int size) {
         ret = ijkio_cache_sync_read(h, buf, size);
         if (ret >= 0) {
             c->read_logical_pos += ret;
+            *c->cache_read_bytes += ret;
         }
         call_inject_statistic(h);
         return (int)ret;
@@ -993,6 +1286,7 @@ static int ijkio_cache_read(IjkURLContext *h, unsigned char *buf, int size) {
             to_copy  = wrapped_url_read(h, dest, to_read);
             to_read -= to_copy;
             ret      = size - to_read;
+            *c->cache_read_bytes += ret;
             pthread_mutex_unlock(&c->file_mutex);
             return (int)ret;
         }
@@ -1014,12 +1308,15 @@ static int ijkio_cache_read(IjkURLContext *h, unsigned char *buf, int size) {
             }
             break;
         }
-        pthread_cond_signal(&c->cond_wakeup_file_background);
+        ijkio_cache_wakeup_background_l(c);
         pthread_cond_wait(&c->cond_wakeup_main, &c->file_mutex);
     }
 
+    if (ret > 0)
+        *c->cache_read_bytes += ret;
+
     if (ret != size || (!c->io_eof_reached && (c->file_logical_pos - c->read_logical_pos) <= c->cache_file_forwards_capacity)) {
-        pthread_cond_signal(&c->cond_wakeup_file_background);
+        ijkio_cache_wakeup_background_l(c);
     }
     pthread_mutex_unlock(&c->file_mutex);
     return (int)ret;
@@ -1068,7 +1365,7 @@ static int64_t ijkio_cache_seek(IjkURLContext *h, int64_t pos, int whence) {
             ret = c->seek_ret;
             break;
         }
-        pthread_cond_signal(&c->cond_wakeup_file_background);
+        ijkio_cache_wakeup_background_l(c);
         pthread_cond_wait(&c->cond_wakeup_main, &c->file_mutex);
     }
 
@@ -1086,8 +1383,8 @@ static int ijkio_cache_close(IjkURLContext *h) {
     if (c->cache_file_forwards_capacity) {
         pthread_mutex_lock(&c->file_mutex);
         c->abort_request = 1;
-        pthread_cond_signal(&c->cond_wakeup_file_background);
-        while (c->task_is_running) {
+        ijkio_cache_wakeup_background_l(c);
+        while (c->task_is_running || c->range_tasks_running) {
             pthread_cond_wait(&c->cond_wakeup_exit, &c->file_mutex);
         }
         pthread_mutex_unlock(&c->file_mutex);
@@ -1098,6 +1395,7 @@ static int ijkio_cache_close(IjkURLContext *h) {
     pthread_cond_destroy(&c->cond_wakeup_file_background);
     pthread_cond_destroy(&c->cond_wakeup_main);
     pthread_cond_destroy(&c->cond_wakeup_exit);
+    pthread_cond_destroy(&c->cond_wakeup_range);
     pthread_mutex_destroy(&c->file_mutex);
 
     ret = c->inner->prot->url_close(c->inner);
@@ -1105,6 +1403,9 @@ static int ijkio_cache_close(IjkURLContext *h) {
     if (c->inner_options) {
         ijk_av_dict_free(&c->inner_options);
     }
+    if (c->range_options) {
+        ijk_av_dict_free(&c->range_options);
+    }
     ijk_av_freep(&c->inner->priv_data);
 
     ijk_av_freep(&c->inner);
@@ -1126,8 +1427,8 @@ static int ijkio_cache_pause(IjkURLContext *h) {
     } else {
         pthread_mutex_lock(&c->file_mutex);
         c->abort_request = 1;
-        pthread_cond_signal(&c->cond_wakeup_file_background);
-        while (c->task_is_running) {
+        ijkio_cache_wakeup_background_l(c);
+        while (c->task_is_running || c->range_tasks_running) {
             pthread_cond_wait(&c->cond_wakeup_exit, &c->file_mutex);
         }
         pthread_mutex_unlock(&c->file_mutex);
@@ -1173,6 +1474,10 @@ static int ijkio_cache_resume(IjkURLContext *h) {
         if (ret) {
             c->task_is_running = 0;
             pthread_cond_signal(&c->cond_wakeup_exit);
+        } else {
+            pthread_mutex_lock(&c->file_mutex);
+            ijkio_cache_add_range_tasks_l(h);
+            pthread_mutex_unlock(&c->file_mutex);
         }
     }
     return ret;
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2017 Bilibili
+ *
+ * This file is part of ijkPlayer.
+ *
+ * ijkPlayer is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * ijkPlayer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with ijkPlayer; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+#include "ijkiopreload.h"
+#include "ijkiomanager.h"
+#include "libavformat/avformat.h"
+#include "libavutil/log.h"
+#include "libavutil/mathematics.h"
+
+#include <stdlib.h>
+
+struct IjkIOPreloadContext {
+    int abort_request;
+};
+
+IjkIOPreloadContext *ijkio_preload_create(void)
+{
+    return (IjkIOPreloadContext *)calloc(1, sizeof(IjkIOPreloadContext));
+}
+
+void ijkio_preload_destroyp(IjkIOPreloadContext **ph)
+{
+    if (!ph || !*ph)
+        return;
+
+    free(*ph);
+    *ph = NULL;
+}
+
+void ijkio_preload_abort(IjkIOPreloadContext *h)
+{
+    if (h)
+        h->abort_request = 1;
+}
+
+static int preload_interrupt_cb(void *opaque)
+{
+    IjkIOPreloadContext *h = opaque;
+    return h->abort_request;
+}
+
+int ijkio_preload_run(IjkIOPreloadContext *h, const char *url, AVDictionary **format_opts,
+                      int64_t max_bytes, int64_t max_duration_ms, IjkIOPreloadStatistic *statistic)
+{
+    IjkIOManagerContext *manager_ctx = NULL;
+    AVFormatContext     *ic          = NULL;
+    AVPacket             pkt;
+    int64_t              first_ms    = AV_NOPTS_VALUE;
+    int64_t              last_ms     = AV_NOPTS_VALUE;
+    int                  ret         = 0;
+
+    if (!h || !url)
+        return AVERROR(EINVAL);
+
+    if (ijkio_manager_create(&manager_ctx, NULL) || !manager_ctx)
+        return AVERROR(ENOMEM);
+    av_dict_set_int(format_opts, "ijkiomanager", (int64_t)(intptr_t)manager_ctx, 0);
+
+    ic = avformat_alloc_context();
+    if (!ic) {
+        ret = AVERROR(ENOMEM);
+        goto fail;
+    }
+    ic->interrupt_callback.callback = preload_interrupt_cb;
+    ic->interrupt_callback.opaque   = h;
+
+    ret = avformat_open_input(&ic, url, NULL, format_opts);
+    if (ret < 0) {
+        av_log(NULL, AV_LOG_WARNING, "ijkio_preload: open %s failed: %s\n", url, av_err2str(ret));
+        goto fail;
+    }
+
+    av_init_packet(&pkt);
+    while (!h->abort_request) {
+        if (max_bytes > 0 && ic->pb && avio_tell(ic->pb) >= max_bytes)
+            break;
+        if (max_duration_ms > 0 && first_ms != AV_NOPTS_VALUE && last_ms - first_ms >= max_duration_ms)
+            break;
+
+        ret = av_read_frame(ic, &pkt);
+        if (ret < 0) {
+            if (ret == AVERROR_EOF)
+                ret = 0;
+            break;
+        }
+
+        if (pkt.pts != AV_NOPTS_VALUE && pkt.stream_index < ic->nb_streams) {
+            int64_t pts_ms = av_rescale_q(pkt.pts, ic->streams[pkt.stream_index]->time_base, (AVRational){1, 1000});
+            if (first_ms == AV_NOPTS_VALUE || pts_ms < first_ms)
+                first_ms = pts_ms;
+            if (last_ms == AV_NOPTS_VALUE || pts_ms > last_ms)
+                last_ms = pts_ms;
+        }
+        av_packet_unref(&pkt);
+    }
+
+    if (h->abort_request)
+        ret = AVERROR_EXIT;
+
+    if (statistic) {
+        statistic->read_bytes  = ic->pb ? avio_tell(ic->pb) : 0;
+        statistic->duration_ms = first_ms != AV_NOPTS_VALUE ? last_ms - first_ms : 0;
+    }
+
+fail:
+    if (ic)
+        avformat_close_input(&ic);
+    if (statistic && manager_ctx->ijkio_app_ctx)
+        statistic->network_bytes = manager_ctx->ijkio_app_ctx->cache_count_bytes;
+    // saves the cache map when auto_save_map is set
+    ijkio_manager_destroyp(&manager_ctx);
+    av_dict_set(format_opts, "ijkiomanager", NULL, 0);
+    return ret;
+}
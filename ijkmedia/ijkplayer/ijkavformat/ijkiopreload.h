@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2017 Bilibili
+ *
+ * This file is part of ijkPlayer.
+ *
+ * ijkPlayer is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * ijkPlayer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with ijkPlayer; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+#ifndef IJKAVFORMAT_IJKIOPRELOAD_H
+#define IJKAVFORMAT_IJKIOPRELOAD_H
+
+#include <stdint.h>
+#include "libavutil/dict.h"
+
+typedef struct IjkIOPreloadStatistic {
+    int64_t read_bytes;
+    int64_t network_bytes;
+    int64_t duration_ms;
+} IjkIOPreloadStatistic;
+
+typedef struct IjkIOPreloadContext IjkIOPreloadContext;
+
+IjkIOPreloadContext *ijkio_preload_create(void);
+void ijkio_preload_destroyp(IjkIOPreloadContext **ph);
+void ijkio_preload_abort(IjkIOPreloadContext *h);
+
+/*
+ * Opens url through its own ijkio manager and reads packets until max_bytes or
+ * max_duration_ms (0 for no limit) is reached, so that the head of the stream
+ * ends up in the ijkio cache described by format_opts. Blocks until done or aborted.
+ */
+int ijkio_preload_run(IjkIOPreloadContext *h, const char *url, AVDictionary **format_opts,
+                      int64_t max_bytes, int64_t max_duration_ms, IjkIOPreloadStatistic *statistic);
+
+#endif  // IJKAVFORMAT_IJKIOPRELOAD_H
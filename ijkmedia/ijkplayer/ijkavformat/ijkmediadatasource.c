@@ -32,6 +32,7 @@
 #include "ijkplayer/ijkavutil/opt.h"
 
 #include "j4a/class/tv/danmaku/ijk/media/player/misc/IMediaDataSource.h"
+#include "j4a/class/tv/danmaku/ijk/media/player/misc/IMediaDataSource2.h"
 #include "ijksdl/android/ijksdl_android_jni.h"
 
 typedef struct Context {
@@ -45,6 +46,11 @@ typedef struct Context {
     jobject         media_data_source;
     jbyteArray      jbuffer;
     int             jbuffer_capacity;
+
+    int             direct_read;
+    jobject         jdirect_buffer;
+    uint8_t        *jdirect_buffer_addr;
+    int             jdirect_buffer_capacity;
 } Context;
 
 static int ijkmds_open(URLContext *h, const char *arg, int flags, AVDictionary **options)
@@ -92,6 +98,7 @@ static int ijkmds_close(URLContext *h)
     }
 
     J4A_DeleteGlobalRef__p(env, &c->jbuffer);
+    J4A_DeleteGlobalRef__p(env, &c->jdirect_buffer);
 
     if (c->media_data_source) {
         J4AC_IMediaDataSource__close__catchAll(env, c->media_data_source);
@@ -123,6 +130,56 @@ static jobject jbuffer_grow(JNIEnv *env, URLContext *h, int new_capacity) {
     return c->jbuffer;
 }
 
+static jobject jdirect_buffer_wrap(JNIEnv *env, URLContext *h, unsigned char *buf, int size) {
+    Context *c = h->priv_data;
+    jobject  local_buffer = NULL;
+
+    // avio hands us the same buffer on almost every call
+    if (c->jdirect_buffer && c->jdirect_buffer_addr == buf && c->jdirect_buffer_capacity >= size)
+        return c->jdirect_buffer;
+
+    J4A_DeleteGlobalRef__p(env, &c->jdirect_buffer);
+    c->jdirect_buffer_addr     = NULL;
+    c->jdirect_buffer_capacity = 0;
+
+    local_buffer = (*env)->NewDirectByteBuffer(env, buf, size);
+    if (J4A_ExceptionCheck__catchAll(env) || !local_buffer)
+        return NULL;
+
+    c->jdirect_buffer = J4A_NewGlobalRef__catchAll(env, local_buffer);
+    J4A_DeleteLocalRef__p(env, &local_buffer);
+    if (!c->jdirect_buffer)
+        return NULL;
+
+    c->jdirect_buffer_addr     = buf;
+    c->jdirect_buffer_capacity = size;
+    return c->jdirect_buffer;
+}
+
+static int ijkmds_read_direct(URLContext *h, JNIEnv *env, unsigned char *buf, int size)
+{
+    Context *c = h->priv_data;
+    jobject  jdirect_buffer = NULL;
+    jint     ret = 0;
+
+    jdirect_buffer = jdirect_buffer_wrap(env, h, buf, size);
+    if (!jdirect_buffer)
+        return AVERROR(ENOMEM);
+
+    ret = J4AC_IMediaDataSource2__readAt(env, c->media_data_source, c->logical_pos, jdirect_buffer, size);
+    if (J4A_ExceptionCheck__catchAll(env))
+        return AVERROR(EIO);
+    else if (ret < 0)
+        return AVERROR_EOF;
+    else if (ret == 0)
+        return AVERROR(EAGAIN);
+    else if (ret > size)
+        return AVERROR(EIO);
+
+    c->logical_pos += ret;
+    return ret;
+}
+
 static int ijkmds_read(URLContext *h, unsigned char *buf, int size)
 {
     Context    *c = h->priv_data;
@@ -138,6 +195,9 @@ static int ijkmds_read(URLContext *h, unsigned char *buf, int size)
         return AVERROR(EINVAL);
     }
 
+    if (c->direct_read && size > 0)
+        return ijkmds_read_direct(h, env, buf, size);
+
     jbuffer = jbuffer_grow(env, h, size);
     if (!jbuffer)
         return AVERROR(ENOMEM);
@@ -207,6 +267,8 @@ static int64_t ijkmds_seek(URLContext *h, int64_t pos, int whence)
 #define D AV_OPT_FLAG_DECODING_PARAM
 
 static const AVOption options[] = {
+    { "ijkmds-direct-read",         "data source implements IMediaDataSource2",
+        OFFSET(direct_read),        AV_OPT_TYPE_INT, { .i64 = 0 }, 0, 1, D },
     { NULL }
 };
 
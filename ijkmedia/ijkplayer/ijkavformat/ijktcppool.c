@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2017 Bilibili
+ *
+ * This file is part of ijkPlayer.
+ *
+ * ijkPlayer is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * ijkPlayer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with ijkPlayer; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+#include "ijktcppool.h"
+
+#include <poll.h>
+#include <pthread.h>
+#include <string.h>
+#include "libavformat/avformat.h"
+#include "libavutil/avstring.h"
+#include "libavutil/log.h"
+#include "libavutil/time.h"
+
+typedef struct IjkTcpPoolEntry {
+    char        key[256];
+    URLContext *conn;
+    int64_t     idle_since;
+} IjkTcpPoolEntry;
+
+static pthread_mutex_t      g_mutex             = PTHREAD_MUTEX_INITIALIZER;
+static IjkTcpPoolEntry      g_entries[IJKTCPPOOL_MAX_IDLE];
+static int                  g_max_idle_per_host = IJKTCPPOOL_DEFAULT_MAX_IDLE_PER_HOST;
+static int64_t              g_idle_timeout_ms   = IJKTCPPOOL_DEFAULT_IDLE_TIMEOUT_MS;
+static IjkTcpPoolStatistic  g_statistic;
+
+static int tcppool_make_key(const char *url, char *key, int key_size)
+{
+    char hostname[256];
+    int  port = -1;
+
+    av_url_split(NULL, 0, NULL, 0, hostname, sizeof(hostname), &port, NULL, 0, url);
+    if (!hostname[0] || port <= 0)
+        return -1;
+
+    snprintf(key, key_size, "%s:%d", hostname, port);
+    return 0;
+}
+
+/* an idle keep-alive connection has nothing to read, unless the peer closed it */
+static int tcppool_is_alive(URLContext *conn)
+{
+    struct pollfd pfd;
+    int fd = ffurl_get_file_handle(conn);
+
+    if (fd < 0)
+        return 0;
+
+    pfd.fd      = fd;
+    pfd.events  = POLLIN;
+    pfd.revents = 0;
+    return poll(&pfd, 1, 0) == 0;
+}
+
+/* moves an entry to the close list, called with g_mutex held */
+static void tcppool_evict_l(IjkTcpPoolEntry *entry, URLContext **closing, int *nb_closing)
+{
+    closing[(*nb_closing)++] = entry->conn;
+    entry->conn = NULL;
+    g_statistic.evict_count++;
+}
+
+static void tcppool_evict_expired_l(int64_t now, URLContext **closing, int *nb_closing)
+{
+    int i;
+
+    for (i = 0; i < IJKTCPPOOL_MAX_IDLE; i++) {
+        if (g_entries[i].conn && now - g_entries[i].idle_since >= g_idle_timeout_ms)
+            tcppool_evict_l(&g_entries[i], closing, nb_closing);
+    }
+}
+
+static void tcppool_close_all(URLContext **closing, int nb_closing)
+{
+    int i;
+
+    for (i = 0; i < nb_closing; i++)
+        ffurl_closep(&closing[i]);
+}
+
+void ijktcppool_set_limits(int max_idle_per_host, int64_t idle_timeout_ms)
+{
+    pthread_mutex_lock(&g_mutex);
+    g_max_idle_per_host = av_clip(max_idle_per_host, 0, IJKTCPPOOL_MAX_IDLE);
+    g_idle_timeout_ms   = FFMAX(idle_timeout_ms, 0);
+    pthread_mutex_unlock(&g_mutex);
+}
+
+URLContext *ijktcppool_checkout(const char *url)
+{
+    URLContext      *closing[IJKTCPPOOL_MAX_IDLE];
+    IjkTcpPoolEntry *found;
+    URLContext      *conn = NULL;
+    char             key[256];
+    int              nb_closing = 0;
+    int              i;
+
+    if (tcppool_make_key(url, key, sizeof(key)))
+        return NULL;
+
+    pthread_mutex_lock(&g_mutex);
+    tcppool_evict_expired_l(av_gettime_relative() / 1000, closing, &nb_closing);
+    while (!conn) {
+        /* the most recently parked connection is the least likely to be closed */
+        found = NULL;
+        for (i = 0; i < IJKTCPPOOL_MAX_IDLE; i++) {
+            if (!g_entries[i].conn || strcmp(g_entries[i].key, key))
+                continue;
+            if (!found || g_entries[i].idle_since > found->idle_since)
+                found = &g_entries[i];
+        }
+        if (!found)
+            break;
+
+        if (tcppool_is_alive(found->conn)) {
+            conn = found->conn;
+            found->conn = NULL;
+        } else {
+            tcppool_evict_l(found, closing, &nb_closing);
+        }
+    }
+    if (conn)
+        g_statistic.hit_count++;
+    else
+        g_statistic.miss_count++;
+    pthread_mutex_unlock(&g_mutex);
+
+    tcppool_close_all(closing, nb_closing);
+    if (conn)
+        av_log(NULL, AV_LOG_INFO, "tcppool: reuse connection to %s\n", key);
+    return conn;
+}
+
+int ijktcppool_checkin(const char *url, URLContext *conn)
+{
+    URLContext      *closing[IJKTCPPOOL_MAX_IDLE + 1];
+    IjkTcpPoolEntry *oldest_of_host = NULL;
+    IjkTcpPoolEntry *oldest         = NULL;
+    IjkTcpPoolEntry *slot           = NULL;
+    int64_t          now            = av_gettime_relative() / 1000;
+    char             key[256];
+    int              nb_closing     = 0;
+    int              nb_of_host     = 0;
+    int              i;
+
+    if (!conn || tcppool_make_key(url, key, sizeof(key)))
+        return -1;
+
+    pthread_mutex_lock(&g_mutex);
+    if (g_max_idle_per_host <= 0 || g_idle_timeout_ms <= 0) {
+        pthread_mutex_unlock(&g_mutex);
+        return -1;
+    }
+
+    tcppool_evict_expired_l(now, closing, &nb_closing);
+    for (i = 0; i < IJKTCPPOOL_MAX_IDLE; i++) {
+        IjkTcpPoolEntry *entry = &g_entries[i];
+        if (!entry->conn) {
+            slot = entry;
+            continue;
+        }
+
+        if (!oldest || entry->idle_since < oldest->idle_since)
+            oldest = entry;
+        if (!strcmp(entry->key, key)) {
+            nb_of_host++;
+            if (!oldest_of_host || entry->idle_since < oldest_of_host->idle_since)
+                oldest_of_host = entry;
+        }
+    }
+
+    if (nb_of_host >= g_max_idle_per_host) {
+        slot = oldest_of_host;
+        tcppool_evict_l(slot, closing, &nb_closing);
+    } else if (!slot) {
+        slot = oldest;
+        tcppool_evict_l(slot, closing, &nb_closing);
+    }
+
+    /* the interrupt callback belongs to the player which opened it */
+    conn->interrupt_callback.callback = NULL;
+    conn->interrupt_callback.opaque   = NULL;
+
+    av_strlcpy(slot->key, key, sizeof(slot->key));
+    slot->conn       = conn;
+    slot->idle_since = now;
+    pthread_mutex_unlock(&g_mutex);
+
+    tcppool_close_all(closing, nb_closing);
+    return 0;
+}
+
+void ijktcppool_get_statistic(IjkTcpPoolStatistic *statistic)
+{
+    int i;
+
+    pthread_mutex_lock(&g_mutex);
+    *statistic = g_statistic;
+    statistic->idle_count = 0;
+    for (i = 0; i < IJKTCPPOOL_MAX_IDLE; i++) {
+        if (g_entries[i].conn)
+            statistic->idle_count++;
+    }
+    pthread_mutex_unlock(&g_mutex);
+}
+
+void ijktcppool_clear(void)
+{
+    URLContext *closing[IJKTCPPOOL_MAX_IDLE];
+    int         nb_closing = 0;
+    int         i;
+
+    pthread_mutex_lock(&g_mutex);
+    for (i = 0; i < IJKTCPPOOL_MAX_IDLE; i++) {
+        if (g_entries[i].conn)
+            tcppool_evict_l(&g_entries[i], closing, &nb_closing);
+    }
+    pthread_mutex_unlock(&g_mutex);
+
+    tcppool_close_all(closing, nb_closing);
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2017 Bilibili
+ *
+ * This file is part of ijkPlayer.
+ *
+ * ijkPlayer is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * ijkPlayer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with ijkPlayer; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+#ifndef IJKAVFORMAT_IJKTCPPOOL_H
+#define IJKAVFORMAT_IJKTCPPOOL_H
+
+#include <stdint.h>
+#include "libavformat/url.h"
+
+#define IJKTCPPOOL_DEFAULT_MAX_IDLE_PER_HOST    4
+#define IJKTCPPOOL_DEFAULT_IDLE_TIMEOUT_MS      15000
+#define IJKTCPPOOL_MAX_IDLE                     32
+
+typedef struct IjkTcpPoolStatistic {
+    int64_t hit_count;
+    int64_t miss_count;
+    int64_t evict_count;
+    int64_t idle_count;
+} IjkTcpPoolStatistic;
+
+/*
+ * Process-wide pool of idle keep-alive tcp connections, keyed by "host:port".
+ * Shared by every player, it is only fed by ijktcphook, so only plain http
+ * connections are pooled: tls opens its tcp connection without the hook.
+ */
+void ijktcppool_set_limits(int max_idle_per_host, int64_t idle_timeout_ms);
+
+/*
+ * Takes an idle connection to the host and port of url, NULL on a miss.
+ * Connections closed by the peer or idle for too long are evicted on the way.
+ */
+URLContext *ijktcppool_checkout(const char *url);
+
+/*
+ * Parks a connection at a clean message boundary, which then belongs to the pool.
+ * Returns a negative value if it was not taken, the caller still has to close it.
+ */
+int ijktcppool_checkin(const char *url, URLContext *conn);
+
+void ijktcppool_get_statistic(IjkTcpPoolStatistic *statistic);
+
+/* closes every idle connection */
+void ijktcppool_clear(void);
+
+#endif  // IJKAVFORMAT_IJKTCPPOOL_H
@@ -27,6 +27,19 @@
 #include "libavutil/opt.h"
 
 #include "libavutil/application.h"
+#include "ijkdns.h"
+#include "ijktcppool.h"
+
+/* http exchanges seen by ijktcphook, only a connection left at a message boundary is pooled */
+enum {
+    IJKTCPHOOK_HTTP_NONE = 0,
+    IJKTCPHOOK_HTTP_HEADER,
+    IJKTCPHOOK_HTTP_BODY,
+    IJKTCPHOOK_HTTP_DONE,
+    IJKTCPHOOK_HTTP_BROKEN,
+};
+
+#define IJKTCPHOOK_HTTP_HEADER_SIZE 2048
 
 typedef struct Context {
     AVClass        *class;
@@ -46,8 +59,17 @@ typedef struct Context {
     int             segment_index;
     int64_t         test_fail_point;
     int64_t         test_fail_point_next;
+    int             pool;
+    int             dns_cache;
+    int             dns_cache_clear;
     int64_t         app_ctx_intptr;
     AVApplicationContext *app_ctx;
+
+    /* ijktcphook pool */
+    int             http_state;
+    int             http_header_len;
+    char            http_header[IJKTCPHOOK_HTTP_HEADER_SIZE];
+    int64_t         http_body_left;
 } Context;
 
 static int ijkurlhook_call_inject(URLContext *h)
@@ -157,9 +179,80 @@ static int ijkurlhook_init(URLContext *h, const char *arg, int flags, AVDictiona
     return ret;
 }
 
+/* reports a pooled connection like tcp reports a new one */
+static void ijktcphook_reuse(URLContext *h)
+{
+    Context *c = h->priv_data;
+    AVAppTcpIOControl control = {0};
+
+    c->inner->interrupt_callback = h->interrupt_callback;
+    c->inner->rw_timeout         = h->rw_timeout;
+    h->is_streamed               = c->inner->is_streamed;
+    c->logical_pos               = 0;
+    c->logical_size              = -1;
+
+    if (c->app_ctx) {
+        av_application_on_tcp_will_open(c->app_ctx);
+        av_application_on_tcp_did_open(c->app_ctx, 0, ffurl_get_file_handle(c->inner), &control);
+    }
+}
+
+static void ijktcphook_dns_event(URLContext *h, int event, IjkDnsControl *control)
+{
+    Context *c = h->priv_data;
+
+    if (c->app_ctx && c->app_ctx->func_on_app_event)
+        c->app_ctx->func_on_app_event(c->app_ctx, event, control, sizeof(*control));
+}
+
+/*
+ * Replaces the host of the tcp url by its cached address, or by the one the
+ * application gives. Returns 1 if the url was rewritten. host is left empty
+ * if there is nothing to resolve.
+ */
+static int ijktcphook_resolve(URLContext *h, char *host, int host_size)
+{
+    Context *c = h->priv_data;
+    IjkDnsControl control = {0};
+    char proto[32];
+    char path[1024];
+    int  port = -1;
+
+    av_url_split(proto, sizeof(proto), NULL, 0, host, host_size, &port, path, sizeof(path), c->app_io_ctrl.url);
+    if (!host[0] || ijkdns_is_numeric(host)) {
+        host[0] = '\0';
+        return 0;
+    }
+
+    if (c->dns_cache_clear)
+        ijkdns_remove(host);
+
+    control.size = sizeof(control);
+    av_strlcpy(control.host, host, sizeof(control.host));
+    ijktcphook_dns_event(h, IJKDNS_EVENT_WILL_RESOLVE, &control);
+    if (ijkdns_lookup(host, control.ip, sizeof(control.ip))) {
+        ijktcphook_dns_event(h, IJKDNS_CTRL_WILL_RESOLVE, &control);
+        if (!control.ip[0] || !ijkdns_is_numeric(control.ip)) {
+            control.ip[0] = '\0';
+            ijktcphook_dns_event(h, IJKDNS_EVENT_DID_RESOLVE, &control);
+            return 0;
+        }
+        ijkdns_put(host, control.ip, control.ttl_ms);
+    }
+    ijktcphook_dns_event(h, IJKDNS_EVENT_DID_RESOLVE, &control);
+
+    snprintf(c->app_io_ctrl.url, sizeof(c->app_io_ctrl.url),
+             strchr(control.ip, ':') ? "%s://[%s]:%d%s" : "%s://%s:%d%s",
+             proto, control.ip, port, path);
+    av_log(h, AV_LOG_INFO, "%s resolved to %s\n", host, control.ip);
+    return 1;
+}
+
 static int ijktcphook_open(URLContext *h, const char *arg, int flags, AVDictionary **options)
 {
     Context *c = h->priv_data;
+    char host[IJKDNS_HOST_SIZE] = {0};
+    int resolved = 0;
     int ret = 0;
 
     c->app_ctx = (AVApplicationContext *)(intptr_t)c->app_ctx_intptr;
@@ -169,9 +262,43 @@ static int ijktcphook_open(URLContext *h, const char *arg, int flags, AVDictiona
     if (ret)
         goto fail;
 
+    /* taken from tcp, which keeps its own dns cache */
+    if (c->dns_cache_clear)
+        av_dict_set_int(&c->inner_options, "dns_cache_clear", 1, 0);
+    if (c->dns_cache)
+        resolved = ijktcphook_resolve(h, host, sizeof(host));
+
+    if (c->pool) {
+        c->inner = ijktcppool_checkout(c->app_io_ctrl.url);
+        if (c->inner) {
+            ijktcphook_reuse(h);
+            return 0;
+        }
+
+        /*
+         * tcp keeps the application context it was opened with, and a pooled
+         * connection outlives its player. It gets none, the hook reports the
+         * open and the reads to the player owning the connection.
+         */
+        av_dict_set_int(&c->inner_options, "ijkapplication", 0, 0);
+        if (c->app_ctx)
+            av_application_on_tcp_will_open(c->app_ctx);
+    }
+
     ret = ijkurlhook_reconnect(h, NULL);
-    if (ret)
+    if (c->pool && c->app_ctx) {
+        AVAppTcpIOControl control = {0};
+        av_application_on_tcp_did_open(c->app_ctx, ret, ret ? -1 : ffurl_get_file_handle(c->inner), &control);
+    }
+    if (ret) {
+        /* the cached address may be stale */
+        if (resolved)
+            ijkdns_remove(host);
         goto fail;
+    }
+
+    if (host[0] && !resolved)
+        ijkdns_put_peer(host, ffurl_get_file_handle(c->inner));
 
 fail:
     return ret;
@@ -185,6 +312,24 @@ static int ijkurlhook_close(URLContext *h)
     return ffurl_closep(&c->inner);
 }
 
+static int ijktcphook_close(URLContext *h)
+{
+    Context *c = h->priv_data;
+
+    if (c->pool && c->inner && c->http_state == IJKTCPHOOK_HTTP_DONE) {
+        /* a parked connection must not call back into this player, which may be freed */
+        AVIOInterruptCB interrupt_callback = c->inner->interrupt_callback;
+
+        c->inner->interrupt_callback = (AVIOInterruptCB){0};
+        if (!ijktcppool_checkin(c->app_io_ctrl.url, c->inner))
+            c->inner = NULL;
+        else
+            c->inner->interrupt_callback = interrupt_callback;
+    }
+
+    return ijkurlhook_close(h);
+}
+
 static int ijkurlhook_read(URLContext *h, unsigned char *buf, int size)
 {
     Context *c = h->priv_data;
@@ -215,6 +360,143 @@ static int ijkurlhook_write(URLContext *h, const unsigned char *buf, int size)
     return ffurl_write(c->inner, buf, size);
 }
 
+static int ijktcphook_has_header(const char *header, const char *name, const char *value)
+{
+    const char *line = header;
+    const char *p;
+
+    while ((line = strstr(line, "\r\n"))) {
+        line += 2;
+        if (av_stristart(line, name, &p) && *p == ':') {
+            if (!value)
+                return 1;
+            for (p++; *p && *p != '\r'; p++) {
+                if (av_stristart(p, value, NULL))
+                    return 1;
+            }
+        }
+    }
+    return 0;
+}
+
+static void ijktcphook_track_request(Context *c, const unsigned char *buf, int size)
+{
+    int len;
+
+    if (c->http_state != IJKTCPHOOK_HTTP_NONE && c->http_state != IJKTCPHOOK_HTTP_DONE) {
+        c->http_state = IJKTCPHOOK_HTTP_BROKEN;
+        return;
+    }
+
+    /* http writes a request header at once, a body would follow a POST */
+    len = FFMIN(size, IJKTCPHOOK_HTTP_HEADER_SIZE - 1);
+    memcpy(c->http_header, buf, len);
+    c->http_header[len] = '\0';
+    if (!av_strstart(c->http_header, "GET ", NULL) ||
+        !strstr(c->http_header, "\r\n\r\n") ||
+        ijktcphook_has_header(c->http_header, "Connection", "close")) {
+        c->http_state = IJKTCPHOOK_HTTP_BROKEN;
+        return;
+    }
+
+    c->http_state      = IJKTCPHOOK_HTTP_HEADER;
+    c->http_header_len = 0;
+}
+
+static void ijktcphook_parse_response(Context *c, int body_len)
+{
+    const char *p;
+    int64_t     content_length = -1;
+    int         code;
+
+    if (!av_strstart(c->http_header, "HTTP/1.1 ", &p)) {
+        c->http_state = IJKTCPHOOK_HTTP_BROKEN;
+        return;
+    }
+
+    code = atoi(p);
+    if ((p = av_stristr(c->http_header, "\r\nContent-Length:")))
+        content_length = strtoll(p + 17, NULL, 10);
+    if (code == 204 || code == 304)
+        content_length = 0;
+
+    if (code < 200 || content_length < 0 ||
+        ijktcphook_has_header(c->http_header, "Transfer-Encoding", NULL) ||
+        ijktcphook_has_header(c->http_header, "Connection", "close")) {
+        c->http_state = IJKTCPHOOK_HTTP_BROKEN;
+        return;
+    }
+
+    c->http_body_left = content_length - body_len;
+    if (c->http_body_left < 0)
+        c->http_state = IJKTCPHOOK_HTTP_BROKEN;
+    else
+        c->http_state = c->http_body_left ? IJKTCPHOOK_HTTP_BODY : IJKTCPHOOK_HTTP_DONE;
+}
+
+static void ijktcphook_track_response(Context *c, const unsigned char *buf, int size)
+{
+    char *end;
+    int   len;
+
+    switch (c->http_state) {
+        case IJKTCPHOOK_HTTP_HEADER:
+            len = FFMIN(size, IJKTCPHOOK_HTTP_HEADER_SIZE - 1 - c->http_header_len);
+            memcpy(c->http_header + c->http_header_len, buf, len);
+            c->http_header_len += len;
+            c->http_header[c->http_header_len] = '\0';
+
+            end = strstr(c->http_header, "\r\n\r\n");
+            if (!end) {
+                if (len < size)
+                    c->http_state = IJKTCPHOOK_HTTP_BROKEN;
+                return;
+            }
+            end[2] = '\0';
+            /* what follows the header in this read already belongs to the body */
+            ijktcphook_parse_response(c, size - (int)(end + 4 - c->http_header - (c->http_header_len - len)));
+            break;
+        case IJKTCPHOOK_HTTP_BODY:
+            c->http_body_left -= size;
+            if (c->http_body_left < 0)
+                c->http_state = IJKTCPHOOK_HTTP_BROKEN;
+            else if (!c->http_body_left)
+                c->http_state = IJKTCPHOOK_HTTP_DONE;
+            break;
+        case IJKTCPHOOK_HTTP_BROKEN:
+            break;
+        default:
+            /* nothing was asked for */
+            c->http_state = IJKTCPHOOK_HTTP_BROKEN;
+            break;
+    }
+}
+
+static int ijktcphook_read(URLContext *h, unsigned char *buf, int size)
+{
+    Context *c = h->priv_data;
+    int ret = ijkurlhook_read(h, buf, size);
+
+    if (c->pool) {
+        if (ret > 0 && c->app_ctx)
+            av_application_did_io_tcp_read(c->app_ctx, (void *)h, ret);
+        if (ret > 0)
+            ijktcphook_track_response(c, buf, ret);
+        else
+            c->http_state = IJKTCPHOOK_HTTP_BROKEN;
+    }
+    return ret;
+}
+
+static int ijktcphook_write(URLContext *h, const unsigned char *buf, int size)
+{
+    Context *c = h->priv_data;
+
+    if (c->pool)
+        ijktcphook_track_request(c, buf, size);
+    return ijkurlhook_write(h, buf, size);
+}
+
 static int64_t ijkurlhook_seek(URLContext *h, int64_t pos, int whence)
 {
     Context *c = h->priv_data;
@@ -417,6 +699,12 @@ fail:
 static const AVOption ijktcphook_options[] = {
     { "ijktcphook-test-fail-point",     "test fail point, in bytes",
         OFFSET(test_fail_point),        AV_OPT_TYPE_INT,   {.i64 = 0}, 0,         INT_MAX, D },
+    { "ijktcphook-pool",                "keep idle http connections in the process-wide pool",
+        OFFSET(pool),                   AV_OPT_TYPE_INT,   {.i64 = 0}, 0,         1,       D },
+    { "ijktcphook-dns-cache",           "connect to addresses from the process-wide dns cache",
+        OFFSET(dns_cache),              AV_OPT_TYPE_INT,   {.i64 = 0}, 0,         1,       D },
+    { "dns_cache_clear",                "drop the cached address of the host before connecting",
+        OFFSET(dns_cache_clear),        AV_OPT_TYPE_INT,   {.i64 = 0}, 0,         1,       D },
     { "ijkapplication", "AVApplicationContext", OFFSET(app_ctx_intptr), AV_OPT_TYPE_INT64, { .i64 = 0 }, INT64_MIN, INT64_MAX, .flags = D },
 
     { NULL }
@@ -445,9 +733,9 @@ static const AVClass ijktcphook_context_class = {
 URLProtocol ijkimp_ff_ijktcphook_protocol = {
     .name                = "ijktcphook",
     .url_open2           = ijktcphook_open,
-    .url_read            = ijkurlhook_read,
-    .url_write           = ijkurlhook_write,
-    .url_close           = ijkurlhook_close,
+    .url_read            = ijktcphook_read,
+    .url_write           = ijktcphook_write,
+    .url_close           = ijktcphook_close,
     .priv_data_size      = sizeof(Context),
     .priv_data_class     = &ijktcphook_context_class,
 };
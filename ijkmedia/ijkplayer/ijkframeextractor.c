@@ -0,0 +1,253 @@
+/*
+ * ijkframeextractor.c
+ *
+ * Copyright (c) 2017 Bilibili
+ *
+ * This file is part of ijkPlayer.
+ *
+ * ijkPlayer is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * ijkPlayer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with ijkPlayer; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+#include "ijkframeextractor.h"
+#include "ff_ffinc.h"
+
+struct IjkFrameExtractor {
+    AVFormatContext     *ic;
+    AVCodecContext      *avctx;
+    struct SwsContext   *sws_ctx;
+    AVFrame             *frame;
+
+    int                  video_stream;
+    // index timestamp of the key frame held by frame
+    int64_t              frame_key_ts;
+
+    volatile int         abort_request;
+};
+
+IjkFrameExtractor *ijkfe_create(void)
+{
+    IjkFrameExtractor *fe = (IjkFrameExtractor *)av_mallocz(sizeof(IjkFrameExtractor));
+    if (!fe)
+        return NULL;
+
+    fe->frame = av_frame_alloc();
+    if (!fe->frame) {
+        av_free(fe);
+        return NULL;
+    }
+    fe->video_stream = -1;
+    fe->frame_key_ts = AV_NOPTS_VALUE;
+    return fe;
+}
+
+void ijkfe_destroyp(IjkFrameExtractor **pfe)
+{
+    IjkFrameExtractor *fe;
+
+    if (!pfe || !*pfe)
+        return;
+
+    fe = *pfe;
+    avcodec_free_context(&fe->avctx);
+    if (fe->ic)
+        avformat_close_input(&fe->ic);
+    sws_freeContext(fe->sws_ctx);
+    av_frame_free(&fe->frame);
+    av_freep(pfe);
+}
+
+void ijkfe_abort(IjkFrameExtractor *fe)
+{
+    if (fe)
+        fe->abort_request = 1;
+}
+
+static int decode_interrupt_cb(void *opaque)
+{
+    IjkFrameExtractor *fe = opaque;
+    return fe->abort_request;
+}
+
+int ijkfe_open(IjkFrameExtractor *fe, const char *url, AVDictionary **format_opts)
+{
+    AVCodec *codec = NULL;
+    int      ret   = 0;
+    int      i     = 0;
+
+    if (!fe || !url || fe->ic)
+        return AVERROR(EINVAL);
+
+    fe->ic = avformat_alloc_context();
+    if (!fe->ic)
+        return AVERROR(ENOMEM);
+    fe->ic->interrupt_callback.callback = decode_interrupt_cb;
+    fe->ic->interrupt_callback.opaque   = fe;
+
+    ret = avformat_open_input(&fe->ic, url, NULL, format_opts);
+    if (ret < 0) {
+        av_log(NULL, AV_LOG_WARNING, "ijkfe: open %s failed: %s\n", url, av_err2str(ret));
+        return ret;
+    }
+
+    ret = avformat_find_stream_info(fe->ic, NULL);
+    if (ret < 0)
+        return ret;
+
+    ret = av_find_best_stream(fe->ic, AVMEDIA_TYPE_VIDEO, -1, -1, &codec, 0);
+    if (ret < 0)
+        return ret;
+    fe->video_stream = ret;
+
+    for (i = 0; i < fe->ic->nb_streams; ++i) {
+        if (i != fe->video_stream)
+            fe->ic->streams[i]->discard = AVDISCARD_ALL;
+    }
+
+    fe->avctx = avcodec_alloc_context3(codec);
+    if (!fe->avctx)
+        return AVERROR(ENOMEM);
+
+    ret = avcodec_parameters_to_context(fe->avctx, fe->ic->streams[fe->video_stream]->codecpar);
+    if (ret < 0)
+        return ret;
+
+    // parallelism comes from running one extractor per worker
+    fe->avctx->thread_count = 1;
+    fe->avctx->skip_frame   = AVDISCARD_NONKEY;
+
+    return avcodec_open2(fe->avctx, codec, NULL);
+}
+
+void ijkfe_get_info(IjkFrameExtractor *fe, int *width, int *height, int64_t *duration_ms)
+{
+    int     w = 0;
+    int     h = 0;
+    int64_t d = 0;
+
+    if (fe && fe->avctx) {
+        w = fe->avctx->width;
+        h = fe->avctx->height;
+    }
+    if (fe && fe->ic && fe->ic->duration != AV_NOPTS_VALUE)
+        d = av_rescale(fe->ic->duration, 1000, AV_TIME_BASE);
+
+    if (width)
+        *width = w;
+    if (height)
+        *height = h;
+    if (duration_ms)
+        *duration_ms = d;
+}
+
+static int decode_key_frame(IjkFrameExtractor *fe, int64_t ts)
+{
+    AVPacket pkt;
+    int      eof = 0;
+    int      ret = 0;
+
+    ret = av_seek_frame(fe->ic, fe->video_stream, ts, AVSEEK_FLAG_BACKWARD);
+    if (ret < 0)
+        return ret;
+    avcodec_flush_buffers(fe->avctx);
+
+    av_init_packet(&pkt);
+    for (;;) {
+        if (fe->abort_request)
+            return AVERROR_EXIT;
+
+        ret = avcodec_receive_frame(fe->avctx, fe->frame);
+        if (ret != AVERROR(EAGAIN))
+            return ret;
+
+        if (eof)
+            return AVERROR_EOF;
+
+        ret = av_read_frame(fe->ic, &pkt);
+        if (ret == AVERROR_EOF) {
+            // drain frames held back by decoder delay
+            avcodec_send_packet(fe->avctx, NULL);
+            eof = 1;
+            continue;
+        } else if (ret < 0) {
+            return ret;
+        }
+
+        if (pkt.stream_index == fe->video_stream && (pkt.flags & AV_PKT_FLAG_KEY)) {
+            ret = avcodec_send_packet(fe->avctx, &pkt);
+            if (ret < 0 && ret != AVERROR(EAGAIN) && ret != AVERROR_INVALIDDATA) {
+                av_packet_unref(&pkt);
+                return ret;
+            }
+        }
+        av_packet_unref(&pkt);
+    }
+}
+
+int ijkfe_extract(IjkFrameExtractor *fe, int64_t time_ms,
+                  uint8_t *dst, int dst_stride, int dst_width, int dst_height,
+                  int64_t *frame_time_ms, int64_t *decode_us)
+{
+    AVStream *st         = NULL;
+    int64_t   start_time = 0;
+    int64_t   ts         = 0;
+    int64_t   key_ts     = AV_NOPTS_VALUE;
+    int64_t   begin      = 0;
+    int64_t   pts        = AV_NOPTS_VALUE;
+    int       index      = -1;
+    int       ret        = 0;
+    uint8_t  *dst_data[4]     = {dst};
+    int       dst_linesize[4] = {dst_stride};
+
+    if (!fe || !fe->avctx || !dst || dst_width <= 0 || dst_height <= 0)
+        return AVERROR(EINVAL);
+
+    st = fe->ic->streams[fe->video_stream];
+    start_time = st->start_time != AV_NOPTS_VALUE ? st->start_time : 0;
+    ts = start_time + av_rescale_q(time_ms, (AVRational){1, 1000}, st->time_base);
+
+    index = av_index_search_timestamp(st, ts, AVSEEK_FLAG_BACKWARD);
+    if (index >= 0)
+        key_ts = st->index_entries[index].timestamp;
+
+    begin = av_gettime_relative();
+    if (key_ts == AV_NOPTS_VALUE || key_ts != fe->frame_key_ts) {
+        fe->frame_key_ts = AV_NOPTS_VALUE;
+        ret = decode_key_frame(fe, ts);
+        if (ret < 0)
+            return ret;
+        fe->frame_key_ts = key_ts;
+    }
+    if (decode_us)
+        *decode_us = av_gettime_relative() - begin;
+
+    fe->sws_ctx = sws_getCachedContext(fe->sws_ctx,
+                                       fe->frame->width, fe->frame->height, fe->frame->format,
+                                       dst_width, dst_height, AV_PIX_FMT_RGBA,
+                                       SWS_FAST_BILINEAR, NULL, NULL, NULL);
+    if (!fe->sws_ctx)
+        return AVERROR(EINVAL);
+
+    ret = sws_scale(fe->sws_ctx, (const uint8_t * const *)fe->frame->data, fe->frame->linesize,
+                    0, fe->frame->height, dst_data, dst_linesize);
+    if (ret < 0)
+        return ret;
+
+    if (frame_time_ms) {
+        pts = fe->frame->best_effort_timestamp;
+        *frame_time_ms = pts != AV_NOPTS_VALUE ?
+                         av_rescale_q(pts - start_time, st->time_base, (AVRational){1, 1000}) : time_ms;
+    }
+    return 0;
+}
@@ -0,0 +1,49 @@
+/*
+ * ijkframeextractor.h
+ *
+ * Copyright (c) 2017 Bilibili
+ *
+ * This file is part of ijkPlayer.
+ *
+ * ijkPlayer is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * ijkPlayer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with ijkPlayer; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+#ifndef IJKPLAYER__IJKFRAMEEXTRACTOR_H
+#define IJKPLAYER__IJKFRAMEEXTRACTOR_H
+
+#include <stdint.h>
+#include "libavutil/dict.h"
+
+typedef struct IjkFrameExtractor IjkFrameExtractor;
+
+IjkFrameExtractor *ijkfe_create(void);
+void ijkfe_destroyp(IjkFrameExtractor **pfe);
+
+// may be called from any thread, makes a blocking call return AVERROR_EXIT
+void ijkfe_abort(IjkFrameExtractor *fe);
+
+int ijkfe_open(IjkFrameExtractor *fe, const char *url, AVDictionary **format_opts);
+void ijkfe_get_info(IjkFrameExtractor *fe, int *width, int *height, int64_t *duration_ms);
+
+/*
+ * Decodes the key frame at or before time_ms and scales it to RGBA into dst.
+ * Only key frames are decoded; times which map to the key frame decoded last
+ * reuse it without decoding.
+ */
+int ijkfe_extract(IjkFrameExtractor *fe, int64_t time_ms,
+                  uint8_t *dst, int dst_stride, int dst_width, int dst_height,
+                  int64_t *frame_time_ms, int64_t *decode_us);
+
+#endif
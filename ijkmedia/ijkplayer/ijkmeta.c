@@ -35,6 +35,9 @@ struct IjkMediaMeta {
     size_t children_count;
     size_t children_capacity;
     IjkMediaMeta **children;
+
+    // bumped on every change, lets callers keep a converted copy
+    int generation;
 };
 
 IjkMediaMeta *ijkmeta_create()
@@ -55,8 +58,27 @@ fail:
 
 void ijkmeta_reset(IjkMediaMeta *meta)
 {
-    if (meta && meta->dict)
+    if (!meta)
+        return;
+
+    ijkmeta_lock(meta);
+    if (meta->dict)
         av_dict_free(&meta->dict);
+
+    if (meta->children) {
+        for(int i = 0; i < meta->children_count; ++i) {
+            IjkMediaMeta *child = meta->children[i];
+            if (child) {
+                ijkmeta_destroy(child);
+            }
+        }
+        free(meta->children);
+        meta->children          = NULL;
+        meta->children_count    = 0;
+        meta->children_capacity = 0;
+    }
+    meta->generation++;
+    ijkmeta_unlock(meta);
 }
 
 void ijkmeta_destroy(IjkMediaMeta *meta)
@@ -133,6 +155,7 @@ void ijkmeta_append_child_l(IjkMediaMeta *meta, IjkMediaMeta *child)
 
     meta->children[meta->children_count] = child;
     meta->children_count++;
+    meta->generation++;
 }
 
 void ijkmeta_set_int64_l(IjkMediaMeta *meta, const char *name, int64_t value)
@@ -141,6 +164,7 @@ void ijkmeta_set_int64_l(IjkMediaMeta *meta, const char *name, int64_t value)
         return;
 
     av_dict_set_int(&meta->dict, name, value, 0);
+    meta->generation++;
 }
 
 void ijkmeta_set_string_l(IjkMediaMeta *meta, const char *name, const char *value)
@@ -149,6 +173,7 @@ void ijkmeta_set_string_l(IjkMediaMeta *meta, const char *name, const char *valu
         return;
 
     av_dict_set(&meta->dict, name, value, 0);
+    meta->generation++;
 }
 
 static int64_t get_bit_rate(AVCodecParameters *codecpar)
@@ -314,6 +339,14 @@ size_t ijkmeta_get_children_count_l(IjkMediaMeta *meta)
     return meta->children_count;
 }
 
+int ijkmeta_get_generation_l(IjkMediaMeta *meta)
+{
+    if (!meta)
+        return 0;
+
+    return meta->generation;
+}
+
 IjkMediaMeta *ijkmeta_get_child_l(IjkMediaMeta *meta, size_t index)
 {
     if (!meta)
@@ -87,6 +87,8 @@ void ijkmeta_set_avformat_context_l(IjkMediaMeta *meta, struct AVFormatContext *
 const char   *ijkmeta_get_string_l(IjkMediaMeta *meta, const char *name);
 int64_t       ijkmeta_get_int64_l(IjkMediaMeta *meta, const char *name, int64_t defaultValue);
 size_t        ijkmeta_get_children_count_l(IjkMediaMeta *meta);
+// changes whenever a value is set, a stream is appended or the meta is reset
+int           ijkmeta_get_generation_l(IjkMediaMeta *meta);
 // do not free
 IjkMediaMeta *ijkmeta_get_child_l(IjkMediaMeta *meta, size_t index);
 
@@ -302,6 +302,31 @@ void ijkmp_set_property_int64(IjkMediaPlayer *mp, int id, int64_t value)
     pthread_mutex_unlock(&mp->mutex);
 }
 
+void ijkmp_get_property_snapshot(IjkMediaPlayer *mp,
+                                 const int *int64_ids, int64_t *int64_values, int int64_count,
+                                 const int *float_ids, float *float_values, int float_count)
+{
+    assert(mp);
+
+    // values are read under one lock, so they describe the same moment
+    pthread_mutex_lock(&mp->mutex);
+    for (int i = 0; i < int64_count; ++i)
+        int64_values[i] = ffp_get_property_int64(mp->ffplayer, int64_ids[i], int64_values[i]);
+    for (int i = 0; i < float_count; ++i)
+        float_values[i] = ffp_get_property_float(mp->ffplayer, float_ids[i], float_values[i]);
+    pthread_mutex_unlock(&mp->mutex);
+}
+
+int ijkmp_get_cache_connection_speeds(IjkMediaPlayer *mp, int64_t *speeds, int capacity)
+{
+    assert(mp);
+
+    pthread_mutex_lock(&mp->mutex);
+    int ret = ffp_get_cache_connection_speeds(mp->ffplayer, speeds, capacity);
+    pthread_mutex_unlock(&mp->mutex);
+    return ret;
+}
+
 IjkMediaMeta *ijkmp_get_meta_l(IjkMediaPlayer *mp)
 {
     assert(mp);
@@ -336,6 +361,32 @@ void ijkmp_shutdown(IjkMediaPlayer *mp)
     return ijkmp_shutdown_l(mp);
 }
 
+int ijkmp_reset(IjkMediaPlayer *mp)
+{
+    assert(mp);
+    MPTRACE("ijkmp_reset()\n");
+    // like release, the read and decoder threads being joined may need mp->mutex
+    ijkmp_shutdown(mp);
+
+    // msg_loop exits once msg_queue is aborted, it must not see the next session
+    if (mp->msg_thread) {
+        SDL_WaitThread(mp->msg_thread, NULL);
+        mp->msg_thread = NULL;
+    }
+
+    pthread_mutex_lock(&mp->mutex);
+    ffp_reset(mp->ffplayer);
+    freep((void**)&mp->data_source);
+    mp->restart                = 0;
+    mp->restart_from_beginning = 0;
+    mp->seek_req               = 0;
+    mp->seek_msec              = 0;
+    ijkmp_change_state_l(mp, MP_STATE_IDLE);
+    pthread_mutex_unlock(&mp->mutex);
+    MPTRACE("ijkmp_reset()=0\n");
+    return 0;
+}
+
 void ijkmp_inc_ref(IjkMediaPlayer *mp)
 {
     assert(mp);
@@ -183,6 +183,11 @@ float           ijkmp_get_property_float(IjkMediaPlayer *mp, int id, float defau
 void            ijkmp_set_property_float(IjkMediaPlayer *mp, int id, float value);
 int64_t         ijkmp_get_property_int64(IjkMediaPlayer *mp, int id, int64_t default_value);
 void            ijkmp_set_property_int64(IjkMediaPlayer *mp, int id, int64_t value);
+/* values[] hold the default values on input */
+void            ijkmp_get_property_snapshot(IjkMediaPlayer *mp,
+                                            const int *int64_ids, int64_t *int64_values, int int64_count,
+                                            const int *float_ids, float *float_values, int float_count);
+int             ijkmp_get_cache_connection_speeds(IjkMediaPlayer *mp, int64_t *speeds, int capacity);
 
 // must be freed with free();
 IjkMediaMeta   *ijkmp_get_meta_l(IjkMediaPlayer *mp);
@@ -190,6 +195,8 @@ IjkMediaMeta   *ijkmp_get_meta_l(IjkMediaPlayer *mp);
 // preferred to be called explicity, can be called multiple times
 // NOTE: ijkmp_shutdown may block thread
 void            ijkmp_shutdown(IjkMediaPlayer *mp);
+// NOTE: ijkmp_reset blocks until playback threads exit, keeps vout/aout/pipeline
+int             ijkmp_reset(IjkMediaPlayer *mp);
 
 void            ijkmp_inc_ref(IjkMediaPlayer *mp);
 
@@ -0,0 +1,549 @@
+/*
+ * ijkstreaminfo.c
+ *
+ * Copyright (c) 2017 Bilibili
+ *
+ * This file is part of ijkPlayer.
+ *
+ * ijkPlayer is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * ijkPlayer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with ijkPlayer; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+#include "ijkstreaminfo.h"
+
+#include <inttypes.h>
+#include <pthread.h>
+#include <stddef.h>
+#include <stdio.h>
+#include <string.h>
+#include "libavutil/avstring.h"
+#include "libavutil/log.h"
+#include "libavutil/mem.h"
+#include "libavutil/time.h"
+
+#define SIC_MAGIC   0x49534932  /* ISI2 */
+
+typedef struct IjkStreamInfoStream {
+    int         codec_type;
+    int         codec_id;
+    uint32_t    codec_tag;
+    int         format;
+    int64_t     bit_rate;
+    int         bits_per_coded_sample;
+    int         bits_per_raw_sample;
+    int         profile;
+    int         level;
+    int         width;
+    int         height;
+    AVRational  sample_aspect_ratio;
+    int         video_delay;
+    uint64_t    channel_layout;
+    int         channels;
+    int         sample_rate;
+    int         block_align;
+    int         frame_size;
+    AVRational  avg_frame_rate;
+    AVRational  r_frame_rate;
+    int64_t     start_time;     /* in time_base, AV_NOPTS_VALUE if unknown */
+    AVRational  time_base;
+    int         extradata_size;
+    uint8_t     extradata[IJKSTREAMINFO_MAX_EXTRADATA];
+} IjkStreamInfoStream;
+
+/* written to disk as is, the directory belongs to one app on one device */
+typedef struct IjkStreamInfoEntry {
+    uint32_t    magic;
+    uint32_t    entry_size;
+    char        key[IJKSTREAMINFO_KEY_SIZE];
+    char        format_name[32];
+    int64_t     file_size;      /* -1 if unknown */
+    int64_t     duration;       /* AV_NOPTS_VALUE for live */
+    int         nb_streams;
+    IjkStreamInfoStream streams[IJKSTREAMINFO_MAX_STREAMS];
+    int64_t     last_used;
+} IjkStreamInfoEntry;
+
+static pthread_mutex_t      g_mutex = PTHREAD_MUTEX_INITIALIZER;
+static IjkStreamInfoEntry   g_entries[IJKSTREAMINFO_MAX_ENTRIES];
+static char                 g_dir[1024];
+
+static void sic_path(const char *key, char *path, size_t path_size)
+{
+    uint64_t hash = 0xcbf29ce484222325ULL;
+
+    /* fnv-1a */
+    for (; *key; key++) {
+        hash ^= (uint8_t)*key;
+        hash *= 0x100000001b3ULL;
+    }
+    snprintf(path, path_size, "%s/%016"PRIx64".sic", g_dir, hash);
+}
+
+/* called with g_mutex held */
+static IjkStreamInfoEntry *sic_find_l(const char *key)
+{
+    int i;
+
+    for (i = 0; i < IJKSTREAMINFO_MAX_ENTRIES; i++) {
+        if (g_entries[i].key[0] && !strcmp(g_entries[i].key, key))
+            return &g_entries[i];
+    }
+    return NULL;
+}
+
+/* called with g_mutex held, a free entry or the least recently used one */
+static IjkStreamInfoEntry *sic_slot_l(const char *key)
+{
+    IjkStreamInfoEntry *entry = sic_find_l(key);
+    int i;
+
+    if (entry)
+        return entry;
+
+    for (i = 0; i < IJKSTREAMINFO_MAX_ENTRIES; i++) {
+        if (!g_entries[i].key[0])
+            return &g_entries[i];
+        if (!entry || g_entries[i].last_used < entry->last_used)
+            entry = &g_entries[i];
+    }
+    return entry;
+}
+
+static int sic_check_streams(const IjkStreamInfoEntry *entry)
+{
+    int i;
+
+    for (i = 0; i < entry->nb_streams; i++) {
+        if (entry->streams[i].extradata_size < 0 ||
+            entry->streams[i].extradata_size > IJKSTREAMINFO_MAX_EXTRADATA)
+            return 0;
+    }
+    return 1;
+}
+
+/* called with g_mutex held */
+static IjkStreamInfoEntry *sic_load_l(const char *key)
+{
+    IjkStreamInfoEntry *entry;
+    IjkStreamInfoEntry *loaded;
+    char path[sizeof(g_dir) + 32];
+    FILE *file;
+    size_t read_size;
+
+    if (!g_dir[0])
+        return NULL;
+
+    sic_path(key, path, sizeof(path));
+    file = fopen(path, "rb");
+    if (!file)
+        return NULL;
+
+    loaded = av_malloc(sizeof(IjkStreamInfoEntry));
+    if (!loaded) {
+        fclose(file);
+        return NULL;
+    }
+    read_size = fread(loaded, 1, sizeof(IjkStreamInfoEntry), file);
+    fclose(file);
+
+    /* the file is not trusted, the strings are compared with strcmp() later */
+    loaded->key[sizeof(loaded->key) - 1] = '\0';
+    loaded->format_name[sizeof(loaded->format_name) - 1] = '\0';
+
+    if (read_size != sizeof(IjkStreamInfoEntry) ||
+        loaded->magic != SIC_MAGIC ||
+        loaded->entry_size != sizeof(IjkStreamInfoEntry) ||
+        loaded->nb_streams <= 0 || loaded->nb_streams > IJKSTREAMINFO_MAX_STREAMS ||
+        strcmp(loaded->key, key) ||
+        !sic_check_streams(loaded)) {
+        av_free(loaded);
+        remove(path);
+        return NULL;
+    }
+
+    entry = sic_slot_l(key);
+    *entry = *loaded;
+    av_free(loaded);
+    return entry;
+}
+
+/* called with g_mutex held */
+static void sic_save_l(const IjkStreamInfoEntry *entry)
+{
+    char path[sizeof(g_dir) + 32];
+    char tmp_path[sizeof(path) + 4];
+    FILE *file;
+    size_t written;
+
+    if (!g_dir[0])
+        return;
+
+    sic_path(entry->key, path, sizeof(path));
+    snprintf(tmp_path, sizeof(tmp_path), "%s.tmp", path);
+    file = fopen(tmp_path, "wb");
+    if (!file)
+        return;
+
+    written = fwrite(entry, 1, sizeof(IjkStreamInfoEntry), file);
+    if (fclose(file) || written != sizeof(IjkStreamInfoEntry) || rename(tmp_path, path))
+        remove(tmp_path);
+}
+
+static int sic_has_parameters(const AVCodecParameters *par)
+{
+    if (par->codec_id == AV_CODEC_ID_NONE)
+        return 0;
+
+    switch (par->codec_type) {
+        case AVMEDIA_TYPE_AUDIO:
+            return par->sample_rate > 0 && par->channels > 0 && par->format >= 0;
+        case AVMEDIA_TYPE_VIDEO:
+            return par->width > 0 && par->height > 0 && par->format >= 0;
+        default:
+            return 1;
+    }
+}
+
+static void sic_fill_frame_rates(AVStream *st, const IjkStreamInfoStream *s)
+{
+    if (!st->avg_frame_rate.num)
+        st->avg_frame_rate = s->avg_frame_rate;
+    if (!st->r_frame_rate.num)
+        st->r_frame_rate = s->r_frame_rate;
+}
+
+/* only what the demuxer left unset */
+static int sic_fill(AVStream *st, const IjkStreamInfoStream *s)
+{
+    AVCodecParameters *par = st->codecpar;
+
+    if (par->codec_id == AV_CODEC_ID_NONE)
+        par->codec_id = s->codec_id;
+    if (!par->codec_tag)
+        par->codec_tag = s->codec_tag;
+    if (par->format < 0)
+        par->format = s->format;
+    if (!par->bit_rate)
+        par->bit_rate = s->bit_rate;
+    if (!par->bits_per_coded_sample)
+        par->bits_per_coded_sample = s->bits_per_coded_sample;
+    if (!par->bits_per_raw_sample)
+        par->bits_per_raw_sample = s->bits_per_raw_sample;
+    if (par->profile == FF_PROFILE_UNKNOWN)
+        par->profile = s->profile;
+    if (par->level == FF_LEVEL_UNKNOWN)
+        par->level = s->level;
+
+    if (par->codec_type == AVMEDIA_TYPE_VIDEO) {
+        if (!par->width || !par->height) {
+            par->width  = s->width;
+            par->height = s->height;
+        }
+        if (!par->sample_aspect_ratio.num)
+            par->sample_aspect_ratio = s->sample_aspect_ratio;
+        if (!par->video_delay)
+            par->video_delay = s->video_delay;
+    } else if (par->codec_type == AVMEDIA_TYPE_AUDIO) {
+        if (!par->channels) {
+            par->channels       = s->channels;
+            par->channel_layout = s->channel_layout;
+        }
+        if (!par->sample_rate)
+            par->sample_rate = s->sample_rate;
+        if (!par->block_align)
+            par->block_align = s->block_align;
+        if (!par->frame_size)
+            par->frame_size = s->frame_size;
+    }
+
+    if (!par->extradata && s->extradata_size > 0) {
+        par->extradata = av_mallocz(s->extradata_size + AV_INPUT_BUFFER_PADDING_SIZE);
+        if (!par->extradata)
+            return AVERROR(ENOMEM);
+        memcpy(par->extradata, s->extradata, s->extradata_size);
+        par->extradata_size = s->extradata_size;
+    }
+
+    sic_fill_frame_rates(st, s);
+    return 0;
+}
+
+/*
+ * Start times are only computed by avformat_find_stream_info(), and positions
+ * and seeks are relative to ic->start_time. Without probing, a stream needs
+ * the start time of its header, or the cached one of the same file.
+ */
+static int sic_has_start_times(AVFormatContext *ic, const IjkStreamInfoEntry *entry, int64_t file_size)
+{
+    int same_file = entry->file_size > 0 && entry->file_size == file_size;
+    int i;
+
+    for (i = 0; i < ic->nb_streams; i++) {
+        AVStream *st = ic->streams[i];
+        const IjkStreamInfoStream *s = &entry->streams[i];
+
+        if (st->start_time != AV_NOPTS_VALUE)
+            continue;
+        if (!same_file || s->start_time == AV_NOPTS_VALUE || !s->time_base.den)
+            return 0;
+    }
+    return 1;
+}
+
+/* what update_stream_timings() would have set, text streams only count alone */
+static void sic_fill_start_times(AVFormatContext *ic, const IjkStreamInfoEntry *entry)
+{
+    int64_t start_time      = INT64_MAX;
+    int64_t start_time_text = INT64_MAX;
+    int i;
+
+    for (i = 0; i < ic->nb_streams; i++) {
+        AVStream *st = ic->streams[i];
+        const IjkStreamInfoStream *s = &entry->streams[i];
+        int64_t start_time1;
+
+        if (st->start_time == AV_NOPTS_VALUE)
+            st->start_time = av_rescale_q(s->start_time, s->time_base, st->time_base);
+        start_time1 = av_rescale_q(st->start_time, st->time_base, AV_TIME_BASE_Q);
+        if (st->codecpar->codec_type == AVMEDIA_TYPE_SUBTITLE || st->codecpar->codec_type == AVMEDIA_TYPE_DATA)
+            start_time_text = FFMIN(start_time_text, start_time1);
+        else
+            start_time = FFMIN(start_time, start_time1);
+    }
+    if (start_time == INT64_MAX)
+        start_time = start_time_text;
+    if (ic->start_time == AV_NOPTS_VALUE && start_time != INT64_MAX)
+        ic->start_time = start_time;
+}
+
+/* 0 if the stream the demuxer describes may be the cached one */
+static int sic_match(const AVCodecParameters *par, const IjkStreamInfoStream *s)
+{
+    if (par->codec_type != AVMEDIA_TYPE_UNKNOWN && par->codec_type != s->codec_type)
+        return -1;
+    if (par->codec_id != AV_CODEC_ID_NONE && par->codec_id != s->codec_id)
+        return -1;
+    if (par->extradata && s->extradata_size > 0 &&
+        (par->extradata_size != s->extradata_size || memcmp(par->extradata, s->extradata, s->extradata_size)))
+        return -1;
+    return 0;
+}
+
+static void sic_shorten(AVFormatContext *ic, const IjkStreamInfoEntry *entry)
+{
+    int i;
+
+    /* no need to measure frame rates which are cached */
+    for (i = 0; i < entry->nb_streams; i++) {
+        const IjkStreamInfoStream *s = &entry->streams[i];
+        if (s->codec_type == AVMEDIA_TYPE_VIDEO && !s->avg_frame_rate.num && !s->r_frame_rate.num)
+            break;
+    }
+    if (i == entry->nb_streams)
+        ic->fps_probe_size = 0;
+
+    /* streams of headerless formats show up with packets, stop probing once all are there */
+    if (!ic->nb_streams)
+        av_dict_set_int(&ic->metadata, "nb-streams", entry->nb_streams, 0);
+}
+
+void ijkstreaminfo_set_dir(const char *dir)
+{
+    pthread_mutex_lock(&g_mutex);
+    av_strlcpy(g_dir, dir ? dir : "", sizeof(g_dir));
+    pthread_mutex_unlock(&g_mutex);
+}
+
+int ijkstreaminfo_apply(const char *key, AVFormatContext *ic)
+{
+    IjkStreamInfoEntry *entry;
+    int64_t file_size;
+    int complete = 1;
+    int i;
+
+    if (!key || !key[0] || strlen(key) >= IJKSTREAMINFO_KEY_SIZE || !ic->iformat)
+        return IJKSTREAMINFO_MISS;
+
+    entry = av_malloc(sizeof(IjkStreamInfoEntry));
+    if (!entry)
+        return IJKSTREAMINFO_MISS;
+
+    pthread_mutex_lock(&g_mutex);
+    {
+        IjkStreamInfoEntry *cached = sic_find_l(key);
+        if (!cached)
+            cached = sic_load_l(key);
+        if (cached) {
+            cached->last_used = av_gettime_relative();
+            *entry = *cached;
+        }
+        pthread_mutex_unlock(&g_mutex);
+        if (!cached) {
+            av_free(entry);
+            return IJKSTREAMINFO_MISS;
+        }
+    }
+
+    file_size = ic->pb ? avio_size(ic->pb) : -1;
+    if (strcmp(entry->format_name, ic->iformat->name) ||
+        (entry->file_size > 0 && file_size > 0 && entry->file_size != file_size) ||
+        (ic->nb_streams && ic->nb_streams != entry->nb_streams))
+        goto mismatch;
+    for (i = 0; i < ic->nb_streams; i++) {
+        if (sic_match(ic->streams[i]->codecpar, &entry->streams[i]))
+            goto mismatch;
+    }
+
+    if (!ic->nb_streams) {
+        sic_shorten(ic, entry);
+        av_free(entry);
+        return IJKSTREAMINFO_SHORTENED;
+    }
+
+    /* left for probing to compute, with no parameters filled it reads packets */
+    if (!sic_has_start_times(ic, entry, file_size)) {
+        sic_shorten(ic, entry);
+        av_free(entry);
+        return IJKSTREAMINFO_SHORTENED;
+    }
+
+    /* only trust the cache with streams the demuxer identified itself */
+    for (i = 0; i < ic->nb_streams; i++) {
+        AVCodecParameters *par = ic->streams[i]->codecpar;
+        if (par->codec_type == AVMEDIA_TYPE_UNKNOWN || par->codec_id == AV_CODEC_ID_NONE)
+            complete = 0;
+        if (sic_fill(ic->streams[i], &entry->streams[i]) < 0 || !sic_has_parameters(par))
+            complete = 0;
+    }
+
+    if (!complete) {
+        sic_shorten(ic, entry);
+        av_free(entry);
+        return IJKSTREAMINFO_SHORTENED;
+    }
+
+    sic_fill_start_times(ic, entry);
+    if (ic->duration == AV_NOPTS_VALUE && entry->duration > 0)
+        ic->duration = entry->duration;
+    av_log(ic, AV_LOG_INFO, "stream info cache hit, %d streams\n", ic->nb_streams);
+    av_free(entry);
+    return IJKSTREAMINFO_HIT;
+
+mismatch:
+    av_log(ic, AV_LOG_INFO, "stream info cache mismatch, probing\n");
+    av_free(entry);
+    ijkstreaminfo_remove(key);
+    return IJKSTREAMINFO_MISMATCH;
+}
+
+void ijkstreaminfo_store(const char *key, AVFormatContext *ic)
+{
+    IjkStreamInfoEntry *entry;
+    IjkStreamInfoEntry *cached;
+    int i;
+
+    if (!key || !key[0] || strlen(key) >= IJKSTREAMINFO_KEY_SIZE || !ic->iformat ||
+        ic->nb_streams <= 0 || ic->nb_streams > IJKSTREAMINFO_MAX_STREAMS)
+        return;
+
+    entry = av_mallocz(sizeof(IjkStreamInfoEntry));
+    if (!entry)
+        return;
+
+    pthread_mutex_lock(&g_mutex);
+    cached = sic_find_l(key);
+    if (cached && cached->nb_streams == ic->nb_streams) {
+        for (i = 0; i < ic->nb_streams; i++) {
+            if (ic->streams[i]->codecpar->codec_type == cached->streams[i].codec_type)
+                sic_fill_frame_rates(ic->streams[i], &cached->streams[i]);
+        }
+    }
+    pthread_mutex_unlock(&g_mutex);
+
+    entry->magic      = SIC_MAGIC;
+    entry->entry_size = sizeof(IjkStreamInfoEntry);
+    av_strlcpy(entry->key, key, sizeof(entry->key));
+    av_strlcpy(entry->format_name, ic->iformat->name, sizeof(entry->format_name));
+    entry->file_size  = ic->pb ? avio_size(ic->pb) : -1;
+    entry->duration   = ic->duration;
+    entry->nb_streams = ic->nb_streams;
+    for (i = 0; i < ic->nb_streams; i++) {
+        AVStream *st = ic->streams[i];
+        AVCodecParameters *par = st->codecpar;
+        IjkStreamInfoStream *s = &entry->streams[i];
+
+        if (par->extradata_size > IJKSTREAMINFO_MAX_EXTRADATA) {
+            av_free(entry);
+            return;
+        }
+        s->codec_type               = par->codec_type;
+        s->codec_id                 = par->codec_id;
+        s->codec_tag                = par->codec_tag;
+        s->format                   = par->format;
+        s->bit_rate                 = par->bit_rate;
+        s->bits_per_coded_sample    = par->bits_per_coded_sample;
+        s->bits_per_raw_sample      = par->bits_per_raw_sample;
+        s->profile                  = par->profile;
+        s->level                    = par->level;
+        s->width                    = par->width;
+        s->height                   = par->height;
+        s->sample_aspect_ratio      = par->sample_aspect_ratio;
+        s->video_delay              = par->video_delay;
+        s->channel_layout           = par->channel_layout;
+        s->channels                 = par->channels;
+        s->sample_rate              = par->sample_rate;
+        s->block_align              = par->block_align;
+        s->frame_size               = par->frame_size;
+        s->avg_frame_rate           = st->avg_frame_rate;
+        s->r_frame_rate             = st->r_frame_rate;
+        s->start_time               = st->start_time;
+        s->time_base                = st->time_base;
+        if (par->extradata && par->extradata_size > 0) {
+            s->extradata_size = par->extradata_size;
+            memcpy(s->extradata, par->extradata, par->extradata_size);
+        }
+    }
+
+    pthread_mutex_lock(&g_mutex);
+    cached = sic_slot_l(key);
+    entry->last_used = av_gettime_relative();
+    /* last_used excluded, it is the last field */
+    if (memcmp(cached, entry, offsetof(IjkStreamInfoEntry, last_used))) {
+        *cached = *entry;
+        sic_save_l(cached);
+    } else {
+        cached->last_used = entry->last_used;
+    }
+    pthread_mutex_unlock(&g_mutex);
+    av_free(entry);
+}
+
+void ijkstreaminfo_remove(const char *key)
+{
+    IjkStreamInfoEntry *entry;
+    char path[sizeof(g_dir) + 32];
+
+    if (!key || !key[0])
+        return;
+
+    pthread_mutex_lock(&g_mutex);
+    entry = sic_find_l(key);
+    if (entry)
+        memset(entry, 0, sizeof(IjkStreamInfoEntry));
+    if (g_dir[0]) {
+        sic_path(key, path, sizeof(path));
+        remove(path);
+    }
+    pthread_mutex_unlock(&g_mutex);
+}
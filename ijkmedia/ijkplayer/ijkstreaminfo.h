@@ -0,0 +1,63 @@
+/*
+ * ijkstreaminfo.h
+ *
+ * Copyright (c) 2017 Bilibili
+ *
+ * This file is part of ijkPlayer.
+ *
+ * ijkPlayer is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * ijkPlayer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with ijkPlayer; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA
+ */
+
+#ifndef IJKPLAYER__IJKSTREAMINFO_H
+#define IJKPLAYER__IJKSTREAMINFO_H
+
+#include "libavformat/avformat.h"
+
+/*
+ * Process-wide cache of the streams found by avformat_find_stream_info(),
+ * keyed by url or content id, kept in memory and optionally in a directory,
+ * so that the next open of the same content skips or shortens probing.
+ */
+#define IJKSTREAMINFO_MAX_ENTRIES   16
+#define IJKSTREAMINFO_MAX_STREAMS   6
+#define IJKSTREAMINFO_MAX_EXTRADATA 512
+#define IJKSTREAMINFO_KEY_SIZE      1024
+
+/* result of ijkstreaminfo_apply(), also reported as FFP_PROP_INT64_STREAM_INFO_CACHE */
+#define IJKSTREAMINFO_MISS          0   /* no entry, probe */
+#define IJKSTREAMINFO_HIT           1   /* parameters filled in, probing can be skipped */
+#define IJKSTREAMINFO_SHORTENED     2   /* probe with the shorter settings applied to ic */
+#define IJKSTREAMINFO_MISMATCH      3   /* entry dropped, the content changed, probe */
+#define IJKSTREAMINFO_FALLBACK      4   /* a decoder failed with cached parameters, probed again */
+
+/* directory of the persistent entries, NULL or empty to keep them in memory only */
+void ijkstreaminfo_set_dir(const char *dir);
+
+/*
+ * Matches the streams the demuxer found in its header against the entry of
+ * key, to be called between avformat_open_input() and
+ * avformat_find_stream_info().
+ */
+int ijkstreaminfo_apply(const char *key, AVFormatContext *ic);
+
+/*
+ * After avformat_find_stream_info(): fills the frame rates a shortened probe
+ * left unset, then records the streams of ic for key.
+ */
+void ijkstreaminfo_store(const char *key, AVFormatContext *ic);
+
+void ijkstreaminfo_remove(const char *key);
+
+#endif
@@ -25,6 +25,7 @@
 #include "ijksdl_android_jni.h"
 
 #include <unistd.h>
+#include "libavutil/dict.h"
 #include "j4a/class/android/os/Build.h"
 #include "ijksdl_inc_internal_android.h"
 #include "ijksdl_codec_android_mediaformat_java.h"
@@ -170,6 +171,28 @@ void SDL_JNI_DeleteLocalRefP(JNIEnv *env, jobject *obj_ptr)
     *obj_ptr = NULL;
 }
 
+/* no-op if key or value is null, < 0 on failure */
+int SDL_JNI_AVDictSetString(JNIEnv *env, AVDictionary **dict, jstring key, jstring value)
+{
+    const char *c_key   = NULL;
+    const char *c_value = NULL;
+    int         ret     = -1;
+
+    if (!key || !value)
+        return 0;
+
+    c_key   = (*env)->GetStringUTFChars(env, key, NULL);
+    c_value = (*env)->GetStringUTFChars(env, value, NULL);
+    if (c_key && c_value)
+        ret = av_dict_set(dict, c_key, c_value, 0);
+
+    if (c_key)
+        (*env)->ReleaseStringUTFChars(env, key, c_key);
+    if (c_value)
+        (*env)->ReleaseStringUTFChars(env, value, c_value);
+    return ret;
+}
+
 
 int SDL_Android_GetApiLevel()
 {
@@ -66,6 +66,9 @@ jobject SDL_JNI_NewObjectAsGlobalRef(JNIEnv *env, jclass clazz, jmethodID method
 void    SDL_JNI_DeleteGlobalRefP(JNIEnv *env, jobject *obj_ptr);
 void    SDL_JNI_DeleteLocalRefP(JNIEnv *env, jobject *obj_ptr);
 
+struct AVDictionary;
+int     SDL_JNI_AVDictSetString(JNIEnv *env, struct AVDictionary **dict, jstring key, jstring value);
+
 int     SDL_Android_GetApiLevel();
 
 #define IJK_FIND_JAVA_CLASS(env__, var__, classsign__) \